@@ -0,0 +1,88 @@
+import bench.Workload;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The work behind bench.ConcurrentSkipListBenchmarks: a map of Integer
+ * keys, ConcurrentSkipList or java.util.concurrent.ConcurrentSkipListMap,
+ * holding the even keys below size, and the op that every benchmark
+ * thread runs against it at once.  The only op is mixed: 90% get, 5% set
+ * and 5% remove, of keys drawn uniformly below size.  The only key type
+ * is Integer, and keys are always drawn at random.
+ */
+public class ConcurrentSkipListWorkloads implements Workload.Factory {
+
+  // +------------+--------------------------------------------------
+  // | Benchmarks |
+  // +------------+
+
+  @Override
+  public Workload create(String op, String impl, String keyType, String order, int size) {
+    if (!op.equals("mixed")) {
+      throw new IllegalArgumentException("unknown op " + op);
+    } // if
+    if (!keyType.equals("Integer") || !order.equals("random")) {
+      throw new IllegalArgumentException("keys must be random Integers");
+    } // if
+    switch (impl) {
+      case "ConcurrentSkipList":
+        ConcurrentSkipList<Integer, Integer> ours =
+            new ConcurrentSkipList<Integer, Integer>(Integer::compare);
+        for (int i = 0; i < size; i += 2) {
+          ours.set(i, i);
+        } // for
+        return new Workload() {
+          @Override
+          public void setup() {
+            // The threads share the map, which is built once
+          } // setup()
+
+          @Override
+          public long run(Blackhole bh) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int key = random.nextInt(size);
+            int op = random.nextInt(100);
+            if (op < 90) {
+              bh.consume(ours.containsKey(key));
+            } else if (op < 95) {
+              bh.consume(ours.set(key, key));
+            } else {
+              bh.consume(ours.remove(key));
+            } // if/else
+            return 1;
+          } // run(Blackhole)
+        };
+      case "ConcurrentSkipListMap":
+        ConcurrentSkipListMap<Integer, Integer> theirs =
+            new ConcurrentSkipListMap<Integer, Integer>();
+        for (int i = 0; i < size; i += 2) {
+          theirs.put(i, i);
+        } // for
+        return new Workload() {
+          @Override
+          public void setup() {
+            // The threads share the map, which is built once
+          } // setup()
+
+          @Override
+          public long run(Blackhole bh) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int key = random.nextInt(size);
+            int op = random.nextInt(100);
+            if (op < 90) {
+              bh.consume(theirs.containsKey(key));
+            } else if (op < 95) {
+              bh.consume(theirs.put(key, key));
+            } else {
+              bh.consume(theirs.remove(key));
+            } // if/else
+            return 1;
+          } // run(Blackhole)
+        };
+      default:
+        throw new IllegalArgumentException("unknown map " + impl);
+    } // switch
+  } // create(String, String, String, String, int)
+
+} // class ConcurrentSkipListWorkloads
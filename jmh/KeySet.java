@@ -0,0 +1,155 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+
+/**
+ * Size distinct keys of some type, and ways to order them.
+ */
+class KeySet<K> {
+
+  /**
+   * The width of the sliding window, in keys.
+   */
+  static final int WINDOW = 64;
+
+  /**
+   * The keys, in ascending order.
+   */
+  K[] sorted;
+
+  /**
+   * How to compare keys.
+   */
+  Comparator<K> comparator;
+
+  /**
+   * How to write keys in snapshots.
+   */
+  Serializer<K> serializer;
+
+  /**
+   * How to normalize keys (see SkipList.setNormalizer).
+   */
+  KeyNormalizer<K> normalizer;
+
+  /**
+   * Make keys of the named type.
+   */
+  @SuppressWarnings("unchecked")
+  static <K> KeySet<K> of(String keyType, int size) {
+    KeySet<K> keys = new KeySet<K>();
+    switch (keyType) {
+      case "Integer":
+        Integer[] ints = new Integer[size];
+        for (int i = 0; i < size; i++) {
+          ints[i] = i;
+        } // for
+        keys.sorted = (K[]) ints;
+        keys.comparator = (Comparator<K>) Comparator.<Integer>naturalOrder();
+        keys.serializer = (Serializer<K>) Serializer.INTEGER;
+        keys.normalizer = (KeyNormalizer<K>) KeyNormalizer.INTEGER;
+        break;
+      case "String":
+        String[] strings = new String[size];
+        for (int i = 0; i < size; i++) {
+          strings[i] = String.format("user%010d", i);
+        } // for
+        keys.sorted = (K[]) strings;
+        keys.comparator = (Comparator<K>) Comparator.<String>naturalOrder();
+        keys.serializer = (Serializer<K>) Serializer.STRING;
+        keys.normalizer = (KeyNormalizer<K>) KeyNormalizer.STRING;
+        break;
+      case "RandomString":
+        String alphabet = "0123456789abcdefghijklmnopqrstuvwxyz";
+        SplittableRandom random = new SplittableRandom(size);
+        TreeSet<String> distinct = new TreeSet<String>();
+        while (distinct.size() < size) {
+          char[] chars = new char[16];
+          for (int i = 0; i < chars.length; i++) {
+            chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+          } // for
+          distinct.add(new String(chars));
+        } // while
+        keys.sorted = (K[]) distinct.toArray(new String[size]);
+        keys.comparator = (Comparator<K>) Comparator.<String>naturalOrder();
+        keys.serializer = (Serializer<K>) Serializer.STRING;
+        keys.normalizer = (KeyNormalizer<K>) KeyNormalizer.STRING;
+        break;
+      default:
+        throw new IllegalArgumentException("unknown key type " + keyType);
+    } // switch
+    return keys;
+  } // of(String, int)
+
+  /**
+   * Produce count keys in the named order.  Zipfian draws repeat popular
+   * keys, which are scattered over the key range rather than bunched up.
+   * The window order picks keys at random from a window of WINDOW
+   * consecutive keys that slides from the smallest key to the largest.
+   */
+  K[] ordered(String order, int count) {
+    int n = this.sorted.length;
+    switch (order) {
+      case "sequential":
+        return Arrays.copyOf(this.sorted, count);
+      case "random":
+        return pick(shuffled(n, 1), count);
+      case "zipfian":
+        int[] scatter = shuffled(n, 2);
+        ZipfianGenerator zipf = new ZipfianGenerator(n, 0.99, 3);
+        int[] ranks = new int[count];
+        for (int i = 0; i < count; i++) {
+          ranks[i] = scatter[(int) zipf.next()];
+        } // for
+        return pick(ranks, count);
+      case "window":
+        SplittableRandom random = new SplittableRandom(4);
+        int[] near = new int[count];
+        for (int i = 0; i < count; i++) {
+          long start = (long) i * Math.max(0, n - WINDOW) / count;
+          near[i] = (int) Math.min(n - 1, start + random.nextInt(WINDOW));
+        } // for
+        return pick(near, count);
+      default:
+        throw new IllegalArgumentException("unknown order " + order);
+    } // switch
+  } // ordered(String, int)
+
+  /**
+   * Find the index of a key in sorted.
+   */
+  int rank(K key) {
+    return Arrays.binarySearch(this.sorted, key, this.comparator);
+  } // rank(K)
+
+  /**
+   * Pick keys by index.
+   */
+  K[] pick(int[] indices, int count) {
+    K[] result = Arrays.copyOf(this.sorted, count);
+    for (int i = 0; i < count; i++) {
+      result[i] = this.sorted[indices[i % indices.length]];
+    } // for
+    return result;
+  } // pick(int[], int)
+
+  /**
+   * The numbers 0 .. n-1 in a reproducible random order.
+   */
+  static int[] shuffled(int n, long seed) {
+    SplittableRandom random = new SplittableRandom(seed);
+    int[] result = new int[n];
+    for (int i = 0; i < n; i++) {
+      result[i] = i;
+    } // for
+    for (int i = n - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int tmp = result[i];
+      result[i] = result[j];
+      result[j] = tmp;
+    } // for
+    return result;
+  } // shuffled(int, long)
+
+} // class KeySet
@@ -0,0 +1,200 @@
+import bench.Workload;
+import java.util.Random;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The work behind bench.PrimitiveSkipListBenchmarks: set and get on the
+ * primitive-keyed lists against the generic SkipList with boxed keys.
+ * impl is SkipList or Primitive, and keys is int or long, so that
+ *   SkipList, int  - SkipList<Integer, Integer>
+ *   SkipList, long - SkipList<Long, Integer>
+ *   Primitive, int  - IntSkipList<Integer>
+ *   Primitive, long - LongSkipList<Integer>
+ * Every pair shares one value.  The generic lists box each key as the
+ * pass reaches it, as a caller holding ints would.
+ */
+public class PrimitiveSkipListWorkloads implements Workload.Factory {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The value of every pair.
+   */
+  static final Integer VALUE = 1;
+
+  // +------------+--------------------------------------------------
+  // | Benchmarks |
+  // +------------+
+
+  @Override
+  public Workload create(String op, String impl, String keyType, String order, int size) {
+    if (!op.equals("set") && !op.equals("get")) {
+      throw new IllegalArgumentException("unknown op " + op);
+    } // if
+    boolean set = op.equals("set");
+    int[] keys = ordered(order, size);
+    switch (impl + " " + keyType) {
+      case "SkipList int":
+        return integers(set, keys);
+      case "SkipList long":
+        return longs(set, keys);
+      case "Primitive int":
+        return intSkipList(set, keys);
+      case "Primitive long":
+        return longSkipList(set, keys);
+      default:
+        throw new IllegalArgumentException("unknown map " + impl + " of " + keyType);
+    } // switch
+  } // create(String, String, String, String, int)
+
+  /**
+   * Set or get keys in a SkipList<Integer, Integer>.  For set, each call
+   * starts from an empty list; for get, the list is built once.
+   */
+  static Workload integers(boolean set, int[] keys) {
+    return new Workload() {
+      SkipList<Integer, Integer> list;
+
+      @Override
+      public void setup() {
+        if (set || this.list == null) {
+          this.list = new SkipList<Integer, Integer>(Integer::compare);
+          if (!set) {
+            for (int key : keys) {
+              this.list.set(key, VALUE);
+            } // for
+          } // if
+        } // if
+      } // setup()
+
+      @Override
+      public long run(Blackhole bh) {
+        for (int key : keys) {
+          bh.consume(set ? this.list.set(key, VALUE) : this.list.get(key));
+        } // for
+        return keys.length;
+      } // run(Blackhole)
+    };
+  } // integers(boolean, int[])
+
+  /**
+   * Set or get keys in a SkipList<Long, Integer>.
+   */
+  static Workload longs(boolean set, int[] keys) {
+    return new Workload() {
+      SkipList<Long, Integer> list;
+
+      @Override
+      public void setup() {
+        if (set || this.list == null) {
+          this.list = new SkipList<Long, Integer>(Long::compare);
+          if (!set) {
+            for (int key : keys) {
+              this.list.set((long) key, VALUE);
+            } // for
+          } // if
+        } // if
+      } // setup()
+
+      @Override
+      public long run(Blackhole bh) {
+        for (int key : keys) {
+          bh.consume(set ? this.list.set((long) key, VALUE) : this.list.get((long) key));
+        } // for
+        return keys.length;
+      } // run(Blackhole)
+    };
+  } // longs(boolean, int[])
+
+  /**
+   * Set or get keys in an IntSkipList<Integer>.
+   */
+  static Workload intSkipList(boolean set, int[] keys) {
+    return new Workload() {
+      IntSkipList<Integer> list;
+
+      @Override
+      public void setup() {
+        if (set || this.list == null) {
+          this.list = new IntSkipList<Integer>();
+          if (!set) {
+            for (int key : keys) {
+              this.list.set(key, VALUE);
+            } // for
+          } // if
+        } // if
+      } // setup()
+
+      @Override
+      public long run(Blackhole bh) {
+        for (int key : keys) {
+          bh.consume(set ? this.list.set(key, VALUE) : this.list.get(key));
+        } // for
+        return keys.length;
+      } // run(Blackhole)
+    };
+  } // intSkipList(boolean, int[])
+
+  /**
+   * Set or get keys in a LongSkipList<Integer>.
+   */
+  static Workload longSkipList(boolean set, int[] keys) {
+    return new Workload() {
+      LongSkipList<Integer> list;
+
+      @Override
+      public void setup() {
+        if (set || this.list == null) {
+          this.list = new LongSkipList<Integer>();
+          if (!set) {
+            for (int key : keys) {
+              this.list.set((long) key, VALUE);
+            } // for
+          } // if
+        } // if
+      } // setup()
+
+      @Override
+      public long run(Blackhole bh) {
+        for (int key : keys) {
+          bh.consume(set ? this.list.set((long) key, VALUE) : this.list.get((long) key));
+        } // for
+        return keys.length;
+      } // run(Blackhole)
+    };
+  } // longSkipList(boolean, int[])
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * The numbers 0 .. size-1, ascending (sequential) or in a fixed random
+   * order (random).
+   */
+  static int[] ordered(String order, int size) {
+    int[] keys = new int[size];
+    for (int i = 0; i < size; i++) {
+      keys[i] = i;
+    } // for
+    switch (order) {
+      case "sequential":
+        break;
+      case "random":
+        Random random = new Random(size);
+        for (int i = size - 1; i > 0; i--) {
+          int j = random.nextInt(i + 1);
+          int tmp = keys[i];
+          keys[i] = keys[j];
+          keys[j] = tmp;
+        } // for
+        break;
+      default:
+        throw new IllegalArgumentException("unknown order " + order);
+    } // switch
+    return keys;
+  } // ordered(String, int)
+
+} // class PrimitiveSkipListWorkloads
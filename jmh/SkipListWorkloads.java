@@ -0,0 +1,404 @@
+import bench.Workload;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The work behind bench.SkipListBenchmarks: for each op, impl, key type,
+ * order and size, how to set up the map and what one timed call does.
+ * It lives in the default package, beside the maps, and the benchmark
+ * reaches it through Workload.
+ *
+ * Besides the default ops, these may be requested with -p op=...:
+ *   bulkLoad, bulkLoadBalanced - build the whole map from sorted entries
+ *     (TreeMap falls back to inserting them in order; order is ignored)
+ *   append - ingest a sorted stream of keys with SkipList.append
+ *     (TreeMap uses put; order is ignored).  Compare with
+ *     set/.../sequential, which takes the same fast path through set.
+ *   range - scan RANGES slices of 1% of the keys, starting at the keys
+ *     the order gives (SkipList.range against TreeMap.subMap)
+ *   parallelForEach - visit every pair on the common ForkJoinPool
+ *     (SkipList.parallelForEach against a parallel stream over
+ *     TreeMap.entrySet); compare with forEach, and vary the pool size
+ *     with -jvmArgsAppend -Djava.util.concurrent.ForkJoinPool.common.parallelism=N
+ *   snapshot - write the map to a file with SkipList.writeSnapshot
+ *     (TreeMap writes the same format from its entry set)
+ *   restore - read that file back, with SkipList.readSnapshot for
+ *     SkipList and by setting each pair in order for the others
+ *   mixed - visit keys in the given order, doing 80% gets, 10% sets of
+ *     keys that are present and 10% removes, each followed by putting
+ *     the key back, so the size stays put
+ *   removeRange - remove the middle half of the keys in one call
+ *     (SkipList.removeRange against clearing a TreeMap.subMap); time per
+ *     pair removed, to compare with remove
+ *   removeIf - remove the keys with even hash codes in one pass
+ *     (SkipList.removeIf against TreeMap's entrySet().removeIf); time per
+ *     pair examined
+ *   splitConcat - split the map at its middle key and join the halves
+ *     again (SkipList.split and concat against copying a TreeMap's
+ *     tailMap out and putting it back); time per split and join
+ *   mergeFrom - merge a map holding the keys of odd rank into one
+ *     holding the rest (SkipList.mergeFrom against TreeMap.putAll); time
+ *     per pair
+ *
+ * Besides the default impls, these may be requested with -p impl=...:
+ *   SkipListFinger - a SkipList with finger search on, which pays off with
+ *     the window order, in which each key is near the one before
+ *   SkipListIndexed - a SkipList that keeps link widths, to show what
+ *     positional access costs the other operations
+ *   SkipListHashed - a SkipList that keeps a hash index of its nodes, for
+ *     O(1) point lookups
+ *   SkipListStats - a SkipList with stats on, to show what counting and
+ *     timing cost
+ *   SkipListNormalized - a SkipList with the key type's KeyNormalizer
+ *   SkipListToString - a SkipList ordered as by the deprecated no-argument
+ *     constructor, by the keys' strings, for comparison
+ *   DeterministicSkipList - a 1-2-3 skip list, whose gaps are kept between
+ *     1 and 3 rather than left to chance (DeterministicSkipListExperiments
+ *     compares tail latencies)
+ *
+ * Besides the default key types, RandomString may be requested with
+ * -p keys=...: distinct random strings of 16 letters and digits, which
+ * (unlike String, whose keys share a long "user0000" prefix) mostly
+ * differ in their first chars.  The window order may be requested with
+ * -p order=window.
+ */
+public class SkipListWorkloads implements Workload.Factory {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * How many slices the range benchmark scans per call.
+   */
+  static final int RANGES = 100;
+
+  // +------------+--------------------------------------------------
+  // | Benchmarks |
+  // +------------+
+
+  @Override
+  public Workload create(String op, String impl, String keyType, String order, int size) {
+    return mapBench(op, impl, keyType, order, size);
+  } // create(String, String, String, String, int)
+
+  /**
+   * Build one of the SimpleMap operation benchmarks.
+   */
+  static <K> Workload mapBench(String op, String impl, String keyType, String order,
+      int size) {
+    KeySet<K> keys = KeySet.of(keyType, size);
+    // The order in which we insert to build the map
+    K[] fill = keys.ordered("random", size);
+    // The order in which the benchmark visits keys
+    K[] visit = keys.ordered(order, size);
+    // The file for the snapshot benchmarks
+    Path snapshot = (op.equals("snapshot") || op.equals("restore")) ? tempFile() : null;
+    // Input for the bulk-loading benchmarks
+    List<Map.Entry<K, K>> entries = new ArrayList<Map.Entry<K, K>>();
+    if (op.startsWith("bulkLoad")) {
+      for (K key : keys.sorted) {
+        entries.add(new AbstractMap.SimpleImmutableEntry<K, K>(key, key));
+      } // for
+    } // if
+
+    return new Workload() {
+      SimpleMap<K, K> map;
+
+      /**
+       * For mergeFrom, the map merged into map.
+       */
+      SimpleMap<K, K> other;
+
+      @Override
+      public void setup() {
+        boolean empty = op.equals("set") || op.equals("append") || op.startsWith("bulkLoad");
+        if (op.equals("mergeFrom")) {
+          // The keys of even rank in map, the rest in other
+          this.map = newMap(impl, keys);
+          this.other = newMap(impl, keys);
+          for (K key : fill) {
+            ((keys.rank(key) % 2 == 0) ? this.map : this.other).set(key, key);
+          } // for
+        } else if (empty || op.startsWith("remove") || this.map == null) {
+          this.map = newMap(impl, keys);
+          if (!empty) {
+            for (K key : fill) {
+              this.map.set(key, key);
+            } // for
+          } // if
+        } // if
+        try {
+          if (op.equals("restore") && Files.size(snapshot) == 0) {
+            try (FileChannel out = FileChannel.open(snapshot, StandardOpenOption.WRITE)) {
+              writeSnapshot(this.map, out, keys.serializer);
+            } // try
+          } // if
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        } // try/catch
+      } // setup()
+
+      @Override
+      public long run(Blackhole bh) {
+        SimpleMap<K, K> map = this.map;
+        switch (op) {
+          case "set":
+            for (K key : visit) {
+              bh.consume(map.set(key, key));
+            } // for
+            return visit.length;
+          case "append":
+            if (map instanceof SkipList) {
+              SkipList<K, K> lst = (SkipList<K, K>) map;
+              for (K key : keys.sorted) {
+                lst.append(key, key);
+              } // for
+            } else {
+              for (K key : keys.sorted) {
+                map.set(key, key);
+              } // for
+            } // if/else
+            return keys.sorted.length;
+          case "range":
+            long scanned = 0;
+            int width = Math.max(1, size / 100);
+            for (int r = 0; r < RANGES; r++) {
+              K from = visit[r % visit.length];
+              K to = keys.sorted[Math.min(size - 1, keys.rank(from) + width - 1)];
+              Iterator<? extends Map.Entry<K, K>> it;
+              if (map instanceof SkipList) {
+                it = ((SkipList<K, K>) map).range(from, true, to, true);
+              } else {
+                it = ((TreeMapAdapter<K, K>) map).map.subMap(from, true, to, true)
+                    .entrySet().iterator();
+              } // if/else
+              while (it.hasNext()) {
+                bh.consume(it.next().getValue());
+                scanned++;
+              } // while
+            } // for
+            return scanned;
+          case "get":
+            for (K key : visit) {
+              bh.consume(map.get(key));
+            } // for
+            return visit.length;
+          case "containsKey":
+            for (K key : visit) {
+              bh.consume(map.containsKey(key));
+            } // for
+            return visit.length;
+          case "remove":
+            for (K key : visit) {
+              bh.consume(map.remove(key));
+            } // for
+            return visit.length;
+          case "removeRange":
+            // The middle half, in one call
+            K low = keys.sorted[size / 4];
+            K high = keys.sorted[size - size / 4];
+            int before = map.size();
+            if (map instanceof SkipList) {
+              bh.consume(((SkipList<K, K>) map).removeRange(low, high));
+            } else {
+              ((TreeMapAdapter<K, K>) map).map.subMap(low, high).clear();
+            } // if/else
+            return before - map.size();
+          case "removeIf":
+            // About half, all over the list
+            if (map instanceof SkipList) {
+              bh.consume(((SkipList<K, K>) map).removeIf((key, value) -> (key.hashCode() & 1) == 0));
+            } else {
+              ((TreeMapAdapter<K, K>) map).map.entrySet()
+                  .removeIf((entry) -> (entry.getKey().hashCode() & 1) == 0);
+            } // if/else
+            return size;
+          case "splitConcat":
+            // Cut at the middle key and join the halves again
+            K middle = keys.sorted[size / 2];
+            if (map instanceof SkipList) {
+              SkipList<K, K> lst = (SkipList<K, K>) map;
+              SkipList<K, K> upper = lst.split(middle);
+              bh.consume(upper.size());
+              lst.concat(upper);
+            } else {
+              TreeMap<K, K> tree = ((TreeMapAdapter<K, K>) map).map;
+              TreeMap<K, K> upper = new TreeMap<K, K>(tree.tailMap(middle));
+              tree.tailMap(middle).clear();
+              bh.consume(upper.size());
+              tree.putAll(upper);
+            } // if/else
+            return 1;
+          case "mergeFrom":
+            if (map instanceof SkipList) {
+              ((SkipList<K, K>) map).mergeFrom((SkipList<K, K>) this.other, (x, y) -> x);
+            } else {
+              ((TreeMapAdapter<K, K>) map).map.putAll(((TreeMapAdapter<K, K>) this.other).map);
+            } // if/else
+            return size;
+          case "forEach":
+            map.forEach((key, value) -> bh.consume(value));
+            return map.size();
+          case "mixed":
+            long ops = 0;
+            for (int i = 0; i < visit.length; i++) {
+              K key = visit[i];
+              switch (i % 10) {
+                case 8:
+                  bh.consume(map.set(key, key));
+                  ops++;
+                  break;
+                case 9:
+                  bh.consume(map.remove(key));
+                  bh.consume(map.set(key, key));
+                  ops += 2;
+                  break;
+                default:
+                  bh.consume(map.get(key));
+                  ops++;
+              } // switch
+            } // for
+            return ops;
+          case "parallelForEach":
+            if (map instanceof SkipList) {
+              ((SkipList<K, K>) map).parallelForEach((key, value) -> bh.consume(value));
+            } else {
+              ((TreeMapAdapter<K, K>) map).map.entrySet().parallelStream()
+                  .forEach((entry) -> bh.consume(entry.getValue()));
+            } // if/else
+            return map.size();
+          case "bulkLoad":
+          case "bulkLoadBalanced":
+            if (impl.equals("SkipList")) {
+              map = SkipList.bulkLoad(keys.comparator, entries.iterator(),
+                  op.equals("bulkLoadBalanced"));
+            } else {
+              for (Map.Entry<K, K> entry : entries) {
+                map.set(entry.getKey(), entry.getValue());
+              } // for
+            } // if/else
+            bh.consume(map);
+            return entries.size();
+          case "snapshot":
+            try (FileChannel out = FileChannel.open(snapshot, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+              writeSnapshot(map, out, keys.serializer);
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            } // try/catch
+            return map.size();
+          case "restore":
+            try (FileChannel in = FileChannel.open(snapshot)) {
+              bh.consume(readSnapshot(impl, keys, in));
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            } // try/catch
+            return size;
+          default:
+            throw new IllegalArgumentException("unknown op " + op);
+        } // switch
+      } // run(Blackhole)
+    };
+  } // mapBench(String, String, String, String, int)
+
+  /**
+   * Make an empty map of the named kind, for keys.
+   */
+  @SuppressWarnings("deprecation")
+  static <K, V> SimpleMap<K, V> newMap(String impl, KeySet<K> keys) {
+    Comparator<K> comparator = keys.comparator;
+    switch (impl) {
+      case "SkipList":
+        return new SkipList<K, V>(comparator);
+      case "SkipListFinger":
+        SkipList<K, V> lst = new SkipList<K, V>(comparator);
+        lst.setFinger(true);
+        return lst;
+      case "SkipListIndexed":
+        return new SkipList<K, V>(comparator, true);
+      case "SkipListHashed":
+        return new SkipList<K, V>(comparator, LevelGenerator.fast(), false, true);
+      case "SkipListStats":
+        SkipList<K, V> counted = new SkipList<K, V>(comparator);
+        counted.setStats(true);
+        return counted;
+      case "SkipListNormalized":
+        SkipList<K, V> normalized = new SkipList<K, V>(comparator);
+        normalized.setNormalizer(keys.normalizer);
+        return normalized;
+      case "SkipListToString":
+        return new SkipList<K, V>();
+      case "DeterministicSkipList":
+        return new DeterministicSkipList<K, V>(comparator);
+      case "TreeMap":
+        return new TreeMapAdapter<K, V>(comparator);
+      default:
+        throw new IllegalArgumentException("unknown map " + impl);
+    } // switch
+  } // newMap(String, KeySet<K>)
+
+  /**
+   * Write a snapshot of one of our maps.
+   */
+  static <K> void writeSnapshot(SimpleMap<K, K> map, WritableByteChannel channel,
+      Serializer<K> serializer) throws IOException {
+    if (map instanceof SkipList) {
+      ((SkipList<K, K>) map).writeSnapshot(channel, serializer, serializer);
+    } else {
+      try (Snapshots.Writer<K, K> writer =
+          new Snapshots.Writer<K, K>(channel, serializer, serializer, map.size())) {
+        for (Map.Entry<K, K> entry : ((TreeMapAdapter<K, K>) map).map.entrySet()) {
+          writer.write(entry.getKey(), entry.getValue());
+        } // for
+        writer.finish();
+      } // try
+    } // if/else
+  } // writeSnapshot(SimpleMap<K, K>, WritableByteChannel, Serializer<K>)
+
+  /**
+   * Read a snapshot into a new map of the named kind.
+   */
+  static <K> SimpleMap<K, K> readSnapshot(String impl, KeySet<K> keys,
+      ReadableByteChannel channel) throws IOException {
+    if (impl.equals("SkipList")) {
+      return SkipList.readSnapshot(channel, keys.comparator, keys.serializer, keys.serializer);
+    } // if
+    SimpleMap<K, K> map = newMap(impl, keys);
+    try (Snapshots.Reader<K, K> reader =
+        new Snapshots.Reader<K, K>(channel, keys.serializer, keys.serializer)) {
+      while (reader.next()) {
+        map.set(reader.key, reader.value);
+      } // while
+    } // try
+    return map;
+  } // readSnapshot(String, KeySet<K>, ReadableByteChannel)
+
+  /**
+   * Make an empty temporary file that goes away when we do.
+   */
+  static Path tempFile() {
+    try {
+      Path file = Files.createTempFile("snapshot", ".bin");
+      file.toFile().deleteOnExit();
+      return file;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } // try/catch
+  } // tempFile()
+
+} // class SkipListWorkloads
@@ -0,0 +1,43 @@
+import java.util.SplittableRandom;
+
+/**
+ * Zipf-distributed ranks in 0 .. n-1, using the method of Gray et al.
+ * ("Quickly generating billion-record synthetic databases"), as in YCSB.
+ */
+class ZipfianGenerator {
+  int n;
+  double theta;
+  double alpha;
+  double zetan;
+  double eta;
+  SplittableRandom random;
+
+  ZipfianGenerator(int n, double theta, long seed) {
+    this.n = n;
+    this.theta = theta;
+    this.random = new SplittableRandom(seed);
+    this.zetan = 0;
+    for (int i = 1; i <= n; i++) {
+      this.zetan += 1.0 / Math.pow(i, theta);
+    } // for
+    double zeta2 = 1.0 + 1.0 / Math.pow(2, theta);
+    this.alpha = 1.0 / (1.0 - theta);
+    this.eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta2 / this.zetan);
+  } // ZipfianGenerator(int, double, long)
+
+  /**
+   * Draw a rank; 0 is the most popular.
+   */
+  long next() {
+    double u = this.random.nextDouble();
+    double uz = u * this.zetan;
+    if (uz < 1.0) {
+      return 0;
+    } // if
+    if (uz < 1.0 + Math.pow(0.5, this.theta)) {
+      return Math.min(1, this.n - 1);
+    } // if
+    long rank = (long) (this.n * Math.pow(this.eta * u - this.eta + 1, this.alpha));
+    return Math.min(rank, this.n - 1);
+  } // next()
+} // class ZipfianGenerator
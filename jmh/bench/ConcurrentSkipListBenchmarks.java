@@ -0,0 +1,87 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH benchmarks of how ConcurrentSkipList throughput scales with
+ * threads, next to java.util.concurrent.ConcurrentSkipListMap.  Every
+ * thread runs the mix (90% get, 5% set, 5% remove) against one shared
+ * map.  The thread count is one by default; set it with -t, once per run:
+ *
+ *   for t in 1 2 4 8; do
+ *     ./gradlew jmh -Pjmh="ConcurrentSkipListBenchmarks -t $t"
+ *   done
+ *
+ * The score is the operations per millisecond of all threads together.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(1)
+public class ConcurrentSkipListBenchmarks {
+
+  // +------------+--------------------------------------------------
+  // | Parameters |
+  // +------------+
+
+  /**
+   * The map.
+   */
+  @Param({"ConcurrentSkipList", "ConcurrentSkipListMap"})
+  public String impl;
+
+  /**
+   * The range of keys; the map holds the even ones to start with.
+   */
+  @Param({"100000"})
+  public int size;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The map, shared by every thread, and the mix.
+   */
+  Workload workload;
+
+  // +------------+--------------------------------------------------
+  // | Benchmarks |
+  // +------------+
+
+  /**
+   * Build the map.
+   */
+  @Setup(Level.Trial)
+  public void build() throws ReflectiveOperationException {
+    Workload.Factory factory = (Workload.Factory) Class.forName("ConcurrentSkipListWorkloads")
+        .getDeclaredConstructor().newInstance();
+    this.workload = factory.create("mixed", this.impl, "Integer", "random", this.size);
+  } // build()
+
+  /**
+   * Do one operation of the mix.
+   */
+  @Benchmark
+  public void mixed(Blackhole bh) {
+    this.workload.run(bh);
+  } // mixed(Blackhole)
+
+} // class ConcurrentSkipListBenchmarks
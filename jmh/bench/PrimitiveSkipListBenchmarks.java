@@ -0,0 +1,111 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH benchmarks of IntSkipList and LongSkipList against SkipList with
+ * boxed Integer and Long keys.  Run them with
+ *
+ *   ./gradlew jmh -Pjmh="PrimitiveSkipListBenchmarks"
+ *
+ * Each call of run sets or gets every key once; run:pairs gives the time
+ * per pair.  A set pass builds the list from empty and allocates nothing
+ * else but the boxed keys the generic lists keep, so for op=set the
+ * gc.alloc.rate.norm line divided by size is the bytes per entry.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PrimitiveSkipListBenchmarks {
+
+  // +------------+--------------------------------------------------
+  // | Parameters |
+  // +------------+
+
+  /**
+   * The operation: set or get.
+   */
+  @Param({"set", "get"})
+  public String op;
+
+  /**
+   * The list: SkipList, with boxed keys, or Primitive, the IntSkipList or
+   * LongSkipList for the key type.
+   */
+  @Param({"SkipList", "Primitive"})
+  public String impl;
+
+  /**
+   * The key type: int or long.
+   */
+  @Param({"int", "long"})
+  public String keys;
+
+  /**
+   * The order in which the op visits keys: random or sequential.
+   */
+  @Param({"random"})
+  public String order;
+
+  /**
+   * The number of keys.
+   */
+  @Param({"1000", "100000", "1000000"})
+  public int size;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * What we measure.
+   */
+  Workload workload;
+
+  // +------------+--------------------------------------------------
+  // | Benchmarks |
+  // +------------+
+
+  /**
+   * Build the workload.
+   */
+  @Setup(Level.Trial)
+  public void build() throws ReflectiveOperationException {
+    Workload.Factory factory = (Workload.Factory) Class.forName("PrimitiveSkipListWorkloads")
+        .getDeclaredConstructor().newInstance();
+    this.workload = factory.create(this.op, this.impl, this.keys, this.order, this.size);
+  } // build()
+
+  /**
+   * Prepare for the next pass.
+   */
+  @Setup(Level.Invocation)
+  public void setup() {
+    this.workload.setup();
+  } // setup()
+
+  /**
+   * Do one pass.
+   */
+  @Benchmark
+  public void run(Blackhole bh, SkipListBenchmarks.Pairs pairs) {
+    pairs.pairs += this.workload.run(bh);
+  } // run(Blackhole, SkipListBenchmarks.Pairs)
+
+} // class PrimitiveSkipListBenchmarks
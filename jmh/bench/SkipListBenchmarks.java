@@ -0,0 +1,140 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH benchmarks of SkipList against java.util.TreeMap (and, on request,
+ * the other maps): each op, over every combination of impl, key type,
+ * order and size.  Run them with
+ *
+ *   ./gradlew jmh -Pjmh="SkipListBenchmarks -p op=get,set -p size=1000,10000000"
+ *
+ * which also turns on the GC profiler, for allocation per call.
+ *
+ * Each call of run does one pass of the op, typically over size keys in
+ * the given order, with fresh state set up (untimed) before it when the
+ * op needs it.  The run:pairs line gives the time per pair (or, for
+ * splitConcat, per split and join).  The gc lines are per call, and count
+ * what that setup allocates too; divide gc.alloc.rate.norm by the pairs
+ * in a pass for bytes per pair.  The
+ * ops, impls, key types and orders beyond the defaults are described in
+ * SkipListWorkloads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SkipListBenchmarks {
+
+  // +------------+--------------------------------------------------
+  // | Parameters |
+  // +------------+
+
+  /**
+   * The operation.
+   */
+  @Param({"set", "get", "containsKey", "remove", "forEach"})
+  public String op;
+
+  /**
+   * The map.
+   */
+  @Param({"SkipList", "TreeMap"})
+  public String impl;
+
+  /**
+   * The key type.
+   */
+  @Param({"Integer", "String"})
+  public String keys;
+
+  /**
+   * The order in which the op visits keys.
+   */
+  @Param({"sequential", "random", "zipfian"})
+  public String order;
+
+  /**
+   * The number of keys; 10000000 is available with -p size=10000000.
+   */
+  @Param({"1000", "10000", "100000", "1000000"})
+  public int size;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * What we measure.
+   */
+  Workload workload;
+
+  // +------------+--------------------------------------------------
+  // | Benchmarks |
+  // +------------+
+
+  /**
+   * Build the workload, keys and all.
+   */
+  @Setup(Level.Trial)
+  public void build() throws ReflectiveOperationException {
+    Workload.Factory factory = (Workload.Factory) Class.forName("SkipListWorkloads")
+        .getDeclaredConstructor().newInstance();
+    this.workload = factory.create(this.op, this.impl, this.keys, this.order, this.size);
+  } // build()
+
+  /**
+   * Prepare for the next pass.  A pass takes at least tens of
+   * microseconds, so the timestamps around each call cost little.
+   */
+  @Setup(Level.Invocation)
+  public void setup() {
+    this.workload.setup();
+  } // setup()
+
+  /**
+   * Do one pass.
+   */
+  @Benchmark
+  public void run(Blackhole bh, Pairs pairs) {
+    pairs.pairs += this.workload.run(bh);
+  } // run(Blackhole, Pairs)
+
+  // +----------+----------------------------------------------------
+  // | Counters |
+  // +----------+
+
+  /**
+   * The pairs handled, so that JMH reports the time per pair as well as
+   * per pass.
+   */
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Pairs {
+
+    public long pairs;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      this.pairs = 0;
+    } // reset()
+
+  } // class Pairs
+
+} // class SkipListBenchmarks
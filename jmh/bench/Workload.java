@@ -0,0 +1,42 @@
+package bench;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * One benchmark's state and work.  JMH will not generate benchmarks in
+ * the default package, and code in a package cannot name the maps, which
+ * live in the default package; so SkipListBenchmarks finds a Factory by
+ * name and drives what it builds through this interface.
+ */
+public interface Workload {
+
+  /**
+   * Prepare fresh state for the next call to run, if it needs it.  Not
+   * timed.
+   */
+  void setup();
+
+  /**
+   * Do the work once, feeding results to bh so that the JIT cannot drop
+   * it.
+   *
+   * @returns the number of pairs (or for some ops, calls) the time is per
+   */
+  long run(Blackhole bh);
+
+  /**
+   * Builds workloads.
+   */
+  interface Factory {
+
+    /**
+     * Build the workload for op on a map of kind impl, holding size keys
+     * of type keys, which it visits in the given order.
+     *
+     * @throws IllegalArgumentException if any of those is unknown
+     */
+    Workload create(String op, String impl, String keys, String order, int size);
+
+  } // interface Factory
+
+} // interface Workload
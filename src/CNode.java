@@ -0,0 +1,50 @@
+/**
+ * Nodes in a ConcurrentSkipList.  Each link is either the next node (or
+ * null) or a Mark wrapping it, if this node is being removed.
+ */
+class CNode<K> {
+
+  /**
+   * The key.
+   */
+  final K key;
+
+  /**
+   * The value, or null once the node has been removed.
+   */
+  volatile Object value;
+
+  /**
+   * The links, accessed through ConcurrentSkipList.NEXT.
+   */
+  final Object[] next;
+
+  /**
+   * Create a new node of height n with the specified key and value.
+   */
+  CNode(K key, Object value, int n) {
+    this.key = key;
+    this.value = value;
+    this.next = new Object[n];
+  } // CNode(K, Object, int)
+
+  /**
+   * Get the node out of a link, whether marked or not.
+   */
+  @SuppressWarnings("unchecked")
+  static <K> CNode<K> strip(Object link) {
+    if (link instanceof Mark) {
+      return (CNode<K>) ((Mark) link).node();
+    } // if
+    return (CNode<K>) link;
+  } // strip(Object)
+
+  /**
+   * Make an empty array of n node references.
+   */
+  @SuppressWarnings("unchecked")
+  static <K> CNode<K>[] links(int n) {
+    return (CNode<K>[]) new CNode<?>[n];
+  } // links(int)
+
+} // CNode<K>
@@ -0,0 +1,490 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * A lock-free skip list that many threads may use at once.
+ *
+ * Forward pointers are updated with compare-and-set.  A node is removed
+ * in three steps: its value is swapped to null (which decides who
+ * removed it), each of its links is marked by wrapping the successor in
+ * a Mark, and finally any traversal that meets a marked link snips the
+ * node out.  get and containsKey never write and never retry; set and
+ * remove are lock-free.  Iterators are weakly consistent: they never
+ * throw ConcurrentModificationException and reflect some of the updates
+ * made after they were created.
+ *
+ * Since null values mark removed nodes, this map does not accept them.
+ */
+public class ConcurrentSkipList<K, V> implements SimpleMap<K, V> {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The height of the head.  Enough for 2^32 entries at p = 1/2.
+   */
+  static final int MAX_HEIGHT = 32;
+
+  /**
+   * Atomic access to links.
+   */
+  static final VarHandle NEXT = MethodHandles.arrayElementVarHandle(Object[].class);
+
+  /**
+   * Atomic access to values.
+   */
+  static final VarHandle VALUE;
+
+  static {
+    try {
+      VALUE = MethodHandles.lookup().findVarHandle(CNode.class, "value", Object.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    } // try/catch
+  } // static
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * A permanent sentinel whose links point to the front elements.
+   */
+  final CNode<K> head;
+
+  /**
+   * The comparator used to determine the ordering in the list.
+   */
+  final Comparator<K> comparator;
+
+  /**
+   * The generator used to determine the height of nodes.  Must be safe to
+   * call from many threads.
+   */
+  final LevelGenerator levels;
+
+  /**
+   * The number of values in the list.
+   */
+  final LongAdder size = new LongAdder();
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new skip list that orders values using the specified comparator
+   * and picks node heights with the specified (thread-safe) generator.
+   */
+  public ConcurrentSkipList(Comparator<K> comparator, LevelGenerator levels) {
+    this.head = new CNode<K>(null, null, MAX_HEIGHT);
+    this.comparator = comparator;
+    this.levels = levels;
+  } // ConcurrentSkipList(Comparator<K>, LevelGenerator)
+
+  /**
+   * Create a new skip list that orders values using the specified comparator.
+   */
+  public ConcurrentSkipList(Comparator<K> comparator) {
+    this(comparator, LevelGenerator.fast());
+  } // ConcurrentSkipList(Comparator<K>)
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  /**
+   * Sets or adds a new value into the skip list.
+   *
+   * @returns the value originally associated with the key, or null if the key
+   *          was not originally in the list
+   * @throws NullPointerException if key or value is null
+   */
+  @Override
+  public V set(K key, V value) {
+    if (key == null || value == null) {
+      throw new NullPointerException("Key and value cannot be null");
+    } // if
+    CNode<K>[] preds = CNode.links(MAX_HEIGHT);
+    CNode<K>[] succs = CNode.links(MAX_HEIGHT);
+    while (true) {
+      if (find(key, preds, succs)) {
+        CNode<K> node = succs[0];
+        Object old = node.value;
+        if (old == null) {
+          // Someone is removing it; help them finish and try again.
+          markAll(node);
+          find(key, preds, succs);
+        } else if (VALUE.compareAndSet(node, old, value)) {
+          return unwrap(old);
+        } // if/else
+        continue;
+      } // if found
+
+      int newLevel = this.levels.nextLevel(MAX_HEIGHT);
+      CNode<K> newNode = new CNode<K>(key, value, newLevel);
+      for (int i = 0; i < newLevel; i++) {
+        newNode.next[i] = succs[i];
+      } // for
+      // Linking in at level 0 is what puts the key in the map
+      if (!NEXT.compareAndSet(preds[0].next, 0, succs[0], newNode)) {
+        continue;
+      } // if
+      this.size.increment();
+      // The upper levels are only shortcuts, so they can follow at leisure
+      for (int i = 1; i < newLevel; i++) {
+        while (true) {
+          Object link = NEXT.getVolatile(newNode.next, i);
+          if (link instanceof Mark) {
+            // Removed while we were linking it in
+            return null;
+          } // if
+          if (link != succs[i]
+              && !NEXT.compareAndSet(newNode.next, i, link, succs[i])) {
+            return null;
+          } // if
+          if (NEXT.compareAndSet(preds[i].next, i, succs[i], newNode)) {
+            break;
+          } // if
+          find(key, preds, succs);
+          if (succs[0] != newNode) {
+            // Removed and snipped out at level 0 already
+            return null;
+          } // if
+        } // while
+      } // for
+      return null;
+    } // while
+  } // set(K, V)
+
+  /**
+   * Gets the value associated with the key.
+   *
+   * @throws NullPointerException if key is null
+   * @throws IndexOutOfBoundsException if key is not in list
+   */
+  @Override
+  public V get(K key) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    Object value = lookup(key);
+    if (value == null) {
+      throw new IndexOutOfBoundsException("key is not in list");
+    } // if
+    return unwrap(value);
+  } // get(K)
+
+  @Override
+  public int size() {
+    // The sum can briefly dip below zero while an insert races a remove
+    long count = this.size.sum();
+    return (int) Math.max(0, Math.min(count, Integer.MAX_VALUE));
+  } // size()
+
+  @Override
+  public boolean containsKey(K key) {
+    return lookup(key) != null;
+  } // containsKey(K)
+
+  /**
+   * Removes the key and value pair associated with the given key.
+   *
+   * @returns the value associated with the removed key, or null if
+   *          key was not in list
+   * @throws NullPointerException if key is null
+   */
+  @Override
+  public V remove(K key) {
+    if (key == null) {
+      throw new NullPointerException("Key cannot be null");
+    } // if
+    CNode<K>[] preds = CNode.links(MAX_HEIGHT);
+    CNode<K>[] succs = CNode.links(MAX_HEIGHT);
+    if (!find(key, preds, succs)) {
+      return null;
+    } // if
+    CNode<K> node = succs[0];
+    Object old;
+    do {
+      old = node.value;
+      if (old == null) {
+        // Someone else got there first
+        return null;
+      } // if
+    } while (!VALUE.compareAndSet(node, old, null));
+    this.size.decrement();
+    markAll(node);
+    // Snip it out of every level
+    find(key, preds, succs);
+    return unwrap(old);
+  } // remove(K)
+
+  @Override
+  public Iterator<K> keys() {
+    return new Iterator<K>() {
+      NodeIterator nit = new NodeIterator();
+
+      @Override
+      public boolean hasNext() {
+        return nit.hasNext();
+      } // hasNext()
+
+      @Override
+      public K next() {
+        return nit.next().key;
+      } // next()
+
+      @Override
+      public void remove() {
+        nit.remove();
+      } // remove()
+    };
+  } // keys()
+
+  @Override
+  public Iterator<V> values() {
+    return new Iterator<V>() {
+      NodeIterator nit = new NodeIterator();
+
+      @Override
+      public boolean hasNext() {
+        return nit.hasNext();
+      } // hasNext()
+
+      @Override
+      public V next() {
+        nit.next();
+        return unwrap(nit.lastValue);
+      } // next()
+
+      @Override
+      public void remove() {
+        nit.remove();
+      } // remove()
+    };
+  } // values()
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    NodeIterator nit = new NodeIterator();
+    while (nit.hasNext()) {
+      K key = nit.next().key;
+      action.accept(key, unwrap(nit.lastValue));
+    } // while
+  } // forEach(BiConsumer)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the value for key without writing anything.
+   *
+   * @returns the value, or null if key is not in the list
+   */
+  Object lookup(K key) {
+    CNode<K> pred = this.head;
+    CNode<K> curr = null;
+    for (int i = MAX_HEIGHT - 1; i >= 0; i--) {
+      curr = CNode.strip(NEXT.getVolatile(pred.next, i));
+      while (curr != null) {
+        Object link = NEXT.getVolatile(curr.next, i);
+        // Skip over nodes that are being removed
+        while (link instanceof Mark) {
+          curr = ((Mark) link).node();
+          if (curr == null) {
+            break;
+          } // if
+          link = NEXT.getVolatile(curr.next, i);
+        } // while
+        if (curr == null || this.comparator.compare(curr.key, key) >= 0) {
+          break;
+        } // if
+        pred = curr;
+        curr = CNode.strip(link);
+      } // while
+    } // for
+    if (curr != null && this.comparator.compare(curr.key, key) == 0) {
+      return curr.value;
+    } // if
+    return null;
+  } // lookup(K)
+
+  /**
+   * Find the last live node before key (or, if inclusive, at or before
+   * it) without writing anything.
+   *
+   * @returns that node, or the head if there is none
+   */
+  CNode<K> lastBefore(K key, boolean inclusive) {
+    int limit = inclusive ? 0 : -1;
+    CNode<K> pred = this.head;
+    for (int i = MAX_HEIGHT - 1; i >= 0; i--) {
+      CNode<K> curr = CNode.strip(NEXT.getVolatile(pred.next, i));
+      while (curr != null) {
+        Object link = NEXT.getVolatile(curr.next, i);
+        // Step over nodes that are being removed, but never stop at one
+        if (!(link instanceof Mark)) {
+          if (this.comparator.compare(curr.key, key) > limit) {
+            break;
+          } // if
+          pred = curr;
+        } // if
+        curr = CNode.strip(link);
+      } // while
+    } // for
+    return pred;
+  } // lastBefore(K, boolean)
+
+  /**
+   * Find the last node before key and the first node not before it on
+   * every level, snipping out marked nodes on the way.
+   *
+   * @returns true if succs[0] has the key
+   */
+  @SuppressWarnings("unchecked")
+  boolean find(K key, CNode<K>[] preds, CNode<K>[] succs) {
+    retry: while (true) {
+      CNode<K> pred = this.head;
+      for (int i = MAX_HEIGHT - 1; i >= 0; i--) {
+        Object predLink = NEXT.getVolatile(pred.next, i);
+        if (predLink instanceof Mark) {
+          continue retry;
+        } // if
+        CNode<K> curr = (CNode<K>) predLink;
+        while (curr != null) {
+          Object link = NEXT.getVolatile(curr.next, i);
+          while (link instanceof Mark) {
+            CNode<K> succ = ((Mark) link).node();
+            if (!NEXT.compareAndSet(pred.next, i, curr, succ)) {
+              continue retry;
+            } // if
+            curr = succ;
+            if (curr == null) {
+              break;
+            } // if
+            link = NEXT.getVolatile(curr.next, i);
+          } // while
+          if (curr == null || this.comparator.compare(curr.key, key) >= 0) {
+            break;
+          } // if
+          pred = curr;
+          curr = (CNode<K>) link;
+        } // while
+        preds[i] = pred;
+        succs[i] = curr;
+      } // for
+      return succs[0] != null && this.comparator.compare(succs[0].key, key) == 0;
+    } // while
+  } // find(K, CNode<K>[], CNode<K>[])
+
+  /**
+   * Mark every link of a node, top level first.
+   */
+  static void markAll(CNode<?> node) {
+    for (int i = node.next.length - 1; i >= 0; i--) {
+      while (true) {
+        Object link = NEXT.getVolatile(node.next, i);
+        if (link instanceof Mark
+            || NEXT.compareAndSet(node.next, i, link, new Mark((CNode<?>) link))) {
+          break;
+        } // if
+      } // while
+    } // for
+  } // markAll(CNode<?>)
+
+  /**
+   * An iterator over the live nodes that also remembers the value it saw
+   * for each one, so that callers get a consistent key/value pair.
+   */
+  class NodeIterator implements Iterator<CNode<K>> {
+
+    /**
+     * The next node to return, which had a value when we reached it.
+     */
+    CNode<K> next;
+
+    /**
+     * The value next had when we reached it.
+     */
+    Object nextValue;
+
+    /**
+     * The node most recently returned.
+     */
+    CNode<K> last;
+
+    /**
+     * The value last had when we reached it.
+     */
+    Object lastValue;
+
+    NodeIterator() {
+      this(ConcurrentSkipList.this.head);
+    } // NodeIterator()
+
+    /**
+     * Start with the first live node after from.
+     */
+    NodeIterator(CNode<K> from) {
+      advance(from);
+    } // NodeIterator(CNode<K>)
+
+    @Override
+    public boolean hasNext() {
+      return this.next != null;
+    } // hasNext()
+
+    @Override
+    public CNode<K> next() {
+      if (this.next == null) {
+        throw new NoSuchElementException();
+      } // if
+      this.last = this.next;
+      this.lastValue = this.nextValue;
+      advance(this.next);
+      return this.last;
+    } // next()
+
+    @Override
+    public void remove() {
+      if (this.last == null) {
+        throw new IllegalStateException();
+      } // if
+      ConcurrentSkipList.this.remove(this.last.key);
+      this.last = null;
+    } // remove()
+
+    /**
+     * Move to the first live node after node on level 0.
+     */
+    void advance(CNode<K> node) {
+      CNode<K> current = CNode.strip(NEXT.getVolatile(node.next, 0));
+      while (current != null) {
+        Object value = current.value;
+        if (value != null) {
+          this.nextValue = value;
+          break;
+        } // if
+        current = CNode.strip(NEXT.getVolatile(current.next, 0));
+      } // while
+      this.next = current;
+    } // advance(CNode<K>)
+  } // class NodeIterator
+
+  /**
+   * Convert a stored value back to a V.
+   */
+  @SuppressWarnings("unchecked")
+  static <V> V unwrap(Object value) {
+    return (V) value;
+  } // unwrap(Object)
+
+} // class ConcurrentSkipList
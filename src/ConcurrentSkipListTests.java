@@ -0,0 +1,230 @@
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+/**
+ * Multi-threaded stress tests of ConcurrentSkipList, checked against
+ * java.util.concurrent.ConcurrentSkipListMap.
+ */
+public class ConcurrentSkipListTests {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * How many threads to run.
+   */
+  static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Run one task per thread, all starting together, and rethrow the first
+   * failure.
+   */
+  static void runThreads(int threads, ThreadTask task) throws InterruptedException {
+    CountDownLatch start = new CountDownLatch(1);
+    AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    List<Thread> running = new ArrayList<Thread>();
+    for (int t = 0; t < threads; t++) {
+      final int id = t;
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+          task.run(id);
+        } catch (Throwable e) {
+          failure.compareAndSet(null, e);
+        } // try/catch
+      });
+      thread.start();
+      running.add(thread);
+    } // for
+    start.countDown();
+    for (Thread thread : running) {
+      thread.join();
+    } // for
+    if (failure.get() != null) {
+      throw new AssertionError("worker failed", failure.get());
+    } // if
+  } // runThreads(int, ThreadTask)
+
+  /**
+   * Work for one thread.
+   */
+  interface ThreadTask {
+    void run(int id) throws Exception;
+  } // interface ThreadTask
+
+  /**
+   * Verify that the list is sorted, that its size matches its contents,
+   * and that it holds exactly the entries of expected.
+   */
+  static void assertSameContents(Map<Integer, Integer> expected,
+      ConcurrentSkipList<Integer, Integer> lst) {
+    assertEquals(expected.size(), lst.size());
+    Iterator<Integer> keys = lst.keys();
+    for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+      assertTrue(keys.hasNext());
+      assertEquals(entry.getKey(), keys.next());
+      assertEquals(entry.getValue(), lst.get(entry.getKey()));
+    } // for
+    assertFalse(keys.hasNext());
+  } // assertSameContents(Map, ConcurrentSkipList)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Verify single-threaded behavior against ConcurrentSkipListMap.
+   */
+  @Test
+  public void sequentialTest() {
+    ConcurrentSkipList<Integer, Integer> lst =
+        new ConcurrentSkipList<Integer, Integer>(Integer::compare);
+    ConcurrentSkipListMap<Integer, Integer> expected = new ConcurrentSkipListMap<Integer, Integer>();
+    Random random = new Random(5);
+    for (int i = 0; i < 20000; i++) {
+      int key = random.nextInt(500);
+      if (random.nextBoolean()) {
+        assertEquals(expected.put(key, i), lst.set(key, i));
+      } else {
+        assertEquals(expected.remove(key), lst.remove(key));
+      } // if/else
+    } // for
+    assertSameContents(expected, lst);
+  } // sequentialTest()
+
+  /**
+   * Each thread hammers its own keys, interleaved with everyone else's in
+   * the list.  The end result must match the reference map exactly.
+   */
+  @Test
+  public void partitionedStressTest() throws InterruptedException {
+    ConcurrentSkipList<Integer, Integer> lst =
+        new ConcurrentSkipList<Integer, Integer>(Integer::compare);
+    ConcurrentSkipListMap<Integer, Integer> expected = new ConcurrentSkipListMap<Integer, Integer>();
+    runThreads(THREADS, (id) -> {
+      Random random = new Random(id);
+      for (int i = 0; i < 50000; i++) {
+        int key = random.nextInt(1000) * THREADS + id;
+        int op = random.nextInt(4);
+        if (op < 2) {
+          assertEquals(expected.put(key, i), lst.set(key, i));
+        } else if (op == 2) {
+          assertEquals(expected.remove(key), lst.remove(key));
+        } else {
+          assertEquals(expected.containsKey(key), lst.containsKey(key));
+        } // if/else
+      } // for
+    });
+    assertSameContents(expected, lst);
+  } // partitionedStressTest()
+
+  /**
+   * All threads fight over a small set of keys.  Afterwards, every
+   * surviving key must be found by get and the size must be exact.
+   */
+  @Test
+  public void contendedStressTest() throws InterruptedException {
+    ConcurrentSkipList<Integer, Integer> lst =
+        new ConcurrentSkipList<Integer, Integer>(Integer::compare);
+    runThreads(THREADS, (id) -> {
+      Random random = new Random(100 + id);
+      for (int i = 0; i < 100000; i++) {
+        int key = random.nextInt(64);
+        if (random.nextBoolean()) {
+          lst.set(key, key);
+        } else {
+          lst.remove(key);
+        } // if/else
+      } // for
+    });
+    ConcurrentSkipListMap<Integer, Integer> expected = new ConcurrentSkipListMap<Integer, Integer>();
+    lst.forEach((k, v) -> expected.put(k, v));
+    assertSameContents(expected, lst);
+    for (int key = 0; key < 64; key++) {
+      assertEquals(expected.containsKey(key), lst.containsKey(key));
+    } // for
+  } // contendedStressTest()
+
+  /**
+   * Readers must always find keys that nobody removes, even while writers
+   * churn the keys around them.
+   */
+  @Test
+  public void readersSeeStableKeysTest() throws InterruptedException {
+    ConcurrentSkipList<Integer, Integer> lst =
+        new ConcurrentSkipList<Integer, Integer>(Integer::compare);
+    for (int key = 0; key < 2000; key += 2) {
+      lst.set(key, key);
+    } // for
+    AtomicBoolean done = new AtomicBoolean(false);
+    runThreads(THREADS, (id) -> {
+      Random random = new Random(id);
+      if (id % 2 == 0) {
+        // Writers churn the odd keys
+        for (int i = 0; i < 100000; i++) {
+          int key = random.nextInt(1000) * 2 + 1;
+          if (random.nextBoolean()) {
+            lst.set(key, key);
+          } else {
+            lst.remove(key);
+          } // if/else
+        } // for
+        done.set(true);
+      } else {
+        // Readers check the even keys
+        while (!done.get()) {
+          int key = random.nextInt(1000) * 2;
+          assertEquals(Integer.valueOf(key), lst.get(key));
+        } // while
+      } // if/else
+    });
+    int previous = -1;
+    for (Iterator<Integer> it = lst.keys(); it.hasNext();) {
+      int key = it.next();
+      assertTrue(key > previous);
+      previous = key;
+    } // for
+  } // readersSeeStableKeysTest()
+
+  /**
+   * Verify that iterator remove and null rejection work.
+   */
+  @Test
+  public void iteratorRemoveTest() {
+    ConcurrentSkipList<Integer, Integer> lst =
+        new ConcurrentSkipList<Integer, Integer>(Integer::compare);
+    for (int i = 0; i < 10; i++) {
+      lst.set(i, i);
+    } // for
+    Iterator<Integer> it = lst.values();
+    while (it.hasNext()) {
+      if (it.next() % 2 == 0) {
+        it.remove();
+      } // if
+    } // while
+    assertEquals(5, lst.size());
+    assertFalse(lst.containsKey(4));
+    assertTrue(lst.containsKey(5));
+    try {
+      lst.set(3, null);
+      fail("null values should be rejected");
+    } catch (NullPointerException e) {
+      // Expected
+    } // try/catch
+  } // iteratorRemoveTest()
+
+} // class ConcurrentSkipListTests
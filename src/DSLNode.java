@@ -0,0 +1,42 @@
+/**
+ * Nodes in a DeterministicSkipList.  Only nodes on the bottom level use
+ * their values.
+ */
+class DSLNode<K, V> {
+
+  /**
+   * The key, or null for the last node of a level.
+   */
+  K key;
+
+  /**
+   * The value.
+   */
+  V value;
+
+  /**
+   * The next node on this level, and the first node this one covers on
+   * the level below.
+   */
+  DSLNode<K, V> right;
+  DSLNode<K, V> down;
+
+  /**
+   * Create a new node.
+   */
+  DSLNode(K key, V value, DSLNode<K, V> right, DSLNode<K, V> down) {
+    this.key = key;
+    this.value = value;
+    this.right = right;
+    this.down = down;
+  } // DSLNode(K, V, DSLNode<K, V>, DSLNode<K, V>)
+
+  /**
+   * Make an empty array of n links.
+   */
+  @SuppressWarnings("unchecked")
+  static <K, V> DSLNode<K, V>[] links(int n) {
+    return (DSLNode<K, V>[]) new DSLNode<?, ?>[n];
+  } // links(int)
+
+} // DSLNode<K,V>
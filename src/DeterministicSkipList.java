@@ -0,0 +1,418 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
+/**
+ * A deterministic (1-2-3) skip list, after Munro, Papadakis and Sedgewick.
+ * Rather than drawing node heights at random, set and remove keep the gap
+ * between consecutive nodes of each height, counted in nodes one level
+ * down, between 1 and 3, splitting and merging gaps on the way down.  So
+ * every search, set and remove takes O(log n) time in the worst case, not
+ * just in expectation, whatever the keys and whatever the luck.
+ *
+ * Each level is a list of nodes linked right, ending in a node whose key
+ * is null and stands for infinity.  A node above the bottom level covers
+ * a run of nodes on the level below, from the one its down link points to
+ * through the one with the same key (the largest key it covers), so the
+ * structure is a 2-3-4 tree whose nodes are runs of 2 to 4 children.  The
+ * bottom level holds the pairs.  Every node shares the key object of the
+ * last node it covers, so a node's own run ends at the node below whose
+ * key is identical, which we find without the comparator.
+ */
+public class DeterministicSkipList<K, V> implements SimpleMap<K, V> {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The top node, which covers the whole level below (or, if the list is
+   * empty, the lone node of the bottom level).
+   */
+  DSLNode<K, V> head;
+
+  /**
+   * The sentinel below the bottom level.
+   */
+  final DSLNode<K, V> bottom;
+
+  /**
+   * The sentinel right of the last node of each level.
+   */
+  final DSLNode<K, V> tail;
+
+  /**
+   * Scratch space for remove: the node descended into on each level,
+   * from the top.
+   */
+  DSLNode<K, V>[] path;
+
+  /**
+   * The comparator used to determine the ordering in the list.
+   */
+  Comparator<K> comparator;
+
+  /**
+   * The number of values in the list.
+   */
+  int size;
+
+  /**
+   * The number of levels, the bottom one included.
+   */
+  int height;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new, empty, list that orders keys using the specified
+   * comparator.
+   */
+  public DeterministicSkipList(Comparator<K> comparator) {
+    this.comparator = comparator;
+    this.bottom = new DSLNode<K, V>(null, null, null, null);
+    this.bottom.right = this.bottom;
+    this.bottom.down = this.bottom;
+    this.tail = new DSLNode<K, V>(null, null, null, this.bottom);
+    this.tail.right = this.tail;
+    this.head = new DSLNode<K, V>(null, null, this.tail, this.bottom);
+    this.path = DSLNode.links(SkipList.INITIAL_HEIGHT);
+    this.size = 0;
+    this.height = 1;
+  } // DeterministicSkipList(Comparator<K>)
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  /**
+   * Set the value associated with key.
+   *
+   * @returns the value originally associated with the key, or null if the key
+   *          was not originally in the list
+   * @throws NullPointerException if the key is null
+   */
+  @Override
+  public V set(K key, V value) {
+    if (key == null) {
+      throw new NullPointerException("Key cannot be null");
+    } // if
+    DSLNode<K, V> current = this.head;
+    K bound = null;
+    while (true) {
+      int order = 1;
+      while (current.key != bound && (order = compare(current, key)) < 0) {
+        current = current.right;
+      } // while
+      if (order == 0) {
+        // Present, so no run will grow, though some may have split
+        DSLNode<K, V> found = pair(current);
+        V cache = found.value;
+        found.value = value;
+        raise();
+        return cache;
+      } else if (current.down == this.bottom) {
+        // Insert before current, by moving current's pair into a new node
+        // after it (which needs no link from the node before current)
+        current.right = new DSLNode<K, V>(current.key, current.value, current.right, this.bottom);
+        current.key = key;
+        current.value = value;
+        break;
+      } else if (children(current) == 4) {
+        // Split the run by raising its second child, so that it can take
+        // one more; key may now be beyond current, so look again
+        DSLNode<K, V> second = current.down.right;
+        current.right = new DSLNode<K, V>(current.key, null, current.right, second.right);
+        current.key = second.key;
+      } else {
+        bound = current.key;
+        current = current.down;
+      } // if/else
+    } // while
+    raise();
+    this.size++;
+    return null;
+  } // set(K, V)
+
+  /**
+   * Get the value associated with key.
+   *
+   * @throws IndexOutOfBoundsException if key is not in the list
+   * @throws NullPointerException if the key is null
+   */
+  @Override
+  public V get(K key) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    DSLNode<K, V> found = find(key);
+    if (found == null) {
+      throw new IndexOutOfBoundsException("key is not in list");
+    } // if
+    return found.value;
+  } // get(K)
+
+  @Override
+  public int size() {
+    return this.size;
+  } // size()
+
+  @Override
+  public boolean containsKey(K key) {
+    return find(key) != null;
+  } // containsKey(K)
+
+  /**
+   * Remove the value associated with key.
+   *
+   * On the way down, every run we are about to descend into is given at
+   * least three children, by borrowing one from a neighbor or merging
+   * with it, so that taking a node from the bottom level cannot leave a
+   * run of one.
+   *
+   * @returns the removed value, or null if key was not in the list
+   * @throws NullPointerException if the key is null
+   */
+  @Override
+  public V remove(K key) {
+    if (key == null) {
+      throw new NullPointerException("Key cannot be null");
+    } // if
+    if (this.size == 0) {
+      return null;
+    } // if
+    DSLNode<K, V> current = this.head;
+    // How current's key compares with key
+    int order = 1;
+    int level = 0;
+    while (current.down.down != this.bottom) {
+      this.path[level++] = current;
+      DSLNode<K, V> before = null;
+      DSLNode<K, V> child = current.down;
+      int childOrder = order;
+      while (child.key != current.key && (childOrder = compare(child, key)) < 0) {
+        before = child;
+        child = child.right;
+        childOrder = order;
+      } // while
+      if (children(child) == 2) {
+        if (child.key != current.key) {
+          DSLNode<K, V> after = child.right;
+          if (children(after) > 2) {
+            // Borrow the first child of the next run
+            child.key = after.down.key;
+            after.down = after.down.right;
+          } else {
+            // Merge the next run into this one
+            child.key = after.key;
+            child.right = after.right;
+          } // if/else
+          childOrder = 1;
+        } else {
+          // The last run of current, so turn to the one before
+          if (children(before) > 2) {
+            // Borrow the last child of the previous run
+            DSLNode<K, V> last = before.down;
+            while (last.right.key != before.key) {
+              last = last.right;
+            } // while
+            child.down = last.right;
+            before.key = last.key;
+          } else {
+            // Merge this run into the previous one
+            before.key = child.key;
+            before.right = child.right;
+            child = before;
+          } // if/else
+        } // if/else
+      } // if
+      current = child;
+      order = childOrder;
+    } // while
+    this.path[level++] = current;
+
+    // current is now on the level above the bottom, and has at least
+    // three children unless it is the head
+    DSLNode<K, V> before = null;
+    DSLNode<K, V> found = current.down;
+    int foundOrder = order;
+    while (found.key != current.key && (foundOrder = compare(found, key)) < 0) {
+      before = found;
+      found = found.right;
+      foundOrder = order;
+    } // while
+    V cache = null;
+    if (foundOrder == 0) {
+      cache = found.value;
+      if (found.key != current.key) {
+        // Move the next pair into found, and drop its node instead
+        DSLNode<K, V> next = found.right;
+        found.key = next.key;
+        found.value = next.value;
+        found.right = next.right;
+      } else {
+        // found ends its run, so the key before it now ends the runs that
+        // key ended, on every level
+        K old = found.key;
+        before.right = found.right;
+        for (int i = 0; i < level; i++) {
+          if (this.path[i].key == old) {
+            this.path[i].key = before.key;
+          } // if
+        } // for
+      } // if/else
+      this.size--;
+    } // if
+    Arrays.fill(this.path, 0, level, null);
+
+    // Lower the top while it covers a single node
+    while (this.head.down != this.bottom && this.head.down.right == this.tail) {
+      this.head = this.head.down;
+      this.height--;
+    } // while
+    return cache;
+  } // remove(K)
+
+  @Override
+  public Iterator<K> keys() {
+    return new Iterator<K>() {
+      DSLNode<K, V> next = first();
+
+      @Override
+      public boolean hasNext() {
+        return this.next.key != null;
+      } // hasNext()
+
+      @Override
+      public K next() {
+        if (this.next.key == null) {
+          throw new NoSuchElementException();
+        } // if
+        K key = this.next.key;
+        this.next = this.next.right;
+        return key;
+      } // next()
+    };
+  } // keys()
+
+  @Override
+  public Iterator<V> values() {
+    return new Iterator<V>() {
+      DSLNode<K, V> next = first();
+
+      @Override
+      public boolean hasNext() {
+        return this.next.key != null;
+      } // hasNext()
+
+      @Override
+      public V next() {
+        if (this.next.key == null) {
+          throw new NoSuchElementException();
+        } // if
+        V value = this.next.value;
+        this.next = this.next.right;
+        return value;
+      } // next()
+    };
+  } // values()
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    for (DSLNode<K, V> node = first(); node.key != null; node = node.right) {
+      action.accept(node.key, node.value);
+    } // for
+  } // forEach(BiConsumer<? super K, ? super V>)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the bottom node with the given key.  The last node of each run
+   * shares the key of the node above, which we already know is greater,
+   * so it is never compared; each level costs at most three comparisons.
+   *
+   * @returns the node, or null if key is not in the list
+   */
+  DSLNode<K, V> find(K key) {
+    DSLNode<K, V> current = this.head;
+    K bound = null;
+    while (true) {
+      int order = 1;
+      while (current.key != bound && (order = compare(current, key)) < 0) {
+        current = current.right;
+      } // while
+      if (order == 0) {
+        return pair(current);
+      } else if (current.down == this.bottom) {
+        return null;
+      } // if/else
+      bound = current.key;
+      current = current.down;
+    } // while
+  } // find(K)
+
+  /**
+   * If the top level has split, raise a new one over it.
+   */
+  void raise() {
+    if (this.head.right != this.tail) {
+      this.head = new DSLNode<K, V>(null, null, this.tail, this.head);
+      this.height++;
+      if (this.height > this.path.length) {
+        this.path = Arrays.copyOf(this.path, this.height * 2);
+      } // if
+    } // if
+  } // raise()
+
+  /**
+   * Compare the key of node with key, counting the null key of the last
+   * node on a level as infinity.
+   */
+  int compare(DSLNode<K, V> node, K key) {
+    return (node.key == null) ? 1 : this.comparator.compare(node.key, key);
+  } // compare(DSLNode<K, V>, K)
+
+  /**
+   * Follow the key of node down to the bottom, through the last node of
+   * each run, which shares the key object.
+   */
+  DSLNode<K, V> pair(DSLNode<K, V> node) {
+    while (node.down != this.bottom) {
+      K key = node.key;
+      node = node.down;
+      while (node.key != key) {
+        node = node.right;
+      } // while
+    } // while
+    return node;
+  } // pair(DSLNode<K, V>)
+
+  /**
+   * Count the nodes on the level below that node covers.
+   */
+  static <K, V> int children(DSLNode<K, V> node) {
+    int count = 1;
+    for (DSLNode<K, V> child = node.down; child.key != node.key; child = child.right) {
+      count++;
+    } // for
+    return count;
+  } // children(DSLNode<K, V>)
+
+  /**
+   * Get the first node of the bottom level.
+   */
+  DSLNode<K, V> first() {
+    DSLNode<K, V> node = this.head;
+    while (node.down != this.bottom) {
+      node = node.down;
+    } // while
+    return node;
+  } // first()
+
+} // class DeterministicSkipList
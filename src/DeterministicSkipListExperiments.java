@@ -0,0 +1,124 @@
+import java.util.Comparator;
+import java.util.SplittableRandom;
+
+/**
+ * Compare the tail latency of DeterministicSkipList with SkipList's and
+ * TreeMap's.  For each map and each order of insertion, time every set
+ * that builds the map, then a get and a remove of every key in random
+ * order, one at a time, and report percentiles of the latencies and of
+ * the comparisons each operation made.  Comparison counts show the shape
+ * of the structure without the noise of the clock.
+ *
+ * Usage: java DeterministicSkipListExperiments [size] [rounds]
+ *
+ * Every round but the last warms up, and is not reported.
+ */
+public class DeterministicSkipListExperiments {
+
+  /**
+   * The maps we compare.
+   */
+  static final String[] IMPLS = {"SkipList", "DeterministicSkipList", "TreeMap"};
+
+  /**
+   * The orders in which we insert keys.
+   */
+  static final String[] ORDERS = {"random", "sequential"};
+
+  /**
+   * The comparisons made so far.
+   */
+  static long comparisons;
+
+  public static void main(String args[]) {
+    int size = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+    int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 2;
+    Comparator<Integer> counted = (x, y) -> {
+      comparisons++;
+      return Integer.compare(x, y);
+    };
+
+    for (int round = 1; round <= rounds; round++) {
+      boolean report = (round == rounds);
+      if (report) {
+        System.out.println("| Map                   | Order      | Op     | p50 ns | p99 ns "
+            + "| p99.9 ns | max ns    | p99.9 cmp | max cmp |");
+        System.out.println("|-----------------------|------------|--------|--------|--------"
+            + "|----------|-----------|-----------|---------|");
+      } // if
+      for (String impl : IMPLS) {
+        for (String order : ORDERS) {
+          SimpleMap<Integer, Integer> map = newMap(impl, counted);
+          int[] inserts = keys(size, order.equals("random"), round);
+          int[] probes = keys(size, true, round + 1000);
+          Histogram[] latency = new Histogram[3];
+          Histogram[] compared = new Histogram[3];
+          for (int op = 0; op < 3; op++) {
+            latency[op] = new Histogram();
+            compared[op] = new Histogram();
+            for (int key : (op == 0) ? inserts : probes) {
+              long before = comparisons;
+              long start = System.nanoTime();
+              switch (op) {
+                case 0:
+                  map.set(key, key);
+                  break;
+                case 1:
+                  map.get(key);
+                  break;
+                default:
+                  map.remove(key);
+              } // switch
+              latency[op].record(System.nanoTime() - start);
+              compared[op].record(comparisons - before);
+            } // for
+          } // for
+          if (report) {
+            String[] ops = {"set", "get", "remove"};
+            for (int op = 0; op < 3; op++) {
+              System.out.printf("| %-21s | %-10s | %-6s | %6d | %6d | %8d | %9d | %9d | %7d |%n",
+                  impl, order, ops[op], latency[op].percentile(0.5),
+                  latency[op].percentile(0.99), latency[op].percentile(0.999),
+                  latency[op].max(), compared[op].percentile(0.999), compared[op].max());
+            } // for
+          } // if
+        } // for order
+      } // for impl
+    } // for round
+  } // main(String[])
+
+  /**
+   * Make an empty map of the named kind.
+   */
+  static SimpleMap<Integer, Integer> newMap(String impl, Comparator<Integer> comparator) {
+    switch (impl) {
+      case "SkipList":
+        return new SkipList<Integer, Integer>(comparator);
+      case "DeterministicSkipList":
+        return new DeterministicSkipList<Integer, Integer>(comparator);
+      default:
+        return new TreeMapAdapter<Integer, Integer>(comparator);
+    } // switch
+  } // newMap(String, Comparator<Integer>)
+
+  /**
+   * Produce the keys 0 .. size-1, ascending or shuffled with seed.
+   */
+  static int[] keys(int size, boolean shuffle, long seed) {
+    int[] keys = new int[size];
+    for (int i = 0; i < size; i++) {
+      keys[i] = i;
+    } // for
+    if (shuffle) {
+      SplittableRandom random = new SplittableRandom(seed);
+      for (int i = size - 1; i > 0; i--) {
+        int j = random.nextInt(i + 1);
+        int temp = keys[i];
+        keys[i] = keys[j];
+        keys[j] = temp;
+      } // for
+    } // if
+    return keys;
+  } // keys(int, boolean, long)
+
+} // class DeterministicSkipListExperiments
@@ -0,0 +1,187 @@
+import static org.junit.Assert.*;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+
+/**
+ * Tests of the deterministic skip list.
+ */
+public class DeterministicSkipListTests {
+
+  /**
+   * Verify the invariants: the head is alone on the top level, each level
+   * is ascending and ends in the infinite node, each node above the bottom
+   * covers 2 to 4 nodes of the level below, the runs tile the level below,
+   * and the size and height add up.
+   */
+  static <K, V> void checkStructure(DeterministicSkipList<K, V> lst) {
+    assertNull("key of the head", lst.head.key);
+    assertSame("the head is alone", lst.tail, lst.head.right);
+    int levels = 0;
+    for (DSLNode<K, V> start = lst.head; start != lst.bottom; start = start.down) {
+      levels++;
+      DSLNode<K, V> below = start.down;
+      DSLNode<K, V> node = start;
+      for (; node.key != null; node = node.right) {
+        if (node.right.key != null) {
+          assertTrue("level out of order", lst.comparator.compare(node.key, node.right.key) < 0);
+        } // if
+        below = checkRun(lst, node, below);
+      } // for
+      assertSame("end of level", lst.tail, node.right);
+      below = checkRun(lst, node, below);
+      if (start.down != lst.bottom) {
+        assertSame("runs tile the level below", lst.tail, below);
+      } // if
+    } // for
+    assertEquals("height", levels, lst.height);
+    int count = 0;
+    for (Iterator<K> keys = lst.keys(); keys.hasNext(); keys.next()) {
+      count++;
+    } // for
+    assertEquals("size", count, lst.size());
+  } // checkStructure(DeterministicSkipList<K, V>)
+
+  /**
+   * Check the run that node covers, which should start at below.
+   *
+   * @returns the node after the run
+   */
+  static <K, V> DSLNode<K, V> checkRun(DeterministicSkipList<K, V> lst, DSLNode<K, V> node,
+      DSLNode<K, V> below) {
+    if (node.down == lst.bottom) {
+      return below;
+    } // if
+    assertSame("run starts where the last one ended", below, node.down);
+    int children = DeterministicSkipList.children(node);
+    assertTrue("run of " + children, 2 <= children && children <= 4);
+    for (int i = 0; i < children; i++) {
+      below = below.right;
+    } // for
+    return below;
+  } // checkRun(DeterministicSkipList<K, V>, DSLNode<K, V>, DSLNode<K, V>)
+
+  /**
+   * Verify that random sets and removes match a TreeMap.
+   */
+  @Test
+  public void randomTest() {
+    Random random = new Random(207);
+    DeterministicSkipList<Integer, String> lst =
+        new DeterministicSkipList<Integer, String>(Comparator.<Integer>naturalOrder());
+    TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+    for (int i = 0; i < 30000; i++) {
+      int key = random.nextInt(2000) - 1000;
+      if (random.nextInt(3) > 0) {
+        assertEquals(expected.put(key, "v" + i), lst.set(key, "v" + i));
+      } else {
+        assertEquals(expected.remove(key), lst.remove(key));
+      } // if/else
+      assertEquals(expected.containsKey(key), lst.containsKey(key));
+      if (i % 1000 == 0) {
+        checkStructure(lst);
+      } // if
+    } // for
+    checkStructure(lst);
+    for (Map.Entry<Integer, String> entry : expected.entrySet()) {
+      assertEquals(entry.getValue(), lst.get(entry.getKey()));
+    } // for
+    Iterator<Integer> keys = lst.keys();
+    Iterator<String> values = lst.values();
+    for (Map.Entry<Integer, String> entry : expected.entrySet()) {
+      assertEquals(entry.getKey(), keys.next());
+      assertEquals(entry.getValue(), values.next());
+    } // for
+    assertFalse(keys.hasNext());
+    assertFalse(values.hasNext());
+    // Empty it again
+    for (Integer key : expected.keySet()) {
+      assertEquals(expected.get(key), lst.remove(key));
+    } // for
+    assertEquals(0, lst.size());
+    assertEquals(1, lst.height);
+    checkStructure(lst);
+    try {
+      lst.get(0);
+      fail("get of a missing key should throw");
+    } catch (IndexOutOfBoundsException e) {
+      // Expected
+    } // try/catch
+  } // randomTest()
+
+  /**
+   * Verify that ascending, descending and alternating sequences keep the
+   * height logarithmic and bound the comparisons of every search.
+   */
+  @Test
+  public void worstCaseTest() {
+    int n = 1 << 14;
+    int[][] orders = new int[3][n];
+    for (int i = 0; i < n; i++) {
+      orders[0][i] = i;
+      orders[1][i] = n - 1 - i;
+      orders[2][i] = (i % 2 == 0) ? i / 2 : n - 1 - i / 2;
+    } // for
+    for (int[] order : orders) {
+      long[] comparisons = new long[1];
+      DeterministicSkipList<Integer, Integer> lst =
+          new DeterministicSkipList<Integer, Integer>((x, y) -> {
+            comparisons[0]++;
+            return Integer.compare(x, y);
+          });
+      for (int key : order) {
+        lst.set(key, key);
+      } // for
+      checkStructure(lst);
+      // Runs of at least two children halve each level, at worst
+      assertTrue("height " + lst.height, lst.height <= 15);
+      long most = 0;
+      for (int key = -1; key <= n; key++) {
+        comparisons[0] = 0;
+        assertEquals(key >= 0 && key < n, lst.containsKey(key));
+        most = Math.max(most, comparisons[0]);
+      } // for
+      // At most three comparisons a level
+      assertTrue("comparisons " + most, most <= 3 * lst.height);
+      // Remove every other key, then the rest, from the front
+      for (int i = 0; i < n; i += 2) {
+        assertEquals(order[i], (int) lst.remove(order[i]));
+      } // for
+      checkStructure(lst);
+      for (int i = 1; i < n; i += 2) {
+        assertEquals(order[i], (int) lst.remove(order[i]));
+      } // for
+      assertEquals(0, lst.size());
+      checkStructure(lst);
+    } // for
+  } // worstCaseTest()
+
+  /**
+   * Verify that null keys are refused.
+   */
+  @Test
+  public void nullTest() {
+    DeterministicSkipList<String, String> lst =
+        new DeterministicSkipList<String, String>(Comparator.<String>naturalOrder());
+    try {
+      lst.set(null, "x");
+      fail("set of a null key should throw");
+    } catch (NullPointerException e) {
+      // Expected
+    } // try/catch
+    try {
+      lst.remove(null);
+      fail("remove of a null key should throw");
+    } catch (NullPointerException e) {
+      // Expected
+    } // try/catch
+    assertNull(lst.remove("absent"));
+    lst.set("a", null);
+    assertTrue(lst.containsKey("a"));
+    assertNull(lst.get("a"));
+  } // nullTest()
+
+} // class DeterministicSkipListTests
@@ -0,0 +1,686 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * A SkipList whose changes survive crashes.  The list lives in a
+ * directory holding a snapshot (written by checkpoint) and a write-ahead
+ * log of every set and remove since.  Opening the directory loads the
+ * snapshot and replays the log.
+ *
+ * set and remove return only once their log record is on the disk.  To
+ * avoid an fsync per call, records go into a shared buffer that a
+ * background thread writes and forces in batches (group commit): a batch
+ * is cut once it has waited maxDelay since its first record or holds
+ * maxBatchBytes, whichever comes first, and every caller waiting on it is
+ * released by the one fsync.  Concurrent writers therefore share fsyncs;
+ * a lone writer still pays for one per call.
+ *
+ * A change is applied to the list when it is logged, so a concurrent
+ * reader may see it slightly before it is durable.  Reads run as in
+ * SynchronizedSkipList.
+ *
+ * Each log record is an int length, the CRC32 of the rest, and then a type
+ * byte (SET or REMOVE), the key and (for SET) a null flag and the value.
+ * Replay stops at the first record that is incomplete or fails its
+ * checksum, and truncates the log there; such a record was never
+ * acknowledged.  An intact record that cannot be parsed or applied (say,
+ * because the serializers changed) makes opening fail instead, leaving
+ * the log as it is.
+ *
+ * If writing the log fails, the failure is sticky: that and every later
+ * change throws UncheckedIOException, since we no longer know what is on
+ * the disk.
+ */
+public class DurableSkipList<K, V> implements SimpleMap<K, V>, AutoCloseable {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The names of the files in the directory.
+   */
+  static final String LOG = "wal.log";
+  static final String SNAPSHOT = "snapshot.bin";
+
+  /**
+   * The types of log record.
+   */
+  static final byte SET = 1;
+  static final byte REMOVE = 2;
+
+  /**
+   * The bytes before a record's payload (length and checksum).
+   */
+  static final int RECORD_HEADER_BYTES = 8;
+
+  /**
+   * The defaults for group commit.  With no delay, records still batch up
+   * while the previous batch is being forced, which is usually enough.
+   */
+  static final long DEFAULT_MAX_DELAY_MICROS = 0;
+  static final int DEFAULT_MAX_BATCH_BYTES = 1 << 20;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The directory, and how to write its keys and values.
+   */
+  final Path dir;
+  final Serializer<K> keys;
+  final Serializer<V> values;
+
+  /**
+   * The list itself, and the thread-safe view that readers go through.
+   */
+  final SkipList<K, V> list;
+  final SynchronizedSkipList<K, V> map;
+
+  /**
+   * The log.
+   */
+  final FileChannel log;
+
+  /**
+   * The group commit settings.
+   */
+  final long maxDelayNanos;
+  final int maxBatchBytes;
+
+  /**
+   * Guards everything below, and orders changes: whoever holds it may
+   * append a record and apply it.
+   */
+  final ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * Signalled when the flusher has something to do.
+   */
+  final Condition work = this.lock.newCondition();
+
+  /**
+   * Signalled when a batch is durable.
+   */
+  final Condition durable = this.lock.newCondition();
+
+  /**
+   * Records not yet handed to the flusher, and a view for serializing them.
+   * The flusher swaps in spare while it writes.
+   */
+  Snapshots.Buffer pending = new Snapshots.Buffer();
+  DataOutputStream pendingOut = new DataOutputStream(this.pending.output);
+  Snapshots.Buffer spare = new Snapshots.Buffer();
+
+  /**
+   * The number of records in pending, and when the first arrived.
+   */
+  int pendingRecords;
+  long pendingSince;
+
+  /**
+   * The log offsets reached by all appended records and by the durable
+   * ones.  Offsets keep growing across checkpoints: the log file holds the
+   * records from base on, so an offset never goes back and a waiter can
+   * never mistake an old end for a new one.
+   */
+  long base;
+  long appended;
+  long durableEnd;
+
+  /**
+   * Why the log stopped working, if it has.
+   */
+  IOException failure;
+
+  /**
+   * Whether close has been called.
+   */
+  boolean closing;
+
+  /**
+   * The thread that writes batches.
+   */
+  final Thread flusher;
+
+  /**
+   * Checksums records.
+   */
+  final CRC32 crc = new CRC32();
+
+  /**
+   * How many records were replayed at open, and how many bytes of
+   * incomplete or damaged log were cut off.
+   */
+  long replayed;
+  long truncated;
+
+  /**
+   * Metrics: per change, the time from logging to durability; per batch,
+   * the time to write and force it, its records, and its bytes.
+   */
+  final Histogram commitLatency = new Histogram();
+  final Histogram syncLatency = new Histogram();
+  final Histogram batchRecords = new Histogram();
+  final Histogram batchBytes = new Histogram();
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Open (or create) the list in dir.  A batch is committed once it has
+   * waited maxDelayMicros or reaches maxBatchBytes.
+   *
+   * @throws IOException if the directory cannot be read, its snapshot is
+   *         damaged, or an intact log record cannot be applied
+   */
+  public DurableSkipList(Path dir, Comparator<K> comparator, Serializer<K> keys,
+      Serializer<V> values, long maxDelayMicros, int maxBatchBytes) throws IOException {
+    this.dir = dir;
+    this.keys = keys;
+    this.values = values;
+    this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+    this.maxBatchBytes = maxBatchBytes;
+    Files.createDirectories(dir);
+    Path snapshot = dir.resolve(SNAPSHOT);
+    if (Files.exists(snapshot)) {
+      try (FileChannel in = FileChannel.open(snapshot)) {
+        this.list = SkipList.readSnapshot(in, comparator, keys, values);
+      } // try
+    } else {
+      this.list = new SkipList<K, V>(comparator);
+    } // if/else
+    this.map = new SynchronizedSkipList<K, V>(this.list);
+    this.log = FileChannel.open(dir.resolve(LOG), StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      long end = replay();
+      this.truncated = this.log.size() - end;
+      if (this.truncated > 0) {
+        this.log.truncate(end);
+        this.log.force(false);
+      } // if
+      this.log.position(end);
+      this.appended = end;
+      this.durableEnd = end;
+    } catch (IOException | RuntimeException e) {
+      this.log.close();
+      throw e;
+    } // try/catch
+    this.flusher = new Thread(this::flushLoop, "DurableSkipList flusher");
+    this.flusher.setDaemon(true);
+    this.flusher.start();
+  } // DurableSkipList(Path, Comparator<K>, Serializer<K>, Serializer<V>, long, int)
+
+  /**
+   * Open (or create) the list in dir, with the default group commit
+   * settings.
+   *
+   * @throws IOException if the directory cannot be read, its snapshot is
+   *         damaged, or an intact log record cannot be applied
+   */
+  public DurableSkipList(Path dir, Comparator<K> comparator, Serializer<K> keys,
+      Serializer<V> values) throws IOException {
+    this(dir, comparator, keys, values, DEFAULT_MAX_DELAY_MICROS, DEFAULT_MAX_BATCH_BYTES);
+  } // DurableSkipList(Path, Comparator<K>, Serializer<K>, Serializer<V>)
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  /**
+   * Set the value associated with key, returning once the change is on
+   * the disk.
+   *
+   * @throws UncheckedIOException if the log cannot be written
+   * @throws IllegalStateException if the list is closed
+   */
+  @Override
+  public V set(K key, V value) {
+    if (key == null) {
+      throw new NullPointerException("Key cannot be null");
+    } // if
+    this.lock.lock();
+    try {
+      long start = System.nanoTime();
+      long end = append(SET, key, value);
+      V old = this.map.set(key, value);
+      awaitDurable(end);
+      this.commitLatency.record(System.nanoTime() - start);
+      return old;
+    } finally {
+      this.lock.unlock();
+    } // try/finally
+  } // set(K, V)
+
+  @Override
+  public V get(K key) {
+    return this.map.get(key);
+  } // get(K)
+
+  @Override
+  public int size() {
+    return this.map.size();
+  } // size()
+
+  @Override
+  public boolean containsKey(K key) {
+    return this.map.containsKey(key);
+  } // containsKey(K)
+
+  /**
+   * Remove the pair with the given key, returning once the change is on
+   * the disk.  Removing a missing key logs nothing.
+   *
+   * @throws UncheckedIOException if the log cannot be written
+   * @throws IllegalStateException if the list is closed
+   */
+  @Override
+  public V remove(K key) {
+    if (key == null) {
+      throw new NullPointerException("Key cannot be null");
+    } // if
+    this.lock.lock();
+    try {
+      if (!this.map.containsKey(key)) {
+        checkOpen();
+        return null;
+      } // if
+      long start = System.nanoTime();
+      long end = append(REMOVE, key, null);
+      V old = this.map.remove(key);
+      awaitDurable(end);
+      this.commitLatency.record(System.nanoTime() - start);
+      return old;
+    } finally {
+      this.lock.unlock();
+    } // try/finally
+  } // remove(K)
+
+  /**
+   * Get an iterator over a copy of the keys.  Its remove goes through
+   * remove, so it is durable.
+   */
+  @Override
+  public Iterator<K> keys() {
+    ArrayList<K> copy = new ArrayList<K>();
+    forEach((key, value) -> copy.add(key));
+    return SynchronizedSkipList.removing(copy.iterator(), copy, this);
+  } // keys()
+
+  /**
+   * Get an iterator over a copy of the values.  Its remove goes through
+   * remove, so it is durable.
+   */
+  @Override
+  public Iterator<V> values() {
+    ArrayList<K> keys = new ArrayList<K>();
+    ArrayList<V> copy = new ArrayList<V>();
+    forEach((key, value) -> {
+      keys.add(key);
+      copy.add(value);
+    });
+    return SynchronizedSkipList.removing(copy.iterator(), keys, this);
+  } // values()
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    this.map.forEach(action);
+  } // forEach(BiConsumer)
+
+  // +----------------------+----------------------------------------
+  // | Other public methods |
+  // +----------------------+
+
+  /**
+   * Write a snapshot of the list and empty the log.  The checkpoint first
+   * waits for every logged change to be durable, letting other changes
+   * proceed meanwhile; changes made once it starts writing wait until it
+   * is done.
+   *
+   * The snapshot is written to a temporary file, forced, and renamed over
+   * the old one (forcing the directory too) before the log is truncated;
+   * a crash in between leaves a log whose replay onto the new snapshot
+   * changes nothing.
+   *
+   * @throws IOException if the snapshot cannot be written
+   */
+  public void checkpoint() throws IOException {
+    this.lock.lock();
+    try {
+      checkOpen();
+      // Writers may append while we wait, so wait until nothing is left
+      // pending or in flight
+      while (this.durableEnd < this.appended) {
+        awaitDurable(this.appended);
+      } // while
+      Path tmp = this.dir.resolve(SNAPSHOT + ".tmp");
+      try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+        this.list.writeSnapshot(out, this.keys, this.values);
+        out.force(true);
+      } // try
+      Files.move(tmp, this.dir.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+      forceDirectory(this.dir);
+      this.log.truncate(0);
+      this.log.force(false);
+      this.base = this.appended;
+    } finally {
+      this.lock.unlock();
+    } // try/finally
+  } // checkpoint()
+
+  /**
+   * Commit what is pending, stop the flusher and close the log.
+   *
+   * @throws IOException if the last batch could not be written
+   */
+  @Override
+  public void close() throws IOException {
+    this.lock.lock();
+    try {
+      if (this.closing) {
+        return;
+      } // if
+      this.closing = true;
+      this.work.signal();
+    } finally {
+      this.lock.unlock();
+    } // try/finally
+    boolean interrupted = false;
+    while (this.flusher.isAlive()) {
+      try {
+        this.flusher.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      } // try/catch
+    } // while
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    } // if
+    this.log.close();
+    if (this.failure != null) {
+      throw this.failure;
+    } // if
+  } // close()
+
+  /**
+   * Determine how many log records were replayed when the list was opened.
+   */
+  public long replayed() {
+    return this.replayed;
+  } // replayed()
+
+  /**
+   * Determine how many bytes of incomplete or damaged log were cut off
+   * when the list was opened.
+   */
+  public long truncated() {
+    return this.truncated;
+  } // truncated()
+
+  /**
+   * Get the time (ns) from logging each change to its being durable.
+   */
+  public Histogram commitLatency() {
+    return this.commitLatency;
+  } // commitLatency()
+
+  /**
+   * Get the time (ns) to write and force each batch.
+   */
+  public Histogram syncLatency() {
+    return this.syncLatency;
+  } // syncLatency()
+
+  /**
+   * Get the number of records in each batch.
+   */
+  public Histogram batchRecords() {
+    return this.batchRecords;
+  } // batchRecords()
+
+  /**
+   * Get the number of bytes in each batch.
+   */
+  public Histogram batchBytes() {
+    return this.batchBytes;
+  } // batchBytes()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Add a record to pending and wake the flusher if it should know.
+   *
+   * @pre the lock is held
+   * @returns the log offset just past the record
+   */
+  long append(byte type, K key, V value) {
+    checkOpen();
+    Snapshots.Buffer buf = this.pending;
+    int start = buf.count;
+    try {
+      this.pendingOut.writeInt(0);
+      this.pendingOut.writeInt(0);
+      this.pendingOut.writeByte(type);
+      this.keys.write(key, this.pendingOut);
+      if (type == SET) {
+        if (value == null) {
+          this.pendingOut.writeByte(0);
+        } else {
+          this.pendingOut.writeByte(1);
+          this.values.write(value, this.pendingOut);
+        } // if/else
+      } // if
+    } catch (IOException e) {
+      // The serializer failed; forget the partial record
+      buf.count = start;
+      throw new UncheckedIOException(e);
+    } catch (RuntimeException e) {
+      buf.count = start;
+      throw e;
+    } // try/catch
+    int payload = buf.count - start - RECORD_HEADER_BYTES;
+    this.crc.reset();
+    this.crc.update(buf.bytes, start + RECORD_HEADER_BYTES, payload);
+    ByteBuffer.wrap(buf.bytes, start, RECORD_HEADER_BYTES).putInt(payload)
+        .putInt((int) this.crc.getValue());
+    this.appended += buf.count - start;
+    if (this.pendingRecords++ == 0) {
+      this.pendingSince = System.nanoTime();
+      this.work.signal();
+    } else if (buf.count >= this.maxBatchBytes && start < this.maxBatchBytes) {
+      this.work.signal();
+    } // if/else
+    return this.appended;
+  } // append(byte, K, V)
+
+  /**
+   * Wait until the log is durable up to end.
+   *
+   * @pre the lock is held
+   * @throws UncheckedIOException if the log has failed
+   */
+  void awaitDurable(long end) {
+    while (this.durableEnd < end && this.failure == null) {
+      this.durable.awaitUninterruptibly();
+    } // while
+    if (this.failure != null) {
+      throw new UncheckedIOException("the log has failed", this.failure);
+    } // if
+  } // awaitDurable(long)
+
+  /**
+   * What the flusher thread does: wait for records, give the batch time to
+   * grow, then write and force it, and release its waiters.
+   */
+  void flushLoop() {
+    this.lock.lock();
+    try {
+      while (true) {
+        while (this.pendingRecords == 0 && !this.closing) {
+          this.work.awaitUninterruptibly();
+        } // while
+        if (this.pendingRecords == 0) {
+          return;
+        } // if
+        long wait;
+        while (!this.closing && this.pending.count < this.maxBatchBytes
+            && (wait = this.pendingSince + this.maxDelayNanos - System.nanoTime()) > 0) {
+          try {
+            this.work.awaitNanos(wait);
+          } catch (InterruptedException e) {
+            break;
+          } // try/catch
+        } // while
+        Snapshots.Buffer batch = this.pending;
+        int records = this.pendingRecords;
+        long end = this.appended;
+        this.pending = this.spare;
+        this.pendingOut = new DataOutputStream(this.pending.output);
+        this.pendingRecords = 0;
+        this.lock.unlock();
+        long start = System.nanoTime();
+        IOException error = null;
+        try {
+          Snapshots.writeFully(this.log, ByteBuffer.wrap(batch.bytes, 0, batch.count));
+          this.log.force(false);
+        } catch (IOException e) {
+          error = e;
+        } // try/catch
+        long elapsed = System.nanoTime() - start;
+        this.lock.lock();
+        this.syncLatency.record(elapsed);
+        this.batchRecords.record(records);
+        this.batchBytes.record(batch.count);
+        batch.count = 0;
+        this.spare = batch;
+        if (error != null) {
+          this.failure = error;
+          this.closing = true;
+        } else {
+          this.durableEnd = end;
+        } // if/else
+        this.durable.signalAll();
+        if (error != null) {
+          return;
+        } // if
+      } // while
+    } finally {
+      this.lock.unlock();
+    } // try/finally
+  } // flushLoop()
+
+  /**
+   * Apply the log to the list, stopping at the first record that is
+   * incomplete, has a bad length, or fails its checksum.
+   *
+   * @returns the offset just past the last intact record
+   * @throws IOException if the log cannot be read, or an intact record
+   *         cannot be parsed or applied
+   */
+  long replay() throws IOException {
+    long size = this.log.size();
+    long end = 0;
+    DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Channels.newInputStream(this.log.position(0)), 1 << 16));
+    Snapshots.Buffer record = new Snapshots.Buffer();
+    DataInputStream fields = new DataInputStream(record);
+    while (end + RECORD_HEADER_BYTES <= size) {
+      int length;
+      int checksum;
+      try {
+        length = in.readInt();
+        checksum = in.readInt();
+        if (length <= 0 || length > size - end - RECORD_HEADER_BYTES) {
+          break;
+        } // if
+        record.count = 0;
+        record.ensure(length);
+        in.readFully(record.bytes, 0, length);
+      } catch (EOFException e) {
+        break;
+      } // try/catch
+      this.crc.reset();
+      this.crc.update(record.bytes, 0, length);
+      if ((int) this.crc.getValue() != checksum) {
+        break;
+      } // if
+      record.count = length;
+      record.position = 0;
+      // The record is intact, so it may have been acknowledged: failing to
+      // apply it must not cost it, or anything after it
+      try {
+        byte type = fields.readByte();
+        K key = this.keys.read(fields);
+        if (type == SET) {
+          this.list.set(key, (fields.readByte() == 0) ? null : this.values.read(fields));
+        } else if (type == REMOVE) {
+          this.list.remove(key);
+        } else {
+          throw new IOException("unknown record type " + type);
+        } // if/else
+      } catch (IOException | RuntimeException e) {
+        throw new IOException("cannot apply the log record at offset " + end, e);
+      } // try/catch
+      end += RECORD_HEADER_BYTES + length;
+      this.replayed++;
+    } // while
+    return end;
+  } // replay()
+
+  /**
+   * Force a directory, so that a rename within it survives a crash.
+   * Windows cannot open a directory as a channel; there the rename is
+   * left to the file system's journal.
+   */
+  static void forceDirectory(Path dir) throws IOException {
+    if (System.getProperty("os.name").startsWith("Windows")) {
+      return;
+    } // if
+    try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+      channel.force(true);
+    } // try
+  } // forceDirectory(Path)
+
+  /**
+   * Make sure the list is still open.
+   *
+   * @pre the lock is held
+   * @throws IllegalStateException if it is not
+   * @throws UncheckedIOException if the log has failed
+   */
+  void checkOpen() {
+    if (this.failure != null) {
+      throw new UncheckedIOException("the log has failed", this.failure);
+    } // if
+    if (this.closing) {
+      throw new IllegalStateException("list is closed");
+    } // if
+  } // checkOpen()
+
+} // class DurableSkipList
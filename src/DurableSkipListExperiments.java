@@ -0,0 +1,93 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+
+/**
+ * Measure what group commit buys DurableSkipList: for each number of
+ * writer threads and each maximum delay, run the writers for a while and
+ * report throughput, fsyncs, batch sizes and commit latencies.
+ *
+ * Usage: java DurableSkipListExperiments [dir] [millis per run]
+ */
+public class DurableSkipListExperiments {
+
+  /**
+   * The numbers of writers we try.
+   */
+  static final int[] THREADS = {1, 4, 16, 64};
+
+  /**
+   * The maximum delays (in microseconds) we try.
+   */
+  static final long[] DELAYS = {0, 200, 1000};
+
+  public static void main(String args[]) throws Exception {
+    Path base = (args.length > 0) ? Path.of(args[0]) : Files.createTempDirectory("durable");
+    long millis = (args.length > 1) ? Long.parseLong(args[1]) : 2000;
+
+    System.out.println("| Writers | Max delay us | Ops/s  | Fsyncs/s | Records/batch "
+        + "| p50 commit us | p99 commit us |");
+    System.out.println("|---------|--------------|--------|----------|---------------"
+        + "|---------------|---------------|");
+    int run = 0;
+    for (long delay : DELAYS) {
+      for (int threads : THREADS) {
+        Path dir = base.resolve("run" + run++);
+        try (DurableSkipList<Integer, byte[]> lst = new DurableSkipList<Integer, byte[]>(dir,
+            Comparator.<Integer>naturalOrder(), Serializer.INTEGER, Serializer.BYTES, delay,
+            DurableSkipList.DEFAULT_MAX_BATCH_BYTES)) {
+          long ops = churn(lst, threads, millis);
+          System.out.printf("| %7d | %12d | %6d | %8d | %13.1f | %13.0f | %13.0f |%n", threads,
+              delay, ops * 1000 / millis, lst.batchRecords().count() * 1000 / millis,
+              lst.batchRecords().mean(), lst.commitLatency().percentile(0.5) / 1000.0,
+              lst.commitLatency().percentile(0.99) / 1000.0);
+        } // try
+        delete(dir);
+      } // for threads
+    } // for delay
+  } // main(String[])
+
+  /**
+   * Run threads writers, each setting random keys to 100-byte values,
+   * for millis.
+   *
+   * @returns the number of sets
+   */
+  static long churn(DurableSkipList<Integer, byte[]> lst, int threads, long millis)
+      throws InterruptedException {
+    long deadline = System.nanoTime() + millis * 1000000;
+    long[] counts = new long[threads];
+    Thread[] writers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      final int me = t;
+      writers[t] = new Thread(() -> {
+        SplittableRandom random = new SplittableRandom(me);
+        byte[] value = new byte[100];
+        while (System.nanoTime() < deadline) {
+          lst.set(random.nextInt(1000000), value);
+          counts[me]++;
+        } // while
+      });
+      writers[t].start();
+    } // for
+    long total = 0;
+    for (int t = 0; t < threads; t++) {
+      writers[t].join();
+      total += counts[t];
+    } // for
+    return total;
+  } // churn(DurableSkipList<Integer, byte[]>, int, long)
+
+  /**
+   * Delete the files of a run.
+   */
+  static void delete(Path dir) throws IOException {
+    for (String name : new String[] {DurableSkipList.LOG, DurableSkipList.SNAPSHOT}) {
+      Files.deleteIfExists(dir.resolve(name));
+    } // for
+    Files.deleteIfExists(dir);
+  } // delete(Path)
+
+} // class DurableSkipListExperiments
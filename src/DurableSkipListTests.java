@@ -0,0 +1,314 @@
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.zip.CRC32;
+import org.junit.Test;
+
+/**
+ * Tests of the write-ahead-logged skip list.
+ */
+public class DurableSkipListTests {
+
+  /**
+   * Make a fresh directory.
+   */
+  static Path tempDir() throws IOException {
+    Path dir = Files.createTempDirectory("durable");
+    dir.toFile().deleteOnExit();
+    return dir;
+  } // tempDir()
+
+  /**
+   * Open the list of ints to strings in dir.
+   */
+  static DurableSkipList<Integer, String> open(Path dir) throws IOException {
+    return new DurableSkipList<Integer, String>(dir, Comparator.<Integer>naturalOrder(),
+        Serializer.INTEGER, Serializer.STRING);
+  } // open(Path)
+
+  /**
+   * Verify that reopening replays sets and removes.
+   */
+  @Test
+  public void replayTest() throws IOException {
+    Path dir = tempDir();
+    try (DurableSkipList<Integer, String> lst = open(dir)) {
+      for (int i = 0; i < 500; i++) {
+        assertNull(lst.set(i, "v" + i));
+      } // for
+      assertEquals("v7", lst.set(7, null));
+      assertEquals("v8", lst.remove(8));
+      assertNull(lst.remove(8));
+      assertEquals(0, lst.replayed());
+    } // try
+    try (DurableSkipList<Integer, String> lst = open(dir)) {
+      assertEquals(502, lst.replayed());
+      assertEquals(0, lst.truncated());
+      assertEquals(499, lst.size());
+      assertEquals("v42", lst.get(42));
+      assertTrue(lst.containsKey(7));
+      assertNull(lst.get(7));
+      assertFalse(lst.containsKey(8));
+      lst.set(8, "back");
+    } // try
+    try (DurableSkipList<Integer, String> lst = open(dir)) {
+      assertEquals("back", lst.get(8));
+      assertEquals(500, lst.size());
+    } // try
+  } // replayTest()
+
+  /**
+   * Verify that removing through the iterators is logged too.
+   */
+  @Test
+  public void iteratorRemoveTest() throws IOException {
+    Path dir = tempDir();
+    try (DurableSkipList<Integer, String> lst = open(dir)) {
+      for (int i = 0; i < 5; i++) {
+        lst.set(i, "v" + i);
+      } // for
+      Iterator<Integer> keys = lst.keys();
+      assertEquals(0, (int) keys.next());
+      keys.remove();
+      Iterator<String> values = lst.values();
+      values.next();
+      assertEquals("v2", values.next());
+      values.remove();
+      assertEquals(3, lst.size());
+    } // try
+    try (DurableSkipList<Integer, String> lst = open(dir)) {
+      assertEquals(7, lst.replayed());
+      assertEquals(3, lst.size());
+      assertFalse(lst.containsKey(0));
+      assertFalse(lst.containsKey(2));
+      assertEquals("v1", lst.get(1));
+    } // try
+  } // iteratorRemoveTest()
+
+  /**
+   * Verify that a torn or damaged tail is cut off and everything before it
+   * kept.
+   */
+  @Test
+  public void truncationTest() throws IOException {
+    Path dir = tempDir();
+    try (DurableSkipList<Integer, String> lst = open(dir)) {
+      for (int i = 0; i < 100; i++) {
+        lst.set(i, "v" + i);
+      } // for
+    } // try
+    Path log = dir.resolve(DurableSkipList.LOG);
+    long intact = Files.size(log);
+    // A record cut off part way through, as if by a crash mid-write
+    Files.write(log, new byte[] {0, 0, 0, 40, 1, 2, 3, 4, 1}, StandardOpenOption.APPEND);
+    try (DurableSkipList<Integer, String> lst = open(dir)) {
+      assertEquals(100, lst.size());
+      assertEquals(9, lst.truncated());
+      assertEquals(intact, Files.size(log));
+      lst.set(100, "v100");
+    } // try
+    // Damage the middle of the log: replay keeps what comes before
+    byte[] bytes = Files.readAllBytes(log);
+    bytes[bytes.length / 2] ^= 0x40;
+    Files.write(log, bytes);
+    try (DurableSkipList<Integer, String> lst = open(dir)) {
+      assertTrue(lst.size() > 10 && lst.size() < 100);
+      assertTrue(lst.truncated() > 0);
+      Iterator<Integer> keys = lst.keys();
+      for (int i = 0; i < lst.size(); i++) {
+        assertEquals(i, (int) keys.next());
+      } // for
+    } // try
+  } // truncationTest()
+
+  /**
+   * Verify that an intact record that cannot be applied makes opening
+   * fail, and that the log, including the records after it, is kept.
+   */
+  @Test
+  public void unreadableRecordTest() throws IOException {
+    Path dir = tempDir();
+    try (DurableSkipList<Integer, String> lst = open(dir)) {
+      for (int i = 0; i < 100; i++) {
+        lst.set(i, "v" + i);
+      } // for
+    } // try
+    Path log = dir.resolve(DurableSkipList.LOG);
+    byte[] records = Files.readAllBytes(log);
+    // A record of an unknown type, with a good checksum, ahead of the rest
+    CRC32 crc = new CRC32();
+    crc.update(9);
+    ByteBuffer bytes = ByteBuffer.allocate(DurableSkipList.RECORD_HEADER_BYTES + 1
+        + records.length);
+    bytes.putInt(1).putInt((int) crc.getValue()).put((byte) 9).put(records);
+    Files.write(log, bytes.array());
+    try {
+      open(dir).close();
+      fail("opening should fail on a record it cannot apply");
+    } catch (IOException e) {
+      // Expected
+    } // try/catch
+    assertArrayEquals(bytes.array(), Files.readAllBytes(log));
+  } // unreadableRecordTest()
+
+  /**
+   * Verify that a checkpoint empties the log and that later changes are
+   * replayed onto the snapshot.
+   */
+  @Test
+  public void checkpointTest() throws IOException {
+    Path dir = tempDir();
+    try (DurableSkipList<Integer, String> lst = open(dir)) {
+      for (int i = 0; i < 1000; i++) {
+        lst.set(i, "v" + i);
+      } // for
+      lst.checkpoint();
+      assertEquals(0, Files.size(dir.resolve(DurableSkipList.LOG)));
+      assertTrue(Files.exists(dir.resolve(DurableSkipList.SNAPSHOT)));
+      lst.remove(0);
+      lst.set(1000, "v1000");
+    } // try
+    try (DurableSkipList<Integer, String> lst = open(dir)) {
+      assertEquals(2, lst.replayed());
+      assertEquals(1000, lst.size());
+      assertFalse(lst.containsKey(0));
+      assertEquals("v999", lst.get(999));
+      assertEquals("v1000", lst.get(1000));
+    } // try
+  } // checkpointTest()
+
+  /**
+   * Verify that checkpoints taken while other threads write neither lose
+   * changes nor strand a writer, and that the log offsets still match the
+   * log afterwards.
+   */
+  @Test(timeout = 60000)
+  public void concurrentCheckpointTest() throws Exception {
+    Path dir = tempDir();
+    int threads = 4;
+    int perThread = 500;
+    try (DurableSkipList<Integer, String> lst = new DurableSkipList<Integer, String>(dir,
+        Comparator.<Integer>naturalOrder(), Serializer.INTEGER, Serializer.STRING, 500,
+        1 << 20)) {
+      ConcurrentSkipListTests.runThreads(threads + 1, (id) -> {
+        if (id == threads) {
+          while (lst.size() < threads * perThread) {
+            lst.checkpoint();
+          } // while
+        } else {
+          for (int i = id * perThread; i < (id + 1) * perThread; i++) {
+            lst.set(i, "v" + i);
+          } // for
+        } // if/else
+      });
+      lst.lock.lock();
+      try {
+        assertEquals(lst.appended, lst.durableEnd);
+        assertEquals(lst.appended, lst.base + Files.size(dir.resolve(DurableSkipList.LOG)));
+      } finally {
+        lst.lock.unlock();
+      } // try/finally
+    } // try
+    try (DurableSkipList<Integer, String> lst = open(dir)) {
+      assertEquals(threads * perThread, lst.size());
+      for (int i = 0; i < threads * perThread; i++) {
+        assertEquals("v" + i, lst.get(i));
+      } // for
+    } // try
+  } // concurrentCheckpointTest()
+
+  /**
+   * Verify that concurrent writers share fsyncs, and that the metrics add
+   * up.
+   */
+  @Test
+  public void groupCommitTest() throws Exception {
+    Path dir = tempDir();
+    int threads = 8;
+    int perThread = 200;
+    try (DurableSkipList<Integer, String> lst = new DurableSkipList<Integer, String>(dir,
+        Comparator.<Integer>naturalOrder(), Serializer.INTEGER, Serializer.STRING, 2000,
+        1 << 20)) {
+      Thread[] writers = new Thread[threads];
+      for (int t = 0; t < threads; t++) {
+        final int base = t * perThread;
+        writers[t] = new Thread(() -> {
+          for (int i = base; i < base + perThread; i++) {
+            lst.set(i, "v" + i);
+          } // for
+        });
+        writers[t].start();
+      } // for
+      for (Thread writer : writers) {
+        writer.join();
+      } // for
+      long records = threads * perThread;
+      assertEquals(records, lst.size());
+      assertEquals(records, lst.commitLatency().count());
+      assertEquals(records, (long) (lst.batchRecords().mean() * lst.batchRecords().count()
+          + 0.5));
+      assertTrue("one fsync per record", lst.batchRecords().count() < records / 2);
+      assertTrue(lst.batchRecords().max() > 1);
+      assertEquals(lst.batchRecords().count(), lst.syncLatency().count());
+    } // try
+    try (DurableSkipList<Integer, String> lst = open(dir)) {
+      assertEquals(threads * perThread, lst.size());
+    } // try
+  } // groupCommitTest()
+
+  /**
+   * Verify that a closed list refuses changes.
+   */
+  @Test
+  public void closeTest() throws IOException {
+    DurableSkipList<Integer, String> lst = open(tempDir());
+    lst.set(1, "one");
+    lst.close();
+    lst.close();
+    assertEquals("one", lst.get(1));
+    try {
+      lst.set(2, "two");
+      fail("set after close should throw");
+    } catch (IllegalStateException e) {
+      // Expected
+    } // try/catch
+    try {
+      lst.checkpoint();
+      fail("checkpoint after close should throw");
+    } catch (IllegalStateException e) {
+      // Expected
+    } // try/catch
+  } // closeTest()
+
+  /**
+   * Verify the histogram's buckets and percentiles.
+   */
+  @Test
+  public void histogramTest() {
+    for (long value : new long[] {0, 1, 15, 16, 17, 31, 32, 1000, 123456789, Long.MAX_VALUE}) {
+      int bucket = Histogram.bucket(value);
+      assertTrue(Histogram.lowest(bucket) <= value);
+      assertTrue(value == Long.MAX_VALUE || Histogram.lowest(bucket + 1) > value);
+    } // for
+    Histogram histogram = new Histogram();
+    assertEquals(0, histogram.percentile(0.5));
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i);
+    } // for
+    assertEquals(1000, histogram.count());
+    assertEquals(500.5, histogram.mean(), 1e-9);
+    assertEquals(1000, histogram.max());
+    long median = histogram.percentile(0.5);
+    assertTrue("median " + median, median >= 500 && median <= 530);
+    assertEquals(1000, histogram.percentile(1.0));
+    long p99 = histogram.percentile(0.99);
+    assertTrue("p99 " + p99, p99 >= 990 && p99 <= 1000);
+  } // histogramTest()
+
+} // class DurableSkipListTests
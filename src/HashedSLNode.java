@@ -0,0 +1,34 @@
+/**
+ * Nodes in a hashed skip list, which also link back to the node before
+ * them on each level, so that a node found through the hash index can be
+ * unlinked without searching.  They extend IndexedSLNode so that a list
+ * can be both; when it is not indexed, widths is null, and the object is
+ * no bigger for it.
+ */
+class HashedSLNode<K, V> extends IndexedSLNode<K, V> {
+
+  /**
+   * The previous node on each level (the head, for the first).
+   */
+  SLNode<K, V>[] prev;
+
+  /**
+   * Create a new node of height n with the specified key and value, and
+   * widths if indexed is set.
+   */
+  HashedSLNode(K key, V value, int n, boolean indexed) {
+    this(key, value, n, indexed, true);
+  } // HashedSLNode(K, V, int, boolean)
+
+  /**
+   * Create a new node of height n, with widths if indexed is set and back
+   * links if hashed is set.
+   */
+  HashedSLNode(K key, V value, int n, boolean indexed, boolean hashed) {
+    super(key, value, n, indexed);
+    if (hashed) {
+      this.prev = links(n);
+    } // if
+  } // HashedSLNode(K, V, int, boolean, boolean)
+
+} // HashedSLNode<K,V>
@@ -0,0 +1,142 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative longs (latencies in nanoseconds, batch
+ * sizes, and so on) that any number of threads may record into.
+ *
+ * Values below 16 get a bucket each; above that, each power of two is
+ * split into 16 buckets, so a percentile is reported to within about 6%
+ * whatever its magnitude, in a fixed 960 buckets.
+ */
+public class Histogram {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * Each power of two is split into 2^SUB_BITS buckets.
+   */
+  static final int SUB_BITS = 4;
+  static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+  /**
+   * Enough buckets for every non-negative long.
+   */
+  static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of values in each bucket.
+   */
+  final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+  /**
+   * The number of values, their sum, and the largest.
+   */
+  final LongAdder count = new LongAdder();
+  final LongAdder sum = new LongAdder();
+  final AtomicLong max = new AtomicLong();
+
+  // +----------------+----------------------------------------------
+  // | Public methods |
+  // +----------------+
+
+  /**
+   * Record a value.  Negative values are recorded as 0.
+   */
+  public void record(long value) {
+    value = Math.max(0, value);
+    this.counts.incrementAndGet(bucket(value));
+    this.count.increment();
+    this.sum.add(value);
+    this.max.accumulateAndGet(value, Math::max);
+  } // record(long)
+
+  /**
+   * Determine how many values have been recorded.
+   */
+  public long count() {
+    return this.count.sum();
+  } // count()
+
+  /**
+   * Determine the mean of the values, or 0 if there are none.
+   */
+  public double mean() {
+    long n = count();
+    return (n == 0) ? 0 : (double) this.sum.sum() / n;
+  } // mean()
+
+  /**
+   * Determine the largest value, or 0 if there are none.
+   */
+  public long max() {
+    return this.max.get();
+  } // max()
+
+  /**
+   * Estimate the value below which a fraction q of the values fall.
+   *
+   * @pre 0 <= q <= 1
+   * @returns the top of the bucket that holds that value (but no more than
+   *          max), or 0 if there are no values
+   */
+  public long percentile(double q) {
+    long n = count();
+    long target = Math.max(1, (long) Math.ceil(q * n));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += this.counts.get(i);
+      if (seen >= target) {
+        return Math.min(lowest(i + 1) - 1, max());
+      } // if
+    } // for
+    return max();
+  } // percentile(double)
+
+  /**
+   * Summarize the histogram, scaling values down by divisor (e.g. 1000 to
+   * show nanoseconds as microseconds).
+   */
+  public String summary(double divisor) {
+    return String.format("n=%d mean=%.1f p50=%.1f p99=%.1f p99.9=%.1f max=%.1f", count(),
+        mean() / divisor, percentile(0.5) / divisor, percentile(0.99) / divisor,
+        percentile(0.999) / divisor, max() / divisor);
+  } // summary(double)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the bucket for a value.
+   */
+  static int bucket(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    } // if
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+  } // bucket(long)
+
+  /**
+   * Find the smallest value in a bucket.
+   */
+  static long lowest(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    } // if
+    if (bucket >= BUCKETS) {
+      return Long.MAX_VALUE;
+    } // if
+    int shift = bucket / SUB_BUCKETS - 1;
+    return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+  } // lowest(int)
+
+} // class Histogram
@@ -0,0 +1,30 @@
+/**
+ * Nodes in an indexed skip list, which also know how far each link
+ * reaches.
+ */
+class IndexedSLNode<K, V> extends SLNode<K, V> {
+
+  /**
+   * The number of level-0 steps each link covers.  A null link reaches a
+   * virtual node just past the end of the list.
+   */
+  int[] widths;
+
+  /**
+   * Create a new node of height n with the specified key and value.
+   */
+  IndexedSLNode(K key, V value, int n) {
+    this(key, value, n, true);
+  } // IndexedSLNode(K, V, int)
+
+  /**
+   * Create a new node of height n, with widths only if withWidths is set.
+   */
+  IndexedSLNode(K key, V value, int n, boolean withWidths) {
+    super(key, value, n);
+    if (withWidths) {
+      this.widths = new int[n];
+    } // if
+  } // IndexedSLNode(K, V, int, boolean)
+
+} // IndexedSLNode<K,V>
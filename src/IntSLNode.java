@@ -0,0 +1,38 @@
+/**
+ * Nodes in a IntSkipList.
+ */
+class IntSLNode<V> {
+
+  /**
+   * The key.
+   */
+  int key;
+
+  /**
+   * The value.
+   */
+  V value;
+
+  /**
+   * Pointers to the next nodes, one per level.
+   */
+  IntSLNode<V>[] next;
+
+  /**
+   * Create a new node of height n with the specified key and value.
+   */
+  IntSLNode(int key, V value, int n) {
+    this.key = key;
+    this.value = value;
+    this.next = links(n);
+  } // IntSLNode(int, V, int)
+
+  /**
+   * Make an empty array of n links.
+   */
+  @SuppressWarnings("unchecked")
+  static <V> IntSLNode<V>[] links(int n) {
+    return (IntSLNode<V>[]) new IntSLNode<?>[n];
+  } // links(int)
+
+} // IntSLNode<V>
@@ -0,0 +1,298 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
+/**
+ * A skip list keyed by primitive ints.  Keys live in the nodes as plain
+ * ints and are compared with <, so lookups neither box nor call a
+ * Comparator.
+ */
+public class IntSkipList<V> implements SimpleMap<Integer, V> {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * A permanent sentinel whose links point to the front elements.
+   */
+  IntSLNode<V> head;
+
+  /**
+   * Scratch space for set and remove: the last node before the key on
+   * each level.
+   */
+  IntSLNode<V>[] preds;
+
+  /**
+   * The number of values in the list.
+   */
+  int size;
+
+  /**
+   * The current height of the skiplist.
+   */
+  int height;
+
+  /**
+   * The largest height a new node may currently have.  Grows with size.
+   */
+  int maxHeight;
+
+  /**
+   * The size at which we next raise maxHeight.
+   */
+  double growAt;
+
+  /**
+   * The generator used to determine the height of nodes.
+   */
+  LevelGenerator levels;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new skip list that picks node heights with the specified generator.
+   */
+  public IntSkipList(LevelGenerator levels) {
+    this.head = new IntSLNode<V>(0, null, SkipList.INITIAL_HEIGHT);
+    this.preds = IntSLNode.links(SkipList.INITIAL_HEIGHT);
+    this.levels = levels;
+    this.size = 0;
+    this.height = 0;
+    this.maxHeight = SkipList.INITIAL_HEIGHT;
+    this.growAt = Math.pow(1.0 / levels.probability(), SkipList.INITIAL_HEIGHT);
+  } // IntSkipList(LevelGenerator)
+
+  /**
+   * Create a new, empty, skip list.
+   */
+  public IntSkipList() {
+    this(LevelGenerator.fast());
+  } // IntSkipList()
+
+  // +------------------+--------------------------------------------
+  // | Primitive access |
+  // +------------------+
+
+  /**
+   * Set the value associated with key.
+   *
+   * @returns the value originally associated with the key, or null if the key
+   *          was not originally in the list
+   */
+  public V set(int key, V value) {
+    IntSLNode<V> current = findPredecessors(key);
+    if (current != null && current.key == key) {
+      V cache = current.value;
+      current.value = value;
+      return cache;
+    } // if
+
+    int newLevel = this.levels.nextLevel(this.maxHeight);
+    for (int i = this.height; i < newLevel; i++) {
+      this.preds[i] = this.head;
+    } // for
+    IntSLNode<V> newNode = new IntSLNode<V>(key, value, newLevel);
+    for (int i = 0; i < newLevel; i++) {
+      newNode.next[i] = this.preds[i].next[i];
+      this.preds[i].next[i] = newNode;
+    } // for
+    this.height = Math.max(this.height, newLevel);
+    this.size++;
+    if (this.size >= this.growAt) {
+      grow();
+    } // if
+    return null;
+  } // set(int, V)
+
+  /**
+   * Get the value associated with key.
+   *
+   * @throws IndexOutOfBoundsException if key is not in list
+   */
+  public V get(int key) {
+    IntSLNode<V> found = search(key);
+    if (found != null) {
+      return found.value;
+    } else {
+      throw new IndexOutOfBoundsException("key is not in list");
+    } // if/else
+  } // get(int)
+
+  /**
+   * Determine if key appears in the list.
+   */
+  public boolean containsKey(int key) {
+    return search(key) != null;
+  } // containsKey(int)
+
+  /**
+   * Remove the value associated with key.
+   *
+   * @returns the removed value, or null if key was not in the list
+   */
+  public V remove(int key) {
+    IntSLNode<V> current = findPredecessors(key);
+    if (current == null || current.key != key) {
+      return null;
+    } // if
+    for (int i = 0; i < current.next.length; i++) {
+      this.preds[i].next[i] = current.next[i];
+    } // for
+    while (this.height > 0 && this.head.next[this.height - 1] == null) {
+      this.height--;
+    } // while
+    this.size--;
+    return current.value;
+  } // remove(int)
+
+  /**
+   * Find the node with the given key.
+   *
+   * @returns the node, or null if key is not in the list
+   */
+  public IntSLNode<V> search(int key) {
+    IntSLNode<V> current = this.head;
+    for (int i = this.height - 1; i >= 0; i--) {
+      IntSLNode<V> next = current.next[i];
+      while (next != null && next.key < key) {
+        current = next;
+        next = current.next[i];
+      } // while
+    } // for
+    current = current.next[0];
+    if (current != null && current.key == key) {
+      return current;
+    } else {
+      return null;
+    } // if/else
+  } // search(int)
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  @Override
+  public V set(Integer key, V value) {
+    if (key == null) {
+      throw new NullPointerException("Key cannot be null");
+    } // if
+    return set(key.intValue(), value);
+  } // set(Integer, V)
+
+  @Override
+  public V get(Integer key) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    return get(key.intValue());
+  } // get(Integer)
+
+  @Override
+  public int size() {
+    return this.size;
+  } // size()
+
+  @Override
+  public boolean containsKey(Integer key) {
+    return containsKey(key.intValue());
+  } // containsKey(Integer)
+
+  @Override
+  public V remove(Integer key) {
+    if (key == null) {
+      throw new NullPointerException("Key cannot be null");
+    } // if
+    return remove(key.intValue());
+  } // remove(Integer)
+
+  @Override
+  public Iterator<Integer> keys() {
+    return new Iterator<Integer>() {
+      IntSLNode<V> next = IntSkipList.this.head.next[0];
+
+      @Override
+      public boolean hasNext() {
+        return this.next != null;
+      } // hasNext()
+
+      @Override
+      public Integer next() {
+        if (this.next == null) {
+          throw new NoSuchElementException();
+        } // if
+        int key = this.next.key;
+        this.next = this.next.next[0];
+        return key;
+      } // next()
+    };
+  } // keys()
+
+  @Override
+  public Iterator<V> values() {
+    return new Iterator<V>() {
+      IntSLNode<V> next = IntSkipList.this.head.next[0];
+
+      @Override
+      public boolean hasNext() {
+        return this.next != null;
+      } // hasNext()
+
+      @Override
+      public V next() {
+        if (this.next == null) {
+          throw new NoSuchElementException();
+        } // if
+        V value = this.next.value;
+        this.next = this.next.next[0];
+        return value;
+      } // next()
+    };
+  } // values()
+
+  @Override
+  public void forEach(BiConsumer<? super Integer, ? super V> action) {
+    IntSLNode<V> current = this.head.next[0];
+    while (current != null) {
+      action.accept(current.key, current.value);
+      current = current.next[0];
+    } // while
+  } // forEach(BiConsumer)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the last node before key on each level, recording them in preds.
+   *
+   * @returns the first node whose key is not less than key, or null
+   */
+  IntSLNode<V> findPredecessors(int key) {
+    IntSLNode<V> current = this.head;
+    for (int i = this.height - 1; i >= 0; i--) {
+      IntSLNode<V> next = current.next[i];
+      while (next != null && next.key < key) {
+        current = next;
+        next = current.next[i];
+      } // while
+      this.preds[i] = current;
+    } // for
+    return current.next[0];
+  } // findPredecessors(int)
+
+  /**
+   * Raise the maximum height by one level.
+   */
+  void grow() {
+    this.maxHeight++;
+    this.head.next = Arrays.copyOf(this.head.next, this.maxHeight);
+    this.preds = Arrays.copyOf(this.preds, this.maxHeight);
+    this.growAt *= 1.0 / this.levels.probability();
+  } // grow()
+
+} // class IntSkipList
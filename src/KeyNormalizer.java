@@ -0,0 +1,91 @@
+/**
+ * A way to boil a key down to a long prefix that orders like the key, so
+ * that a SkipList can store it in each node and settle most comparisons
+ * with one unsigned compare of longs, without touching the key or
+ * calling the comparator (see SkipList.setNormalizer).
+ *
+ * Prefixes must never contradict the comparator: if
+ * Long.compareUnsigned(normalize(a), normalize(b)) < 0, the comparator
+ * must put a before b.  Keys with equal prefixes are compared in full,
+ * unless the normalizer is exact.
+ */
+public interface KeyNormalizer<K> {
+
+  /**
+   * Compute the prefix of key.
+   */
+  public long normalize(K key);
+
+  /**
+   * Determine whether equal prefixes mean equal keys, so that the
+   * comparator need never be called.
+   */
+  public default boolean isExact() {
+    return false;
+  } // isExact()
+
+  /**
+   * Integers, in their natural order.  Flipping the sign bit makes the
+   * unsigned order of the prefixes the signed order of the keys.
+   */
+  public static final KeyNormalizer<Integer> INTEGER = new KeyNormalizer<Integer>() {
+    @Override
+    public long normalize(Integer key) {
+      return key ^ Long.MIN_VALUE;
+    } // normalize(Integer)
+
+    @Override
+    public boolean isExact() {
+      return true;
+    } // isExact()
+  };
+
+  /**
+   * Longs, in their natural order.
+   */
+  public static final KeyNormalizer<Long> LONG = new KeyNormalizer<Long>() {
+    @Override
+    public long normalize(Long key) {
+      return key ^ Long.MIN_VALUE;
+    } // normalize(Long)
+
+    @Override
+    public boolean isExact() {
+      return true;
+    } // isExact()
+  };
+
+  /**
+   * Strings, in their natural order: the first nine chars, seven bits
+   * each, so that ASCII keys need to share nine chars to tie.  A char
+   * beyond ASCII is recorded as 127, and ends the prefix, as does the end
+   * of the string.
+   */
+  public static final KeyNormalizer<String> STRING = (key) -> {
+    int n = Math.min(key.length(), 9);
+    long prefix = 0;
+    int i = 0;
+    while (i < n) {
+      char c = key.charAt(i++);
+      if (c >= 127) {
+        prefix = (prefix << 7) | 127;
+        break;
+      } // if
+      prefix = (prefix << 7) | c;
+    } // while
+    return prefix << (7 * (9 - i));
+  };
+
+  /**
+   * Byte arrays, in the order of Arrays.compareUnsigned: the first eight
+   * bytes, big-endian, padded with zeros.
+   */
+  public static final KeyNormalizer<byte[]> BYTES = (key) -> {
+    long prefix = 0;
+    for (int i = 0; i < 8; i++) {
+      prefix = (prefix << 8) | ((i < key.length) ? (key[i] & 0xFF) : 0);
+    } // for
+    return prefix;
+  };
+
+} // interface KeyNormalizer
@@ -0,0 +1,134 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A strategy for picking the heights of new skip list nodes.
+ */
+public interface LevelGenerator {
+
+  /**
+   * Pick a height for a new node.
+   *
+   * @pre maxLevel >= 1
+   * @returns a height between 1 and maxLevel (inclusive), chosen so that
+   *          a node reaches level i+1 with probability probability() once
+   *          it has reached level i
+   */
+  public int nextLevel(int maxLevel);
+
+  /**
+   * The probability that a node at some level also appears at the next one.
+   */
+  public default double probability() {
+    return 0.5;
+  } // probability()
+
+  // +-----------+---------------------------------------------------
+  // | Factories |
+  // +-----------+
+
+  /**
+   * A fast generator (p = 1/2) that uses the trailing zeros of a single
+   * random long, drawn from a thread-local source.
+   */
+  public static LevelGenerator fast() {
+    return FastLevelGenerator.INSTANCE;
+  } // fast()
+
+  /**
+   * A deterministic generator (p = 1/2), useful for reproducible benchmarks.
+   */
+  public static LevelGenerator seeded(long seed) {
+    return new SeededLevelGenerator(seed);
+  } // seeded(long)
+
+  /**
+   * A deterministic generator for an arbitrary probability.
+   */
+  public static LevelGenerator geometric(double prob, long seed) {
+    if (!(prob > 0.0 && prob < 1.0)) {
+      throw new IllegalArgumentException("probability must be in (0,1)");
+    } // if
+    return new GeometricLevelGenerator(prob, seed);
+  } // geometric(double, long)
+
+} // interface LevelGenerator
+
+
+/**
+ * Heights from the trailing zeros of a thread-local random long.
+ */
+class FastLevelGenerator implements LevelGenerator {
+
+  /**
+   * The only instance we need; the generator keeps no state of its own.
+   */
+  static final FastLevelGenerator INSTANCE = new FastLevelGenerator();
+
+  @Override
+  public int nextLevel(int maxLevel) {
+    int level = Long.numberOfTrailingZeros(ThreadLocalRandom.current().nextLong()) + 1;
+    return Math.min(level, maxLevel);
+  } // nextLevel(int)
+
+} // FastLevelGenerator
+
+
+/**
+ * Heights from the trailing zeros of a seeded random long.
+ */
+class SeededLevelGenerator implements LevelGenerator {
+
+  /**
+   * The source of random bits.
+   */
+  SplittableRandom random;
+
+  SeededLevelGenerator(long seed) {
+    this.random = new SplittableRandom(seed);
+  } // SeededLevelGenerator(long)
+
+  @Override
+  public int nextLevel(int maxLevel) {
+    int level = Long.numberOfTrailingZeros(this.random.nextLong()) + 1;
+    return Math.min(level, maxLevel);
+  } // nextLevel(int)
+
+} // SeededLevelGenerator
+
+
+/**
+ * Heights from repeated coin flips with an arbitrary probability.
+ */
+class GeometricLevelGenerator implements LevelGenerator {
+
+  /**
+   * The probability of going up another level.
+   */
+  double prob;
+
+  /**
+   * The source of random numbers.
+   */
+  SplittableRandom random;
+
+  GeometricLevelGenerator(double prob, long seed) {
+    this.prob = prob;
+    this.random = new SplittableRandom(seed);
+  } // GeometricLevelGenerator(double, long)
+
+  @Override
+  public int nextLevel(int maxLevel) {
+    int level = 1;
+    while (level < maxLevel && this.random.nextDouble() < this.prob) {
+      level++;
+    } // while
+    return level;
+  } // nextLevel(int)
+
+  @Override
+  public double probability() {
+    return this.prob;
+  } // probability()
+
+} // GeometricLevelGenerator
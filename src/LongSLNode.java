@@ -0,0 +1,38 @@
+/**
+ * Nodes in a LongSkipList.
+ */
+class LongSLNode<V> {
+
+  /**
+   * The key.
+   */
+  long key;
+
+  /**
+   * The value.
+   */
+  V value;
+
+  /**
+   * Pointers to the next nodes, one per level.
+   */
+  LongSLNode<V>[] next;
+
+  /**
+   * Create a new node of height n with the specified key and value.
+   */
+  LongSLNode(long key, V value, int n) {
+    this.key = key;
+    this.value = value;
+    this.next = links(n);
+  } // LongSLNode(long, V, int)
+
+  /**
+   * Make an empty array of n links.
+   */
+  @SuppressWarnings("unchecked")
+  static <V> LongSLNode<V>[] links(int n) {
+    return (LongSLNode<V>[]) new LongSLNode<?>[n];
+  } // links(int)
+
+} // LongSLNode<V>
@@ -0,0 +1,298 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
+/**
+ * A skip list keyed by primitive longs.  Keys live in the nodes as plain
+ * longs and are compared with <, so lookups neither box nor call a
+ * Comparator.
+ */
+public class LongSkipList<V> implements SimpleMap<Long, V> {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * A permanent sentinel whose links point to the front elements.
+   */
+  LongSLNode<V> head;
+
+  /**
+   * Scratch space for set and remove: the last node before the key on
+   * each level.
+   */
+  LongSLNode<V>[] preds;
+
+  /**
+   * The number of values in the list.
+   */
+  int size;
+
+  /**
+   * The current height of the skiplist.
+   */
+  int height;
+
+  /**
+   * The largest height a new node may currently have.  Grows with size.
+   */
+  int maxHeight;
+
+  /**
+   * The size at which we next raise maxHeight.
+   */
+  double growAt;
+
+  /**
+   * The generator used to determine the height of nodes.
+   */
+  LevelGenerator levels;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new skip list that picks node heights with the specified generator.
+   */
+  public LongSkipList(LevelGenerator levels) {
+    this.head = new LongSLNode<V>(0, null, SkipList.INITIAL_HEIGHT);
+    this.preds = LongSLNode.links(SkipList.INITIAL_HEIGHT);
+    this.levels = levels;
+    this.size = 0;
+    this.height = 0;
+    this.maxHeight = SkipList.INITIAL_HEIGHT;
+    this.growAt = Math.pow(1.0 / levels.probability(), SkipList.INITIAL_HEIGHT);
+  } // LongSkipList(LevelGenerator)
+
+  /**
+   * Create a new, empty, skip list.
+   */
+  public LongSkipList() {
+    this(LevelGenerator.fast());
+  } // LongSkipList()
+
+  // +------------------+--------------------------------------------
+  // | Primitive access |
+  // +------------------+
+
+  /**
+   * Set the value associated with key.
+   *
+   * @returns the value originally associated with the key, or null if the key
+   *          was not originally in the list
+   */
+  public V set(long key, V value) {
+    LongSLNode<V> current = findPredecessors(key);
+    if (current != null && current.key == key) {
+      V cache = current.value;
+      current.value = value;
+      return cache;
+    } // if
+
+    int newLevel = this.levels.nextLevel(this.maxHeight);
+    for (int i = this.height; i < newLevel; i++) {
+      this.preds[i] = this.head;
+    } // for
+    LongSLNode<V> newNode = new LongSLNode<V>(key, value, newLevel);
+    for (int i = 0; i < newLevel; i++) {
+      newNode.next[i] = this.preds[i].next[i];
+      this.preds[i].next[i] = newNode;
+    } // for
+    this.height = Math.max(this.height, newLevel);
+    this.size++;
+    if (this.size >= this.growAt) {
+      grow();
+    } // if
+    return null;
+  } // set(long, V)
+
+  /**
+   * Get the value associated with key.
+   *
+   * @throws IndexOutOfBoundsException if key is not in list
+   */
+  public V get(long key) {
+    LongSLNode<V> found = search(key);
+    if (found != null) {
+      return found.value;
+    } else {
+      throw new IndexOutOfBoundsException("key is not in list");
+    } // if/else
+  } // get(long)
+
+  /**
+   * Determine if key appears in the list.
+   */
+  public boolean containsKey(long key) {
+    return search(key) != null;
+  } // containsKey(long)
+
+  /**
+   * Remove the value associated with key.
+   *
+   * @returns the removed value, or null if key was not in the list
+   */
+  public V remove(long key) {
+    LongSLNode<V> current = findPredecessors(key);
+    if (current == null || current.key != key) {
+      return null;
+    } // if
+    for (int i = 0; i < current.next.length; i++) {
+      this.preds[i].next[i] = current.next[i];
+    } // for
+    while (this.height > 0 && this.head.next[this.height - 1] == null) {
+      this.height--;
+    } // while
+    this.size--;
+    return current.value;
+  } // remove(long)
+
+  /**
+   * Find the node with the given key.
+   *
+   * @returns the node, or null if key is not in the list
+   */
+  public LongSLNode<V> search(long key) {
+    LongSLNode<V> current = this.head;
+    for (int i = this.height - 1; i >= 0; i--) {
+      LongSLNode<V> next = current.next[i];
+      while (next != null && next.key < key) {
+        current = next;
+        next = current.next[i];
+      } // while
+    } // for
+    current = current.next[0];
+    if (current != null && current.key == key) {
+      return current;
+    } else {
+      return null;
+    } // if/else
+  } // search(long)
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  @Override
+  public V set(Long key, V value) {
+    if (key == null) {
+      throw new NullPointerException("Key cannot be null");
+    } // if
+    return set(key.longValue(), value);
+  } // set(Long, V)
+
+  @Override
+  public V get(Long key) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    return get(key.longValue());
+  } // get(Long)
+
+  @Override
+  public int size() {
+    return this.size;
+  } // size()
+
+  @Override
+  public boolean containsKey(Long key) {
+    return containsKey(key.longValue());
+  } // containsKey(Long)
+
+  @Override
+  public V remove(Long key) {
+    if (key == null) {
+      throw new NullPointerException("Key cannot be null");
+    } // if
+    return remove(key.longValue());
+  } // remove(Long)
+
+  @Override
+  public Iterator<Long> keys() {
+    return new Iterator<Long>() {
+      LongSLNode<V> next = LongSkipList.this.head.next[0];
+
+      @Override
+      public boolean hasNext() {
+        return this.next != null;
+      } // hasNext()
+
+      @Override
+      public Long next() {
+        if (this.next == null) {
+          throw new NoSuchElementException();
+        } // if
+        long key = this.next.key;
+        this.next = this.next.next[0];
+        return key;
+      } // next()
+    };
+  } // keys()
+
+  @Override
+  public Iterator<V> values() {
+    return new Iterator<V>() {
+      LongSLNode<V> next = LongSkipList.this.head.next[0];
+
+      @Override
+      public boolean hasNext() {
+        return this.next != null;
+      } // hasNext()
+
+      @Override
+      public V next() {
+        if (this.next == null) {
+          throw new NoSuchElementException();
+        } // if
+        V value = this.next.value;
+        this.next = this.next.next[0];
+        return value;
+      } // next()
+    };
+  } // values()
+
+  @Override
+  public void forEach(BiConsumer<? super Long, ? super V> action) {
+    LongSLNode<V> current = this.head.next[0];
+    while (current != null) {
+      action.accept(current.key, current.value);
+      current = current.next[0];
+    } // while
+  } // forEach(BiConsumer)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the last node before key on each level, recording them in preds.
+   *
+   * @returns the first node whose key is not less than key, or null
+   */
+  LongSLNode<V> findPredecessors(long key) {
+    LongSLNode<V> current = this.head;
+    for (int i = this.height - 1; i >= 0; i--) {
+      LongSLNode<V> next = current.next[i];
+      while (next != null && next.key < key) {
+        current = next;
+        next = current.next[i];
+      } // while
+      this.preds[i] = current;
+    } // for
+    return current.next[0];
+  } // findPredecessors(long)
+
+  /**
+   * Raise the maximum height by one level.
+   */
+  void grow() {
+    this.maxHeight++;
+    this.head.next = Arrays.copyOf(this.head.next, this.maxHeight);
+    this.preds = Arrays.copyOf(this.preds, this.maxHeight);
+    this.growAt *= 1.0 / this.levels.probability();
+  } // grow()
+
+} // class LongSkipList
@@ -0,0 +1,1273 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * A log-structured merge tree: a map that outgrows memory by keeping
+ * recent changes in a SkipList (the memtable) and older ones in immutable
+ * SortedTable files.
+ *
+ * Once the memtable holds memtableLimit pairs it is frozen and a fresh one
+ * takes its place; a background thread writes frozen memtables out as
+ * level-0 tables, newest first.  Removing a key stores a tombstone, which
+ * hides older values until compaction drops it.  Lookups try the memtable,
+ * the frozen memtables, level 0 from newest to oldest, and then one table
+ * per deeper level, skipping tables whose Bloom filter rules the key out.
+ *
+ * Compaction is leveled: when level 0 has L0_TRIGGER tables they are
+ * merged with the level-1 tables they overlap into new level-1 tables of
+ * about tableBytes; when level i (i >= 1) holds more than tableBytes *
+ * LEVEL_RATIO^i bytes, one of its tables (taken in turn across the key
+ * range) is merged into level i+1.  Levels 1 and up never overlap
+ * within themselves.  Writers wait when level 0 reaches L0_STOP tables,
+ * so that lookups stay bounded when writes outpace compaction.
+ *
+ * The MANIFEST file lists the live tables; it is replaced atomically after
+ * each flush or compaction, and files it does not list are deleted when
+ * the store is opened.  The memtables are not logged, so changes not yet
+ * flushed are lost if the process dies; close (or flush) writes them out.
+ *
+ * set and remove return the old value, as SimpleMap requires, so each one
+ * is a lookup as well as a write.  That also keeps size exact.
+ *
+ * The store is safe for concurrent use.  Readers pin the current version
+ * (the memtables and table lists) for the length of a lookup or
+ * iteration, so compaction never deletes a table out from under them.
+ * An iterator dropped part way unpins its version when it is garbage
+ * collected.
+ */
+public class LsmStore<K, V> implements SimpleMap<K, V>, AutoCloseable {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * Stands for a removed key in memtables, tables and lookups.
+   */
+  static final Object TOMBSTONE = new Object();
+
+  /**
+   * The result of a lookup in a part of the store that knows nothing of
+   * the key.
+   */
+  static final Object MISSING = new Object();
+
+  /**
+   * Releases the versions of iterators dropped before they were
+   * exhausted.
+   */
+  static final Cleaner CLEANER = Cleaner.create();
+
+  /**
+   * The name of the file listing the tables.
+   */
+  static final String MANIFEST = "MANIFEST";
+
+  /**
+   * The defaults for the memtable size (in pairs) and table size.
+   */
+  static final int DEFAULT_MEMTABLE_LIMIT = 100000;
+  static final long DEFAULT_TABLE_BYTES = 2 << 20;
+
+  /**
+   * The number of level-0 tables that starts a compaction.
+   */
+  static final int L0_TRIGGER = 4;
+
+  /**
+   * The number of level-0 tables (or frozen memtables) at which writers
+   * wait for the background thread to catch up.
+   */
+  static final int L0_STOP = 12;
+
+  /**
+   * How much larger each level may be than the one above.
+   */
+  static final int LEVEL_RATIO = 10;
+
+  /**
+   * The number of frozen memtables writers may get ahead of the flusher.
+   */
+  static final int MAX_FROZEN = 2;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * Where the tables are, and how to order, read and write keys and values.
+   */
+  final Path dir;
+  final Comparator<K> comparator;
+  final Serializer<K> keys;
+  final Serializer<V> values;
+
+  /**
+   * The sizing settings.
+   */
+  final int memtableLimit;
+  final long tableBytes;
+
+  /**
+   * Guards the fields below, the versions' reference counts and the
+   * tables'.
+   */
+  final ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * Signalled when there may be something to flush or compact.
+   */
+  final Condition work = this.lock.newCondition();
+
+  /**
+   * Signalled when a version is installed (or the store fails).
+   */
+  final Condition changed = this.lock.newCondition();
+
+  /**
+   * Orders changes.  Whoever holds it may write to the current memtable.
+   */
+  final ReentrantLock writeLock = new ReentrantLock();
+
+  /**
+   * The current memtables and tables.
+   */
+  volatile Version<K, V> current;
+
+  /**
+   * The number of the next table.  Only the background thread (or the
+   * constructor, before it starts) numbers tables.
+   */
+  long nextNumber;
+
+  /**
+   * The number of keys.
+   */
+  volatile long size;
+
+  /**
+   * For each level, the largest key of the table last compacted from it.
+   */
+  ArrayList<K> compactFrom = new ArrayList<K>();
+
+  /**
+   * Whether close has begun, and whether it has finished.
+   */
+  boolean closing;
+  boolean closed;
+
+  /**
+   * Why the background thread stopped, if it has failed.
+   */
+  IOException failure;
+
+  /**
+   * The thread that flushes and compacts.
+   */
+  final Thread compactor;
+
+  /**
+   * Metrics.
+   */
+  long flushes;
+  long compactions;
+  long bytesFlushed;
+  long bytesCompacted;
+  long stalls;
+  final LongAdder tableLookups = new LongAdder();
+  final LongAdder bloomSkips = new LongAdder();
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Open (or create) a store in dir.  Memtables are frozen at
+   * memtableLimit pairs, and compaction writes tables of about tableBytes.
+   *
+   * @throws IOException if the directory or its tables cannot be read
+   */
+  public LsmStore(Path dir, Comparator<K> comparator, Serializer<K> keys, Serializer<V> values,
+      int memtableLimit, long tableBytes) throws IOException {
+    this.dir = dir;
+    this.comparator = comparator;
+    this.keys = keys;
+    this.values = values;
+    this.memtableLimit = memtableLimit;
+    this.tableBytes = tableBytes;
+    this.nextNumber = 1;
+    Files.createDirectories(dir);
+
+    List<List<SortedTable<K, V>>> levels = new ArrayList<List<SortedTable<K, V>>>();
+    long storedSize = -1;
+    ArrayList<Path> live = new ArrayList<Path>();
+    Path manifest = dir.resolve(MANIFEST);
+    try {
+      if (Files.exists(manifest)) {
+        for (String line : Files.readAllLines(manifest)) {
+          String[] parts = line.split(" ");
+          switch (parts[0]) {
+            case "next":
+              this.nextNumber = Long.parseLong(parts[1]);
+              break;
+            case "size":
+              storedSize = Long.parseLong(parts[1]);
+              break;
+            case "table":
+              int level = Integer.parseInt(parts[1]);
+              long number = Long.parseLong(parts[2]);
+              while (levels.size() <= level) {
+                levels.add(new ArrayList<SortedTable<K, V>>());
+              } // while
+              Path file = tableFile(number);
+              levels.get(level).add(new SortedTable<K, V>(number, file, comparator, keys, values));
+              live.add(file);
+              break;
+            default:
+              throw new IOException("unknown MANIFEST line " + line);
+          } // switch
+        } // for
+      } // if
+      // Tables a crash left behind
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.{sst,tmp}")) {
+        for (Path file : files) {
+          if (!live.contains(file)) {
+            Files.delete(file);
+          } // if
+        } // for
+      } // try
+    } catch (IOException | RuntimeException e) {
+      for (List<SortedTable<K, V>> level : levels) {
+        for (SortedTable<K, V> table : level) {
+          table.close(false);
+        } // for
+      } // for
+      throw e;
+    } // try/catch
+
+    this.current = new Version<K, V>(newMemtable(), Collections.emptyList(), levels);
+    for (SortedTable<K, V> table : this.current.tables()) {
+      table.refs++;
+    } // for
+    if (storedSize >= 0) {
+      this.size = storedSize;
+    } else {
+      // Not closed cleanly: count the survivors
+      long count = 0;
+      for (Iterator<K> it = keys(); it.hasNext(); it.next()) {
+        count++;
+      } // for
+      this.size = count;
+    } // if/else
+    this.lock.lock();
+    try {
+      writeManifest(this.current, -1);
+    } finally {
+      this.lock.unlock();
+    } // try/finally
+    this.compactor = new Thread(this::compactLoop, "LsmStore compactor");
+    this.compactor.setDaemon(true);
+    this.compactor.start();
+  } // LsmStore(Path, Comparator<K>, Serializer<K>, Serializer<V>, int, long)
+
+  /**
+   * Open (or create) a store in dir with the default sizes.
+   *
+   * @throws IOException if the directory or its tables cannot be read
+   */
+  public LsmStore(Path dir, Comparator<K> comparator, Serializer<K> keys, Serializer<V> values)
+      throws IOException {
+    this(dir, comparator, keys, values, DEFAULT_MEMTABLE_LIMIT, DEFAULT_TABLE_BYTES);
+  } // LsmStore(Path, Comparator<K>, Serializer<K>, Serializer<V>)
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  /**
+   * Set the value associated with key.
+   *
+   * @returns the old value, or null if there was none
+   * @throws UncheckedIOException if the store has failed
+   * @throws IllegalStateException if the store is closed
+   */
+  @Override
+  public V set(K key, V value) {
+    if (key == null) {
+      throw new NullPointerException("Key cannot be null");
+    } // if
+    this.writeLock.lock();
+    try {
+      checkWritable();
+      Object old = lookup(key);
+      this.current.active.set(key, value);
+      if (old == MISSING || old == TOMBSTONE) {
+        this.size++;
+        old = null;
+      } // if
+      maybeFreeze();
+      return cast(old);
+    } finally {
+      this.writeLock.unlock();
+    } // try/finally
+  } // set(K, V)
+
+  /**
+   * Get the value associated with key.
+   *
+   * @throws IndexOutOfBoundsException if key is not in the store
+   * @throws UncheckedIOException if a table cannot be read
+   */
+  @Override
+  public V get(K key) {
+    Object found = lookup(key);
+    if (found == MISSING || found == TOMBSTONE) {
+      throw new IndexOutOfBoundsException("key is not in store");
+    } // if
+    return cast(found);
+  } // get(K)
+
+  @Override
+  public int size() {
+    return (int) Math.min(Integer.MAX_VALUE, this.size);
+  } // size()
+
+  @Override
+  public boolean containsKey(K key) {
+    Object found = lookup(key);
+    return found != MISSING && found != TOMBSTONE;
+  } // containsKey(K)
+
+  /**
+   * Remove the pair with the given key, leaving a tombstone.
+   *
+   * @returns the removed value, or null if the key was not there
+   * @throws UncheckedIOException if the store has failed
+   * @throws IllegalStateException if the store is closed
+   */
+  @Override
+  public V remove(K key) {
+    if (key == null) {
+      throw new NullPointerException("Key cannot be null");
+    } // if
+    this.writeLock.lock();
+    try {
+      checkWritable();
+      Object old = lookup(key);
+      if (old == MISSING || old == TOMBSTONE) {
+        return null;
+      } // if
+      this.current.active.set(key, TOMBSTONE);
+      this.size--;
+      maybeFreeze();
+      return cast(old);
+    } finally {
+      this.writeLock.unlock();
+    } // try/finally
+  } // remove(K)
+
+  /**
+   * Iterate over the keys, in order, as of the call.  The iterator pins
+   * the tables it reads until it is exhausted or garbage collected.
+   */
+  @Override
+  public Iterator<K> keys() {
+    Iterator<Map.Entry<K, Object>> entries = entries();
+    return new Iterator<K>() {
+      @Override
+      public boolean hasNext() {
+        return entries.hasNext();
+      } // hasNext()
+
+      @Override
+      public K next() {
+        return entries.next().getKey();
+      } // next()
+    };
+  } // keys()
+
+  /**
+   * Iterate over the values, in key order, as of the call.  The iterator
+   * pins the tables it reads until it is exhausted or garbage collected.
+   */
+  @Override
+  public Iterator<V> values() {
+    Iterator<Map.Entry<K, Object>> entries = entries();
+    return new Iterator<V>() {
+      @Override
+      public boolean hasNext() {
+        return entries.hasNext();
+      } // hasNext()
+
+      @Override
+      public V next() {
+        return cast(entries.next().getValue());
+      } // next()
+    };
+  } // values()
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    try (EntryIterator entries = entries()) {
+      while (entries.hasNext()) {
+        Map.Entry<K, Object> entry = entries.next();
+        action.accept(entry.getKey(), cast(entry.getValue()));
+      } // while
+    } // try
+  } // forEach(BiConsumer)
+
+  // +----------------------+----------------------------------------
+  // | Other public methods |
+  // +----------------------+
+
+  /**
+   * Write the memtable out as a table and wait until every frozen memtable
+   * has been flushed, so that all changes so far are on the disk.
+   *
+   * @throws IOException if the background thread has failed
+   */
+  public void flush() throws IOException {
+    this.writeLock.lock();
+    try {
+      this.lock.lock();
+      try {
+        checkWritable();
+        if (this.current.active.size() > 0) {
+          awaitRoom();
+          freeze();
+        } // if
+        while (!this.current.frozen.isEmpty() && this.failure == null) {
+          this.changed.awaitUninterruptibly();
+        } // while
+        if (this.failure != null) {
+          throw this.failure;
+        } // if
+      } finally {
+        this.lock.unlock();
+      } // try/finally
+    } finally {
+      this.writeLock.unlock();
+    } // try/finally
+  } // flush()
+
+  /**
+   * Flush the memtable, stop the background thread, record the size and
+   * close the tables.
+   *
+   * @throws IOException if the background thread failed
+   */
+  @Override
+  public void close() throws IOException {
+    this.writeLock.lock();
+    try {
+      this.lock.lock();
+      try {
+        if (this.closing) {
+          return;
+        } // if
+        if (this.failure == null && this.current.active.size() > 0) {
+          freeze();
+        } // if
+        this.closing = true;
+        this.work.signal();
+      } finally {
+        this.lock.unlock();
+      } // try/finally
+      boolean interrupted = false;
+      while (this.compactor.isAlive()) {
+        try {
+          this.compactor.join();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } // try/catch
+      } // while
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      } // if
+      this.lock.lock();
+      try {
+        if (this.failure == null) {
+          writeManifest(this.current, this.size);
+        } // if
+        this.closed = true;
+        release(this.current);
+      } finally {
+        this.lock.unlock();
+      } // try/finally
+    } finally {
+      this.writeLock.unlock();
+    } // try/finally
+    if (this.failure != null) {
+      throw this.failure;
+    } // if
+  } // close()
+
+  /**
+   * Determine how many tables each level holds.
+   */
+  public int[] tableCounts() {
+    Version<K, V> version = this.current;
+    int[] counts = new int[version.levels.size()];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = version.levels.get(i).size();
+    } // for
+    return counts;
+  } // tableCounts()
+
+  /**
+   * Determine how many memtables have been flushed and how many
+   * compactions run.
+   */
+  public long flushes() {
+    return this.flushes;
+  } // flushes()
+
+  public long compactions() {
+    return this.compactions;
+  } // compactions()
+
+  /**
+   * Determine how many times writers had to wait for the background
+   * thread.
+   */
+  public long stalls() {
+    return this.stalls;
+  } // stalls()
+
+  /**
+   * Determine the write amplification so far: bytes written to tables
+   * by flushes and compactions, per byte flushed.
+   */
+  public double writeAmplification() {
+    return (this.bytesFlushed == 0) ? 0
+        : (double) (this.bytesFlushed + this.bytesCompacted) / this.bytesFlushed;
+  } // writeAmplification()
+
+  /**
+   * Determine how many times lookups consulted a table, and how many of
+   * those the Bloom filter answered without reading a block.
+   */
+  public long tableLookups() {
+    return this.tableLookups.sum();
+  } // tableLookups()
+
+  public long bloomSkips() {
+    return this.bloomSkips.sum();
+  } // bloomSkips()
+
+  // +---------+-----------------------------------------------------
+  // | Lookups |
+  // +---------+
+
+  /**
+   * Find what the store says about key.
+   *
+   * @returns the value (possibly null), TOMBSTONE or MISSING
+   */
+  Object lookup(K key) {
+    if (key == null) {
+      throw new NullPointerException("Key cannot be null");
+    } // if
+    Version<K, V> version = acquire();
+    try {
+      SynchronizedSkipList<K, Object> active = version.active;
+      if (active.containsKey(key)) {
+        // Memtables only ever gain keys, so this cannot miss
+        return active.get(key);
+      } // if
+      for (SkipList<K, Object> memtable : version.frozen) {
+        SLNode<K, Object> node = memtable.search(key);
+        if (node != null) {
+          return node.value;
+        } // if
+      } // for
+      long hash = 0;
+      boolean hashed = false;
+      for (int i = 0; i < version.levels.size(); i++) {
+        List<SortedTable<K, V>> level = version.levels.get(i);
+        int from = 0;
+        int to = level.size();
+        if (i > 0) {
+          // Only one table in a deeper level can hold the key
+          from = firstEndingAtOrAfter(level, key);
+          to = Math.min(to, from + 1);
+        } // if
+        for (int t = from; t < to; t++) {
+          SortedTable<K, V> table = level.get(t);
+          if (!table.overlaps(key, key)) {
+            continue;
+          } // if
+          if (!hashed) {
+            hash = SortedTable.hash(key, this.keys);
+            hashed = true;
+          } // if
+          this.tableLookups.increment();
+          if (!table.mightContain(hash)) {
+            this.bloomSkips.increment();
+            continue;
+          } // if
+          Object found = table.find(key, hash);
+          if (found != MISSING) {
+            return found;
+          } // if
+        } // for
+      } // for
+      return MISSING;
+    } finally {
+      release(version);
+    } // try/finally
+  } // lookup(K)
+
+  /**
+   * Iterate over the live pairs, as of the call.
+   */
+  EntryIterator entries() {
+    Version<K, V> version = acquire();
+    try {
+      return new EntryIterator(version, merge(version, false));
+    } catch (RuntimeException e) {
+      release(version);
+      throw e;
+    } // try/catch
+  } // entries()
+
+  /**
+   * An iterator over the live pairs of a version, which it pins until it
+   * is exhausted or closed.  One dropped before then is released once the
+   * garbage collector finds it, so that it cannot hold the version's
+   * tables forever.
+   */
+  class EntryIterator implements Iterator<Map.Entry<K, Object>>, AutoCloseable {
+
+    /**
+     * Everything in the version, tombstones included.
+     */
+    final Iterator<Map.Entry<K, Object>> merged;
+
+    /**
+     * Releases the version, once.
+     */
+    final Cleaner.Cleanable cleanable;
+
+    /**
+     * The next live pair, or null at the end.
+     */
+    Map.Entry<K, Object> next;
+
+    EntryIterator(Version<K, V> version, Iterator<Map.Entry<K, Object>> merged) {
+      this.merged = merged;
+      // The action must not refer to us, or we would never be collected
+      LsmStore<K, V> store = LsmStore.this;
+      this.cleanable = CLEANER.register(this, () -> store.release(version));
+      this.next = advance();
+    } // EntryIterator(Version<K, V>, Iterator<Map.Entry<K, Object>>)
+
+    @Override
+    public boolean hasNext() {
+      return this.next != null;
+    } // hasNext()
+
+    @Override
+    public Map.Entry<K, Object> next() {
+      if (this.next == null) {
+        throw new NoSuchElementException();
+      } // if
+      Map.Entry<K, Object> result = this.next;
+      this.next = advance();
+      return result;
+    } // next()
+
+    /**
+     * Release the version early.  The iterator ends there.
+     */
+    @Override
+    public void close() {
+      this.next = null;
+      this.cleanable.clean();
+    } // close()
+
+    /**
+     * Find the next live pair, releasing the version at the end.
+     */
+    Map.Entry<K, Object> advance() {
+      while (this.merged.hasNext()) {
+        Map.Entry<K, Object> entry = this.merged.next();
+        if (entry.getValue() != TOMBSTONE) {
+          return entry;
+        } // if
+      } // while
+      this.cleanable.clean();
+      return null;
+    } // advance()
+
+  } // class EntryIterator
+
+  /**
+   * Merge everything in a version, tombstones included, newest first for
+   * equal keys.  If tablesOnly, skip the memtables.
+   */
+  Iterator<Map.Entry<K, Object>> merge(Version<K, V> version, boolean tablesOnly) {
+    ArrayList<Iterator<? extends Map.Entry<K, Object>>> sources =
+        new ArrayList<Iterator<? extends Map.Entry<K, Object>>>();
+    if (!tablesOnly) {
+      // The active memtable keeps changing, so iterate over a copy
+      ArrayList<Map.Entry<K, Object>> copy = new ArrayList<Map.Entry<K, Object>>();
+      version.active.forEach((key, value) ->
+          copy.add(new AbstractMap.SimpleImmutableEntry<K, Object>(key, value)));
+      sources.add(copy.iterator());
+      for (SkipList<K, Object> memtable : version.frozen) {
+        sources.add(memtable.nodes());
+      } // for
+    } // if
+    for (int i = 0; i < version.levels.size(); i++) {
+      if (i == 0) {
+        for (SortedTable<K, V> table : version.levels.get(0)) {
+          sources.add(table.iterator());
+        } // for
+      } else {
+        sources.add(concat(version.levels.get(i)));
+      } // if/else
+    } // for
+    return new MergingIterator<K>(this.comparator, sources);
+  } // merge(Version<K, V>, boolean)
+
+  // +------------+--------------------------------------------------
+  // | Compaction |
+  // +------------+
+
+  /**
+   * What the background thread does: flush frozen memtables, oldest
+   * first, and compact while any level is over its limit.
+   */
+  void compactLoop() {
+    this.lock.lock();
+    try {
+      while (this.failure == null) {
+        Version<K, V> version = this.current;
+        try {
+          if (!version.frozen.isEmpty()) {
+            flushOldest(version);
+            continue;
+          } // if
+          Compaction<K, V> compaction = this.closing ? null : pickCompaction(version);
+          if (compaction != null) {
+            compact(compaction);
+            continue;
+          } // if
+        } catch (IOException | UncheckedIOException e) {
+          this.failure = (e instanceof IOException) ? (IOException) e
+              : ((UncheckedIOException) e).getCause();
+          this.changed.signalAll();
+          return;
+        } // try/catch
+        if (this.closing) {
+          return;
+        } // if
+        this.work.awaitUninterruptibly();
+      } // while
+    } finally {
+      this.lock.unlock();
+    } // try/finally
+  } // compactLoop()
+
+  /**
+   * Write the oldest frozen memtable out as a level-0 table.
+   *
+   * @pre the lock is held
+   */
+  void flushOldest(Version<K, V> version) throws IOException {
+    SkipList<K, Object> memtable = version.frozen.get(version.frozen.size() - 1);
+    long number = this.nextNumber;
+    List<SortedTable<K, V>> output;
+    this.lock.unlock();
+    try {
+      output = write(memtable.nodes(), number, false, Long.MAX_VALUE);
+    } finally {
+      this.lock.lock();
+    } // try/finally
+    this.nextNumber = number + output.size();
+    Version<K, V> now = this.current;
+    List<SkipList<K, Object>> frozen = new ArrayList<SkipList<K, Object>>(now.frozen);
+    frozen.remove(memtable);
+    List<List<SortedTable<K, V>>> levels = now.copyLevels(1);
+    levels.get(0).addAll(0, output);
+    this.flushes++;
+    for (SortedTable<K, V> table : output) {
+      this.bytesFlushed += table.bytes;
+    } // for
+    install(new Version<K, V>(now.active, frozen, levels));
+  } // flushOldest(Version<K, V>)
+
+  /**
+   * The tables one compaction merges.
+   */
+  static class Compaction<K, V> {
+    int level;
+    List<SortedTable<K, V>> inputs;
+    List<SortedTable<K, V>> overlaps;
+  } // class Compaction<K, V>
+
+  /**
+   * Decide what to compact next, if anything.
+   *
+   * @pre the lock is held
+   */
+  Compaction<K, V> pickCompaction(Version<K, V> version) {
+    List<List<SortedTable<K, V>>> levels = version.levels;
+    Compaction<K, V> compaction = new Compaction<K, V>();
+    if (!levels.isEmpty() && levels.get(0).size() >= L0_TRIGGER) {
+      compaction.level = 0;
+      compaction.inputs = new ArrayList<SortedTable<K, V>>(levels.get(0));
+    } else {
+      long limit = this.tableBytes;
+      for (int i = 1; i < levels.size() && compaction.inputs == null; i++) {
+        limit *= LEVEL_RATIO;
+        long bytes = 0;
+        for (SortedTable<K, V> table : levels.get(i)) {
+          bytes += table.bytes;
+        } // for
+        if (bytes > limit) {
+          compaction.level = i;
+          compaction.inputs = Collections.singletonList(nextToCompact(levels.get(i), i));
+        } // if
+      } // for
+      if (compaction.inputs == null) {
+        return null;
+      } // if
+    } // if/else
+    K from = compaction.inputs.get(0).smallest;
+    K to = compaction.inputs.get(0).largest;
+    for (SortedTable<K, V> table : compaction.inputs) {
+      from = (this.comparator.compare(table.smallest, from) < 0) ? table.smallest : from;
+      to = (this.comparator.compare(table.largest, to) > 0) ? table.largest : to;
+    } // for
+    compaction.overlaps = new ArrayList<SortedTable<K, V>>();
+    if (compaction.level + 1 < levels.size()) {
+      for (SortedTable<K, V> table : levels.get(compaction.level + 1)) {
+        if (table.overlaps(from, to)) {
+          compaction.overlaps.add(table);
+        } // if
+      } // for
+    } // if
+    return compaction;
+  } // pickCompaction(Version<K, V>)
+
+  /**
+   * Pick the table of a level that follows the one compacted last, so that
+   * compaction sweeps the key range.
+   *
+   * @pre the lock is held
+   */
+  SortedTable<K, V> nextToCompact(List<SortedTable<K, V>> level, int i) {
+    while (this.compactFrom.size() <= i) {
+      this.compactFrom.add(null);
+    } // while
+    K last = this.compactFrom.get(i);
+    SortedTable<K, V> chosen = level.get(0);
+    if (last != null) {
+      for (SortedTable<K, V> table : level) {
+        if (this.comparator.compare(table.smallest, last) > 0) {
+          chosen = table;
+          break;
+        } // if
+      } // for
+    } // if
+    this.compactFrom.set(i, chosen.largest);
+    return chosen;
+  } // nextToCompact(List<SortedTable<K, V>>, int)
+
+  /**
+   * Merge a compaction's tables into the next level.
+   *
+   * @pre the lock is held
+   */
+  void compact(Compaction<K, V> compaction) throws IOException {
+    int target = compaction.level + 1;
+    // Tombstones can go if no deeper level could hold what they hide
+    boolean dropTombstones = true;
+    for (int i = target + 1; i < this.current.levels.size(); i++) {
+      dropTombstones &= this.current.levels.get(i).isEmpty();
+    } // for
+    long number = this.nextNumber;
+    ArrayList<Iterator<? extends Map.Entry<K, Object>>> sources =
+        new ArrayList<Iterator<? extends Map.Entry<K, Object>>>();
+    for (SortedTable<K, V> table : compaction.inputs) {
+      sources.add(table.iterator());
+    } // for
+    sources.add(concat(compaction.overlaps));
+    List<SortedTable<K, V>> output;
+    this.lock.unlock();
+    try {
+      output = write(new MergingIterator<K>(this.comparator, sources), number, dropTombstones,
+          this.tableBytes);
+    } finally {
+      this.lock.lock();
+    } // try/finally
+    this.nextNumber = number + output.size();
+    Version<K, V> now = this.current;
+    List<List<SortedTable<K, V>>> levels = now.copyLevels(target + 1);
+    levels.get(compaction.level).removeAll(compaction.inputs);
+    levels.get(target).removeAll(compaction.overlaps);
+    levels.get(target).addAll(output);
+    levels.get(target).sort((a, b) -> this.comparator.compare(a.smallest, b.smallest));
+    this.compactions++;
+    for (SortedTable<K, V> table : output) {
+      this.bytesCompacted += table.bytes;
+    } // for
+    install(new Version<K, V>(now.active, now.frozen, levels));
+  } // compact(Compaction<K, V>)
+
+  /**
+   * Write pairs out as tables of about maxBytes each.
+   *
+   * @returns the tables, opened
+   */
+  List<SortedTable<K, V>> write(Iterator<? extends Map.Entry<K, Object>> pairs, long number,
+      boolean dropTombstones, long maxBytes) throws IOException {
+    ArrayList<SortedTable<K, V>> output = new ArrayList<SortedTable<K, V>>();
+    SortedTable.Writer<K, V> writer = null;
+    try {
+      while (pairs.hasNext()) {
+        Map.Entry<K, Object> pair = pairs.next();
+        if (dropTombstones && pair.getValue() == TOMBSTONE) {
+          continue;
+        } // if
+        if (writer == null) {
+          writer = new SortedTable.Writer<K, V>(tableFile(number), this.keys, this.values);
+        } // if
+        writer.add(pair.getKey(), pair.getValue());
+        if (writer.bytes() >= maxBytes) {
+          writer.finish();
+          output.add(open(number++));
+          writer = null;
+        } // if
+      } // while
+      if (writer != null) {
+        writer.finish();
+        output.add(open(number));
+        writer = null;
+      } // if
+    } catch (IOException | RuntimeException e) {
+      if (writer != null) {
+        writer.abandon();
+      } // if
+      for (SortedTable<K, V> table : output) {
+        table.close(true);
+      } // for
+      throw e;
+    } // try/catch
+    return output;
+  } // write(Iterator, long, boolean, long)
+
+  // +----------+----------------------------------------------------
+  // | Versions |
+  // +----------+
+
+  /**
+   * An immutable view of the store's parts.
+   */
+  static class Version<K, V> {
+    /**
+     * The memtable that takes changes.
+     */
+    final SynchronizedSkipList<K, Object> active;
+
+    /**
+     * Frozen memtables, newest first.
+     */
+    final List<SkipList<K, Object>> frozen;
+
+    /**
+     * The tables, level by level: level 0 newest first, the others in key
+     * order.
+     */
+    final List<List<SortedTable<K, V>>> levels;
+
+    /**
+     * The number of users (the store, while current, and readers).
+     * Guarded by the store's lock.
+     */
+    int refs = 1;
+
+    Version(SynchronizedSkipList<K, Object> active, List<SkipList<K, Object>> frozen,
+        List<List<SortedTable<K, V>>> levels) {
+      this.active = active;
+      this.frozen = frozen;
+      this.levels = levels;
+    } // Version(SynchronizedSkipList, List, List)
+
+    /**
+     * Copy the table lists, with at least count levels.
+     */
+    List<List<SortedTable<K, V>>> copyLevels(int count) {
+      List<List<SortedTable<K, V>>> copy = new ArrayList<List<SortedTable<K, V>>>();
+      for (List<SortedTable<K, V>> level : this.levels) {
+        copy.add(new ArrayList<SortedTable<K, V>>(level));
+      } // for
+      while (copy.size() < count) {
+        copy.add(new ArrayList<SortedTable<K, V>>());
+      } // while
+      return copy;
+    } // copyLevels(int)
+
+    /**
+     * List all the tables.
+     */
+    List<SortedTable<K, V>> tables() {
+      List<SortedTable<K, V>> all = new ArrayList<SortedTable<K, V>>();
+      for (List<SortedTable<K, V>> level : this.levels) {
+        all.addAll(level);
+      } // for
+      return all;
+    } // tables()
+  } // class Version<K, V>
+
+  /**
+   * Pin the current version.
+   *
+   * @throws IllegalStateException if the store is closed
+   */
+  Version<K, V> acquire() {
+    this.lock.lock();
+    try {
+      if (this.closed) {
+        throw new IllegalStateException("store is closed");
+      } // if
+      Version<K, V> version = this.current;
+      version.refs++;
+      return version;
+    } finally {
+      this.lock.unlock();
+    } // try/finally
+  } // acquire()
+
+  /**
+   * Unpin a version.  Tables no version uses any more are closed, and
+   * deleted unless the store is closing.
+   */
+  void release(Version<K, V> version) {
+    this.lock.lock();
+    try {
+      if (--version.refs == 0) {
+        for (SortedTable<K, V> table : version.tables()) {
+          if (--table.refs == 0) {
+            table.close(!this.closed);
+          } // if
+        } // for
+      } // if
+    } finally {
+      this.lock.unlock();
+    } // try/finally
+  } // release(Version<K, V>)
+
+  /**
+   * Make next the current version, recording its tables in the MANIFEST
+   * first.
+   *
+   * @pre the lock is held
+   */
+  void install(Version<K, V> next) throws IOException {
+    writeManifest(next, -1);
+    for (SortedTable<K, V> table : next.tables()) {
+      table.refs++;
+    } // for
+    Version<K, V> old = this.current;
+    this.current = next;
+    release(old);
+    this.changed.signalAll();
+  } // install(Version<K, V>)
+
+  /**
+   * Freeze the active memtable, waiting if the flusher is too far behind.
+   *
+   * @pre the write lock is held
+   */
+  void maybeFreeze() {
+    if (this.current.active.size() < this.memtableLimit) {
+      return;
+    } // if
+    this.lock.lock();
+    try {
+      awaitRoom();
+      if (this.failure == null) {
+        freeze();
+      } // if
+    } finally {
+      this.lock.unlock();
+    } // try/finally
+  } // maybeFreeze()
+
+  /**
+   * Wait until there is room for another frozen memtable: the flusher is
+   * at most MAX_FROZEN memtables behind, and level 0 is below L0_STOP.
+   *
+   * @pre the write lock and the lock are held
+   */
+  void awaitRoom() {
+    boolean stalled = false;
+    while (this.failure == null && (this.current.frozen.size() >= MAX_FROZEN
+        || (!this.current.levels.isEmpty() && this.current.levels.get(0).size() >= L0_STOP))) {
+      stalled = true;
+      this.changed.awaitUninterruptibly();
+    } // while
+    if (stalled) {
+      this.stalls++;
+    } // if
+  } // awaitRoom()
+
+  /**
+   * Replace the active memtable with a fresh one and hand it to the
+   * flusher.
+   *
+   * @pre the write lock and the lock are held
+   */
+  void freeze() {
+    Version<K, V> now = this.current;
+    List<SkipList<K, Object>> frozen = new ArrayList<SkipList<K, Object>>();
+    frozen.add((SkipList<K, Object>) now.active.map);
+    frozen.addAll(now.frozen);
+    Version<K, V> next = new Version<K, V>(newMemtable(), frozen, now.levels);
+    for (SortedTable<K, V> table : next.tables()) {
+      table.refs++;
+    } // for
+    this.current = next;
+    release(now);
+    this.work.signal();
+  } // freeze()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Record a version's tables (and, if it is known, the size) in the
+   * MANIFEST, replacing it atomically.  The directory is forced too, so
+   * that the rename (and the new tables' names) survive a crash.
+   *
+   * @pre the lock is held
+   */
+  void writeManifest(Version<K, V> version, long size) throws IOException {
+    StringBuilder text = new StringBuilder();
+    text.append("next ").append(this.nextNumber).append('\n');
+    text.append("size ").append(size).append('\n');
+    for (int i = 0; i < version.levels.size(); i++) {
+      for (SortedTable<K, V> table : version.levels.get(i)) {
+        text.append("table ").append(i).append(' ').append(table.number).append('\n');
+      } // for
+    } // for
+    Path tmp = this.dir.resolve(MANIFEST + ".tmp");
+    Files.writeString(tmp, text);
+    try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+      channel.force(true);
+    } // try
+    Files.move(tmp, this.dir.resolve(MANIFEST), StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+    DurableSkipList.forceDirectory(this.dir);
+  } // writeManifest(Version<K, V>, long)
+
+  /**
+   * Make an empty memtable.
+   */
+  SynchronizedSkipList<K, Object> newMemtable() {
+    return new SynchronizedSkipList<K, Object>(new SkipList<K, Object>(this.comparator));
+  } // newMemtable()
+
+  /**
+   * Open a table we have written.
+   */
+  SortedTable<K, V> open(long number) throws IOException {
+    return new SortedTable<K, V>(number, tableFile(number), this.comparator, this.keys,
+        this.values);
+  } // open(long)
+
+  /**
+   * Name the file of a table.
+   */
+  Path tableFile(long number) {
+    return this.dir.resolve(String.format("%06d.sst", number));
+  } // tableFile(long)
+
+  /**
+   * Find the first table of a sorted, non-overlapping level whose largest
+   * key is not less than key.
+   */
+  int firstEndingAtOrAfter(List<SortedTable<K, V>> level, K key) {
+    int lo = 0;
+    int hi = level.size();
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (this.comparator.compare(level.get(mid).largest, key) < 0) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      } // if/else
+    } // while
+    return lo;
+  } // firstEndingAtOrAfter(List<SortedTable<K, V>>, K)
+
+  /**
+   * Iterate over the tables of a non-overlapping level, one after another.
+   */
+  Iterator<Map.Entry<K, Object>> concat(List<SortedTable<K, V>> tables) {
+    return new Iterator<Map.Entry<K, Object>>() {
+      int next = 0;
+      Iterator<Map.Entry<K, Object>> it = Collections.emptyIterator();
+
+      @Override
+      public boolean hasNext() {
+        while (!this.it.hasNext() && this.next < tables.size()) {
+          this.it = tables.get(this.next++).iterator();
+        } // while
+        return this.it.hasNext();
+      } // hasNext()
+
+      @Override
+      public Map.Entry<K, Object> next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        } // if
+        return this.it.next();
+      } // next()
+    };
+  } // concat(List<SortedTable<K, V>>)
+
+  /**
+   * Make sure changes are still allowed.
+   */
+  void checkWritable() {
+    if (this.failure != null) {
+      throw new UncheckedIOException("store has failed", this.failure);
+    } // if
+    if (this.closing) {
+      throw new IllegalStateException("store is closed");
+    } // if
+  } // checkWritable()
+
+  /**
+   * Treat a stored value as a V.
+   */
+  @SuppressWarnings("unchecked")
+  static <V> V cast(Object value) {
+    return (V) value;
+  } // cast(Object)
+
+} // class LsmStore
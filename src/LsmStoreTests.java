@@ -0,0 +1,260 @@
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+
+/**
+ * Tests of the log-structured merge tree and its tables.
+ */
+public class LsmStoreTests {
+
+  /**
+   * Make a fresh directory.
+   */
+  static Path tempDir() throws IOException {
+    Path dir = Files.createTempDirectory("lsm");
+    dir.toFile().deleteOnExit();
+    return dir;
+  } // tempDir()
+
+  /**
+   * Open a store of ints to strings in dir, with memtables of 100 pairs
+   * and tables of about 4K, so that small tests flush and compact.
+   */
+  static LsmStore<Integer, String> open(Path dir) throws IOException {
+    return new LsmStore<Integer, String>(dir, Comparator.<Integer>naturalOrder(),
+        Serializer.INTEGER, Serializer.STRING, 100, 4096);
+  } // open(Path)
+
+  /**
+   * Check that a store holds exactly what a TreeMap holds, in order.
+   */
+  static void assertMatches(TreeMap<Integer, String> expected, LsmStore<Integer, String> store) {
+    assertEquals(expected.size(), store.size());
+    Iterator<Integer> keys = store.keys();
+    Iterator<String> values = store.values();
+    for (Map.Entry<Integer, String> entry : expected.entrySet()) {
+      assertTrue(keys.hasNext());
+      assertEquals(entry.getKey(), keys.next());
+      assertEquals(entry.getValue(), values.next());
+      assertEquals(entry.getValue(), store.get(entry.getKey()));
+    } // for
+    assertFalse(keys.hasNext());
+    assertFalse(values.hasNext());
+  } // assertMatches(TreeMap<Integer, String>, LsmStore<Integer, String>)
+
+  /**
+   * Verify that random sets and removes match a TreeMap, across flushes,
+   * compactions and a reopen.
+   */
+  @Test
+  public void randomTest() throws IOException {
+    Path dir = tempDir();
+    TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+    Random random = new Random(207);
+    try (LsmStore<Integer, String> store = open(dir)) {
+      for (int i = 0; i < 20000; i++) {
+        int key = random.nextInt(3000);
+        if (random.nextInt(4) == 0) {
+          assertEquals(expected.remove(key), store.remove(key));
+        } else {
+          String value = (random.nextInt(50) == 0) ? null : "v" + i;
+          assertEquals(expected.put(key, value), store.set(key, value));
+        } // if/else
+        if (i % 997 == 0) {
+          int probe = random.nextInt(3000);
+          assertEquals(expected.containsKey(probe), store.containsKey(probe));
+        } // if
+      } // for
+      assertTrue(store.flushes() > 0);
+      assertTrue(store.compactions() > 0);
+      assertMatches(expected, store);
+    } // try
+    try (LsmStore<Integer, String> store = open(dir)) {
+      assertMatches(expected, store);
+    } // try
+  } // randomTest()
+
+  /**
+   * Verify that a tombstone hides values in older tables until compaction
+   * drops both.
+   */
+  @Test
+  public void tombstoneTest() throws IOException {
+    try (LsmStore<Integer, String> store = open(tempDir())) {
+      for (int i = 0; i < 50; i++) {
+        store.set(i, "old" + i);
+      } // for
+      store.flush();
+      assertEquals("old7", store.remove(7));
+      store.flush();
+      assertEquals(2, store.tableCounts()[0]);
+      assertFalse(store.containsKey(7));
+      assertNull(store.remove(7));
+      try {
+        store.get(7);
+        fail("get of a removed key should throw");
+      } catch (IndexOutOfBoundsException e) {
+        // Expected
+      } // try/catch
+      assertEquals(49, store.size());
+      // Enough flushes to compact level 0 into level 1
+      for (int round = 0; round < LsmStore.L0_TRIGGER; round++) {
+        store.set(1000 + round, "new");
+        store.flush();
+      } // for
+      assertFalse(store.containsKey(7));
+      assertEquals("old8", store.get(8));
+      assertEquals(53, store.size());
+    } // try
+  } // tombstoneTest()
+
+  /**
+   * Verify that compaction keeps level 0 small and leaves deeper levels
+   * without overlaps.
+   */
+  @Test
+  public void compactionTest() throws IOException {
+    try (LsmStore<Integer, String> store = open(tempDir())) {
+      for (int i = 0; i < 30000; i++) {
+        store.set((i * 7919) % 30000, "value" + i);
+      } // for
+      store.flush();
+      int[] counts = store.tableCounts();
+      assertTrue(counts[0] < LsmStore.L0_STOP + LsmStore.MAX_FROZEN);
+      assertTrue(counts.length > 2);
+      assertTrue(store.writeAmplification() > 1);
+      LsmStore.Version<Integer, String> version = store.current;
+      for (int level = 1; level < version.levels.size(); level++) {
+        for (int t = 1; t < version.levels.get(level).size(); t++) {
+          assertTrue(version.levels.get(level).get(t - 1).largest
+              < version.levels.get(level).get(t).smallest);
+        } // for
+      } // for
+      assertEquals(30000, store.size());
+      for (int i = 0; i < 30000; i += 101) {
+        assertTrue(store.containsKey(i));
+      } // for
+    } // try
+  } // compactionTest()
+
+  /**
+   * Verify that Bloom filters spare lookups of absent keys most block reads.
+   */
+  @Test
+  public void bloomTest() throws IOException {
+    try (LsmStore<Integer, String> store = open(tempDir())) {
+      for (int i = 0; i < 5000; i += 2) {
+        store.set(i, "even");
+      } // for
+      store.flush();
+      long lookups = store.tableLookups();
+      long skips = store.bloomSkips();
+      for (int i = 1; i < 5000; i += 2) {
+        assertFalse(store.containsKey(i));
+      } // for
+      lookups = store.tableLookups() - lookups;
+      skips = store.bloomSkips() - skips;
+      assertTrue(lookups > 0);
+      assertTrue("skipped " + skips + " of " + lookups, skips > lookups * 9 / 10);
+    } // try
+  } // bloomTest()
+
+  /**
+   * Verify that a table reads back what was written, tombstones and nulls
+   * included.
+   */
+  @Test
+  public void tableTest() throws IOException {
+    Path file = tempDir().resolve("000001.sst");
+    SortedTable.Writer<Integer, String> writer =
+        new SortedTable.Writer<Integer, String>(file, Serializer.INTEGER, Serializer.STRING);
+    for (int i = 0; i < 3000; i++) {
+      Object value = (i % 3 == 0) ? LsmStore.TOMBSTONE : (i % 3 == 1) ? null : "v" + i;
+      writer.add(i * 2, value);
+    } // for
+    writer.finish();
+    SortedTable<Integer, String> table = new SortedTable<Integer, String>(1, file,
+        Comparator.<Integer>naturalOrder(), Serializer.INTEGER, Serializer.STRING);
+    try {
+      assertEquals(3000, table.entries);
+      assertEquals(0, (int) table.smallest);
+      assertEquals(5998, (int) table.largest);
+      for (int i = 0; i < 3000; i++) {
+        Object expected = (i % 3 == 0) ? LsmStore.TOMBSTONE : (i % 3 == 1) ? null : "v" + i;
+        Integer key = i * 2;
+        assertEquals(expected, table.find(key, SortedTable.hash(key, Serializer.INTEGER)));
+        Integer odd = i * 2 + 1;
+        Object missing = table.find(odd, SortedTable.hash(odd, Serializer.INTEGER));
+        assertTrue(missing == LsmStore.MISSING);
+      } // for
+      Iterator<Map.Entry<Integer, Object>> entries = table.iterator();
+      for (int i = 0; i < 3000; i++) {
+        assertEquals(i * 2, (int) entries.next().getKey());
+      } // for
+      assertFalse(entries.hasNext());
+    } finally {
+      table.close(true);
+    } // try/finally
+    assertFalse(Files.exists(file));
+  } // tableTest()
+
+  /**
+   * Verify that an iterator dropped part way does not keep compaction from
+   * deleting the tables it pinned, once it is garbage collected.
+   */
+  @Test(timeout = 60000)
+  public void abandonedIteratorTest() throws Exception {
+    Path dir = tempDir();
+    try (LsmStore<Integer, String> store = open(dir)) {
+      for (int i = 0; i < 50; i++) {
+        store.set(i, "v" + i);
+      } // for
+      store.flush();
+      Path pinned = store.tableFile(store.current.levels.get(0).get(0).number);
+      Iterator<Integer> keys = store.keys();
+      assertEquals(0, (int) keys.next());
+      keys = null;
+      for (int round = 0; round < LsmStore.L0_TRIGGER; round++) {
+        store.set(100 + round, "new");
+        store.flush();
+      } // for
+      // Compaction replaces the table; the collector then lets it go
+      while (Files.exists(pinned)) {
+        System.gc();
+        Thread.sleep(10);
+      } // while
+      assertEquals(0, (int) store.keys().next());
+    } // try
+  } // abandonedIteratorTest()
+
+  /**
+   * Verify that a closed store refuses use.
+   */
+  @Test
+  public void closeTest() throws IOException {
+    LsmStore<Integer, String> store = open(tempDir());
+    store.set(1, "one");
+    store.close();
+    store.close();
+    try {
+      store.set(2, "two");
+      fail("set after close should throw");
+    } catch (IllegalStateException e) {
+      // Expected
+    } // try/catch
+    try {
+      store.get(1);
+      fail("get after close should throw");
+    } catch (IllegalStateException e) {
+      // Expected
+    } // try/catch
+  } // closeTest()
+
+} // class LsmStoreTests
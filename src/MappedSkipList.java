@@ -0,0 +1,372 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An OffHeapSkipList whose arena is a memory-mapped file, so that the map
+ * outlives the process.  Reopening a cleanly closed file just maps it
+ * again: nothing is read or rebuilt.
+ *
+ * The file is a sequence of chunks of chunkSize bytes, mapped one at a
+ * time as the list grows.  Chunk 0 starts with a header:
+ *
+ *   long magic, int version, int chunkSize, long allocation end,
+ *   long size, int height, int maxHeight, int dirty, long head,
+ *   long garbage bytes
+ *
+ * followed by the head node.  Records are only ever appended; a new value
+ * always gets a new record.  Writes are ordered so that a crash of the
+ * process at any point leaves a valid list holding either the old or the
+ * new state of the pair being changed:
+ *
+ *   - the allocation end in the header moves before a record is written,
+ *     so a reopened list never hands out space that something points to;
+ *   - a record is complete before any pointer to it is published, and
+ *     pointers are published with release stores;
+ *   - a new node is linked bottom up, and a removed node is unlinked top
+ *     down, so no level ever skips over a hole in the level below.
+ *
+ * The size and height in the header are updated after each change; if the
+ * process dies before close, the dirty flag is still set, and the next
+ * open recounts them from the links.  Only force() (or close) makes
+ * changes durable against a crash of the machine.
+ */
+public class MappedSkipList extends OffHeapSkipList {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * Identifies our files.
+   */
+  static final long MAGIC = 0x534b49504c495354L;
+
+  /**
+   * The version of the file layout.
+   */
+  static final int VERSION = 1;
+
+  /**
+   * The default chunk size.
+   */
+  static final int DEFAULT_MAPPED_CHUNK_SIZE = 1 << 24;
+
+  /**
+   * Offsets of the fields of the header.
+   */
+  static final int HEADER_MAGIC = 0;
+  static final int HEADER_VERSION = 8;
+  static final int HEADER_CHUNK_SIZE = 12;
+  static final int HEADER_ALLOC_END = 16;
+  static final int HEADER_SIZE = 24;
+  static final int HEADER_HEIGHT = 32;
+  static final int HEADER_MAX_HEIGHT = 36;
+  static final int HEADER_DIRTY = 40;
+  static final int HEADER_HEAD = 48;
+  static final int HEADER_GARBAGE = 56;
+  static final int HEADER_BYTES = 64;
+
+  /**
+   * Publishes pointers with release stores.
+   */
+  static final VarHandle POINTERS =
+      MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The file.
+   */
+  FileChannel channel;
+
+  /**
+   * The file offset at which the next record goes.
+   */
+  long allocEnd;
+
+  /**
+   * Whether the last open found the file dirty and had to recount.
+   */
+  boolean recovered;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Open the list in file, creating it (with chunks of chunkSize bytes) if
+   * the file is empty or missing.  An existing file keeps its own chunk
+   * size.
+   *
+   * @throws IOException if the file cannot be mapped, or is not one of ours
+   */
+  public MappedSkipList(Path file, int chunkSize, LevelGenerator levels) throws IOException {
+    super(levels);
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    try {
+      if (this.channel.size() == 0) {
+        create(chunkSize);
+      } else {
+        reopen();
+      } // if/else
+    } catch (IOException | RuntimeException e) {
+      this.channel.close();
+      throw e;
+    } // try/catch
+  } // MappedSkipList(Path, int, LevelGenerator)
+
+  /**
+   * Open the list in file, creating it if need be.
+   *
+   * @throws IOException if the file cannot be mapped, or is not one of ours
+   */
+  public MappedSkipList(Path file) throws IOException {
+    this(file, DEFAULT_MAPPED_CHUNK_SIZE, LevelGenerator.fast());
+  } // MappedSkipList(Path)
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  @Override
+  public byte[] set(byte[] key, byte[] value) {
+    byte[] old = super.set(key, value);
+    writeHeader();
+    return old;
+  } // set(byte[], byte[])
+
+  @Override
+  public byte[] remove(byte[] key) {
+    byte[] old = super.remove(key);
+    writeHeader();
+    return old;
+  } // remove(byte[])
+
+  // +----------------------+----------------------------------------
+  // | Other public methods |
+  // +----------------------+
+
+  /**
+   * Write everything to the disk.  When force returns, the list as it is
+   * now survives a crash of the machine.
+   *
+   * @throws IOException if the file cannot be written
+   */
+  public void force() throws IOException {
+    checkOpen();
+    writeHeader();
+    for (ByteBuffer buf : this.chunks) {
+      ((MappedByteBuffer) buf).force();
+    } // for
+    this.channel.force(false);
+  } // force()
+
+  /**
+   * Write everything to the disk, mark the file clean, and unmap it.
+   */
+  @Override
+  public void close() {
+    if (this.closed) {
+      return;
+    } // if
+    try {
+      force();
+      header().putInt(HEADER_DIRTY, 0);
+      ((MappedByteBuffer) header()).force();
+    } catch (IOException e) {
+      // Leave the file dirty; the next open will recount
+    } // try/catch
+    super.close();
+    try {
+      this.channel.close();
+    } catch (IOException e) {
+      // Nothing more we can do
+    } // try/catch
+  } // close()
+
+  /**
+   * Determine whether opening the file found it dirty (not closed after
+   * its last use) and recounted it.
+   */
+  public boolean recovered() {
+    return this.recovered;
+  } // recovered()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Lay out a new file.
+   */
+  void create(int chunkSize) throws IOException {
+    this.chunkSize = chunkSize;
+    if (chunkSize < HEADER_BYTES + NODE_NEXT + 8 * MAX_HEIGHT) {
+      throw new IllegalArgumentException("chunks of " + chunkSize + " bytes are too small");
+    } // if
+    mapChunk(0);
+    ByteBuffer header = header();
+    this.allocEnd = HEADER_BYTES;
+    this.head = allocate(NODE_NEXT + 8 * MAX_HEIGHT);
+    header.putInt(offset(this.head) + NODE_HEIGHT, MAX_HEIGHT);
+    this.maxHeight = SkipList.INITIAL_HEIGHT;
+    this.growAt = Math.pow(1.0 / this.levels.probability(), this.maxHeight);
+    header.putInt(HEADER_VERSION, VERSION);
+    header.putInt(HEADER_CHUNK_SIZE, chunkSize);
+    header.putLong(HEADER_HEAD, this.head);
+    header.putInt(HEADER_DIRTY, 1);
+    writeHeader();
+    // The magic number goes last, so a half-made file is not mistaken for one
+    header.putLong(HEADER_MAGIC, MAGIC);
+  } // create(int)
+
+  /**
+   * Map an existing file and read its header, recounting if it is dirty.
+   */
+  void reopen() throws IOException {
+    ByteBuffer first = ByteBuffer.allocate(HEADER_BYTES);
+    this.channel.read(first, 0);
+    if (first.position() < HEADER_BYTES || first.getLong(HEADER_MAGIC) != MAGIC) {
+      throw new IOException("not a skip list file");
+    } // if
+    if (first.getInt(HEADER_VERSION) != VERSION) {
+      throw new IOException("unknown skip list file version " + first.getInt(HEADER_VERSION));
+    } // if
+    this.chunkSize = first.getInt(HEADER_CHUNK_SIZE);
+    if (this.chunkSize < HEADER_BYTES || this.channel.size() < this.chunkSize) {
+      throw new IOException("damaged skip list file");
+    } // if
+    long chunkCount = this.channel.size() / this.chunkSize;
+    for (int i = 0; i < chunkCount; i++) {
+      mapChunk(i);
+    } // for
+    ByteBuffer header = header();
+    this.allocEnd = header.getLong(HEADER_ALLOC_END);
+    this.head = header.getLong(HEADER_HEAD);
+    this.maxHeight = header.getInt(HEADER_MAX_HEIGHT);
+    this.growAt = Math.pow(1.0 / this.levels.probability(), this.maxHeight);
+    this.garbageBytes = header.getLong(HEADER_GARBAGE);
+    this.usedBytes = this.allocEnd;
+    if (header.getInt(HEADER_DIRTY) != 0) {
+      recount();
+      this.recovered = true;
+    } else {
+      this.size = (int) header.getLong(HEADER_SIZE);
+      this.height = header.getInt(HEADER_HEIGHT);
+    } // if/else
+    header.putInt(HEADER_DIRTY, 1);
+    writeHeader();
+  } // reopen()
+
+  /**
+   * Work out the size and height from the links, after a crash.
+   */
+  void recount() {
+    this.size = 0;
+    for (long node = next(this.head, 0); node != NIL; node = next(node, 0)) {
+      this.size++;
+    } // for
+    this.height = MAX_HEIGHT;
+    while (this.height > 0 && next(this.head, this.height - 1) == NIL) {
+      this.height--;
+    } // while
+    this.maxHeight = Math.max(this.maxHeight, this.height);
+  } // recount()
+
+  /**
+   * Record the size, height and allocation state in the header.
+   */
+  void writeHeader() {
+    ByteBuffer header = header();
+    header.putLong(HEADER_ALLOC_END, this.allocEnd);
+    header.putLong(HEADER_SIZE, this.size);
+    header.putInt(HEADER_HEIGHT, this.height);
+    header.putInt(HEADER_MAX_HEIGHT, this.maxHeight);
+    header.putLong(HEADER_GARBAGE, this.garbageBytes);
+  } // writeHeader()
+
+  /**
+   * Get chunk 0, which holds the header.
+   */
+  ByteBuffer header() {
+    return this.chunks.get(0);
+  } // header()
+
+  /**
+   * Map another chunk of the file, extending it if need be.
+   */
+  void mapChunk(int index) throws IOException {
+    this.chunks.add(this.channel.map(FileChannel.MapMode.READ_WRITE,
+        (long) index * this.chunkSize, this.chunkSize));
+  } // mapChunk(int)
+
+  /**
+   * Allocate an 8-byte aligned record at the end of the file, moving the
+   * recorded end before the record is used.
+   *
+   * @throws IllegalArgumentException if the record does not fit in a chunk
+   */
+  @Override
+  long allocate(int bytes) {
+    int size = align(bytes);
+    if (size > this.chunkSize) {
+      throw new IllegalArgumentException(
+          "a record of " + bytes + " bytes does not fit in a chunk of " + this.chunkSize);
+    } // if
+    int chunk = (int) (this.allocEnd / this.chunkSize);
+    int offset = (int) (this.allocEnd % this.chunkSize);
+    if (offset + size > this.chunkSize) {
+      chunk++;
+      offset = 0;
+    } // if
+    try {
+      while (chunk >= this.chunks.size()) {
+        mapChunk(this.chunks.size());
+      } // while
+    } catch (IOException e) {
+      throw new IllegalStateException("could not extend the file", e);
+    } // try/catch
+    this.allocEnd = (long) chunk * this.chunkSize + offset + size;
+    header().putLong(HEADER_ALLOC_END, this.allocEnd);
+    this.usedBytes += size;
+    return pointer(chunk, offset);
+  } // allocate(int)
+
+  /**
+   * Store a value in a new record and then publish it; overwriting the old
+   * record in place could leave a torn value after a crash.
+   */
+  @Override
+  void writeValue(long node, byte[] value) {
+    this.garbageBytes += valueBytes(node);
+    long record = NIL;
+    if (value != null) {
+      record = allocate(VALUE_BYTES + value.length);
+      ByteBuffer buf = buffer(record);
+      int base = offset(record);
+      buf.putInt(base + VALUE_CAPACITY, value.length);
+      buf.putInt(base + VALUE_LENGTH, value.length);
+      buf.put(base + VALUE_BYTES, value);
+    } // if
+    POINTERS.setRelease(buffer(node), offset(node) + NODE_VALUE, record);
+  } // writeValue(long, byte[])
+
+  /**
+   * Publish a link with a release store.
+   */
+  @Override
+  void setNext(long node, int level, long next) {
+    POINTERS.setRelease(buffer(node), offset(node) + NODE_NEXT + 8 * level, next);
+  } // setNext(long, int, long)
+
+} // class MappedSkipList
@@ -0,0 +1,186 @@
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import org.junit.Test;
+
+/**
+ * Tests of the memory-mapped skip list.
+ */
+public class MappedSkipListTests {
+
+  /**
+   * Turn a string into a key.
+   */
+  static byte[] bytes(String str) {
+    return str.getBytes(StandardCharsets.UTF_8);
+  } // bytes(String)
+
+  /**
+   * Turn bytes back into a string.
+   */
+  static String string(byte[] bytes) {
+    return new String(bytes, StandardCharsets.UTF_8);
+  } // string(byte[])
+
+  /**
+   * Make a fresh, empty file.
+   */
+  static Path tempFile() throws IOException {
+    Path file = Files.createTempFile("skiplist", ".map");
+    file.toFile().deleteOnExit();
+    Files.write(file, new byte[0]);
+    return file;
+  } // tempFile()
+
+  /**
+   * Walk away from a list without closing it, as a crashed process would.
+   * The mapping stays behind; only the file handle goes.
+   */
+  static void abandon(MappedSkipList lst) throws IOException {
+    lst.channel.close();
+  } // abandon(MappedSkipList)
+
+  /**
+   * Verify that a closed list reopens with the same contents, without
+   * recounting.
+   */
+  @Test
+  public void reopenTest() throws IOException {
+    Path file = tempFile();
+    try (MappedSkipList lst = new MappedSkipList(file, 4096, LevelGenerator.seeded(15))) {
+      for (int i = 0; i < 1000; i++) {
+        lst.set(bytes("key" + i), bytes("value" + i));
+      } // for
+      lst.remove(bytes("key500"));
+      assertTrue(lst.offHeapBytes() > 4096);
+    } // try
+    try (MappedSkipList lst = new MappedSkipList(file)) {
+      assertFalse(lst.recovered());
+      assertEquals(999, lst.size());
+      assertEquals("value42", string(lst.get(bytes("key42"))));
+      assertFalse(lst.containsKey(bytes("key500")));
+      lst.set(bytes("key500"), bytes("back"));
+      assertEquals(1000, lst.size());
+    } // try
+    try (MappedSkipList lst = new MappedSkipList(file)) {
+      assertEquals("back", string(lst.get(bytes("key500"))));
+      Iterator<byte[]> keys = lst.keys();
+      byte[] prev = keys.next();
+      int count = 1;
+      while (keys.hasNext()) {
+        byte[] key = keys.next();
+        assertTrue(Arrays.compareUnsigned(prev, key) < 0);
+        prev = key;
+        count++;
+      } // while
+      assertEquals(1000, count);
+    } // try
+  } // reopenTest()
+
+  /**
+   * Verify that a list that was not closed is recounted from its links,
+   * whatever its header says.
+   */
+  @Test
+  public void dirtyReopenTest() throws IOException {
+    Path file = tempFile();
+    MappedSkipList lst = new MappedSkipList(file, 4096, LevelGenerator.seeded(15));
+    for (int i = 0; i < 300; i++) {
+      lst.set(bytes("key" + i), bytes("value" + i));
+    } // for
+    lst.header().putLong(MappedSkipList.HEADER_SIZE, 12345);
+    lst.header().putInt(MappedSkipList.HEADER_HEIGHT, 0);
+    abandon(lst);
+    try (MappedSkipList reopened = new MappedSkipList(file)) {
+      assertTrue(reopened.recovered());
+      assertEquals(300, reopened.size());
+      assertEquals(lst.height, reopened.height);
+      for (int i = 0; i < 300; i++) {
+        assertEquals("value" + i, string(reopened.get(bytes("key" + i))));
+      } // for
+    } // try
+  } // dirtyReopenTest()
+
+  /**
+   * Verify that space allocated but never linked in before a crash is
+   * neither visible nor handed out again.
+   */
+  @Test
+  public void unlinkedRecordTest() throws IOException {
+    Path file = tempFile();
+    MappedSkipList lst = new MappedSkipList(file, 4096, LevelGenerator.fast());
+    lst.set(bytes("a"), bytes("1"));
+    long orphan = lst.allocate(64);
+    lst.buffer(orphan).putLong(MappedSkipList.offset(orphan), -1);
+    abandon(lst);
+    try (MappedSkipList reopened = new MappedSkipList(file)) {
+      assertEquals(1, reopened.size());
+      assertTrue(reopened.allocate(8) > orphan);
+      reopened.set(bytes("b"), bytes("2"));
+      assertEquals("1", string(reopened.get(bytes("a"))));
+      assertEquals("2", string(reopened.get(bytes("b"))));
+    } // try
+  } // unlinkedRecordTest()
+
+  /**
+   * Verify that replaced values are written anew and persist.
+   */
+  @Test
+  public void replaceTest() throws IOException {
+    Path file = tempFile();
+    try (MappedSkipList lst = new MappedSkipList(file)) {
+      lst.set(bytes("k"), bytes("a fairly long value"));
+      assertEquals(0, lst.garbageBytes());
+      lst.set(bytes("k"), bytes("short"));
+      assertTrue(lst.garbageBytes() > 0);
+      lst.force();
+    } // try
+    try (MappedSkipList lst = new MappedSkipList(file)) {
+      assertEquals("short", string(lst.get(bytes("k"))));
+      assertTrue(lst.garbageBytes() > 0);
+      lst.set(bytes("k"), null);
+    } // try
+    try (MappedSkipList lst = new MappedSkipList(file)) {
+      assertTrue(lst.containsKey(bytes("k")));
+      assertNull(lst.get(bytes("k")));
+    } // try
+  } // replaceTest()
+
+  /**
+   * Verify that a record larger than a chunk is refused.
+   */
+  @Test
+  public void oversizedRecordTest() throws IOException {
+    try (MappedSkipList lst = new MappedSkipList(tempFile(), 1024, LevelGenerator.fast())) {
+      try {
+        lst.set(bytes("k"), new byte[2000]);
+        fail("a value larger than a chunk should be refused");
+      } catch (IllegalArgumentException e) {
+        // Expected
+      } // try/catch
+      lst.set(bytes("k"), new byte[500]);
+      assertEquals(500, lst.get(bytes("k")).length);
+    } // try
+  } // oversizedRecordTest()
+
+  /**
+   * Verify that files that are not skip lists are refused.
+   */
+  @Test
+  public void badFileTest() throws IOException {
+    Path file = tempFile();
+    Files.write(file, bytes("this is certainly not a skip list, but it is long enough to "
+        + "have a header, if it were one."));
+    try {
+      new MappedSkipList(file).close();
+      fail("a file without the magic number should be refused");
+    } catch (IOException e) {
+      // Expected
+    } // try/catch
+  } // badFileTest()
+
+} // class MappedSkipListTests
@@ -0,0 +1,20 @@
+/**
+ * A marked link: the node holding it is being removed.
+ */
+class Mark {
+
+  /**
+   * The successor at the time of marking.
+   */
+  final CNode<?> node;
+
+  Mark(CNode<?> node) {
+    this.node = node;
+  } // Mark(CNode<?>)
+
+  @SuppressWarnings("unchecked")
+  <K> CNode<K> node() {
+    return (CNode<K>) this.node;
+  } // node()
+
+} // Mark
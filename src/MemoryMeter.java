@@ -0,0 +1,50 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+/**
+ * Helpers for measuring memory use in experiments and tests.
+ */
+class MemoryMeter {
+
+  // +---------------+-----------------------------------------------
+  // | Static Fields |
+  // +---------------+
+
+  /**
+   * The HotSpot view of the thread bean, which can report allocations.
+   */
+  static final com.sun.management.ThreadMXBean THREADS =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  /**
+   * The memory bean, for heap usage.
+   */
+  static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Determine how many bytes the current thread has allocated so far.
+   */
+  static long allocatedBytes() {
+    return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+  } // allocatedBytes()
+
+  /**
+   * Determine how many bytes of heap are in use after collecting garbage.
+   */
+  static long usedHeap() {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      try {
+        Thread.sleep(20);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } // try/catch
+    } // for
+    return MEMORY.getHeapMemoryUsage().getUsed();
+  } // usedHeap()
+
+} // class MemoryMeter
@@ -0,0 +1,80 @@
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Merges sorted sources of pairs into one sorted stream.  When several
+ * sources hold a key, the pair from the earliest source wins and the rest
+ * are skipped.
+ */
+class MergingIterator<K> implements Iterator<Map.Entry<K, Object>> {
+
+  /**
+   * A source and its next pair.
+   */
+  static class Source<K> {
+    Iterator<? extends Map.Entry<K, Object>> it;
+    Map.Entry<K, Object> head;
+    int rank;
+  } // class Source<K>
+
+  /**
+   * How keys are ordered.
+   */
+  final Comparator<K> comparator;
+
+  /**
+   * The sources with pairs left, smallest key (then lowest rank) first.
+   */
+  final PriorityQueue<Source<K>> queue;
+
+  MergingIterator(Comparator<K> comparator,
+      List<Iterator<? extends Map.Entry<K, Object>>> sources) {
+    this.comparator = comparator;
+    this.queue = new PriorityQueue<Source<K>>(Math.max(1, sources.size()), (a, b) -> {
+      int order = comparator.compare(a.head.getKey(), b.head.getKey());
+      return (order != 0) ? order : Integer.compare(a.rank, b.rank);
+    });
+    for (int i = 0; i < sources.size(); i++) {
+      Source<K> source = new Source<K>();
+      source.it = sources.get(i);
+      source.rank = i;
+      advance(source);
+    } // for
+  } // MergingIterator(Comparator<K>, List)
+
+  @Override
+  public boolean hasNext() {
+    return !this.queue.isEmpty();
+  } // hasNext()
+
+  @Override
+  public Map.Entry<K, Object> next() {
+    Source<K> source = this.queue.poll();
+    if (source == null) {
+      throw new NoSuchElementException();
+    } // if
+    Map.Entry<K, Object> result = source.head;
+    advance(source);
+    // Older sources' pairs for the same key are shadowed
+    while (!this.queue.isEmpty()
+        && this.comparator.compare(this.queue.peek().head.getKey(), result.getKey()) == 0) {
+      advance(this.queue.poll());
+    } // while
+    return result;
+  } // next()
+
+  /**
+   * Move a source to its next pair and requeue it, unless it is done.
+   */
+  void advance(Source<K> source) {
+    if (source.it.hasNext()) {
+      source.head = source.it.next();
+      this.queue.add(source);
+    } // if
+  } // advance(Source<K>)
+
+} // class MergingIterator
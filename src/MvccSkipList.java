@@ -0,0 +1,815 @@
+import java.lang.ref.Cleaner;
+import java.util.AbstractMap;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * A multi-version skip list: readers open a Snapshot, which sees the map
+ * as it was at one moment however long they take, without locking and
+ * without holding up writers.
+ *
+ * A ConcurrentSkipList maps each key to a chain of versions, newest
+ * first.  Every set and remove is stamped with the next number from a
+ * clock and pushes a new version (for a remove, a tombstone) onto its
+ * key's chain; writers take turns, and a write becomes visible to new
+ * snapshots when the clock moves on to its stamp.  A snapshot sees, for
+ * each key, the newest version no newer than the clock when it opened.
+ *
+ * A background thread drops the versions no open snapshot can see.  Of
+ * each key's versions it keeps the newest, and for each open snapshot the
+ * newest one at or before that snapshot; keys left with only a tombstone
+ * go too.  A long-lived snapshot thus pins one old version per key, not
+ * everything written since it opened.  Snapshots should still be closed;
+ * one that is simply dropped is released when the garbage collector finds
+ * it.
+ *
+ * The map's own get and containsKey read the newest versions, and its
+ * keys, values and forEach each read a snapshot of their own.
+ */
+public class MvccSkipList<K, V> implements SimpleMap<K, V>, AutoCloseable {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The background thread looks for garbage once there are this many
+   * versions more than keys beyond what its last collection left, or
+   * every COLLECT_MILLIS, if there have been writes or snapshots closed
+   * since it last looked.
+   */
+  static final long COLLECT_EVERY = 4096;
+  static final long COLLECT_MILLIS = 100;
+
+  /**
+   * The value of a remove's version.
+   */
+  static final Object TOMBSTONE = new Object();
+
+  /**
+   * Releases snapshots that were dropped without being closed.
+   */
+  static final Cleaner CLEANER = Cleaner.create();
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The version chain of every key that has one.
+   */
+  final ConcurrentSkipList<K, Chain> index;
+
+  /**
+   * The comparator used to determine the ordering in the list.
+   */
+  final Comparator<K> comparator;
+
+  /**
+   * Orders writes, and guards the fields below and the removal of keys
+   * from the index.
+   */
+  final ReentrantLock writeLock = new ReentrantLock();
+
+  /**
+   * Signalled when there may be garbage to collect, or on close.
+   */
+  final Condition work = this.writeLock.newCondition();
+
+  /**
+   * Held by whoever is collecting, so that two collections never count
+   * the same versions.
+   */
+  final ReentrantLock collectLock = new ReentrantLock();
+
+  /**
+   * The stamp of the last write that snapshots may see.
+   */
+  volatile long clock;
+
+  /**
+   * The number of keys, and of versions (tombstones included).
+   */
+  volatile int size;
+  volatile long versions;
+
+  /**
+   * Whether close has been called.
+   */
+  volatile boolean closed;
+
+  /**
+   * The excess of versions over keys at which writers wake the collector,
+   * or Long.MAX_VALUE once one has.  Guarded by writeLock.
+   */
+  long collectAt = COLLECT_EVERY;
+
+  /**
+   * For each stamp at which snapshots are open, how many there are, and
+   * how many snapshots have been closed.  Guarded by open.
+   */
+  final TreeMap<Long, Integer> open = new TreeMap<Long, Integer>();
+  long released;
+
+  /**
+   * The clock and the count of closed snapshots when the collector last
+   * looked.  Only the collecting thread uses them.
+   */
+  long collectedTo = -1;
+  long collectedReleased = -1;
+
+  /**
+   * The thread that collects garbage.
+   */
+  final Thread collector;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new, empty, map that orders keys using the specified
+   * comparator, and start its collector.
+   */
+  public MvccSkipList(Comparator<K> comparator) {
+    this.comparator = comparator;
+    this.index = new ConcurrentSkipList<K, Chain>(comparator);
+    this.collector = new Thread(this::collectLoop, "MvccSkipList collector");
+    this.collector.setDaemon(true);
+    this.collector.start();
+  } // MvccSkipList(Comparator<K>)
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  /**
+   * Set the value associated with key, in a new version.
+   *
+   * @returns the value originally associated with the key, or null if the key
+   *          was not originally in the map
+   * @throws NullPointerException if the key is null
+   * @throws IllegalStateException if the map is closed
+   */
+  @Override
+  public V set(K key, V value) {
+    if (key == null) {
+      throw new NullPointerException("Key cannot be null");
+    } // if
+    return write(key, value);
+  } // set(K, V)
+
+  /**
+   * Get the newest value associated with key.
+   *
+   * @throws IndexOutOfBoundsException if key is not in the map
+   * @throws NullPointerException if the key is null
+   */
+  @Override
+  public V get(K key) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    Object value = latest(key);
+    if (value == TOMBSTONE) {
+      throw new IndexOutOfBoundsException("key is not in list");
+    } // if
+    return unwrap(value);
+  } // get(K)
+
+  @Override
+  public int size() {
+    return this.size;
+  } // size()
+
+  @Override
+  public boolean containsKey(K key) {
+    return latest(key) != TOMBSTONE;
+  } // containsKey(K)
+
+  /**
+   * Remove the value associated with key, by writing a tombstone.
+   *
+   * @returns the removed value, or null if key was not in the map
+   * @throws NullPointerException if the key is null
+   * @throws IllegalStateException if the map is closed
+   */
+  @Override
+  public V remove(K key) {
+    if (key == null) {
+      throw new NullPointerException("Key cannot be null");
+    } // if
+    return write(key, TOMBSTONE);
+  } // remove(K)
+
+  /**
+   * Iterate over the keys of a snapshot taken now.
+   */
+  @Override
+  public Iterator<K> keys() {
+    Iterator<Map.Entry<K, V>> entries = snapshot().iterator(true);
+    return new Iterator<K>() {
+      @Override
+      public boolean hasNext() {
+        return entries.hasNext();
+      } // hasNext()
+
+      @Override
+      public K next() {
+        return entries.next().getKey();
+      } // next()
+    };
+  } // keys()
+
+  /**
+   * Iterate over the values of a snapshot taken now.
+   */
+  @Override
+  public Iterator<V> values() {
+    Iterator<Map.Entry<K, V>> entries = snapshot().iterator(true);
+    return new Iterator<V>() {
+      @Override
+      public boolean hasNext() {
+        return entries.hasNext();
+      } // hasNext()
+
+      @Override
+      public V next() {
+        return entries.next().getValue();
+      } // next()
+    };
+  } // values()
+
+  /**
+   * Apply a function to each pair of a snapshot taken now.
+   */
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    try (Snapshot snapshot = snapshot()) {
+      snapshot.forEach(action);
+    } // try
+  } // forEach(BiConsumer<? super K, ? super V>)
+
+  // +------------------+--------------------------------------------
+  // | Snapshot methods |
+  // +------------------+
+
+  /**
+   * Open a snapshot of the map as it is now.  It should be closed when
+   * no longer needed.
+   */
+  public Snapshot snapshot() {
+    long stamp;
+    synchronized (this.open) {
+      stamp = this.clock;
+      this.open.merge(stamp, 1, Integer::sum);
+    } // synchronized
+    return new Snapshot(stamp);
+  } // snapshot()
+
+  /**
+   * Determine how many versions (tombstones included) the map holds.
+   */
+  public long versions() {
+    return this.versions;
+  } // versions()
+
+  /**
+   * Drop every version that no open snapshot can see.  The background
+   * thread calls this as garbage builds up, but anyone may.
+   *
+   * @returns the number of versions dropped
+   */
+  public long collect() {
+    this.collectLock.lock();
+    try {
+      return collect(stamps());
+    } finally {
+      this.collectLock.unlock();
+    } // try/finally
+  } // collect()
+
+  /**
+   * Drop every version that is neither newer than the last of stamps nor
+   * the newest at or before one of them, and every key left with just a
+   * tombstone.  A reader still walking a chain may be on a dropped
+   * version; its next still leads to the versions that reader can see.
+   *
+   * @pre the caller holds collectLock
+   * @pre stamps is in increasing order, and every snapshot open now or
+   *      later reads at one of them or after the last
+   * @returns the number of versions dropped
+   */
+  long collect(long[] stamps) {
+    long now = stamps[stamps.length - 1];
+    long dropped = 0;
+    ConcurrentSkipList<K, Chain>.NodeIterator nodes = this.index.new NodeIterator();
+    while (nodes.hasNext()) {
+      K key = nodes.next().key;
+      Chain chain = (Chain) nodes.lastValue;
+      // Versions newer than now stay, as a later snapshot may see them
+      Version kept = chain.latest;
+      while (kept.next != null && kept.stamp > now) {
+        kept = kept.next;
+      } // while
+      // Below that, walk the versions and the stamps from newest to
+      // oldest, keeping each version that is the newest at or before
+      // some stamp and splicing out the ones between
+      int i = stamps.length - 1;
+      while (i >= 0 && stamps[i] >= kept.stamp) {
+        i--;
+      } // while
+      for (Version version = kept.next; version != null; version = version.next) {
+        if (i >= 0 && version.stamp <= stamps[i]) {
+          kept.next = version;
+          kept = version;
+          while (i >= 0 && stamps[i] >= version.stamp) {
+            i--;
+          } // while
+        } else {
+          dropped++;
+        } // if/else
+      } // for
+      kept.next = null;
+      Version latest = chain.latest;
+      if (latest.value == TOMBSTONE && latest.next == null) {
+        // Nobody can see the key any more, unless a write comes first
+        this.writeLock.lock();
+        try {
+          if (latest == chain.latest) {
+            this.index.remove(key);
+            dropped++;
+          } // if
+        } finally {
+          this.writeLock.unlock();
+        } // try/finally
+      } // if
+    } // while
+    this.writeLock.lock();
+    try {
+      this.versions -= dropped;
+      this.collectAt = this.versions - this.size + COLLECT_EVERY;
+    } finally {
+      this.writeLock.unlock();
+    } // try/finally
+    return dropped;
+  } // collect(long[])
+
+  /**
+   * Stop the collector.  The map stays readable, but refuses writes.
+   */
+  @Override
+  public void close() {
+    this.writeLock.lock();
+    try {
+      this.closed = true;
+      this.work.signal();
+    } finally {
+      this.writeLock.unlock();
+    } // try/finally
+    boolean interrupted = false;
+    while (this.collector.isAlive()) {
+      try {
+        this.collector.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      } // try/catch
+    } // while
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    } // if
+  } // close()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Push a new version of key, with value (or TOMBSTONE, to remove it).
+   *
+   * @returns the value it replaced, or null if there was none
+   */
+  V write(K key, Object value) {
+    this.writeLock.lock();
+    try {
+      if (this.closed) {
+        throw new IllegalStateException("map is closed");
+      } // if
+      long stamp = this.clock + 1;
+      Chain chain = (Chain) this.index.lookup(key);
+      Object old = (chain == null) ? TOMBSTONE : chain.latest.value;
+      if (old == TOMBSTONE && value == TOMBSTONE) {
+        return null;
+      } // if
+      if (chain == null) {
+        this.index.set(key, new Chain(new Version(stamp, value, null)));
+      } else {
+        chain.latest = new Version(stamp, value, chain.latest);
+      } // if/else
+      this.versions++;
+      if (old == TOMBSTONE) {
+        this.size++;
+      } else if (value == TOMBSTONE) {
+        this.size--;
+      } // if/else
+      // Now new snapshots may see it
+      this.clock = stamp;
+      if (this.versions - this.size >= this.collectAt) {
+        this.collectAt = Long.MAX_VALUE;
+        this.work.signal();
+      } // if
+      return (old == TOMBSTONE) ? null : unwrap(old);
+    } finally {
+      this.writeLock.unlock();
+    } // try/finally
+  } // write(K, Object)
+
+  /**
+   * Get the newest value of key, or TOMBSTONE if there is none.
+   */
+  Object latest(K key) {
+    Chain chain = (Chain) this.index.lookup(key);
+    return (chain == null) ? TOMBSTONE : chain.latest.value;
+  } // latest(K)
+
+  /**
+   * Get the value of key as of stamp, or TOMBSTONE if there was none.
+   */
+  Object valueAt(K key, long stamp) {
+    Chain chain = (Chain) this.index.lookup(key);
+    return (chain == null) ? TOMBSTONE : chain.at(stamp);
+  } // valueAt(K, long)
+
+  /**
+   * List the stamps open snapshots read at, oldest first, followed by the
+   * clock, which no snapshot opened later can read before.
+   */
+  long[] stamps() {
+    synchronized (this.open) {
+      long[] stamps = new long[this.open.size() + 1];
+      int i = 0;
+      for (long stamp : this.open.keySet()) {
+        stamps[i++] = stamp;
+      } // for
+      stamps[i] = this.clock;
+      return stamps;
+    } // synchronized
+  } // stamps()
+
+  /**
+   * Forget a snapshot at stamp.
+   */
+  void release(long stamp) {
+    synchronized (this.open) {
+      this.open.computeIfPresent(stamp, (s, count) -> (count == 1) ? null : count - 1);
+      this.released++;
+    } // synchronized
+  } // release(long)
+
+  /**
+   * Collect garbage whenever a writer asks, or now and then if there have
+   * been writes or snapshots closed since the last collection, until
+   * closed.
+   */
+  void collectLoop() {
+    while (true) {
+      this.writeLock.lock();
+      try {
+        if (!this.closed && this.collectAt != Long.MAX_VALUE) {
+          this.work.await(COLLECT_MILLIS, TimeUnit.MILLISECONDS);
+        } // if
+        if (this.closed) {
+          return;
+        } // if
+      } catch (InterruptedException e) {
+        return;
+      } finally {
+        this.writeLock.unlock();
+      } // try/finally
+      long released;
+      synchronized (this.open) {
+        released = this.released;
+      } // synchronized
+      long[] stamps = stamps();
+      long now = stamps[stamps.length - 1];
+      if (this.versions > this.size
+          && (now > this.collectedTo || released != this.collectedReleased)) {
+        this.collectLock.lock();
+        try {
+          collect(stamps);
+        } finally {
+          this.collectLock.unlock();
+        } // try/finally
+        this.collectedTo = now;
+        this.collectedReleased = released;
+      } else if (this.collectAt == Long.MAX_VALUE) {
+        // Woken with nothing to collect; wait for the next batch of garbage
+        this.writeLock.lock();
+        try {
+          this.collectAt = this.versions - this.size + COLLECT_EVERY;
+        } finally {
+          this.writeLock.unlock();
+        } // try/finally
+      } // if/else
+    } // while
+  } // collectLoop()
+
+  /**
+   * Convert a stored value back to a V.
+   */
+  @SuppressWarnings("unchecked")
+  static <V> V unwrap(Object value) {
+    return (V) value;
+  } // unwrap(Object)
+
+  // +-----------+---------------------------------------------------
+  // | Snapshots |
+  // +-----------+
+
+  /**
+   * The map as it was at one moment.  Reads never block, and never see a
+   * write made after the snapshot opened.
+   */
+  public class Snapshot implements AutoCloseable {
+
+    /**
+     * The stamp of the last write we see.
+     */
+    final long stamp;
+
+    /**
+     * Releases our stamp, once.
+     */
+    final Cleaner.Cleanable cleanable;
+
+    /**
+     * Whether we have been closed.
+     */
+    volatile boolean closed;
+
+    /**
+     * The number of keys we see, or -1 until someone asks.
+     */
+    int size = -1;
+
+    Snapshot(long stamp) {
+      this.stamp = stamp;
+      // The action must not refer to us, or we would never be collected
+      MvccSkipList<K, V> list = MvccSkipList.this;
+      this.cleanable = CLEANER.register(this, () -> list.release(stamp));
+    } // Snapshot(long)
+
+    /**
+     * Get the stamp of the last write this snapshot sees.
+     */
+    public long stamp() {
+      return this.stamp;
+    } // stamp()
+
+    /**
+     * Get the value associated with key.
+     *
+     * @throws IndexOutOfBoundsException if key was not in the map
+     * @throws NullPointerException if the key is null
+     * @throws IllegalStateException if the snapshot is closed
+     */
+    public V get(K key) {
+      if (key == null) {
+        throw new NullPointerException("null key");
+      } // if
+      Object value = valueAt(key, checkOpen());
+      if (value == TOMBSTONE) {
+        throw new IndexOutOfBoundsException("key is not in list");
+      } // if
+      return unwrap(value);
+    } // get(K)
+
+    /**
+     * Determine if key was in the map.
+     */
+    public boolean containsKey(K key) {
+      return valueAt(key, checkOpen()) != TOMBSTONE;
+    } // containsKey(K)
+
+    /**
+     * Determine how many keys were in the map.  The first call counts
+     * them, in O(n) time.
+     */
+    public int size() {
+      if (this.size < 0) {
+        int count = 0;
+        for (Iterator<Map.Entry<K, V>> entries = iterator(false); entries.hasNext();) {
+          entries.next();
+          count++;
+        } // for
+        this.size = count;
+      } // if
+      return this.size;
+    } // size()
+
+    /**
+     * Iterate, in order, over the pairs.
+     */
+    public Iterator<Map.Entry<K, V>> iterator() {
+      return iterator(false);
+    } // iterator()
+
+    /**
+     * Iterate, in order, over the pairs whose keys lie between fromKey
+     * and toKey.  A null bound leaves that end of the range open.
+     */
+    public Iterator<Map.Entry<K, V>> range(K fromKey, boolean fromInclusive, K toKey,
+        boolean toInclusive) {
+      return new SnapshotIterator(fromKey, fromInclusive, toKey, toInclusive, false);
+    } // range(K, boolean, K, boolean)
+
+    /**
+     * Apply a function to each pair.
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+      for (Iterator<Map.Entry<K, V>> entries = iterator(false); entries.hasNext();) {
+        Map.Entry<K, V> entry = entries.next();
+        action.accept(entry.getKey(), entry.getValue());
+      } // for
+    } // forEach(BiConsumer<? super K, ? super V>)
+
+    /**
+     * Release the snapshot, so that the versions only it could see may be
+     * dropped.
+     */
+    @Override
+    public void close() {
+      this.closed = true;
+      this.cleanable.clean();
+    } // close()
+
+    /**
+     * Iterate over every pair, closing the snapshot at the end if
+     * closeAtEnd is set.
+     */
+    Iterator<Map.Entry<K, V>> iterator(boolean closeAtEnd) {
+      return new SnapshotIterator(null, true, null, true, closeAtEnd);
+    } // iterator(boolean)
+
+    /**
+     * Make sure we are still open.
+     *
+     * @returns our stamp
+     * @throws IllegalStateException if we are closed
+     */
+    long checkOpen() {
+      if (this.closed) {
+        throw new IllegalStateException("snapshot is closed");
+      } // if
+      return this.stamp;
+    } // checkOpen()
+
+    /**
+     * An iterator over the keys of a range that this snapshot sees, with
+     * their values as of the snapshot.
+     */
+    class SnapshotIterator implements Iterator<Map.Entry<K, V>> {
+
+      /**
+       * The keys of the index, in order.
+       */
+      final ConcurrentSkipList<K, Chain>.NodeIterator nodes;
+
+      /**
+       * Where to stop, and whether to close the snapshot there.
+       */
+      final K toKey;
+      final boolean toInclusive;
+      final boolean closeAtEnd;
+
+      /**
+       * The next pair to return, or null at the end.
+       */
+      Map.Entry<K, V> next;
+
+      SnapshotIterator(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive,
+          boolean closeAtEnd) {
+        checkOpen();
+        ConcurrentSkipList<K, Chain> index = MvccSkipList.this.index;
+        CNode<K> start =
+            (fromKey == null) ? index.head : index.lastBefore(fromKey, !fromInclusive);
+        this.nodes = index.new NodeIterator(start);
+        this.toKey = toKey;
+        this.toInclusive = toInclusive;
+        this.closeAtEnd = closeAtEnd;
+        advance();
+      } // SnapshotIterator(K, boolean, K, boolean, boolean)
+
+      @Override
+      public boolean hasNext() {
+        return this.next != null;
+      } // hasNext()
+
+      @Override
+      public Map.Entry<K, V> next() {
+        if (this.next == null) {
+          throw new NoSuchElementException();
+        } // if
+        Map.Entry<K, V> result = this.next;
+        advance();
+        return result;
+      } // next()
+
+      /**
+       * Find the next key in range that the snapshot sees.
+       */
+      void advance() {
+        this.next = null;
+        while (this.nodes.hasNext()) {
+          K key = this.nodes.next().key;
+          if (this.toKey != null) {
+            int order = MvccSkipList.this.comparator.compare(key, this.toKey);
+            if (order > 0 || (order == 0 && !this.toInclusive)) {
+              break;
+            } // if
+          } // if
+          Object value = ((Chain) this.nodes.lastValue).at(checkOpen());
+          if (value != TOMBSTONE) {
+            this.next = new AbstractMap.SimpleImmutableEntry<K, V>(key, unwrap(value));
+            return;
+          } // if
+        } // while
+        if (this.closeAtEnd) {
+          close();
+        } // if
+      } // advance()
+
+    } // class SnapshotIterator
+
+  } // class Snapshot
+
+  // +----------+----------------------------------------------------
+  // | Versions |
+  // +----------+
+
+  /**
+   * The versions of one key, newest first.
+   */
+  static class Chain {
+
+    /**
+     * The newest version.  Only writers change it.
+     */
+    volatile Version latest;
+
+    Chain(Version latest) {
+      this.latest = latest;
+    } // Chain(Version)
+
+    /**
+     * Get the value as of stamp, or TOMBSTONE if the key did not exist
+     * then.
+     */
+    Object at(long stamp) {
+      for (Version version = this.latest; version != null; version = version.next) {
+        if (version.stamp <= stamp) {
+          return version.value;
+        } // if
+      } // for
+      return TOMBSTONE;
+    } // at(long)
+
+  } // class Chain
+
+  /**
+   * One version of a key's value.
+   */
+  static class Version {
+
+    /**
+     * The stamp of the write that made it.
+     */
+    final long stamp;
+
+    /**
+     * The value, or TOMBSTONE.
+     */
+    final Object value;
+
+    /**
+     * The next older version, or null once the collector has dropped
+     * the older ones.
+     */
+    Version next;
+
+    Version(long stamp, Object value, Version next) {
+      this.stamp = stamp;
+      this.value = value;
+      this.next = next;
+    } // Version(long, Object, Version)
+
+  } // class Version
+
+} // class MvccSkipList
@@ -0,0 +1,311 @@
+import static org.junit.Assert.*;
+import java.util.LinkedHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+
+/**
+ * Tests of MvccSkipList and its snapshots.
+ */
+public class MvccSkipListTests {
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Check that an iterator yields exactly the pairs of expected, in order.
+   */
+  static void assertYields(Map<Integer, Integer> expected,
+      Iterator<Map.Entry<Integer, Integer>> entries) {
+    for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+      assertTrue(entries.hasNext());
+      Map.Entry<Integer, Integer> actual = entries.next();
+      assertEquals(entry.getKey(), actual.getKey());
+      assertEquals(entry.getValue(), actual.getValue());
+    } // for
+    assertFalse(entries.hasNext());
+  } // assertYields(Map<Integer, Integer>, Iterator<Map.Entry<Integer, Integer>>)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Verify that random sets and removes match a TreeMap, and that a
+   * snapshot taken along the way keeps matching a copy made then.
+   */
+  @Test
+  public void randomTest() {
+    try (MvccSkipList<Integer, Integer> lst =
+        new MvccSkipList<Integer, Integer>(Integer::compare)) {
+      TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+      TreeMap<Integer, Integer> then = null;
+      MvccSkipList<Integer, Integer>.Snapshot snapshot = null;
+      Random random = new Random(207);
+      for (int i = 0; i < 20000; i++) {
+        int key = random.nextInt(1000);
+        if (random.nextInt(3) == 0) {
+          assertEquals(expected.remove(key), lst.remove(key));
+        } else {
+          assertEquals(expected.put(key, i), lst.set(key, i));
+        } // if/else
+        if (i == 10000) {
+          then = new TreeMap<Integer, Integer>(expected);
+          snapshot = lst.snapshot();
+        } // if
+      } // for
+      assertEquals(expected.size(), lst.size());
+      for (int key = 0; key < 1000; key++) {
+        assertEquals(expected.containsKey(key), lst.containsKey(key));
+        assertEquals(then.containsKey(key), snapshot.containsKey(key));
+        if (then.containsKey(key)) {
+          assertEquals(then.get(key), snapshot.get(key));
+        } // if
+      } // for
+      assertEquals(then.size(), snapshot.size());
+      assertYields(then, snapshot.iterator());
+      assertYields(then.subMap(100, true, 200, false), snapshot.range(100, true, 200, false));
+      assertYields(then.subMap(100, false, 200, true), snapshot.range(100, false, 200, true));
+      assertYields(then.headMap(50, true), snapshot.range(null, true, 50, true));
+      assertYields(then.tailMap(950, false), snapshot.range(950, false, null, true));
+      snapshot.close();
+
+      Iterator<Integer> keys = lst.keys();
+      Iterator<Integer> values = lst.values();
+      for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+        assertEquals(entry.getKey(), keys.next());
+        assertEquals(entry.getValue(), values.next());
+      } // for
+      assertFalse(keys.hasNext());
+      assertFalse(values.hasNext());
+    } // try
+  } // randomTest()
+
+  /**
+   * Verify that a snapshot ignores writes made after it opened, that
+   * the map's own reads see them, and that null values survive.
+   */
+  @Test
+  public void snapshotTest() {
+    try (MvccSkipList<String, String> lst =
+        new MvccSkipList<String, String>(String::compareTo)) {
+      lst.set("a", "1");
+      lst.set("b", "2");
+      lst.set("c", null);
+      MvccSkipList<String, String>.Snapshot snapshot = lst.snapshot();
+      lst.set("a", "one");
+      lst.remove("b");
+      lst.set("d", "4");
+      assertEquals("1", snapshot.get("a"));
+      assertEquals("2", snapshot.get("b"));
+      assertTrue(snapshot.containsKey("c"));
+      assertNull(snapshot.get("c"));
+      assertFalse(snapshot.containsKey("d"));
+      assertEquals(3, snapshot.size());
+      assertEquals("one", lst.get("a"));
+      assertFalse(lst.containsKey("b"));
+      assertEquals(3, lst.size());
+      try {
+        snapshot.get("d");
+        fail("d was added after the snapshot");
+      } catch (IndexOutOfBoundsException e) {
+        // Expected
+      } // try/catch
+      snapshot.close();
+      try {
+        snapshot.get("a");
+        fail("closed snapshots should be unusable");
+      } catch (IllegalStateException e) {
+        // Expected
+      } // try/catch
+    } // try
+  } // snapshotTest()
+
+  /**
+   * Verify that an open snapshot keeps only the versions it sees, that
+   * collection leaves one version per key once it closes, and that it
+   * forgets removed keys.
+   */
+  @Test
+  public void collectTest() {
+    try (MvccSkipList<Integer, Integer> lst =
+        new MvccSkipList<Integer, Integer>(Integer::compare)) {
+      for (int i = 0; i < 100; i++) {
+        lst.set(i, i);
+      } // for
+      MvccSkipList<Integer, Integer>.Snapshot snapshot = lst.snapshot();
+      for (int round = 1; round <= 5; round++) {
+        for (int i = 0; i < 100; i++) {
+          lst.set(i, i + round);
+        } // for
+      } // for
+      for (int i = 0; i < 50; i++) {
+        lst.remove(i);
+      } // for
+      lst.collect();
+      assertEquals(200, lst.versions());
+      assertEquals(Integer.valueOf(7), snapshot.get(7));
+      snapshot.close();
+      lst.collect();
+      assertEquals(50, lst.size());
+      assertEquals(50, lst.versions());
+      assertEquals(50, lst.index.size());
+      assertEquals(Integer.valueOf(99 + 5), lst.get(99));
+
+      // The map's own iterators close their snapshots at the end
+      for (Iterator<Integer> keys = lst.keys(); keys.hasNext();) {
+        lst.set(keys.next(), 0);
+      } // for
+      lst.collect();
+      assertEquals(50, lst.versions());
+    } // try
+  } // collectTest()
+
+  /**
+   * Verify that collecting while snapshots at many different stamps are
+   * open keeps what each of them sees, and no more.
+   */
+  @Test
+  public void collectOpenTest() {
+    try (MvccSkipList<Integer, Integer> lst =
+        new MvccSkipList<Integer, Integer>(Integer::compare)) {
+      TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+      Map<MvccSkipList<Integer, Integer>.Snapshot, TreeMap<Integer, Integer>> open =
+          new LinkedHashMap<MvccSkipList<Integer, Integer>.Snapshot, TreeMap<Integer, Integer>>();
+      Random random = new Random(311);
+      for (int i = 0; i < 20000; i++) {
+        int key = random.nextInt(200);
+        if (random.nextInt(4) == 0) {
+          lst.remove(key);
+          expected.remove(key);
+        } else {
+          lst.set(key, i);
+          expected.put(key, i);
+        } // if/else
+        if (i % 500 == 0) {
+          open.put(lst.snapshot(), new TreeMap<Integer, Integer>(expected));
+        } // if
+        if (i % 700 == 0 && open.size() > 3) {
+          MvccSkipList<Integer, Integer>.Snapshot closing = open.keySet().iterator().next();
+          closing.close();
+          open.remove(closing);
+        } // if
+        if (i % 1000 == 999) {
+          lst.collect();
+          // Each key keeps at most its newest version and one per snapshot
+          assertTrue(lst.versions() <= 200 * (open.size() + 1));
+          for (Map.Entry<MvccSkipList<Integer, Integer>.Snapshot, TreeMap<Integer, Integer>> entry
+              : open.entrySet()) {
+            assertYields(entry.getValue(), entry.getKey().iterator());
+          } // for
+        } // if
+      } // for
+      for (MvccSkipList<Integer, Integer>.Snapshot snapshot : open.keySet()) {
+        snapshot.close();
+      } // for
+      lst.collect();
+      assertEquals(expected.size(), lst.versions());
+    } // try
+  } // collectOpenTest()
+
+  /**
+   * Verify that writers wake the collector even when removes, which add
+   * two to the garbage, step over the threshold.
+   */
+  @Test
+  public void collectTriggerTest() {
+    try (MvccSkipList<Integer, Integer> lst =
+        new MvccSkipList<Integer, Integer>(Integer::compare)) {
+      // Keep the collector from running, so that the trigger stays visible
+      lst.collectLock.lock();
+      try {
+        int keys = (int) MvccSkipList.COLLECT_EVERY;
+        for (int i = 0; i < keys; i++) {
+          lst.set(i, i);
+        } // for
+        lst.set(0, 0);
+        for (int i = 1; i < keys && lst.versions() - lst.size() < MvccSkipList.COLLECT_EVERY;
+            i++) {
+          lst.remove(i);
+        } // for
+        assertEquals(1, (lst.versions() - lst.size()) % 2);
+        assertEquals(Long.MAX_VALUE, lst.collectAt);
+      } finally {
+        lst.collectLock.unlock();
+      } // try/finally
+    } // try
+  } // collectTriggerTest()
+
+  /**
+   * While a writer sweeps over the keys, setting each to the number of
+   * its sweep, every snapshot must see one moment: the keys before some
+   * point at one sweep and the rest at the sweep before, however long a
+   * reader takes over it.  Once the readers are done, the collector must
+   * be able to drop everything but the newest versions.
+   */
+  @Test
+  public void sweepTest() throws InterruptedException {
+    final int keys = 100;
+    final int sweeps = 500;
+    try (MvccSkipList<Integer, Integer> lst =
+        new MvccSkipList<Integer, Integer>(Integer::compare)) {
+      for (int i = 0; i < keys; i++) {
+        lst.set(i, 0);
+      } // for
+      AtomicBoolean done = new AtomicBoolean(false);
+      ConcurrentSkipListTests.runThreads(4, (id) -> {
+        if (id == 0) {
+          for (int sweep = 1; sweep <= sweeps; sweep++) {
+            for (int i = 0; i < keys; i++) {
+              lst.set(i, sweep);
+            } // for
+          } // for
+          done.set(true);
+        } else {
+          do {
+            try (MvccSkipList<Integer, Integer>.Snapshot snapshot = lst.snapshot()) {
+              Iterator<Map.Entry<Integer, Integer>> it = snapshot.iterator();
+              int first = it.next().getValue();
+              int previous = first;
+              while (it.hasNext()) {
+                int value = it.next().getValue();
+                assertTrue(value == previous || value == first - 1);
+                previous = value;
+                Thread.yield();
+              } // while
+              assertEquals(keys, snapshot.size());
+            } // try
+          } while (!done.get());
+        } // if/else
+      });
+      for (Iterator<Integer> values = lst.values(); values.hasNext();) {
+        assertEquals(Integer.valueOf(sweeps), values.next());
+      } // for
+      lst.collect();
+      assertEquals(keys, lst.versions());
+    } // try
+  } // sweepTest()
+
+  /**
+   * Verify that a closed map refuses writes but can still be read.
+   */
+  @Test
+  public void closeTest() {
+    MvccSkipList<Integer, Integer> lst = new MvccSkipList<Integer, Integer>(Integer::compare);
+    lst.set(1, 1);
+    lst.close();
+    assertFalse(lst.collector.isAlive());
+    assertEquals(Integer.valueOf(1), lst.get(1));
+    try {
+      lst.set(2, 2);
+      fail("closed maps should refuse writes");
+    } catch (IllegalStateException e) {
+      // Expected
+    } // try/catch
+  } // closeTest()
+
+} // class MvccSkipListTests
@@ -0,0 +1,640 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
+/**
+ * A skip list of byte-array keys and values that keeps its nodes outside
+ * the Java heap, so that a large map costs the garbage collector nothing
+ * to trace.
+ *
+ * Nodes and values live in direct ByteBuffer chunks (the arena).  A
+ * pointer is a long holding a chunk number (plus one, so that 0 can be
+ * NIL) in its high half and an offset in its low half.  A node is
+ *
+ *   int height, int keyLength, long value, long next[height], key bytes
+ *
+ * and a value is
+ *
+ *   int capacity, int length, bytes
+ *
+ * Keys are ordered as unsigned bytes, lexicographically (as
+ * Arrays.compareUnsigned does), and are compared in place, eight bytes at
+ * a time.  Values are copied in and out; a value that no longer fits its
+ * record, and the records of removed nodes, are not reused until the list
+ * is closed (see garbageBytes).
+ *
+ * The list is not thread-safe, and must be closed to free its memory.
+ */
+public class OffHeapSkipList implements SimpleMap<byte[], byte[]>, AutoCloseable {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The tallest a node can be.  Plenty for 2^32 entries.
+   */
+  static final int MAX_HEIGHT = 32;
+
+  /**
+   * The default chunk size.
+   */
+  static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+  /**
+   * The null pointer.
+   */
+  static final long NIL = 0;
+
+  /**
+   * Offsets of the fields of a node.
+   */
+  static final int NODE_HEIGHT = 0;
+  static final int NODE_KEY_LENGTH = 4;
+  static final int NODE_VALUE = 8;
+  static final int NODE_NEXT = 16;
+
+  /**
+   * Offsets of the fields of a value.
+   */
+  static final int VALUE_CAPACITY = 0;
+  static final int VALUE_LENGTH = 4;
+  static final int VALUE_BYTES = 8;
+
+  /**
+   * Reads big-endian longs out of byte arrays, to compare keys eight bytes
+   * at a time.  (Buffers are big-endian too.)
+   */
+  static final VarHandle LONGS =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The chunks of the arena.
+   */
+  ArrayList<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+
+  /**
+   * The chunk we are allocating from.
+   */
+  ByteBuffer chunk;
+
+  /**
+   * The size of a normal chunk.  Larger records get chunks of their own.
+   */
+  int chunkSize;
+
+  /**
+   * The head node, whose links point to the front nodes.
+   */
+  long head;
+
+  /**
+   * Scratch space for set and remove: the last node before the key on
+   * each level.
+   */
+  long[] preds = new long[MAX_HEIGHT];
+
+  /**
+   * The number of pairs in the list.
+   */
+  int size;
+
+  /**
+   * The current height of the skiplist.
+   */
+  int height;
+
+  /**
+   * The largest height a new node may currently have.  Grows with size.
+   */
+  int maxHeight;
+
+  /**
+   * The size at which we next raise maxHeight.
+   */
+  double growAt;
+
+  /**
+   * The generator used to determine the height of nodes.
+   */
+  LevelGenerator levels;
+
+  /**
+   * Bytes allocated to records so far.
+   */
+  long usedBytes;
+
+  /**
+   * Bytes in records we no longer use.
+   */
+  long garbageBytes;
+
+  /**
+   * Whether close has been called.
+   */
+  boolean closed;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new, empty list that allocates chunks of chunkSize bytes and
+   * picks node heights with levels.
+   */
+  public OffHeapSkipList(int chunkSize, LevelGenerator levels) {
+    this(levels);
+    this.chunkSize = chunkSize;
+    this.head = allocate(NODE_NEXT + 8 * MAX_HEIGHT);
+    ByteBuffer buf = buffer(this.head);
+    int base = offset(this.head);
+    buf.putInt(base + NODE_HEIGHT, MAX_HEIGHT);
+    buf.putInt(base + NODE_KEY_LENGTH, 0);
+    buf.putLong(base + NODE_VALUE, NIL);
+    for (int i = 0; i < MAX_HEIGHT; i++) {
+      buf.putLong(base + NODE_NEXT + 8 * i, NIL);
+    } // for
+    this.size = 0;
+    this.height = 0;
+    this.maxHeight = SkipList.INITIAL_HEIGHT;
+    this.growAt = Math.pow(1.0 / levels.probability(), SkipList.INITIAL_HEIGHT);
+  } // OffHeapSkipList(int, LevelGenerator)
+
+  /**
+   * Create a new, empty list.
+   */
+  public OffHeapSkipList() {
+    this(DEFAULT_CHUNK_SIZE, LevelGenerator.fast());
+  } // OffHeapSkipList()
+
+  /**
+   * Create a list with no arena, for subclasses that set up their own.
+   */
+  OffHeapSkipList(LevelGenerator levels) {
+    this.levels = levels;
+  } // OffHeapSkipList(LevelGenerator)
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  /**
+   * Set the value associated with key.  Both are copied.
+   *
+   * @returns a copy of the value originally associated with the key, or
+   *          null if the key was not originally in the list
+   * @throws NullPointerException if key is null
+   * @throws IllegalStateException if the list is closed
+   */
+  @Override
+  public byte[] set(byte[] key, byte[] value) {
+    checkOpen();
+    if (key == null) {
+      throw new NullPointerException("Key cannot be null");
+    } // if
+    long current = findPredecessors(key);
+    if (current != NIL && compareKey(current, key) == 0) {
+      byte[] old = readValue(current);
+      writeValue(current, value);
+      return old;
+    } // if
+
+    int newLevel = this.levels.nextLevel(this.maxHeight);
+    for (int i = this.height; i < newLevel; i++) {
+      this.preds[i] = this.head;
+    } // for
+    long node = allocate(NODE_NEXT + 8 * newLevel + key.length);
+    ByteBuffer buf = buffer(node);
+    int base = offset(node);
+    buf.putInt(base + NODE_HEIGHT, newLevel);
+    buf.putInt(base + NODE_KEY_LENGTH, key.length);
+    buf.putLong(base + NODE_VALUE, NIL);
+    buf.put(base + NODE_NEXT + 8 * newLevel, key);
+    writeValue(node, value);
+    // Bottom up, so that the node is never on a level without being on the
+    // levels below
+    for (int i = 0; i < newLevel; i++) {
+      setNext(node, i, next(this.preds[i], i));
+      setNext(this.preds[i], i, node);
+    } // for
+    this.height = Math.max(this.height, newLevel);
+    this.size++;
+    if (this.size >= this.growAt && this.maxHeight < MAX_HEIGHT) {
+      this.maxHeight++;
+      this.growAt *= 1.0 / this.levels.probability();
+    } // if
+    return null;
+  } // set(byte[], byte[])
+
+  /**
+   * Get a copy of the value associated with key.
+   *
+   * @throws IndexOutOfBoundsException if key is not in list
+   * @throws IllegalStateException if the list is closed
+   */
+  @Override
+  public byte[] get(byte[] key) {
+    long node = search(key);
+    if (node == NIL) {
+      throw new IndexOutOfBoundsException("key is not in list");
+    } // if
+    return readValue(node);
+  } // get(byte[])
+
+  @Override
+  public int size() {
+    return this.size;
+  } // size()
+
+  @Override
+  public boolean containsKey(byte[] key) {
+    return search(key) != NIL;
+  } // containsKey(byte[])
+
+  /**
+   * Remove the pair with the given key.
+   *
+   * @returns a copy of the removed value, or null if key was not in the list
+   * @throws IllegalStateException if the list is closed
+   */
+  @Override
+  public byte[] remove(byte[] key) {
+    checkOpen();
+    if (key == null) {
+      throw new NullPointerException("Key cannot be null");
+    } // if
+    long current = findPredecessors(key);
+    if (current == NIL || compareKey(current, key) != 0) {
+      return null;
+    } // if
+    byte[] old = readValue(current);
+    int nodeHeight = buffer(current).getInt(offset(current) + NODE_HEIGHT);
+    // Top down, so that the node is never on a level without being on the
+    // levels below
+    for (int i = nodeHeight - 1; i >= 0; i--) {
+      setNext(this.preds[i], i, next(current, i));
+    } // for
+    while (this.height > 0 && next(this.head, this.height - 1) == NIL) {
+      this.height--;
+    } // while
+    this.size--;
+    this.garbageBytes += align(NODE_NEXT + 8 * nodeHeight + key.length) + valueBytes(current);
+    return old;
+  } // remove(byte[])
+
+  /**
+   * Iterate over copies of the keys, in order.
+   * The iterator throws IllegalStateException once the list is closed.
+   */
+  @Override
+  public Iterator<byte[]> keys() {
+    return new Iterator<byte[]>() {
+      long next = first();
+
+      @Override
+      public boolean hasNext() {
+        checkOpen();
+        return this.next != NIL;
+      } // hasNext()
+
+      @Override
+      public byte[] next() {
+        checkOpen();
+        if (this.next == NIL) {
+          throw new NoSuchElementException();
+        } // if
+        byte[] key = readKey(this.next);
+        this.next = OffHeapSkipList.this.next(this.next, 0);
+        return key;
+      } // next()
+    };
+  } // keys()
+
+  /**
+   * Iterate over copies of the values, in key order.
+   * The iterator throws IllegalStateException once the list is closed.
+   */
+  @Override
+  public Iterator<byte[]> values() {
+    return new Iterator<byte[]>() {
+      long next = first();
+
+      @Override
+      public boolean hasNext() {
+        checkOpen();
+        return this.next != NIL;
+      } // hasNext()
+
+      @Override
+      public byte[] next() {
+        checkOpen();
+        if (this.next == NIL) {
+          throw new NoSuchElementException();
+        } // if
+        byte[] value = readValue(this.next);
+        this.next = OffHeapSkipList.this.next(this.next, 0);
+        return value;
+      } // next()
+    };
+  } // values()
+
+  /**
+   * Apply action to copies of each pair, in key order.
+   */
+  @Override
+  public void forEach(BiConsumer<? super byte[], ? super byte[]> action) {
+    for (long node = first(); node != NIL; node = next(node, 0)) {
+      action.accept(readKey(node), readValue(node));
+    } // for
+  } // forEach(BiConsumer)
+
+  // +----------------------+----------------------------------------
+  // | Other public methods |
+  // +----------------------+
+
+  /**
+   * Free the arena.  The list is unusable afterwards.
+   */
+  @Override
+  public void close() {
+    if (this.closed) {
+      return;
+    } // if
+    this.closed = true;
+    for (ByteBuffer buf : this.chunks) {
+      release(buf);
+    } // for
+    this.chunks.clear();
+    this.chunk = null;
+    this.size = 0;
+    this.height = 0;
+  } // close()
+
+  /**
+   * Determine how many bytes of memory the arena holds.
+   */
+  public long offHeapBytes() {
+    long total = 0;
+    for (ByteBuffer buf : this.chunks) {
+      total += buf.capacity();
+    } // for
+    return total;
+  } // offHeapBytes()
+
+  /**
+   * Determine how many bytes of the arena hold records.
+   */
+  public long usedBytes() {
+    return this.usedBytes;
+  } // usedBytes()
+
+  /**
+   * Determine how many bytes of the arena hold records that are no longer
+   * in use (removed nodes, and values that were replaced by larger ones).
+   */
+  public long garbageBytes() {
+    return this.garbageBytes;
+  } // garbageBytes()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the last node before key on each level, recording them in preds.
+   *
+   * @returns the first node whose key is not less than key, or NIL
+   */
+  long findPredecessors(byte[] key) {
+    long current = this.head;
+    for (int i = this.height - 1; i >= 0; i--) {
+      long next = next(current, i);
+      while (next != NIL && compareKey(next, key) < 0) {
+        current = next;
+        next = next(current, i);
+      } // while
+      this.preds[i] = current;
+    } // for
+    return next(current, 0);
+  } // findPredecessors(byte[])
+
+  /**
+   * Find the node with the given key, without writing anything.
+   *
+   * @returns the node, or NIL if key is not in the list
+   */
+  long search(byte[] key) {
+    checkOpen();
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    long current = this.head;
+    for (int i = this.height - 1; i >= 0; i--) {
+      long next = next(current, i);
+      while (next != NIL && compareKey(next, key) < 0) {
+        current = next;
+        next = next(current, i);
+      } // while
+    } // for
+    current = next(current, 0);
+    if (current != NIL && compareKey(current, key) == 0) {
+      return current;
+    } else {
+      return NIL;
+    } // if/else
+  } // search(byte[])
+
+  /**
+   * Compare the key of node with key, as unsigned bytes, in place.
+   */
+  int compareKey(long node, byte[] key) {
+    ByteBuffer buf = buffer(node);
+    int base = offset(node);
+    int length = buf.getInt(base + NODE_KEY_LENGTH);
+    int start = base + NODE_NEXT + 8 * buf.getInt(base + NODE_HEIGHT);
+    int common = Math.min(length, key.length);
+    int i = 0;
+    for (; i + 8 <= common; i += 8) {
+      long mine = buf.getLong(start + i);
+      long theirs = (long) LONGS.get(key, i);
+      if (mine != theirs) {
+        return Long.compareUnsigned(mine, theirs);
+      } // if
+    } // for
+    for (; i < common; i++) {
+      int diff = (buf.get(start + i) & 0xff) - (key[i] & 0xff);
+      if (diff != 0) {
+        return diff;
+      } // if
+    } // for
+    return length - key.length;
+  } // compareKey(long, byte[])
+
+  /**
+   * Get the first node, or NIL.
+   */
+  long first() {
+    checkOpen();
+    return next(this.head, 0);
+  } // first()
+
+  /**
+   * Get the next pointer of node on a level.
+   */
+  long next(long node, int level) {
+    return buffer(node).getLong(offset(node) + NODE_NEXT + 8 * level);
+  } // next(long, int)
+
+  /**
+   * Set the next pointer of node on a level.
+   */
+  void setNext(long node, int level, long next) {
+    buffer(node).putLong(offset(node) + NODE_NEXT + 8 * level, next);
+  } // setNext(long, int, long)
+
+  /**
+   * Copy out the key of a node.
+   */
+  byte[] readKey(long node) {
+    ByteBuffer buf = buffer(node);
+    int base = offset(node);
+    byte[] key = new byte[buf.getInt(base + NODE_KEY_LENGTH)];
+    buf.get(base + NODE_NEXT + 8 * buf.getInt(base + NODE_HEIGHT), key);
+    return key;
+  } // readKey(long)
+
+  /**
+   * Copy out the value of a node.
+   */
+  byte[] readValue(long node) {
+    long record = buffer(node).getLong(offset(node) + NODE_VALUE);
+    if (record == NIL) {
+      return null;
+    } // if
+    ByteBuffer buf = buffer(record);
+    int base = offset(record);
+    byte[] value = new byte[buf.getInt(base + VALUE_LENGTH)];
+    buf.get(base + VALUE_BYTES, value);
+    return value;
+  } // readValue(long)
+
+  /**
+   * Store a value for a node, reusing its old record if the value fits.
+   */
+  void writeValue(long node, byte[] value) {
+    ByteBuffer nodeBuf = buffer(node);
+    int nodeBase = offset(node);
+    long record = nodeBuf.getLong(nodeBase + NODE_VALUE);
+    if (value == null) {
+      this.garbageBytes += valueBytes(node);
+      nodeBuf.putLong(nodeBase + NODE_VALUE, NIL);
+      return;
+    } // if
+    if (record == NIL || buffer(record).getInt(offset(record) + VALUE_CAPACITY) < value.length) {
+      this.garbageBytes += valueBytes(node);
+      record = allocate(VALUE_BYTES + value.length);
+      buffer(record).putInt(offset(record) + VALUE_CAPACITY, value.length);
+      nodeBuf.putLong(nodeBase + NODE_VALUE, record);
+    } // if
+    ByteBuffer buf = buffer(record);
+    int base = offset(record);
+    buf.putInt(base + VALUE_LENGTH, value.length);
+    buf.put(base + VALUE_BYTES, value);
+  } // writeValue(long, byte[])
+
+  /**
+   * Determine the size of the value record of a node, or 0 if it has none.
+   */
+  long valueBytes(long node) {
+    long record = buffer(node).getLong(offset(node) + NODE_VALUE);
+    if (record == NIL) {
+      return 0;
+    } // if
+    return align(VALUE_BYTES + buffer(record).getInt(offset(record) + VALUE_CAPACITY));
+  } // valueBytes(long)
+
+  /**
+   * Allocate an 8-byte aligned record.
+   *
+   * @returns a pointer to it
+   */
+  long allocate(int bytes) {
+    int size = align(bytes);
+    if (this.chunk == null || this.chunk.remaining() < size) {
+      this.chunk = ByteBuffer.allocateDirect(Math.max(this.chunkSize, size));
+      this.chunks.add(this.chunk);
+    } // if
+    int position = this.chunk.position();
+    this.chunk.position(position + size);
+    this.usedBytes += size;
+    return pointer(this.chunks.size() - 1, position);
+  } // allocate(int)
+
+  /**
+   * Round up to a multiple of 8.
+   */
+  static int align(int bytes) {
+    return (bytes + 7) & ~7;
+  } // align(int)
+
+  /**
+   * Make a pointer.
+   */
+  static long pointer(int chunk, int offset) {
+    return ((long) (chunk + 1) << 32) | offset;
+  } // pointer(int, int)
+
+  /**
+   * Find the chunk a pointer points into.
+   */
+  ByteBuffer buffer(long pointer) {
+    return this.chunks.get((int) (pointer >>> 32) - 1);
+  } // buffer(long)
+
+  /**
+   * Find the offset within its chunk that a pointer points to.
+   */
+  static int offset(long pointer) {
+    return (int) pointer;
+  } // offset(long)
+
+  /**
+   * Make sure the list is still open.
+   *
+   * @throws IllegalStateException if it is not
+   */
+  void checkOpen() {
+    if (this.closed) {
+      throw new IllegalStateException("list is closed");
+    } // if
+  } // checkOpen()
+
+  /**
+   * Free a direct buffer now rather than when it is collected, if the JVM
+   * lets us (through sun.misc.Unsafe.invokeCleaner).  Otherwise we just
+   * drop it and let the collector free it.
+   */
+  static void release(ByteBuffer buf) {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field field = unsafeClass.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      Method cleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      cleaner.invoke(field.get(null), buf);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // Leave it to the collector
+    } // try/catch
+  } // release(ByteBuffer)
+
+} // class OffHeapSkipList
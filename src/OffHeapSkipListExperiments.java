@@ -0,0 +1,146 @@
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Compare the heap use and GC pauses of an on-heap SkipList of byte
+ * arrays with an OffHeapSkipList holding the same pairs.  Each list is
+ * built, measured, and then churned (a mix of gets and value
+ * replacements) while we record every collector pause.
+ *
+ * Usage: java -Xmn32m OffHeapSkipListExperiments [entries] [churn millis]
+ *
+ * (A small young generation makes the churn trigger enough collections
+ * to say something about pauses.)
+ */
+public class OffHeapSkipListExperiments {
+
+  /**
+   * The lengths of the keys and values we store.
+   */
+  static final int KEY_BYTES = 16;
+  static final int VALUE_BYTES = 32;
+
+  /**
+   * Pauses (in ms) reported since the last reset.
+   */
+  static final List<Long> pauses = Collections.synchronizedList(new ArrayList<Long>());
+
+  public static void main(String args[]) {
+    int entries = (args.length > 0) ? Integer.parseInt(args[0]) : 2000000;
+    long millis = (args.length > 1) ? Long.parseLong(args[1]) : 10000;
+    listenForPauses();
+
+    System.out.println("| List            | Heap MB | Off-heap MB | Pauses | p99 pause ms "
+        + "| Max pause ms |");
+    System.out.println("|-----------------|---------|-------------|--------|--------------"
+        + "|--------------|");
+
+    long before = MemoryMeter.usedHeap();
+    SkipList<byte[], byte[]> onHeap = new SkipList<byte[], byte[]>(Arrays::compareUnsigned);
+    fill(onHeap, entries);
+    long heap = MemoryMeter.usedHeap() - before;
+    pauses.clear();
+    churn(onHeap, entries, millis);
+    report("SkipList", heap, 0);
+    onHeap = null;
+
+    before = MemoryMeter.usedHeap();
+    try (OffHeapSkipList offHeap = new OffHeapSkipList()) {
+      fill(offHeap, entries);
+      heap = MemoryMeter.usedHeap() - before;
+      pauses.clear();
+      churn(offHeap, entries, millis);
+      report("OffHeapSkipList", heap, offHeap.offHeapBytes());
+    } // try
+  } // main(String[])
+
+  /**
+   * The key for a number.
+   */
+  static byte[] key(int i) {
+    return ByteBuffer.allocate(KEY_BYTES).putLong(0, Long.reverse(i)).putLong(8, i).array();
+  } // key(int)
+
+  /**
+   * Fill a map with entries pairs, in random order.
+   */
+  static void fill(SimpleMap<byte[], byte[]> map, int entries) {
+    SplittableRandom random = new SplittableRandom(14);
+    for (int i = 0; i < entries; i++) {
+      byte[] value = new byte[VALUE_BYTES];
+      random.nextBytes(value);
+      map.set(key(i), value);
+    } // for
+  } // fill(SimpleMap<byte[], byte[]>, int)
+
+  /**
+   * Run a mix of 80% gets and 20% value replacements for a while.
+   */
+  static void churn(SimpleMap<byte[], byte[]> map, int entries, long millis) {
+    SplittableRandom random = new SplittableRandom(15);
+    long deadline = System.nanoTime() + millis * 1000000;
+    long sum = 0;
+    while (System.nanoTime() < deadline) {
+      for (int i = 0; i < 1000; i++) {
+        byte[] key = key(random.nextInt(entries));
+        if (random.nextInt(5) == 0) {
+          byte[] value = new byte[VALUE_BYTES];
+          random.nextBytes(value);
+          map.set(key, value);
+        } else {
+          sum += map.get(key)[0];
+        } // if/else
+      } // for
+    } // while
+    if (sum == 42) {
+      System.out.println();
+    } // if
+  } // churn(SimpleMap<byte[], byte[]>, int, long)
+
+  /**
+   * Print a row of the table.
+   */
+  static void report(String name, long heap, long offHeap) {
+    long[] sorted;
+    synchronized (pauses) {
+      sorted = new long[pauses.size()];
+      for (int i = 0; i < sorted.length; i++) {
+        sorted[i] = pauses.get(i);
+      } // for
+    } // synchronized
+    Arrays.sort(sorted);
+    long p99 = (sorted.length == 0) ? 0 : sorted[(int) Math.ceil(sorted.length * 0.99) - 1];
+    long max = (sorted.length == 0) ? 0 : sorted[sorted.length - 1];
+    System.out.printf("| %-15s | %7d | %11d | %6d | %12d | %12d |%n", name,
+        Math.max(0, heap) >> 20, offHeap >> 20, sorted.length, p99, max);
+  } // report(String, long, long)
+
+  /**
+   * Record the duration of every collection in pauses.
+   */
+  static void listenForPauses() {
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      ((NotificationEmitter) gc).addNotificationListener((notification, handback) -> {
+        if (notification.getType()
+            .equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+          GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo
+              .from((CompositeData) notification.getUserData());
+          // Concurrent cycles don't stop the application
+          if (!info.getGcName().contains("Concurrent")) {
+            pauses.add(info.getGcInfo().getDuration());
+          } // if
+        } // if
+      }, null, null);
+    } // for
+  } // listenForPauses()
+
+} // class OffHeapSkipListExperiments
@@ -0,0 +1,192 @@
+import static org.junit.Assert.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+
+/**
+ * Tests of the off-heap skip list.
+ */
+public class OffHeapSkipListTests {
+
+  /**
+   * Turn a string into a key.
+   */
+  static byte[] bytes(String str) {
+    return str.getBytes(StandardCharsets.UTF_8);
+  } // bytes(String)
+
+  /**
+   * Turn bytes back into a string.
+   */
+  static String string(byte[] bytes) {
+    return new String(bytes, StandardCharsets.UTF_8);
+  } // string(byte[])
+
+  /**
+   * Verify the basic operations.
+   */
+  @Test
+  public void basicTest() {
+    try (OffHeapSkipList lst = new OffHeapSkipList()) {
+      for (int i = 0; i < 100; i++) {
+        assertNull(lst.set(bytes("key" + i), bytes("value" + i)));
+      } // for
+      assertEquals(100, lst.size());
+      assertEquals("value42", string(lst.get(bytes("key42"))));
+      assertTrue(lst.containsKey(bytes("key7")));
+      assertFalse(lst.containsKey(bytes("key")));
+      assertFalse(lst.containsKey(bytes("key100")));
+      assertEquals("value7", string(lst.remove(bytes("key7"))));
+      assertNull(lst.remove(bytes("key7")));
+      assertFalse(lst.containsKey(bytes("key7")));
+      assertEquals(99, lst.size());
+      try {
+        lst.get(bytes("key7"));
+        fail("get of a missing key should throw");
+      } catch (IndexOutOfBoundsException e) {
+        // Expected
+      } // try/catch
+    } // try
+  } // basicTest()
+
+  /**
+   * Verify that values can be replaced by shorter and longer ones, and that
+   * only the outgrown records become garbage.
+   */
+  @Test
+  public void replaceTest() {
+    try (OffHeapSkipList lst = new OffHeapSkipList()) {
+      lst.set(bytes("k"), bytes("a fairly long value"));
+      assertEquals(0, lst.garbageBytes());
+      assertEquals("a fairly long value", string(lst.set(bytes("k"), bytes("short"))));
+      assertEquals(0, lst.garbageBytes());
+      assertEquals("short", string(lst.get(bytes("k"))));
+      lst.set(bytes("k"), bytes("a much, much longer value than before"));
+      assertTrue(lst.garbageBytes() > 0);
+      assertEquals("a much, much longer value than before", string(lst.get(bytes("k"))));
+      assertEquals("a much, much longer value than before", string(lst.set(bytes("k"), null)));
+      assertNull(lst.get(bytes("k")));
+      assertTrue(lst.containsKey(bytes("k")));
+      lst.set(bytes("k"), new byte[0]);
+      assertEquals(0, lst.get(bytes("k")).length);
+    } // try
+  } // replaceTest()
+
+  /**
+   * Verify that keys are ordered as unsigned bytes, including keys that
+   * share long prefixes and keys that are prefixes of others.
+   */
+  @Test
+  public void orderTest() {
+    Random random = new Random(14);
+    TreeMap<byte[], byte[]> expected = new TreeMap<byte[], byte[]>(Arrays::compareUnsigned);
+    // Small chunks, so that records are spread over many of them
+    try (OffHeapSkipList lst = new OffHeapSkipList(4096, LevelGenerator.seeded(14))) {
+      byte[] prefix = bytes("a shared prefix that is longer than eight bytes");
+      for (int i = 0; i < 5000; i++) {
+        byte[] key = new byte[random.nextInt(4) == 0 ? random.nextInt(3) : random.nextInt(20)];
+        random.nextBytes(key);
+        if (random.nextBoolean()) {
+          byte[] longer = Arrays.copyOf(prefix, prefix.length + key.length);
+          System.arraycopy(key, 0, longer, prefix.length, key.length);
+          key = longer;
+        } // if
+        byte[] value = bytes(Integer.toString(i));
+        if (random.nextInt(4) == 0) {
+          byte[] old = expected.remove(key);
+          byte[] removed = lst.remove(key);
+          assertTrue(Arrays.equals(old, removed));
+        } else {
+          byte[] old = expected.put(key, value);
+          assertTrue(Arrays.equals(old, lst.set(key, value)));
+        } // if/else
+      } // for
+      assertEquals(expected.size(), lst.size());
+      assertTrue(lst.offHeapBytes() > 4096);
+      Iterator<byte[]> keys = lst.keys();
+      Iterator<byte[]> values = lst.values();
+      for (Map.Entry<byte[], byte[]> entry : expected.entrySet()) {
+        assertArrayEquals(entry.getKey(), keys.next());
+        assertArrayEquals(entry.getValue(), values.next());
+        assertArrayEquals(entry.getValue(), lst.get(entry.getKey()));
+      } // for
+      assertFalse(keys.hasNext());
+      assertFalse(values.hasNext());
+    } // try
+  } // orderTest()
+
+  /**
+   * Verify that high bytes sort after low ones.
+   */
+  @Test
+  public void unsignedTest() {
+    try (OffHeapSkipList lst = new OffHeapSkipList()) {
+      lst.set(new byte[] {(byte) 0x80}, bytes("high"));
+      lst.set(new byte[] {0x7f}, bytes("low"));
+      lst.set(new byte[] {0x7f, 0, 0, 0, 0, 0, 0, 0, (byte) 0xff}, bytes("low, long"));
+      lst.set(new byte[0], bytes("empty"));
+      String[] order = {"empty", "low", "low, long", "high"};
+      int[] i = new int[1];
+      lst.forEach((key, value) -> assertEquals(order[i[0]++], string(value)));
+      assertEquals(4, i[0]);
+    } // try
+  } // unsignedTest()
+
+  /**
+   * Verify that records larger than a chunk get chunks of their own.
+   */
+  @Test
+  public void largeRecordTest() {
+    try (OffHeapSkipList lst = new OffHeapSkipList(256, LevelGenerator.fast())) {
+      byte[] big = new byte[10000];
+      Arrays.fill(big, (byte) 7);
+      lst.set(big, big);
+      lst.set(bytes("small"), bytes("value"));
+      assertArrayEquals(big, lst.get(big));
+      assertEquals("value", string(lst.get(bytes("small"))));
+    } // try
+  } // largeRecordTest()
+
+  /**
+   * Verify that a closed list refuses to work.
+   */
+  @Test
+  public void closeTest() {
+    OffHeapSkipList lst = new OffHeapSkipList();
+    lst.set(bytes("k"), bytes("v"));
+    Iterator<byte[]> keys = lst.keys();
+    Iterator<byte[]> values = lst.values();
+    lst.close();
+    lst.close();
+    try {
+      keys.hasNext();
+      fail("iterating after close should throw");
+    } catch (IllegalStateException e) {
+      // Expected
+    } // try/catch
+    try {
+      values.next();
+      fail("iterating after close should throw");
+    } catch (IllegalStateException e) {
+      // Expected
+    } // try/catch
+    assertEquals(0, lst.offHeapBytes());
+    try {
+      lst.get(bytes("k"));
+      fail("get after close should throw");
+    } catch (IllegalStateException e) {
+      // Expected
+    } // try/catch
+    try {
+      lst.set(bytes("k"), bytes("v"));
+      fail("set after close should throw");
+    } catch (IllegalStateException e) {
+      // Expected
+    } // try/catch
+  } // closeTest()
+
+} // class OffHeapSkipListTests
@@ -0,0 +1,23 @@
+/**
+ * Nodes in a skip list with a key normalizer, which also hold their key's
+ * normalized prefix.  They extend HashedSLNode so that a list with a
+ * normalizer can also be indexed or hashed; the fields of the modes it
+ * lacks are null.
+ */
+class PrefixedSLNode<K, V> extends HashedSLNode<K, V> {
+
+  /**
+   * The normalized prefix of the key.
+   */
+  long prefix;
+
+  /**
+   * Create a new node of height n with the specified key, value and
+   * prefix, with widths if indexed is set and back links if hashed is set.
+   */
+  PrefixedSLNode(K key, V value, int n, boolean indexed, boolean hashed, long prefix) {
+    super(key, value, n, indexed, hashed);
+    this.prefix = prefix;
+  } // PrefixedSLNode(K, V, int, boolean, boolean, long)
+
+} // PrefixedSLNode<K,V>
@@ -0,0 +1,103 @@
+import static org.junit.Assert.*;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.Test;
+
+/**
+ * Tests of the primitive-keyed skip lists.
+ */
+public class PrimitiveSkipListTests {
+
+  /**
+   * Verify that a LongSkipList behaves like a TreeMap under random operations.
+   */
+  @Test
+  public void randomLongTest() {
+    Random random = new Random(207);
+    LongSkipList<String> lst = new LongSkipList<String>(LevelGenerator.seeded(1));
+    TreeMap<Long, String> expected = new TreeMap<Long, String>();
+    for (int i = 0; i < 20000; i++) {
+      // Spread keys over the whole range, including negatives
+      long key = random.nextInt(2000) * 0x0100000000L - 1000 * 0x0100000000L;
+      if (random.nextInt(3) > 0) {
+        assertEquals(expected.put(key, "v" + i), lst.set(key, "v" + i));
+      } else {
+        assertEquals(expected.remove(key), lst.remove(key));
+      } // if/else
+      assertEquals(expected.size(), lst.size());
+    } // for
+    for (Map.Entry<Long, String> entry : expected.entrySet()) {
+      assertEquals(entry.getValue(), lst.get(entry.getKey().longValue()));
+    } // for
+    Iterator<Long> keys = lst.keys();
+    for (Long key : expected.keySet()) {
+      assertEquals(key, keys.next());
+    } // for
+    assertFalse(keys.hasNext());
+  } // randomLongTest()
+
+  /**
+   * Verify that an IntSkipList behaves like a TreeMap under random operations.
+   */
+  @Test
+  public void randomIntTest() {
+    Random random = new Random(208);
+    IntSkipList<String> lst = new IntSkipList<String>(LevelGenerator.seeded(2));
+    TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+    for (int i = 0; i < 20000; i++) {
+      int key = random.nextInt(2000) - 1000;
+      if (random.nextInt(3) > 0) {
+        assertEquals(expected.put(key, "v" + i), lst.set(key, "v" + i));
+      } else {
+        assertEquals(expected.remove(key), lst.remove(key));
+      } // if/else
+      assertEquals(expected.containsKey(key), lst.containsKey(key));
+    } // for
+    assertEquals(expected.size(), lst.size());
+    Iterator<String> values = lst.values();
+    for (String value : expected.values()) {
+      assertEquals(value, values.next());
+    } // for
+    assertFalse(values.hasNext());
+  } // randomIntTest()
+
+  /**
+   * Verify that extreme keys sort correctly (no subtraction overflow).
+   */
+  @Test
+  public void extremeKeysTest() {
+    IntSkipList<String> ints = new IntSkipList<String>();
+    ints.set(Integer.MAX_VALUE, "max");
+    ints.set(Integer.MIN_VALUE, "min");
+    ints.set(0, "zero");
+    Iterator<Integer> it = ints.keys();
+    assertEquals(Integer.valueOf(Integer.MIN_VALUE), it.next());
+    assertEquals(Integer.valueOf(0), it.next());
+    assertEquals(Integer.valueOf(Integer.MAX_VALUE), it.next());
+
+    LongSkipList<String> longs = new LongSkipList<String>();
+    longs.set(Long.MAX_VALUE, "max");
+    longs.set(Long.MIN_VALUE, "min");
+    assertEquals("min", longs.get(Long.MIN_VALUE));
+    assertEquals("max", longs.get(Long.MAX_VALUE));
+    assertEquals(Long.valueOf(Long.MIN_VALUE), longs.keys().next());
+  } // extremeKeysTest()
+
+  /**
+   * Verify that get of a missing key throws.
+   */
+  @Test
+  public void missingKeyTest() {
+    LongSkipList<String> longs = new LongSkipList<String>();
+    longs.set(5L, "five");
+    try {
+      longs.get(6L);
+      fail("get of a missing key should throw");
+    } catch (IndexOutOfBoundsException e) {
+      // Expected
+    } // try/catch
+  } // missingKeyTest()
+
+} // class PrimitiveSkipListTests
@@ -0,0 +1,148 @@
+import java.util.Comparator;
+
+/**
+ * An open-addressing hash table from keys to the nodes that hold them,
+ * for a hashed skip list.  Slots are probed linearly, and removal shifts
+ * later entries back rather than leaving tombstones, so probe sequences
+ * stay short however many removals there are.  Each slot keeps the key's
+ * spread hash beside the node, so most mismatches are rejected without
+ * touching the node.
+ */
+class SLHashIndex<K, V> {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The initial number of slots (a power of two).
+   */
+  static final int INITIAL_CAPACITY = 16;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The nodes, or null for empty slots.
+   */
+  SLNode<K, V>[] nodes;
+
+  /**
+   * The spread hash of each node's key.
+   */
+  int[] hashes;
+
+  /**
+   * The number of nodes.
+   */
+  int size;
+
+  /**
+   * nodes.length - 1.
+   */
+  int mask;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  SLHashIndex() {
+    this.nodes = SLNode.links(INITIAL_CAPACITY);
+    this.hashes = new int[INITIAL_CAPACITY];
+    this.mask = INITIAL_CAPACITY - 1;
+  } // SLHashIndex()
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Find the node whose key the comparator says is equal to key.
+   *
+   * @pre keys the comparator calls equal have equal hash codes
+   * @returns the node, or null if there is none
+   */
+  SLNode<K, V> find(K key, Comparator<? super K> comparator) {
+    int hash = spread(key);
+    for (int i = hash & this.mask; ; i = (i + 1) & this.mask) {
+      SLNode<K, V> node = this.nodes[i];
+      if (node == null) {
+        return null;
+      } else if (this.hashes[i] == hash && comparator.compare(node.key, key) == 0) {
+        return node;
+      } // if/else
+    } // for
+  } // find(K, Comparator)
+
+  /**
+   * Add a node whose key is not yet in the table.
+   */
+  void add(SLNode<K, V> node) {
+    if (++this.size > this.nodes.length - (this.nodes.length >> 2)) {
+      resize(this.nodes.length * 2);
+    } // if
+    place(node, spread(node.key));
+  } // add(SLNode<K, V>)
+
+  /**
+   * Remove a node that is in the table.
+   */
+  void remove(SLNode<K, V> node) {
+    int hash = spread(node.key);
+    int hole = hash & this.mask;
+    while (this.nodes[hole] != node) {
+      hole = (hole + 1) & this.mask;
+    } // while
+    this.nodes[hole] = null;
+    this.size--;
+    // Move back any later entry whose home is not between the hole and it
+    for (int i = (hole + 1) & this.mask; this.nodes[i] != null; i = (i + 1) & this.mask) {
+      int home = this.hashes[i] & this.mask;
+      if (((i - home) & this.mask) >= ((i - hole) & this.mask)) {
+        this.nodes[hole] = this.nodes[i];
+        this.hashes[hole] = this.hashes[i];
+        this.nodes[i] = null;
+        hole = i;
+      } // if
+    } // for
+  } // remove(SLNode<K, V>)
+
+  /**
+   * Put a node in the first free slot from its home.
+   */
+  void place(SLNode<K, V> node, int hash) {
+    int i = hash & this.mask;
+    while (this.nodes[i] != null) {
+      i = (i + 1) & this.mask;
+    } // while
+    this.nodes[i] = node;
+    this.hashes[i] = hash;
+  } // place(SLNode<K, V>, int)
+
+  /**
+   * Move every node into a table of capacity slots.
+   */
+  void resize(int capacity) {
+    SLNode<K, V>[] oldNodes = this.nodes;
+    int[] oldHashes = this.hashes;
+    this.nodes = SLNode.links(capacity);
+    this.hashes = new int[capacity];
+    this.mask = capacity - 1;
+    for (int i = 0; i < oldNodes.length; i++) {
+      if (oldNodes[i] != null) {
+        place(oldNodes[i], oldHashes[i]);
+      } // if
+    } // for
+  } // resize(int)
+
+  /**
+   * Spread a key's hash code, so that the low bits we index by depend on
+   * all of it (Integer keys, for one, hash to themselves).
+   */
+  static int spread(Object key) {
+    int hash = key.hashCode() * 0x9E3779B9;
+    return hash ^ (hash >>> 16);
+  } // spread(Object)
+
+} // SLHashIndex<K,V>
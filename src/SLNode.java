@@ -0,0 +1,93 @@
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Nodes in the skip list.
+ */
+class SLNode<K, V> implements Map.Entry<K, V> {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The key.
+   */
+  K key;
+
+  /**
+   * The value.
+   */
+  V value;
+
+  /**
+   * Pointers to the next nodes, one per level.
+   */
+  SLNode<K, V>[] next;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new node of height n with the specified key and value.
+   */
+  public SLNode(K key, V value, int n) {
+    this.key = key;
+    this.value = value;
+    this.next = links(n);
+  } // SLNode(K, V, int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  @Override
+  public K getKey() {
+    return this.key;
+  } // getKey()
+
+  @Override
+  public V getValue() {
+    return this.value;
+  } // getValue()
+
+  @Override
+  public V setValue(V value) {
+    V old = this.value;
+    this.value = value;
+    return old;
+  } // setValue(V)
+
+  /**
+   * Compare as Map.Entry requires: by key and value.
+   */
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof Map.Entry)) {
+      return false;
+    } // if
+    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) other;
+    return Objects.equals(this.key, entry.getKey()) && Objects.equals(this.value, entry.getValue());
+  } // equals(Object)
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(this.key) ^ Objects.hashCode(this.value);
+  } // hashCode()
+
+  @Override
+  public String toString() {
+    return this.key + "=" + this.value;
+  } // toString()
+
+  /**
+   * Make an empty array of n links.
+   */
+  @SuppressWarnings("unchecked")
+  static <K, V> SLNode<K, V>[] links(int n) {
+    return (SLNode<K, V>[]) new SLNode<?, ?>[n];
+  } // links(int)
+
+
+} // SLNode<K,V>
@@ -0,0 +1,89 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A way to write objects of some type as bytes and read them back, for
+ * snapshots.  read must consume exactly the bytes write produced.
+ */
+public interface Serializer<T> {
+
+  /**
+   * Write value to out.
+   */
+  public void write(T value, DataOutput out) throws IOException;
+
+  /**
+   * Read a value written by write.
+   */
+  public T read(DataInput in) throws IOException;
+
+  /**
+   * Integers, as four bytes.
+   */
+  public static final Serializer<Integer> INTEGER = new Serializer<Integer>() {
+    @Override
+    public void write(Integer value, DataOutput out) throws IOException {
+      out.writeInt(value);
+    } // write(Integer, DataOutput)
+
+    @Override
+    public Integer read(DataInput in) throws IOException {
+      return in.readInt();
+    } // read(DataInput)
+  };
+
+  /**
+   * Longs, as eight bytes.
+   */
+  public static final Serializer<Long> LONG = new Serializer<Long>() {
+    @Override
+    public void write(Long value, DataOutput out) throws IOException {
+      out.writeLong(value);
+    } // write(Long, DataOutput)
+
+    @Override
+    public Long read(DataInput in) throws IOException {
+      return in.readLong();
+    } // read(DataInput)
+  };
+
+  /**
+   * Byte arrays, prefixed with their length.
+   */
+  public static final Serializer<byte[]> BYTES = new Serializer<byte[]>() {
+    @Override
+    public void write(byte[] value, DataOutput out) throws IOException {
+      out.writeInt(value.length);
+      out.write(value);
+    } // write(byte[], DataOutput)
+
+    @Override
+    public byte[] read(DataInput in) throws IOException {
+      int length = in.readInt();
+      if (length < 0) {
+        throw new IOException("negative length " + length);
+      } // if
+      byte[] value = new byte[length];
+      in.readFully(value);
+      return value;
+    } // read(DataInput)
+  };
+
+  /**
+   * Strings, as length-prefixed UTF-8 (so, unlike writeUTF, of any length).
+   */
+  public static final Serializer<String> STRING = new Serializer<String>() {
+    @Override
+    public void write(String value, DataOutput out) throws IOException {
+      BYTES.write(value.getBytes(StandardCharsets.UTF_8), out);
+    } // write(String, DataOutput)
+
+    @Override
+    public String read(DataInput in) throws IOException {
+      return new String(BYTES.read(in), StandardCharsets.UTF_8);
+    } // read(DataInput)
+  };
+
+} // interface Serializer
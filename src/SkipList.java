@@ -1,10 +1,24 @@
+import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
-import java.util.Random;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
 import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /**
  * An implementation of skip lists.
@@ -20,26 +34,64 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
    */
   static final int INITIAL_HEIGHT = 16;
 
-  // +---------------+-----------------------------------------------
-  // | Static Fields |
-  // +---------------+
-
-  static Random rand = new Random();
-
   // +--------+------------------------------------------------------
   // | Fields |
   // +--------+
 
   /**
-   * Pointers to all the front elements.
+   * A permanent sentinel whose links point to the front elements.
+   */
+  SLNode<K, V> head;
+
+  /**
+   * Scratch space for set and remove: the last node before the key on
+   * each level.  Reused between calls so updates don't allocate.
+   */
+  SLNode<K, V>[] preds;
+
+  /**
+   * The last node on each level (or the head, if the level is empty).
+   * Keys beyond the last one are linked in here without searching.
+   */
+  SLNode<K, V>[] tails;
+
+  /**
+   * Scratch space alongside preds, used only when indexed: the position of
+   * each pred, counting the head as 0 and the first node as 1.
+   */
+  int[] predRanks;
+
+  /**
+   * Whether we keep link widths, for positional access.  If so, every node
+   * (including the head) is an IndexedSLNode.
+   */
+  boolean indexed;
+
+  /**
+   * If the list is hashed, every node by key, so that point lookups need
+   * not search; otherwise null.  Every node (including the head) is then a
+   * HashedSLNode.
    */
-  ArrayList<SLNode<K, V>> front;
+  SLHashIndex<K, V> hash;
 
   /**
-   * The comparator used to determine the ordering in the list.
+   * The comparator used to determine the ordering in the list.  While
+   * stats are on, it is wrapped to count calls.
    */
   Comparator<K> comparator;
 
+  /**
+   * If set, reduces keys to long prefixes that order like them, which
+   * every node stores, so that searches settle most comparisons without
+   * the comparator.  Every node but the head is then a PrefixedSLNode.
+   */
+  KeyNormalizer<? super K> normalizer;
+
+  /**
+   * The counters behind stats, or null if stats are off.
+   */
+  SkipListMetrics<K, V> metrics;
+
   /**
    * The number of values in the list.
    */
@@ -51,35 +103,196 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
   int height;
 
   /**
-   * The probability used to determine the height of nodes.
+   * The largest height a new node may currently have.  Grows with size.
+   */
+  int maxHeight;
+
+  /**
+   * The size at which we next raise maxHeight.
+   */
+  double growAt;
+
+  /**
+   * The generator used to determine the height of nodes.
+   */
+  LevelGenerator levels;
+
+  /**
+   * Whether get, set, remove and containsKey start from the last search
+   * path (the finger) rather than from the top of the head.
    */
-  double prob = 0.5;
+  boolean finger;
+
+  /**
+   * The number of structural changes so far, so that cursors and the
+   * finger can tell when their search paths have gone stale.
+   */
+  int modCount;
+
+  /**
+   * The modCount at which preds last held a complete search path.
+   */
+  int fingerModCount = -1;
 
   // +--------------+------------------------------------------------
   // | Constructors |
   // +--------------+
 
   /**
-   * Create a new skip list that orders values using the specified comparator.
+   * Create a new skip list that orders values using the specified comparator
+   * and picks node heights with the specified generator.  If indexed is
+   * true, the list also keeps the width of every link, which supports
+   * getByIndex, keyAt, rankOf, removeByIndex and sublistByRank at the cost
+   * of an int per link and some extra work on every update.
+   *
+   * If hashed is true, the list also keeps a hash index of its nodes and a
+   * back link beside every link, so that get, containsKey, search, set of
+   * an existing key and remove take O(1) expected time and no comparisons
+   * beyond the match; inserts, iteration and the ordered methods still go
+   * through the levels.  It costs about two words per pair for the table,
+   * a word per link for the back links, and hashing on every update.  Keys
+   * the comparator calls equal must have equal hash codes.
    */
-  public SkipList(Comparator<K> comparator) {
-    this.front = new ArrayList<SLNode<K, V>>(INITIAL_HEIGHT);
-    for (int i = 0; i < INITIAL_HEIGHT; i++) {
-      front.add(null);
-    } // for
+  public SkipList(Comparator<K> comparator, LevelGenerator levels, boolean indexed,
+      boolean hashed) {
+    this.indexed = indexed;
+    if (hashed) {
+      this.hash = new SLHashIndex<K, V>();
+    } // if
+    this.head = newNode(null, null, INITIAL_HEIGHT);
+    this.preds = SLNode.links(INITIAL_HEIGHT);
+    if (indexed) {
+      this.predRanks = new int[INITIAL_HEIGHT];
+    } // if
+    this.tails = SLNode.links(INITIAL_HEIGHT);
+    Arrays.fill(this.tails, this.head);
     this.comparator = comparator;
+    this.levels = levels;
     this.size = 0;
     this.height = 0;
+    this.maxHeight = INITIAL_HEIGHT;
+    this.growAt = Math.pow(1.0 / levels.probability(), INITIAL_HEIGHT);
+  } // SkipList(Comparator<K>, LevelGenerator, boolean, boolean)
+
+  /**
+   * Create a new, unhashed, skip list that orders values using the
+   * specified comparator and picks node heights with the specified
+   * generator, keeping link widths if indexed is true.
+   */
+  public SkipList(Comparator<K> comparator, LevelGenerator levels, boolean indexed) {
+    this(comparator, levels, indexed, false);
+  } // SkipList(Comparator<K>, LevelGenerator, boolean)
+
+  /**
+   * Create a new, unindexed, skip list that orders values using the
+   * specified comparator and picks node heights with the specified
+   * generator.
+   */
+  public SkipList(Comparator<K> comparator, LevelGenerator levels) {
+    this(comparator, levels, false);
+  } // SkipList(Comparator<K>, LevelGenerator)
+
+  /**
+   * Create a new skip list that orders values using the specified
+   * comparator, and keeps link widths if indexed is true.
+   */
+  public SkipList(Comparator<K> comparator, boolean indexed) {
+    this(comparator, LevelGenerator.fast(), indexed);
+  } // SkipList(Comparator<K>, boolean)
+
+  /**
+   * Create a new skip list that orders values using the specified comparator.
+   */
+  public SkipList(Comparator<K> comparator) {
+    this(comparator, LevelGenerator.fast());
   } // SkipList(Comparator<K>)
 
   /**
    * Create a new skip list that orders values using a not-very-clever default comparator.
+   *
+   * @deprecated the comparator compares keys by their strings, which is
+   *             slow, allocates on every comparison, and misorders
+   *             numbers (10 before 9); use naturalOrder or give a
+   *             comparator
    */
+  @Deprecated
   public SkipList() {
     this((k1, k2) -> k1.toString().compareTo(k2.toString()));
   } // SkipList()
 
 
+  // +-----------+---------------------------------------------------
+  // | Factories |
+  // +-----------+
+
+  /**
+   * Create a new skip list that orders keys by their natural order.
+   */
+  public static <K extends Comparable<? super K>, V> SkipList<K, V> naturalOrder() {
+    return new SkipList<K, V>(Comparator.<K>naturalOrder());
+  } // naturalOrder()
+
+  /**
+   * Build a skip list from entries that are already in strictly ascending
+   * key order, in a single pass and without searching.  Node heights are
+   * random.
+   *
+   * @throws IllegalArgumentException if the keys are not strictly ascending
+   * @throws NullPointerException if a key is null
+   */
+  public static <K, V> SkipList<K, V> fromSorted(Comparator<K> comparator,
+      Iterator<? extends Map.Entry<? extends K, ? extends V>> entries) {
+    return bulkLoad(comparator, entries, false);
+  } // fromSorted(Comparator<K>, Iterator)
+
+  /**
+   * Build a skip list from entries that are already in strictly ascending
+   * key order, in a single pass.  If balanced is true, heights are assigned
+   * deterministically, so that every second node reaches level 2, every
+   * fourth node level 3, and so on; otherwise heights are random.
+   *
+   * @throws IllegalArgumentException if the keys are not strictly ascending
+   * @throws NullPointerException if a key is null
+   */
+  public static <K, V> SkipList<K, V> bulkLoad(Comparator<K> comparator,
+      Iterator<? extends Map.Entry<? extends K, ? extends V>> entries, boolean balanced) {
+    SkipList<K, V> result = new SkipList<K, V>(comparator);
+    while (entries.hasNext()) {
+      Map.Entry<? extends K, ? extends V> entry = entries.next();
+      K key = entry.getKey();
+      result.checkAppend(key);
+      int newLevel = balanced
+          ? Math.min(Integer.numberOfTrailingZeros(result.size + 1) + 1, result.maxHeight)
+          : result.randomHeight();
+      result.appendNode(key, entry.getValue(), newLevel);
+    } // while
+    return result;
+  } // bulkLoad(Comparator<K>, Iterator, boolean)
+
+  /**
+   * Read a snapshot written by writeSnapshot.  The pairs are appended as
+   * they arrive, as in fromSorted, so nothing is searched and only one
+   * block of the snapshot is in memory at a time.
+   *
+   * @throws IOException if the channel fails, or does not hold an intact
+   *         snapshot whose keys ascend under comparator
+   */
+  public static <K, V> SkipList<K, V> readSnapshot(ReadableByteChannel channel,
+      Comparator<K> comparator, Serializer<K> keys, Serializer<V> values) throws IOException {
+    SkipList<K, V> result = new SkipList<K, V>(comparator);
+    try (Snapshots.Reader<K, V> reader = new Snapshots.Reader<K, V>(channel, keys, values)) {
+      while (reader.next()) {
+        try {
+          result.checkAppend(reader.key);
+        } catch (IllegalArgumentException | NullPointerException e) {
+          throw new IOException("snapshot keys are not in ascending order", e);
+        } // try/catch
+        result.appendNode(reader.key, reader.value, result.randomHeight());
+      } // while
+    } // try
+    return result;
+  } // readSnapshot(ReadableByteChannel, Comparator<K>, Serializer<K>, Serializer<V>)
+
   // +-------------------+-------------------------------------------
   // | SimpleMap methods |
   // +-------------------+
@@ -101,61 +314,88 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
       throw new NullPointerException("Key cannot be null");
     }
 
-    // Special case: first element in list
-    if (this.height == 0) {
-      int newLevel = randomHeight();
-      // Make and insert new node
-      SLNode<K, V> newNode = new SLNode<K, V>(key, value, newLevel);
-      this.height = newLevel;
-      for (int i = 0; i < newLevel; i++) {
-        front.set(i, newNode);
-      }
-      this.size++;
+    if (this.metrics != null) {
+      long start = this.metrics.begin(SkipListMetrics.SET);
+      V result = update(key, value);
+      this.metrics.end(start);
+      return result;
+    } // if
+    return update(key, value);
+  }// set(K,V)
+
+  /**
+   * Set the value associated with key, as set does, without stats.
+   */
+  V update(K key, V value) {
+    // Replacing needs no search if we can look the key up directly
+    if (this.hash != null) {
+      SLNode<K, V> found = this.hash.find(key, this.comparator);
+      if (found != null) {
+        V cache = found.value;
+        found.value = value;
+        return cache;
+      } // if
+    } // if
+
+    // Fast path: beyond the last key, so link in at the tails
+    SLNode<K, V> last = this.tails[0];
+    if (last == this.head || compareNode(last, key, prefixOf(key)) < 0) {
+      appendNode(key, value, randomHeight());
       return null;
-    }
-    
-    // Other case: replace/add node
-    SLNode<K, V>[] update = new SLNode[SkipList.INITIAL_HEIGHT];
-    SLNode<K, V> current = new SLNode<K, V>(null, null, this.height);
-    current.next = front;
-    for (int i = this.height - 1; i >= 0; i--) {
-      while (current.next.get(i) != null
-          && this.comparator.compare(current.next.get(i).key, key) < 0) {
-        current = current.next.get(i);
-      }
-      //Keeps track of the nodes to the immediate left of node to be inserted
-      update[i] = current;
-    }
-    if (current.next != null) {
-      current = current.next.get(0);
-    }
+    } // if
+
+    SLNode<K, V> current = findPredecessors(key);
     // Replace existing key
-    if (current != null && this.comparator.compare(current.key, key) == 0) {
+    if (current != null && compareNode(current, key, prefixOf(key)) == 0) {
       V cache = current.value;
       current.value = value;
       return cache;
     }
-    
+
     int newLevel = randomHeight();
-    // Make and insert new node
-    SLNode<K, V> newNode = new SLNode<K, V>(key, value, newLevel);
-    if (newLevel > this.height) {
-      for (int i = this.height; i < newLevel; i++) {
-        front.set(i, newNode);
-      }
+    // Levels above the current height start at the head
+    for (int i = this.height; i < newLevel; i++) {
+      this.preds[i] = this.head;
+      if (this.indexed) {
+        this.predRanks[i] = 0;
+        widths(this.head)[i] = this.size + 1;
+      } // if
     }
+    // Make and insert new node
+    SLNode<K, V> newNode = newNode(key, value, newLevel);
     for (int i = 0; i < newLevel; i++) {
-      if (i < this.height && update[i].next != null) {
-        newNode.next.set(i, update[i].next.get(i));
-        update[i].next.set(i, newNode);
-      } else {
-        newNode.next.set(i, null);
+      newNode.next[i] = this.preds[i].next[i];
+      this.preds[i].next[i] = newNode;
+      if (newNode.next[i] == null) {
+        this.tails[i] = newNode;
       }
     }
-    this.height = newLevel;
+    if (this.hash != null) {
+      hashNode(newNode, this.preds);
+    } // if
+    if (this.indexed) {
+      // Split the links we cut in two, and lengthen the ones we pass under
+      int position = this.predRanks[0] + 1;
+      for (int i = 0; i < newLevel; i++) {
+        int[] predWidths = widths(this.preds[i]);
+        int before = position - this.predRanks[i];
+        widths(newNode)[i] = predWidths[i] - before + 1;
+        predWidths[i] = before;
+      } // for
+      for (int i = newLevel; i < this.height; i++) {
+        widths(this.preds[i])[i]++;
+      } // for
+    } // if
+    this.height = Math.max(this.height, newLevel);
     this.size++;
+    // preds is still a search path for key, so the finger survives
+    this.modCount++;
+    this.fingerModCount = this.modCount;
+    if (this.size >= this.growAt) {
+      grow();
+    } // if
     return null;
-  }// set(K,V)
+  } // update(K, V)
 
   /**
    * Gets the value associated with the key
@@ -173,7 +413,7 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
     if (key == null) {
       throw new NullPointerException("null key");
     } // if
-    SLNode<K, V> found = search(key);
+    SLNode<K, V> found = find(key, true);
     if (found != null) {
       return found.value;
     } else {
@@ -188,7 +428,7 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
 
   @Override
   public boolean containsKey(K key) {
-    return search(key) != null;
+    return find(key, true) != null;
   } // containsKey(K)
 
   /**
@@ -210,43 +450,42 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
     if (key == null) {
       throw new NullPointerException("Key cannot be null");
     }
-    
-    V cache = null;
-    SLNode<K, V> update[] = new SLNode[SkipList.INITIAL_HEIGHT];
-    SLNode<K, V> current = new SLNode<K, V>(null, null, this.height);
-    current.next = front;
-    for (int i = this.height - 1; i >= 0; i--) {
-      while (current.next.get(i) != null
-          && this.comparator.compare(current.next.get(i).key, key) < 0) {
-        current = current.next.get(i);
-      }
-      //Keeps track of all nodes to the immediate left of node to be removed
-      update[i] = current;
-    }
-    if (current.next != null) {
-      current = current.next.get(0);
-    }
-    
+
+    if (this.metrics != null) {
+      long start = this.metrics.begin(SkipListMetrics.REMOVE);
+      V result = delete(key);
+      this.metrics.end(start);
+      return result;
+    } // if
+    return delete(key);
+  } // remove(K)
+
+  /**
+   * Remove the pair with the given key, as remove does, without stats.
+   */
+  V delete(K key) {
+    if (this.hash != null) {
+      SLNode<K, V> found = this.hash.find(key, this.comparator);
+      if (found == null) {
+        return null;
+      } // if
+      predecessorsOf(found);
+      unlink(found);
+      // preds no longer holds a whole search path
+      this.fingerModCount = -1;
+      return found.value;
+    } // if
+
+    SLNode<K, V> current = findPredecessors(key);
+
     //key was found
-    if (current != null && this.comparator.compare(current.key, key) == 0) {
-      cache = current.value;
-      for (int i = 0; i < this.height; i++) {
-        if (update[i].next.get(i) != current) {
-          break;
-        }
-        //update nodes before node to be removed to point to the next element
-        update[i].next.set(i, current.next.get(i));
-      }
-      //decrement height if tallest element was removed
-      while (this.height > 0 && this.front.get(this.height - 1) == null) {
-        this.height--;
-      }
-      size--;
-      return cache;
+    if (current != null && compareNode(current, key, prefixOf(key)) == 0) {
+      unlink(current);
+      return current.value;
     } else {
       return null;
     }
-  } // remove(K)
+  } // delete(K)
 
 
   /**
@@ -259,22 +498,8 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
    *          in list
    */
   public SLNode<K, V> search(K key) {
-    SLNode<K, V> current = new SLNode<K, V>(null, null, this.height);
-    current.next = front;
-    for (int i = this.height - 1; i >= 0; i--) {
-      while (current.next.get(i) != null && comparator.compare(current.next.get(i).key, key) < 0) {
-        current = current.next.get(i);
-      }
-    }
-    if (current.next != null) {
-      current = current.next.get(0);
-    }
-    if (current != null && this.comparator.compare(current.key, key) == 0) {
-      return current;
-    } else {
-      return null;
-    }
-  }
+    return find(key, false);
+  } // search(K)
 
   @Override
   public Iterator<K> keys() {
@@ -330,10 +555,10 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
    */
   @Override
   public void forEach(BiConsumer<? super K, ? super V> action) {
-    SLNode<K, V> current = front.get(0);
+    SLNode<K, V> current = head.next[0];
     while (current != null) {
       action.accept(current.key, current.value);
-      current = current.next.get(0);
+      current = current.next[0];
     }
   } // forEach
 
@@ -341,6 +566,790 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
   // | Other public methods |
   // +----------------------+
 
+  /**
+   * Add a key that is greater than every key in the list, in O(1)
+   * expected time.
+   *
+   * @throws IllegalArgumentException if key is not greater than the last key
+   * @throws NullPointerException if key is null
+   */
+  public void append(K key, V value) {
+    checkAppend(key);
+    appendNode(key, value, randomHeight());
+  } // append(K, V)
+
+  /**
+   * Turn finger search on or off.  With it on, get, set, remove and
+   * containsKey remember their search path and start the next search from
+   * it, climbing only as high as needed to pass the new key, so a search
+   * d positions away from the last one takes O(log d) expected time rather
+   * than O(log n).
+   *
+   * With the finger on, lookups write to the list, so concurrent readers
+   * must not share it; SynchronizedSkipList notices, and runs them under
+   * its write lock.
+   */
+  public void setFinger(boolean finger) {
+    this.finger = finger;
+  } // setFinger(boolean)
+
+  /**
+   * Give the list a key normalizer, whose prefixes (see KeyNormalizer)
+   * every node will store, so that searches compare most keys with a
+   * single unsigned compare of longs and never dereference them.  It pays
+   * when keys are costly to compare, or to reach, and differ early: for
+   * strings that share their first nine chars, it only adds work.  With
+   * an exact normalizer (such as KeyNormalizer.INTEGER) the comparator is
+   * not called at all by gets, sets and removes.
+   *
+   * @throws IllegalStateException if the list is not empty
+   */
+  public void setNormalizer(KeyNormalizer<? super K> normalizer) {
+    if (this.size > 0) {
+      throw new IllegalStateException("the list must be empty to change its normalizer");
+    } // if
+    this.normalizer = normalizer;
+  } // setNormalizer(KeyNormalizer<? super K>)
+
+  /**
+   * Turn stats on or off.  With them on, the list counts comparisons and
+   * links followed (per level) and times every search (get, containsKey,
+   * search), set and remove, and keeps a histogram of node heights, for
+   * stats and registerMBean to report.  With them off (the default), none
+   * of that costs anything.  Turning them off unregisters the MBean, and
+   * turning them on again starts the counts afresh.
+   *
+   * Like the finger, stats write to the list on lookups, so concurrent
+   * readers must not share a list with stats on; SynchronizedSkipList
+   * notices, and runs them under its write lock.
+   */
+  public void setStats(boolean on) {
+    if (on && this.metrics == null) {
+      this.metrics = new SkipListMetrics<K, V>(this);
+      this.comparator = this.metrics.counting();
+    } else if (!on && this.metrics != null) {
+      if (this.metrics.registered != null) {
+        try {
+          ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.metrics.registered);
+        } catch (JMException e) {
+          // Someone else unregistered it
+        } // try/catch
+      } // if
+      this.comparator = this.metrics.comparator;
+      this.metrics = null;
+    } // if/else
+  } // setStats(boolean)
+
+  /**
+   * Take a snapshot of the stats.
+   *
+   * @throws IllegalStateException if stats are off
+   */
+  public SkipListStats stats() {
+    if (this.metrics == null) {
+      throw new IllegalStateException("stats are off");
+    } // if
+    return this.metrics.snapshot();
+  } // stats()
+
+  /**
+   * Turn stats on, and publish them through the platform MBean server as
+   * a SkipListStatsMXBean named SkipList:name="name".
+   *
+   * @returns the name under which the stats are registered
+   * @throws JMException if the name is taken or cannot be registered
+   */
+  public ObjectName registerMBean(String name) throws JMException {
+    setStats(true);
+    ObjectName objectName = new ObjectName("SkipList:name=" + ObjectName.quote(name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this.metrics, objectName);
+    this.metrics.registered = objectName;
+    return objectName;
+  } // registerMBean(String)
+
+  /**
+   * Make a cursor over this list.
+   */
+  public SkipListCursor<K, V> cursor() {
+    return new SkipListCursor<K, V>(this);
+  } // cursor()
+
+  /**
+   * Get a spliterator over the pairs, in key order.  It splits by walking
+   * the higher levels, so halves are roughly balanced and splitting never
+   * scans level 0.  The list must not change while it is in use.
+   */
+  public Spliterator<Map.Entry<K, V>> spliterator() {
+    return new EntrySpliterator(this.head, null, this.height - 1, this.size, true);
+  } // spliterator()
+
+  /**
+   * Stream the pairs in key order.
+   */
+  public Stream<Map.Entry<K, V>> stream() {
+    return StreamSupport.stream(spliterator(), false);
+  } // stream()
+
+  /**
+   * Stream the pairs in parallel.
+   */
+  public Stream<Map.Entry<K, V>> parallelStream() {
+    return StreamSupport.stream(spliterator(), true);
+  } // parallelStream()
+
+  /**
+   * Apply an action to all pairs, in parallel on the common ForkJoinPool.
+   * The action must be safe to call from several threads at once, and
+   * pairs are not visited in any particular order.
+   */
+  public void parallelForEach(BiConsumer<? super K, ? super V> action) {
+    parallelStream().forEach((entry) -> action.accept(entry.getKey(), entry.getValue()));
+  } // parallelForEach(BiConsumer)
+
+  // +-------------------+-------------------------------------------
+  // | Navigation        |
+  // +-------------------+
+
+  /**
+   * Get the smallest key.
+   *
+   * @throws NoSuchElementException if the list is empty
+   */
+  public K firstKey() {
+    SLNode<K, V> first = this.head.next[0];
+    if (first == null) {
+      throw new NoSuchElementException("list is empty");
+    } // if
+    return first.key;
+  } // firstKey()
+
+  /**
+   * Get the largest key, in constant time.
+   *
+   * @throws NoSuchElementException if the list is empty
+   */
+  public K lastKey() {
+    SLNode<K, V> last = this.tails[0];
+    if (last == this.head) {
+      throw new NoSuchElementException("list is empty");
+    } // if
+    return last.key;
+  } // lastKey()
+
+  /**
+   * Get the largest key less than or equal to key.
+   *
+   * @returns that key, or null if there is none
+   */
+  public K floorKey(K key) {
+    return keyOf(lastBefore(key, true));
+  } // floorKey(K)
+
+  /**
+   * Get the largest key strictly less than key.
+   *
+   * @returns that key, or null if there is none
+   */
+  public K lowerKey(K key) {
+    return keyOf(lastBefore(key, false));
+  } // lowerKey(K)
+
+  /**
+   * Get the smallest key greater than or equal to key.
+   *
+   * @returns that key, or null if there is none
+   */
+  public K ceilingKey(K key) {
+    return keyOf(lastBefore(key, false).next[0]);
+  } // ceilingKey(K)
+
+  /**
+   * Get the smallest key strictly greater than key.
+   *
+   * @returns that key, or null if there is none
+   */
+  public K higherKey(K key) {
+    return keyOf(lastBefore(key, true).next[0]);
+  } // higherKey(K)
+
+  /**
+   * Iterate, in order, over the pairs whose keys lie between fromKey and
+   * toKey.  A null bound leaves that end of the range open.  Finding the
+   * start takes O(log n) expected time; after that the iterator follows
+   * level 0 and stops at the first key past toKey, so a scan costs only
+   * as much as the pairs it returns.  The entries are the list's own, so
+   * setValue changes the list.
+   */
+  public Iterator<Map.Entry<K, V>> range(K fromKey, boolean fromInclusive, K toKey,
+      boolean toInclusive) {
+    SLNode<K, V> start =
+        (fromKey == null) ? this.head.next[0] : lastBefore(fromKey, !fromInclusive).next[0];
+    return new Iterator<Map.Entry<K, V>>() {
+      /**
+       * The next node to return, or null once we pass toKey.
+       */
+      SLNode<K, V> next = inRange(start);
+
+      @Override
+      public boolean hasNext() {
+        return this.next != null;
+      } // hasNext()
+
+      @Override
+      public Map.Entry<K, V> next() {
+        if (this.next == null) {
+          throw new NoSuchElementException();
+        } // if
+        SLNode<K, V> result = this.next;
+        this.next = inRange(result.next[0]);
+        return result;
+      } // next()
+
+      /**
+       * Return node if it is not past toKey, and null otherwise.
+       */
+      SLNode<K, V> inRange(SLNode<K, V> node) {
+        if (node == null || toKey == null) {
+          return node;
+        } // if
+        int order = SkipList.this.comparator.compare(node.key, toKey);
+        return (order < 0 || (order == 0 && toInclusive)) ? node : null;
+      } // inRange(SLNode<K, V>)
+    };
+  } // range(K, boolean, K, boolean)
+
+  // +--------------+------------------------------------------------
+  // | Bulk removal |
+  // +--------------+
+
+  /**
+   * Remove the pairs whose keys lie between fromKey (inclusive) and toKey
+   * (exclusive).  A null bound leaves that end of the range open.  One
+   * descent finds the last node before the range on every level, and a
+   * second, carrying on from there, the last node in it; each level is
+   * then spliced once, so the search costs O(log n) expected time and
+   * comparisons however many pairs go.  The removed nodes are still
+   * walked along level 0, without comparing, to count them and to drop
+   * them from the hash index and the stats, except in an indexed list
+   * with neither, whose widths give the count.
+   *
+   * @returns the number of pairs removed
+   */
+  public int removeRange(K fromKey, K toKey) {
+    if (this.height == 0) {
+      return 0;
+    } // if
+    if (fromKey == null) {
+      Arrays.fill(this.preds, 0, this.height, this.head);
+      if (this.indexed) {
+        Arrays.fill(this.predRanks, 0, this.height, 0);
+      } // if
+    } else {
+      descend(fromKey, this.preds, this.predRanks, false);
+    } // if/else
+
+    // Find the last node before toKey on each level, starting from the
+    // one above or, if the range does not reach that level, from preds
+    long prefix = (toKey == null) ? 0 : prefixOf(toKey);
+    SLNode<K, V>[] ends = SLNode.links(this.height);
+    int[] endRanks = this.indexed ? new int[this.height] : null;
+    SLNode<K, V> current = this.head;
+    int position = 0;
+    for (int i = this.height - 1; i >= 0; i--) {
+      if (i == this.height - 1 || current == this.preds[i + 1]) {
+        current = this.preds[i];
+        position = this.indexed ? this.predRanks[i] : 0;
+      } // if
+      SLNode<K, V> next = current.next[i];
+      while (next != null && (toKey == null || compareNode(next, toKey, prefix) < 0)) {
+        if (this.indexed) {
+          position += widths(current)[i];
+        } // if
+        current = next;
+        next = current.next[i];
+      } // while
+      ends[i] = current;
+      if (this.indexed) {
+        endRanks[i] = position;
+      } // if
+    } // for
+    if (ends[0] == this.preds[0]) {
+      return 0;
+    } // if
+
+    int removed = 0;
+    if (this.indexed && this.hash == null && this.metrics == null) {
+      removed = endRanks[0] - this.predRanks[0];
+    } else {
+      SLNode<K, V> node = this.preds[0];
+      do {
+        node = node.next[0];
+        forget(node);
+        removed++;
+      } while (node != ends[0]);
+    } // if/else
+
+    for (int i = 0; i < this.height; i++) {
+      SLNode<K, V> pred = this.preds[i];
+      if (this.indexed) {
+        // Also right where the range lies wholly under the link
+        widths(pred)[i] = endRanks[i] + widths(ends[i])[i] - this.predRanks[i] - removed;
+      } // if
+      if (ends[i] != pred) {
+        pred.next[i] = ends[i].next[i];
+        if (pred.next[i] == null) {
+          this.tails[i] = pred;
+        } else if (this.hash != null) {
+          prevs(pred.next[i])[i] = pred;
+        } // if/else
+      } // if
+    } // for
+    while (this.height > 0 && this.head.next[this.height - 1] == null) {
+      this.height--;
+    } // while
+    this.size -= removed;
+    // preds is still a search path for fromKey
+    this.modCount++;
+    this.fingerModCount = this.modCount;
+    return removed;
+  } // removeRange(K, K)
+
+  /**
+   * Remove every pair for which filter returns true, in one pass along
+   * level 0.  The pass keeps the last node kept on each level, so taking
+   * a node out just links those past it: O(n) time, and no comparisons.
+   * If filter throws, the pairs it has already picked stay removed and
+   * the rest stay in the list.
+   *
+   * @returns the number of pairs removed
+   */
+  public int removeIf(BiPredicate<? super K, ? super V> filter) {
+    Objects.requireNonNull(filter);
+    int height = this.height;
+    Arrays.fill(this.preds, 0, height, this.head);
+    if (this.indexed) {
+      Arrays.fill(this.predRanks, 0, height, 0);
+    } // if
+    int removed = 0;
+    int position = 0;
+    SLNode<K, V> node = this.head.next[0];
+    try {
+      while (node != null) {
+        SLNode<K, V> next = node.next[0];
+        if (filter.test(node.key, node.value)) {
+          for (int i = 0; i < node.next.length; i++) {
+            this.preds[i].next[i] = node.next[i];
+          } // for
+          forget(node);
+          removed++;
+        } else {
+          keep(node, ++position);
+        } // if/else
+        node = next;
+      } // while
+    } finally {
+      // If filter threw, the rest stay
+      for (; node != null; node = node.next[0]) {
+        keep(node, ++position);
+      } // for
+      for (int i = 0; i < height; i++) {
+        this.tails[i] = this.preds[i];
+        if (this.indexed) {
+          widths(this.preds[i])[i] = position + 1 - this.predRanks[i];
+        } // if
+      } // for
+      while (this.height > 0 && this.head.next[this.height - 1] == null) {
+        this.height--;
+      } // while
+      this.size -= removed;
+      if (removed > 0) {
+        this.modCount++;
+      } // if
+      this.fingerModCount = -1;
+    } // try/finally
+    return removed;
+  } // removeIf(BiPredicate<? super K, ? super V>)
+
+  // +-----------------------+---------------------------------------
+  // | Splitting and merging |
+  // +-----------------------+
+
+  /**
+   * Move the pairs whose keys are not less than pivot into a new list,
+   * which is returned, by cutting every level after the last node before
+   * pivot.  The new list is of the same kind (comparator, level
+   * generator, indexed, hashed, normalizer), without finger search or
+   * stats.  The cut costs one descent, O(log n) expected time, but the
+   * size of each half must be found: an indexed list reads it from its
+   * widths, other lists count from both ends of the cut at once, which
+   * takes O(min(k, n - k)) for k pairs kept, and a hashed list, or one
+   * with stats on, visits every node that moves to rehash or recount it.
+   *
+   * @returns a list of the pairs removed
+   * @throws NullPointerException if pivot is null
+   */
+  public SkipList<K, V> split(K pivot) {
+    if (pivot == null) {
+      throw new NullPointerException("pivot cannot be null");
+    } // if
+    SkipList<K, V> result = emptyLike();
+    if (this.height == 0) {
+      return result;
+    } // if
+    descend(pivot, this.preds, this.predRanks, false);
+    this.fingerModCount = -1;
+    SLNode<K, V> first = this.preds[0].next[0];
+    if (first == null) {
+      return result;
+    } // if
+
+    int moved = 0;
+    if (this.hash != null || this.metrics != null) {
+      for (SLNode<K, V> node = first; node != null; node = node.next[0]) {
+        forget(node);
+        if (result.hash != null) {
+          result.hash.add(node);
+        } // if
+        moved++;
+      } // for
+    } else if (this.indexed) {
+      moved = this.size - this.predRanks[0];
+    } else {
+      // Walk from the head and from the cut together, until one side ends
+      SLNode<K, V> left = this.head;
+      SLNode<K, V> right = this.preds[0];
+      int steps = 0;
+      while (left != this.preds[0] && right.next[0] != null) {
+        left = left.next[0];
+        right = right.next[0];
+        steps++;
+      } // while
+      moved = (left == this.preds[0]) ? this.size - steps : steps;
+    } // if/else
+    int kept = this.size - moved;
+
+    result.growTo(this.height);
+    for (int i = 0; i < this.height; i++) {
+      SLNode<K, V> pred = this.preds[i];
+      SLNode<K, V> next = pred.next[i];
+      if (next != null) {
+        result.head.next[i] = next;
+        result.tails[i] = this.tails[i];
+        result.height = i + 1;
+        if (this.indexed) {
+          widths(result.head)[i] = this.predRanks[i] + widths(pred)[i] - kept;
+        } // if
+        if (this.hash != null) {
+          prevs(next)[i] = result.head;
+        } // if
+        pred.next[i] = null;
+        this.tails[i] = pred;
+      } // if
+      if (this.indexed) {
+        widths(pred)[i] = kept + 1 - this.predRanks[i];
+      } // if
+    } // for
+    result.size = moved;
+    result.modCount++;
+    while (result.size >= result.growAt) {
+      result.grow();
+    } // while
+    while (this.height > 0 && this.head.next[this.height - 1] == null) {
+      this.height--;
+    } // while
+    this.size = kept;
+    this.modCount++;
+    return result;
+  } // split(K)
+
+  /**
+   * Move every pair of other, whose keys must all be greater than ours,
+   * onto the end of this list, by linking the last node of each of our
+   * levels to the first node of other's: O(log n) time, and one
+   * comparison.  A hashed list, or one with stats on, must still visit
+   * every node it takes, to hash or count it.  other is left empty.
+   *
+   * @pre other orders keys as this list does
+   * @throws IllegalArgumentException if other is this list, or of another
+   *         kind (see mergeFrom), or its first key is not greater than
+   *         our last
+   */
+  public void concat(SkipList<K, V> other) {
+    checkCompatible(other);
+    if (other.size == 0) {
+      return;
+    } // if
+    SLNode<K, V> first = other.head.next[0];
+    if (this.size > 0 && this.comparator.compare(this.tails[0].key, first.key) >= 0) {
+      throw new IllegalArgumentException("keys are not in ascending order at " + first.key);
+    } // if
+    growTo(other.height);
+    if (this.hash != null || this.metrics != null) {
+      for (SLNode<K, V> node = first; node != null; node = node.next[0]) {
+        if (this.hash != null) {
+          this.hash.add(node);
+        } // if
+        if (this.metrics != null) {
+          this.metrics.heights[node.next.length]++;
+        } // if
+      } // for
+    } // if
+    int height = Math.max(this.height, other.height);
+    for (int i = 0; i < height; i++) {
+      SLNode<K, V> tail = this.tails[i];
+      if (this.indexed && i >= this.height) {
+        // An empty level's link from the head runs to the end
+        widths(this.head)[i] = this.size + 1;
+      } // if
+      if (i < other.height) {
+        SLNode<K, V> next = other.head.next[i];
+        if (this.indexed) {
+          widths(tail)[i] += widths(other.head)[i] - 1;
+        } // if
+        if (this.hash != null) {
+          prevs(next)[i] = tail;
+        } // if
+        tail.next[i] = next;
+        this.tails[i] = other.tails[i];
+      } else if (this.indexed) {
+        widths(tail)[i] += other.size;
+      } // if/else
+    } // for
+    this.height = height;
+    this.size += other.size;
+    this.modCount++;
+    this.fingerModCount = -1;
+    while (this.size >= this.growAt) {
+      grow();
+    } // while
+    other.reset();
+  } // concat(SkipList<K, V>)
+
+  /**
+   * Move every pair of other into this list, in one pass along both
+   * lists' level 0 that relinks the nodes of each level in order, much
+   * as removeIf does: O(n + m) time, one comparison a step, and no
+   * searches.  Nodes keep their heights.  Where both lists hold a key,
+   * our node stays, with the value resolver.apply(ours, theirs).  other
+   * is left empty.
+   *
+   * The lists must be alike: both indexed or neither, both hashed or
+   * neither, and with the same normalizer (or none), so that their nodes
+   * are interchangeable.  If resolver throws, the merge still completes,
+   * keeping our value wherever it threw, and then the first exception is
+   * rethrown.
+   *
+   * @pre other orders keys as this list does
+   * @throws IllegalArgumentException if other is this list, or of another
+   *         kind
+   */
+  public void mergeFrom(SkipList<K, V> other, BinaryOperator<V> resolver) {
+    checkCompatible(other);
+    Objects.requireNonNull(resolver);
+    if (other.size == 0) {
+      return;
+    } // if
+    growTo(other.height);
+    int height = Math.max(this.height, other.height);
+    Arrays.fill(this.preds, 0, height, this.head);
+    if (this.indexed) {
+      Arrays.fill(this.predRanks, 0, height, 0);
+    } // if
+    SLNode<K, V> ours = this.head.next[0];
+    SLNode<K, V> theirs = other.head.next[0];
+    int position = 0;
+    RuntimeException failure = null;
+    while (ours != null || theirs != null) {
+      int order;
+      if (ours == null || theirs == null) {
+        order = (ours == null) ? 1 : -1;
+      } else {
+        long prefix = (this.normalizer == null) ? 0 : ((PrefixedSLNode<K, V>) theirs).prefix;
+        order = compareNode(ours, theirs.key, prefix);
+      } // if/else
+      // Take the next node before linking anything after it
+      SLNode<K, V> node;
+      if (order <= 0) {
+        node = ours;
+        ours = ours.next[0];
+        if (order == 0) {
+          try {
+            node.value = resolver.apply(node.value, theirs.value);
+          } catch (RuntimeException e) {
+            if (failure == null) {
+              failure = e;
+            } // if
+          } // try/catch
+          theirs = theirs.next[0];
+        } // if
+      } else {
+        node = theirs;
+        theirs = theirs.next[0];
+        if (this.hash != null) {
+          this.hash.add(node);
+        } // if
+        if (this.metrics != null) {
+          this.metrics.heights[node.next.length]++;
+        } // if
+      } // if/else
+      for (int i = 0; i < node.next.length; i++) {
+        this.preds[i].next[i] = node;
+      } // for
+      keep(node, ++position);
+    } // while
+    for (int i = 0; i < height; i++) {
+      this.preds[i].next[i] = null;
+      this.tails[i] = this.preds[i];
+      if (this.indexed) {
+        widths(this.preds[i])[i] = position + 1 - this.predRanks[i];
+      } // if
+    } // for
+    // A level may have held only nodes of other's that lost to ours
+    this.height = height;
+    while (this.height > 0 && this.head.next[this.height - 1] == null) {
+      this.height--;
+    } // while
+    this.size = position;
+    this.modCount++;
+    this.fingerModCount = -1;
+    while (this.size >= this.growAt) {
+      grow();
+    } // while
+    other.reset();
+    if (failure != null) {
+      throw failure;
+    } // if
+  } // mergeFrom(SkipList<K, V>, BinaryOperator<V>)
+
+  // +-------------------+-------------------------------------------
+  // | Positional access |
+  // +-------------------+
+
+  /**
+   * Get the value at the given index (counting from 0, in key order), in
+   * O(log n) expected time.
+   *
+   * @throws IllegalStateException if the list is not indexed
+   * @throws IndexOutOfBoundsException if index is not in 0 .. size-1
+   */
+  public V getByIndex(int index) {
+    return nodeAt(index).value;
+  } // getByIndex(int)
+
+  /**
+   * Get the key at the given index (counting from 0, in key order), in
+   * O(log n) expected time.
+   *
+   * @throws IllegalStateException if the list is not indexed
+   * @throws IndexOutOfBoundsException if index is not in 0 .. size-1
+   */
+  public K keyAt(int index) {
+    return nodeAt(index).key;
+  } // keyAt(int)
+
+  /**
+   * Determine the index of key, in O(log n) expected time.
+   *
+   * @returns the index of key if it is in the list; otherwise
+   *          (-(insertion point) - 1), where the insertion point is the
+   *          index key would have, as in Arrays.binarySearch
+   * @throws IllegalStateException if the list is not indexed
+   */
+  public int rankOf(K key) {
+    checkIndexed();
+    SLNode<K, V> current = this.head;
+    int position = 0;
+    for (int i = this.height - 1; i >= 0; i--) {
+      SLNode<K, V> next = current.next[i];
+      while (next != null && this.comparator.compare(next.key, key) < 0) {
+        position += widths(current)[i];
+        current = next;
+        next = current.next[i];
+      } // while
+    } // for
+    current = current.next[0];
+    if (current != null && this.comparator.compare(current.key, key) == 0) {
+      return position;
+    } else {
+      return -position - 1;
+    } // if/else
+  } // rankOf(K)
+
+  /**
+   * Remove the pair at the given index, in O(log n) expected time.
+   *
+   * @returns the removed value
+   * @throws IllegalStateException if the list is not indexed
+   * @throws IndexOutOfBoundsException if index is not in 0 .. size-1
+   */
+  public V removeByIndex(int index) {
+    checkIndex(index);
+    SLNode<K, V> current = this.head;
+    int position = 0;
+    for (int i = this.height - 1; i >= 0; i--) {
+      SLNode<K, V> next = current.next[i];
+      while (next != null && position + widths(current)[i] <= index) {
+        position += widths(current)[i];
+        current = next;
+        next = current.next[i];
+      } // while
+      this.preds[i] = current;
+      this.predRanks[i] = position;
+    } // for
+    SLNode<K, V> found = current.next[0];
+    unlink(found);
+    return found.value;
+  } // removeByIndex(int)
+
+  /**
+   * Copy the pairs with indices from (inclusive) to to (exclusive) into a
+   * new indexed skip list with the same ordering, in O(log n + (to - from))
+   * expected time.
+   *
+   * @throws IllegalStateException if the list is not indexed
+   * @throws IndexOutOfBoundsException if the range is not within 0 .. size
+   */
+  public SkipList<K, V> sublistByRank(int from, int to) {
+    checkIndexed();
+    if (from < 0 || to > this.size || from > to) {
+      throw new IndexOutOfBoundsException("bad range " + from + " .. " + to);
+    } // if
+    SkipList<K, V> result = emptyLike();
+    if (from == to) {
+      return result;
+    } // if
+    SLNode<K, V> current = nodeAt(from);
+    for (int i = from; i < to; i++) {
+      result.appendNode(current.key, current.value, result.randomHeight());
+      current = current.next[0];
+    } // for
+    return result;
+  } // sublistByRank(int, int)
+
+  // +-----------+---------------------------------------------------
+  // | Snapshots |
+  // +-----------+
+
+  /**
+   * Write every pair, in order, to channel in the compact binary format
+   * that readSnapshot reads (described in Snapshots): blocks of about 64 KB
+   * of pairs, each deflated and checksummed.  The list is walked along
+   * level 0, and only one block is buffered at a time.
+   *
+   * @pre the list does not change while the snapshot is written
+   * @throws IOException if the channel fails
+   */
+  public void writeSnapshot(WritableByteChannel channel, Serializer<K> keys,
+      Serializer<V> values) throws IOException {
+    try (Snapshots.Writer<K, V> writer =
+        new Snapshots.Writer<K, V>(channel, keys, values, this.size)) {
+      for (SLNode<K, V> node = this.head.next[0]; node != null; node = node.next[0]) {
+        writer.write(node.key, node.value);
+      } // for
+      writer.finish();
+    } // try
+  } // writeSnapshot(WritableByteChannel, Serializer<K>, Serializer<V>)
+
 
   /**
    * Print some links (for dump).
@@ -360,7 +1369,7 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
   public void dump(PrintWriter pen) {
     String leading = "          ";
 
-    SLNode<K, V> current = front.get(0);
+    SLNode<K, V> current = head.next[0];
 
     // Print some X's at the start
     pen.print(leading);
@@ -386,17 +1395,17 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
       } // if/else
 
       // Print an indication for the links it has.
-      for (int level = 0; level < current.next.size(); level++) {
+      for (int level = 0; level < current.next.length; level++) {
         pen.print("-*");
       } // for
       // Print an indication for the links it lacks.
-      for (int level = current.next.size(); level < this.height; level++) {
+      for (int level = current.next.length; level < this.height; level++) {
         pen.print(" |");
       } // for
       pen.println();
       printLinks(pen, leading);
 
-      current = current.next.get(0);
+      current = current.next[0];
     } // while
 
     // Print some O's at the start
@@ -413,21 +1422,527 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
   // | Helpers |
   // +---------+
 
+  /**
+   * Determine whether lookups (get, containsKey) write to the list, as
+   * they do with finger search or stats on, so that they must run
+   * exclusively.
+   */
+  boolean lookupsWrite() {
+    return this.finger || this.metrics != null;
+  } // lookupsWrite()
+
+  /**
+   * Find the last node before key on each level, recording them in preds.
+   *
+   * @returns the first node whose key is not less than key, or null
+   *          if there is no such node
+   */
+  SLNode<K, V> findPredecessors(K key) {
+    SLNode<K, V> result = descend(key, this.preds, this.predRanks,
+        this.finger && this.fingerModCount == this.modCount);
+    this.fingerModCount = this.modCount;
+    return result;
+  } // findPredecessors(K)
+
+  /**
+   * Find the node with the given key: through the hash index if there is
+   * one, else from the finger if useFinger is set and finger search is on,
+   * else from the top.  With stats on, this counts as a search.
+   *
+   * @returns the node, or null if key is not in the list
+   */
+  SLNode<K, V> find(K key, boolean useFinger) {
+    long start = (this.metrics == null) ? 0 : this.metrics.begin(SkipListMetrics.SEARCH);
+    SLNode<K, V> found;
+    if (this.hash != null) {
+      found = this.hash.find(key, this.comparator);
+    } else if (useFinger && this.finger) {
+      found = fingerSearch(key);
+    } else {
+      found = lastBefore(key, false).next[0];
+      if (found != null && compareNode(found, key, prefixOf(key)) != 0) {
+        found = null;
+      } // if
+    } // if/else
+    if (this.metrics != null) {
+      this.metrics.end(start);
+    } // if
+    return found;
+  } // find(K, boolean)
+
+  /**
+   * Find the node with the given key, starting from the finger.
+   *
+   * @returns the node, or null if key is not in the list
+   */
+  SLNode<K, V> fingerSearch(K key) {
+    SLNode<K, V> current = findPredecessors(key);
+    if (current != null && compareNode(current, key, prefixOf(key)) == 0) {
+      return current;
+    } else {
+      return null;
+    } // if/else
+  } // fingerSearch(K)
+
+  /**
+   * Find the last node before key on each level, recording them in path,
+   * and (if ranks is not null) their positions in ranks.  If fromPath is
+   * set, path and ranks must hold the result of an earlier search (with no
+   * structural changes since); we then climb from the bottom of that path
+   * only until a level passes key, and search down from there.
+   *
+   * @returns the first node whose key is not less than key, or null
+   *          if there is no such node
+   */
+  SLNode<K, V> descend(K key, SLNode<K, V>[] path, int[] ranks, boolean fromPath) {
+    long prefix = prefixOf(key);
+    int level = this.height - 1;
+    SLNode<K, V> current = this.head;
+    int position = 0;
+    if (fromPath && this.height > 0) {
+      level = 0;
+      current = path[0];
+      if (current == this.head || compareNode(current, key, prefix) < 0) {
+        // Forwards: climb while the next node on the level is still before key
+        while (level < this.height - 1) {
+          SLNode<K, V> next = path[level].next[level];
+          if (next == null || compareNode(next, key, prefix) >= 0) {
+            break;
+          } // if
+          level++;
+        } // while
+        current = path[level];
+        position = (ranks == null) ? 0 : ranks[level];
+      } else {
+        // Backwards: climb until the node on the level is before key
+        while (level < this.height - 1 && current != this.head
+            && compareNode(current, key, prefix) >= 0) {
+          current = path[++level];
+        } // while
+        if (current != this.head && compareNode(current, key, prefix) >= 0) {
+          current = this.head;
+        } else if (ranks != null) {
+          position = ranks[level];
+        } // if/else
+      } // if/else
+    } // if
+    // The node that ended the level above, which need not be compared again
+    SLNode<K, V> stop = null;
+    long[] hops = (this.metrics == null) ? null : this.metrics.hops;
+    for (int i = level; i >= 0; i--) {
+      SLNode<K, V> next = current.next[i];
+      while (next != null && next != stop && compareNode(next, key, prefix) < 0) {
+        if (ranks != null) {
+          position += widths(current)[i];
+        } // if
+        if (hops != null) {
+          hops[i]++;
+        } // if
+        current = next;
+        next = current.next[i];
+      } // while
+      stop = next;
+      path[i] = current;
+      if (ranks != null) {
+        ranks[i] = position;
+      } // if
+    } // for
+    if (hops != null) {
+      this.metrics.visit(level + 1);
+    } // if
+    return current.next[0];
+  } // descend(K, SLNode<K, V>[], int[], boolean)
+
+  /**
+   * Make sure that key may be appended.
+   *
+   * @throws IllegalArgumentException if key is not greater than the last key
+   * @throws NullPointerException if key is null
+   */
+  void checkAppend(K key) {
+    if (key == null) {
+      throw new NullPointerException("Key cannot be null");
+    } // if
+    SLNode<K, V> last = this.tails[0];
+    if (last != this.head && this.comparator.compare(last.key, key) >= 0) {
+      throw new IllegalArgumentException("keys are not in ascending order at " + key);
+    } // if
+  } // checkAppend(K)
+
+  /**
+   * Link a new node in after the last one, on every level it reaches.
+   *
+   * @pre key is greater than every key in the list
+   */
+  void appendNode(K key, V value, int newLevel) {
+    SLNode<K, V> newNode = newNode(key, value, newLevel);
+    if (this.hash != null) {
+      hashNode(newNode, this.tails);
+    } // if
+    if (this.indexed) {
+      // The tails' null links already reach the new position; the new
+      // node's reach one further, as do the links above it
+      for (int i = this.height; i < newLevel; i++) {
+        widths(this.head)[i] = this.size + 1;
+      } // for
+      for (int i = 0; i < newLevel; i++) {
+        widths(newNode)[i] = 1;
+      } // for
+      for (int i = newLevel; i < this.height; i++) {
+        widths(this.tails[i])[i]++;
+      } // for
+    } // if
+    for (int i = 0; i < newLevel; i++) {
+      this.tails[i].next[i] = newNode;
+      this.tails[i] = newNode;
+    } // for
+    this.height = Math.max(this.height, newLevel);
+    this.size++;
+    this.modCount++;
+    if (this.size >= this.growAt) {
+      grow();
+    } // if
+  } // appendNode(K, V, int)
+
+  /**
+   * Find the last node whose key is less than key (or, if inclusive, not
+   * greater than key), without writing anything.  This is the descent that
+   * search and the navigation methods share.
+   *
+   * @returns that node, or the head if there is none
+   */
+  SLNode<K, V> lastBefore(K key, boolean inclusive) {
+    int limit = inclusive ? 0 : -1;
+    long prefix = prefixOf(key);
+    SLNode<K, V> current = this.head;
+    // The node that ended the level above, which need not be compared again
+    SLNode<K, V> stop = null;
+    long[] hops = (this.metrics == null) ? null : this.metrics.hops;
+    for (int i = this.height - 1; i >= 0; i--) {
+      SLNode<K, V> next = current.next[i];
+      while (next != null && next != stop && compareNode(next, key, prefix) <= limit) {
+        if (hops != null) {
+          hops[i]++;
+        } // if
+        current = next;
+        next = current.next[i];
+      } // while
+      stop = next;
+    } // for
+    if (hops != null) {
+      this.metrics.visit(this.height);
+    } // if
+    return current;
+  } // lastBefore(K, boolean)
+
+  /**
+   * Get the key of a node returned by a search, or null for the head or
+   * the end of the list.
+   */
+  K keyOf(SLNode<K, V> node) {
+    return (node == null || node == this.head) ? null : node.key;
+  } // keyOf(SLNode<K, V>)
+
+  /**
+   * Unlink a node, given its predecessors in preds (and, when indexed,
+   * their positions in predRanks).  preds stays a valid search path.
+   */
+  void unlink(SLNode<K, V> current) {
+    if (this.hash != null) {
+      for (int i = 0; i < current.next.length; i++) {
+        if (current.next[i] != null) {
+          prevs(current.next[i])[i] = this.preds[i];
+        } // if
+      } // for
+      this.hash.remove(current);
+    } // if
+    if (this.metrics != null) {
+      this.metrics.heights[current.next.length]--;
+    } // if
+    for (int i = 0; i < current.next.length; i++) {
+      this.preds[i].next[i] = current.next[i];
+      if (this.tails[i] == current) {
+        this.tails[i] = this.preds[i];
+      } // if
+    } // for
+    if (this.indexed) {
+      for (int i = 0; i < current.next.length; i++) {
+        widths(this.preds[i])[i] += widths(current)[i] - 1;
+      } // for
+      for (int i = current.next.length; i < this.height; i++) {
+        widths(this.preds[i])[i]--;
+      } // for
+    } // if
+    // Decrement height if tallest element was removed
+    while (this.height > 0 && this.head.next[this.height - 1] == null) {
+      this.height--;
+    } // while
+    this.size--;
+    this.modCount++;
+    this.fingerModCount = this.modCount;
+  } // unlink(SLNode<K, V>)
+
+  /**
+   * Drop a node that is being removed from the hash index and the height
+   * histogram.  Its links are left alone.
+   */
+  void forget(SLNode<K, V> node) {
+    if (this.hash != null) {
+      this.hash.remove(node);
+    } // if
+    if (this.metrics != null) {
+      this.metrics.heights[node.next.length]--;
+    } // if
+  } // forget(SLNode<K, V>)
+
+  /**
+   * Make node, at the given position, the last node kept on each of its
+   * levels in a pass that removes nodes (see removeIf), which holds those
+   * in preds and, when indexed, their positions in predRanks.  The links
+   * that reach node get their widths and back links here.
+   */
+  void keep(SLNode<K, V> node, int position) {
+    for (int i = 0; i < node.next.length; i++) {
+      if (this.indexed) {
+        widths(this.preds[i])[i] = position - this.predRanks[i];
+        this.predRanks[i] = position;
+      } // if
+      if (this.hash != null) {
+        prevs(node)[i] = this.preds[i];
+      } // if
+      this.preds[i] = node;
+    } // for
+  } // keep(SLNode<K, V>, int)
+
+  /**
+   * Find the node at an index.
+   *
+   * @throws IllegalStateException if the list is not indexed
+   * @throws IndexOutOfBoundsException if index is not in 0 .. size-1
+   */
+  SLNode<K, V> nodeAt(int index) {
+    checkIndex(index);
+    // Head is at position 0, so the node at index is at position index+1
+    int target = index + 1;
+    SLNode<K, V> current = this.head;
+    int position = 0;
+    for (int i = this.height - 1; i >= 0 && position < target; i--) {
+      SLNode<K, V> next = current.next[i];
+      while (next != null && position + widths(current)[i] <= target) {
+        position += widths(current)[i];
+        current = next;
+        next = current.next[i];
+      } // while
+    } // for
+    return current;
+  } // nodeAt(int)
+
+  /**
+   * Make sure the list keeps widths.
+   *
+   * @throws IllegalStateException if it does not
+   */
+  void checkIndexed() {
+    if (!this.indexed) {
+      throw new IllegalStateException("list is not indexed");
+    } // if
+  } // checkIndexed()
+
+  /**
+   * Make sure the list keeps widths and index is in range.
+   *
+   * @throws IllegalStateException if the list is not indexed
+   * @throws IndexOutOfBoundsException if index is not in 0 .. size-1
+   */
+  void checkIndex(int index) {
+    checkIndexed();
+    if (index < 0 || index >= this.size) {
+      throw new IndexOutOfBoundsException("index " + index + " with size " + this.size);
+    } // if
+  } // checkIndex(int)
+
+  /**
+   * Make a node of the right kind for this list.
+   */
+  SLNode<K, V> newNode(K key, V value, int n) {
+    if (this.metrics != null) {
+      this.metrics.heights[n]++;
+    } // if
+    if (this.normalizer != null && key != null) {
+      return new PrefixedSLNode<K, V>(key, value, n, this.indexed, this.hash != null,
+          this.normalizer.normalize(key));
+    } else if (this.hash != null) {
+      return new HashedSLNode<K, V>(key, value, n, this.indexed);
+    } else if (this.indexed) {
+      return new IndexedSLNode<K, V>(key, value, n);
+    } else {
+      return new SLNode<K, V>(key, value, n);
+    } // if/else
+  } // newNode(K, V, int)
+
+  /**
+   * Get the link widths of a node in an indexed list.
+   */
+  static <K, V> int[] widths(SLNode<K, V> node) {
+    return ((IndexedSLNode<K, V>) node).widths;
+  } // widths(SLNode<K, V>)
+
+  /**
+   * Compute the normalized prefix of key, or 0 if there is no normalizer.
+   */
+  long prefixOf(K key) {
+    return (this.normalizer == null) ? 0 : this.normalizer.normalize(key);
+  } // prefixOf(K)
+
+  /**
+   * Compare the key of node with key, whose prefix is prefix.  With a
+   * normalizer, keys whose prefixes differ are ordered by them, without
+   * touching the node's key or calling the comparator.
+   */
+  int compareNode(SLNode<K, V> node, K key, long prefix) {
+    if (this.normalizer != null) {
+      int order = Long.compareUnsigned(((PrefixedSLNode<K, V>) node).prefix, prefix);
+      if (order != 0 || this.normalizer.isExact()) {
+        return order;
+      } // if
+    } // if
+    return this.comparator.compare(node.key, key);
+  } // compareNode(SLNode<K, V>, K, long)
+
+  /**
+   * Get the back links of a node in a hashed list.
+   */
+  static <K, V> SLNode<K, V>[] prevs(SLNode<K, V> node) {
+    return ((HashedSLNode<K, V>) node).prev;
+  } // prevs(SLNode<K, V>)
+
+  /**
+   * Add a node to the hash index and set its back links (and those of the
+   * nodes after it), given the nodes it follows on each of its levels.
+   * The node's forward links must already be set.
+   */
+  void hashNode(SLNode<K, V> node, SLNode<K, V>[] before) {
+    SLNode<K, V>[] prev = prevs(node);
+    for (int i = 0; i < node.next.length; i++) {
+      prev[i] = before[i];
+      if (node.next[i] != null) {
+        prevs(node.next[i])[i] = node;
+      } // if
+    } // for
+    this.hash.add(node);
+  } // hashNode(SLNode<K, V>, SLNode<K, V>[])
+
+  /**
+   * In a hashed list, fill preds with what unlink needs to remove node,
+   * following back links instead of searching: the node's own back links
+   * and, when indexed, the predecessors on the levels above it, found by
+   * walking back from the one below until a node reaches up that far.
+   */
+  void predecessorsOf(SLNode<K, V> node) {
+    int n = node.next.length;
+    System.arraycopy(prevs(node), 0, this.preds, 0, n);
+    if (this.indexed) {
+      for (int i = n; i < this.height; i++) {
+        SLNode<K, V> current = this.preds[i - 1];
+        while (current != this.head && current.next.length <= i) {
+          current = prevs(current)[i - 1];
+        } // while
+        this.preds[i] = current;
+      } // for
+    } // if
+  } // predecessorsOf(SLNode<K, V>)
+
+  /**
+   * Make an empty list of the same kind as this one: the same
+   * comparator (without stats' counting), level generator, normalizer,
+   * and indexing and hashing.
+   */
+  SkipList<K, V> emptyLike() {
+    Comparator<K> comparator = (this.metrics == null) ? this.comparator : this.metrics.comparator;
+    SkipList<K, V> result =
+        new SkipList<K, V>(comparator, this.levels, this.indexed, this.hash != null);
+    result.normalizer = this.normalizer;
+    return result;
+  } // emptyLike()
+
+  /**
+   * Make sure that other is not this list, and that its nodes would do
+   * for ours.
+   *
+   * @throws IllegalArgumentException if not
+   */
+  void checkCompatible(SkipList<K, V> other) {
+    if (other == this) {
+      throw new IllegalArgumentException("cannot combine a list with itself");
+    } // if
+    if (other.indexed != this.indexed || (other.hash == null) != (this.hash == null)
+        || other.normalizer != this.normalizer) {
+      throw new IllegalArgumentException(
+          "lists must be alike: indexed or not, hashed or not, and with the same normalizer");
+    } // if
+  } // checkCompatible(SkipList<K, V>)
+
+  /**
+   * Empty the list, whose nodes have been taken by another.
+   */
+  void reset() {
+    Arrays.fill(this.head.next, null);
+    Arrays.fill(this.tails, this.head);
+    if (this.hash != null) {
+      this.hash = new SLHashIndex<K, V>();
+    } // if
+    if (this.metrics != null) {
+      Arrays.fill(this.metrics.heights, 0);
+    } // if
+    this.size = 0;
+    this.height = 0;
+    this.modCount++;
+    this.fingerModCount = -1;
+  } // reset()
+
+  /**
+   * Raise the maximum height until nodes of the given height fit.
+   */
+  void growTo(int height) {
+    while (this.maxHeight < height) {
+      grow();
+    } // while
+  } // growTo(int)
+
   /**
    * Pick a random height for a new node.
-   * EDIT: I followed the reading and thought that 16 was the max
-   * height instead of the current height
    */
   int randomHeight() {
-    int result = 1;
-    while (rand.nextDouble() < prob) {
-      result = result + 1;
-    }
-    return Math.max(result, this.INITIAL_HEIGHT - 1);
+    return this.levels.nextLevel(this.maxHeight);
   } // randomHeight()
 
+  /**
+   * Raise the maximum height by one level, so that it stays near
+   * log_{1/p}(size).
+   */
+  void grow() {
+    this.maxHeight++;
+    this.head.next = Arrays.copyOf(this.head.next, this.maxHeight);
+    this.preds = Arrays.copyOf(this.preds, this.maxHeight);
+    this.tails = Arrays.copyOf(this.tails, this.maxHeight);
+    this.tails[this.maxHeight - 1] = this.head;
+    if (this.indexed) {
+      this.predRanks = Arrays.copyOf(this.predRanks, this.maxHeight);
+      IndexedSLNode<K, V> top = (IndexedSLNode<K, V>) this.head;
+      top.widths = Arrays.copyOf(top.widths, this.maxHeight);
+    } // if
+    if (this.metrics != null) {
+      this.metrics.grow(this.maxHeight);
+    } // if
+    this.growAt *= 1.0 / this.levels.probability();
+  } // grow()
+
   /**
    * Get an iterator for all of the nodes. (Useful for implementing the other iterators.)
+   * Its remove takes O(1) amortized expected time (O(log n) in an indexed
+   * list, which must fix the widths of the links above): the first call
+   * searches for the path to the node, and later ones keep that path up
+   * to date as the iterator moves on.
    */
   Iterator<SLNode<K, V>> nodes() {
     return new Iterator<SLNode<K, V>>() {
@@ -435,7 +1950,31 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
       /**
        * A reference to the next node to return.
        */
-      SLNode<K, V> next = SkipList.this.front.get(0);
+      SLNode<K, V> next = SkipList.this.head.next[0];
+
+      /**
+       * The node last returned, or null if there is none or it has been
+       * removed.
+       */
+      SLNode<K, V> last;
+
+      /**
+       * Once remove has been called, the last node before last on each
+       * level, and (when indexed) their positions; null before then.
+       */
+      SLNode<K, V>[] path;
+      int[] ranks;
+
+      /**
+       * The position of last (or, if it was removed, of the node before).
+       */
+      int position;
+
+      /**
+       * The modCount we expect, so that remove can tell when the list has
+       * changed under us.
+       */
+      int expectedModCount = SkipList.this.modCount;
 
       @Override
       public boolean hasNext() {
@@ -447,64 +1986,168 @@ public class SkipList<K, V> implements SimpleMap<K, V> {
         if (this.next == null) {
           throw new IllegalStateException();
         }
-        SLNode<K, V> temp = this.next;
-        this.next = this.next.next.get(0);
-        return temp;
+        if (this.path != null && this.last != null
+            && SkipList.this.modCount == this.expectedModCount) {
+          // Move the path past the node we are leaving
+          for (int i = 0; i < this.last.next.length; i++) {
+            this.path[i] = this.last;
+            if (this.ranks != null) {
+              this.ranks[i] = this.position;
+            } // if
+          } // for
+        } // if
+        this.last = this.next;
+        this.position++;
+        this.next = this.next.next[0];
+        return this.last;
       } // next();
+
+      @Override
+      public void remove() {
+        if (this.last == null) {
+          throw new IllegalStateException("nothing to remove");
+        } // if
+        if (SkipList.this.modCount != this.expectedModCount) {
+          throw new ConcurrentModificationException();
+        } // if
+        int height = SkipList.this.height;
+        if (this.path == null) {
+          this.path = SLNode.links(height);
+          this.ranks = SkipList.this.indexed ? new int[height] : null;
+          descend(this.last.key, this.path, this.ranks, false);
+        } // if
+        int levels = (this.ranks == null) ? this.last.next.length : height;
+        System.arraycopy(this.path, 0, SkipList.this.preds, 0, levels);
+        if (this.ranks != null) {
+          System.arraycopy(this.ranks, 0, SkipList.this.predRanks, 0, levels);
+        } // if
+        unlink(this.last);
+        // preds holds only as much of a path as unlink needed
+        SkipList.this.fingerModCount = -1;
+        this.expectedModCount = SkipList.this.modCount;
+        this.last = null;
+        this.position--;
+      } // remove()
     }; // new Iterator
   } // nodes()
 
-  // +---------+-----------------------------------------------------
-  // | Helpers |
-  // +---------+
-
-} // class SkipList
-
-
-/**
- * Nodes in the skip list.
- */
-class SLNode<K, V> {
-
-  // +--------+------------------------------------------------------
-  // | Fields |
-  // +--------+
-
-  /**
-   * The key.
-   */
-  K key;
-
   /**
-   * The value.
+   * A spliterator over the nodes from first (inclusive, unless it is the
+   * head) to fence (exclusive, or the end if null).  It is used up once
+   * first reaches fence.  It splits at the middle node of the highest
+   * level (no higher than level) that has at least four nodes in range,
+   * or two on level 1; with fewer, the middle can be far off.
+   * Invariant: first and fence (if not null) reach above level, so
+   * walking any level up to level from first meets fence exactly.
    */
-  V value;
-
-  /**
-   * Pointers to the next nodes.
-   */
-  ArrayList<SLNode<K, V>> next;
-
-  // +--------------+------------------------------------------------
-  // | Constructors |
-  // +--------------+
-
-  /**
-   * Create a new node of height n with the specified key and value.
-   */
-  public SLNode(K key, V value, int n) {
-    this.key = key;
-    this.value = value;
-    this.next = new ArrayList<SLNode<K, V>>(n);
-    for (int i = 0; i < n; i++) {
-      this.next.add(null);
-    } // for
-  } // SLNode(K, V, int)
-
-  // +---------+-----------------------------------------------------
-  // | Methods |
-  // +---------+
-
-
+  class EntrySpliterator implements Spliterator<Map.Entry<K, V>> {
+
+    /**
+     * The next node to visit (or the head, before we start).
+     */
+    SLNode<K, V> first;
+
+    /**
+     * The first node not to visit, or null for the end of the list.
+     */
+    SLNode<K, V> fence;
+
+    /**
+     * The highest level we may split on.
+     */
+    int level;
+
+    /**
+     * Our estimate of how many nodes remain.
+     */
+    long estimate;
+
+    /**
+     * Whether estimate is exact (true only before any split).
+     */
+    boolean sized;
+
+    EntrySpliterator(SLNode<K, V> first, SLNode<K, V> fence, int level, long estimate,
+        boolean sized) {
+      this.first = first;
+      this.fence = fence;
+      this.level = level;
+      this.estimate = estimate;
+      this.sized = sized;
+    } // EntrySpliterator(SLNode<K, V>, SLNode<K, V>, int, long, boolean)
+
+    @Override
+    public Spliterator<Map.Entry<K, V>> trySplit() {
+      if (this.first == this.fence) {
+        return null;
+      } // if
+      int top = Math.min(this.level, this.first.next.length - 1);
+      for (int i = top; i > 0; i--) {
+        // Count the hops on this level that stay in range
+        int hops = 0;
+        for (SLNode<K, V> node = this.first.next[i]; node != this.fence && node != null;
+            node = node.next[i]) {
+          hops++;
+        } // for
+        if (hops >= 4 || (hops >= 2 && i == 1)) {
+          SLNode<K, V> middle = this.first;
+          for (int hop = 0; hop <= hops / 2; hop++) {
+            middle = middle.next[i];
+          } // for
+          long half = this.estimate / 2;
+          EntrySpliterator prefix =
+              new EntrySpliterator(this.first, middle, i, this.estimate - half, false);
+          this.first = middle;
+          this.level = i;
+          this.estimate = half;
+          this.sized = false;
+          return prefix;
+        } // if
+      } // for
+      return null;
+    } // trySplit()
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Map.Entry<K, V>> action) {
+      SLNode<K, V> node = (this.first == SkipList.this.head) ? this.first.next[0] : this.first;
+      if (node == this.fence) {
+        this.first = this.fence;
+        return false;
+      } // if
+      action.accept(node);
+      this.first = node.next[0];
+      if (this.estimate > 0) {
+        this.estimate--;
+      } // if
+      return true;
+    } // tryAdvance(Consumer)
+
+    @Override
+    public void forEachRemaining(Consumer<? super Map.Entry<K, V>> action) {
+      SLNode<K, V> node = (this.first == SkipList.this.head) ? this.first.next[0] : this.first;
+      SLNode<K, V> fence = this.fence;
+      this.first = fence;
+      this.estimate = 0;
+      while (node != fence) {
+        action.accept(node);
+        node = node.next[0];
+      } // while
+    } // forEachRemaining(Consumer)
+
+    @Override
+    public long estimateSize() {
+      return this.estimate;
+    } // estimateSize()
+
+    @Override
+    public int characteristics() {
+      return ORDERED | SORTED | DISTINCT | NONNULL | (this.sized ? SIZED : 0);
+    } // characteristics()
+
+    @Override
+    public Comparator<? super Map.Entry<K, V>> getComparator() {
+      return Map.Entry.comparingByKey(SkipList.this.comparator);
+    } // getComparator()
+  } // class EntrySpliterator
 
-} // SLNode<K,V>
+} // class SkipList
@@ -0,0 +1,208 @@
+import java.util.ConcurrentModificationException;
+
+/**
+ * A position in a SkipList that remembers how it got there.
+ *
+ * seek finds a key from the top of the list, like get.  seekFrom uses the
+ * cursor's current search path as a finger: it climbs only until a level
+ * passes the new key and searches down from there, so seeking a key d
+ * positions away takes O(log d) expected time.  Clustered lookups should
+ * seek once and then seekFrom.
+ *
+ * A structural change to the list (adding or removing a key) makes the
+ * path stale.  seekFrom then falls back to seek, and next throws.
+ */
+public class SkipListCursor<K, V> {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The list we move through.
+   */
+  final SkipList<K, V> list;
+
+  /**
+   * The last node before the current position on each level.
+   */
+  SLNode<K, V>[] path;
+
+  /**
+   * The positions of the nodes in path, if the list is indexed.
+   */
+  int[] ranks;
+
+  /**
+   * The node at the current position, or null if we are past the end.
+   */
+  SLNode<K, V> current;
+
+  /**
+   * Whether the cursor has been positioned at all.
+   */
+  boolean positioned;
+
+  /**
+   * The list's modCount when path was filled in.
+   */
+  int expectedModCount;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create an unpositioned cursor over list.
+   */
+  public SkipListCursor(SkipList<K, V> list) {
+    this.list = list;
+    this.path = SLNode.links(list.maxHeight);
+    if (list.indexed) {
+      this.ranks = new int[list.maxHeight];
+    } // if
+    this.positioned = false;
+  } // SkipListCursor(SkipList<K, V>)
+
+  // +---------+-----------------------------------------------------
+  // | Seeking |
+  // +---------+
+
+  /**
+   * Move to the first key not less than key, searching from the top.
+   *
+   * @returns true if key itself is in the list
+   * @throws NullPointerException if key is null
+   */
+  public boolean seek(K key) {
+    return seek(key, false);
+  } // seek(K)
+
+  /**
+   * Move to the first key not less than key, searching from the current
+   * position.  Equivalent to seek, but faster when key is near the
+   * current position.
+   *
+   * @returns true if key itself is in the list
+   * @throws NullPointerException if key is null
+   */
+  public boolean seekFrom(K key) {
+    return seek(key, this.positioned && this.expectedModCount == this.list.modCount);
+  } // seekFrom(K)
+
+  // +--------+------------------------------------------------------
+  // | Moving |
+  // +--------+
+
+  /**
+   * Determine whether the cursor is at a key (rather than unpositioned or
+   * past the end).
+   */
+  public boolean valid() {
+    return this.current != null;
+  } // valid()
+
+  /**
+   * Get the key at the current position.
+   *
+   * @throws IllegalStateException if the cursor is not at a key
+   */
+  public K key() {
+    return node().key;
+  } // key()
+
+  /**
+   * Get the value at the current position.
+   *
+   * @throws IllegalStateException if the cursor is not at a key
+   */
+  public V value() {
+    return node().value;
+  } // value()
+
+  /**
+   * Get the index of the current position.
+   *
+   * @throws IllegalStateException if the cursor is not at a key, or the
+   *         list is not indexed
+   */
+  public int index() {
+    node();
+    this.list.checkIndexed();
+    return this.ranks[0];
+  } // index()
+
+  /**
+   * Replace the value at the current position.
+   *
+   * @returns the old value
+   * @throws IllegalStateException if the cursor is not at a key
+   */
+  public V setValue(V value) {
+    SLNode<K, V> node = node();
+    V old = node.value;
+    node.value = value;
+    return old;
+  } // setValue(V)
+
+  /**
+   * Move to the next key, keeping the search path up to date.
+   *
+   * @returns true if the cursor is still at a key
+   * @throws IllegalStateException if the cursor is not at a key
+   * @throws ConcurrentModificationException if the list has changed
+   *         structurally since the cursor was positioned
+   */
+  public boolean next() {
+    SLNode<K, V> node = node();
+    if (this.expectedModCount != this.list.modCount) {
+      throw new ConcurrentModificationException();
+    } // if
+    int position = (this.ranks == null) ? 0 : this.ranks[0] + 1;
+    for (int i = 0; i < node.next.length; i++) {
+      this.path[i] = node;
+      if (this.ranks != null) {
+        this.ranks[i] = position;
+      } // if
+    } // for
+    this.current = node.next[0];
+    return this.current != null;
+  } // next()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Search for key, from the current path if fromPath is set.
+   */
+  boolean seek(K key, boolean fromPath) {
+    if (key == null) {
+      throw new NullPointerException("null key");
+    } // if
+    if (this.path.length < this.list.maxHeight) {
+      this.path = SLNode.links(this.list.maxHeight);
+      if (this.ranks != null) {
+        this.ranks = new int[this.list.maxHeight];
+      } // if
+      fromPath = false;
+    } // if
+    this.current = this.list.descend(key, this.path, this.ranks, fromPath);
+    this.positioned = true;
+    this.expectedModCount = this.list.modCount;
+    return this.current != null && this.list.comparator.compare(this.current.key, key) == 0;
+  } // seek(K, boolean)
+
+  /**
+   * Get the current node.
+   *
+   * @throws IllegalStateException if the cursor is not at a key
+   */
+  SLNode<K, V> node() {
+    if (this.current == null) {
+      throw new IllegalStateException("cursor is not at a key");
+    } // if
+    return this.current;
+  } // node()
+
+} // class SkipListCursor
@@ -3,7 +3,7 @@ import java.io.PrintWriter;
 public class SkipListExpt {
   public static void main(String[] args) {
     PrintWriter pen = new PrintWriter(System.out, true);
-    SkipList<String, String> list = new SkipList<String, String>();
+    SkipList<String, String> list = SkipList.naturalOrder();
 
     String[] strings = {"foxtrot", "alpha", "zulu", "ant", "bravo", "zoo", "aardvark", "computer",
         "science", "skip", "list", "binary", "search", "tree"};
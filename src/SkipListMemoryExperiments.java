@@ -0,0 +1,99 @@
+import java.util.ArrayList;
+
+/**
+ * Compare the per-entry heap cost of the array-based node layout against
+ * the old layout, which kept each node's links in an ArrayList, and show
+ * what the hash index of a hashed list adds and what a deterministic skip
+ * list's node per level costs.
+ */
+public class SkipListMemoryExperiments {
+  public static void main(String args[]) {
+    int size = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+
+    // Share the keys between the two experiments so we only count links.
+    Integer[] keys = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      keys[i] = i;
+    } // for
+
+    long before = MemoryMeter.usedHeap();
+    SkipList<Integer, Integer> lst =
+        new SkipList<Integer, Integer>((i, j) -> i - j, LevelGenerator.seeded(size));
+    for (int i = 0; i < size; i++) {
+      lst.set(keys[i], keys[i]);
+    } // for
+    long arrays = MemoryMeter.usedHeap() - before;
+    System.out.println("Array layout:     " + (arrays / (double) size) + " bytes/entry");
+    lst = null;
+
+    before = MemoryMeter.usedHeap();
+    lst = new SkipList<Integer, Integer>((i, j) -> i - j, LevelGenerator.seeded(size), false,
+        true);
+    for (int i = 0; i < size; i++) {
+      lst.set(keys[i], keys[i]);
+    } // for
+    long hashed = MemoryMeter.usedHeap() - before;
+    System.out.println("Hashed:           " + (hashed / (double) size) + " bytes/entry (table "
+        + (lst.hash.nodes.length * 8.0 / size) + ")");
+    lst = null;
+
+    before = MemoryMeter.usedHeap();
+    DeterministicSkipList<Integer, Integer> deterministic =
+        new DeterministicSkipList<Integer, Integer>((i, j) -> i - j);
+    for (int i = 0; i < size; i++) {
+      deterministic.set(keys[i], keys[i]);
+    } // for
+    long nodes = MemoryMeter.usedHeap() - before;
+    System.out.println("Deterministic:    " + (nodes / (double) size) + " bytes/entry");
+    deterministic = null;
+
+    before = MemoryMeter.usedHeap();
+    LegacyNode<Integer, Integer> legacy = legacyList(keys, LevelGenerator.seeded(size));
+    long lists = MemoryMeter.usedHeap() - before;
+    System.out.println("ArrayList layout: " + (lists / (double) size) + " bytes/entry");
+    System.out.println("Saved:            " + ((lists - arrays) / (double) size) + " bytes/entry");
+
+    // Keep everything reachable until we're done measuring.
+    if (legacy.next.size() < 0 || keys.length < 0) {
+      System.out.println(legacy);
+    } // if
+  } // main(String[])
+
+  /**
+   * Build a chain of nodes in the old layout with the same height distribution.
+   */
+  static LegacyNode<Integer, Integer> legacyList(Integer[] keys, LevelGenerator levels) {
+    LegacyNode<Integer, Integer> head = new LegacyNode<Integer, Integer>(null, null, 64);
+    ArrayList<LegacyNode<Integer, Integer>> tails = new ArrayList<LegacyNode<Integer, Integer>>();
+    for (int i = 0; i < 64; i++) {
+      tails.add(head);
+    } // for
+    for (Integer key : keys) {
+      LegacyNode<Integer, Integer> node =
+          new LegacyNode<Integer, Integer>(key, key, levels.nextLevel(64));
+      for (int i = 0; i < node.next.size(); i++) {
+        tails.get(i).next.set(i, node);
+        tails.set(i, node);
+      } // for
+    } // for
+    return head;
+  } // legacyList(Integer[], LevelGenerator)
+
+  /**
+   * The node layout we used before switching to arrays.
+   */
+  static class LegacyNode<K, V> {
+    K key;
+    V value;
+    ArrayList<LegacyNode<K, V>> next;
+
+    LegacyNode(K key, V value, int n) {
+      this.key = key;
+      this.value = value;
+      this.next = new ArrayList<LegacyNode<K, V>>(n);
+      for (int i = 0; i < n; i++) {
+        this.next.add(null);
+      } // for
+    } // LegacyNode(K, V, int)
+  } // class LegacyNode
+} // class SkipListMemoryExperiments
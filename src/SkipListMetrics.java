@@ -0,0 +1,224 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import javax.management.ObjectName;
+
+/**
+ * The live counters behind a SkipList's stats, which the list updates as
+ * it goes.  Comparisons are counted by a comparator that wraps the list's
+ * own while stats are on; links followed and levels visited are counted
+ * in the search loops, into the arrays of the operation in progress.
+ *
+ * The counters are plain fields, updated by the list's (single) user, so
+ * figures read from another thread (say, through JMX) while the list
+ * changes may be a little stale or inconsistent.
+ */
+class SkipListMetrics<K, V> implements SkipListStatsMXBean {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The kinds of operation.  Comparisons outside the others count as
+   * OTHER.
+   */
+  static final int SEARCH = 0;
+  static final int SET = 1;
+  static final int REMOVE = 2;
+  static final int OTHER = 3;
+
+  static final String[] NAMES = {"search", "set", "remove", "other"};
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The list we watch, and its comparator before we wrapped it.
+   */
+  final SkipList<K, V> list;
+  final Comparator<K> comparator;
+
+  /**
+   * The kind of operation in progress, and its hop counters.
+   */
+  int kind = OTHER;
+  long[] hops;
+
+  /**
+   * For each kind: the number of operations, comparisons, links followed
+   * on each level, levels visited, and latencies.
+   */
+  long[] counts = new long[4];
+  long[] comparisons = new long[4];
+  long[][] hopsByKind = new long[4][];
+  long[] levels = new long[4];
+  Histogram[] latencies = new Histogram[3];
+
+  /**
+   * The number of nodes of each height.
+   */
+  long[] heights;
+
+  /**
+   * The name under which we are registered, if we are.
+   */
+  ObjectName registered;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Start counting for list, taking the heights of its nodes.
+   */
+  SkipListMetrics(SkipList<K, V> list) {
+    this.list = list;
+    this.comparator = list.comparator;
+    this.heights = new long[list.maxHeight + 1];
+    for (SLNode<K, V> node = list.head.next[0]; node != null; node = node.next[0]) {
+      this.heights[node.next.length]++;
+    } // for
+    reset();
+  } // SkipListMetrics(SkipList<K, V>)
+
+  // +-------------------+-------------------------------------------
+  // | Methods for lists |
+  // +-------------------+
+
+  /**
+   * Make a comparator that counts its calls against the current kind of
+   * operation.
+   */
+  Comparator<K> counting() {
+    return (x, y) -> {
+      this.comparisons[this.kind]++;
+      return this.comparator.compare(x, y);
+    };
+  } // counting()
+
+  /**
+   * Note the start of an operation.
+   *
+   * @returns the start time, for end
+   */
+  long begin(int kind) {
+    this.kind = kind;
+    this.hops = this.hopsByKind[kind];
+    return System.nanoTime();
+  } // begin(int)
+
+  /**
+   * Note the end of the operation begun at start.
+   */
+  void end(long start) {
+    this.latencies[this.kind].record(System.nanoTime() - start);
+    this.counts[this.kind]++;
+    this.kind = OTHER;
+    this.hops = this.hopsByKind[OTHER];
+  } // end(long)
+
+  /**
+   * Note that a search visited count levels.
+   */
+  void visit(int count) {
+    this.levels[this.kind] += count;
+  } // visit(int)
+
+  /**
+   * Make room for nodes up to maxHeight tall.
+   */
+  void grow(int maxHeight) {
+    for (int i = 0; i < this.hopsByKind.length; i++) {
+      this.hopsByKind[i] = Arrays.copyOf(this.hopsByKind[i], maxHeight);
+    } // for
+    this.hops = this.hopsByKind[this.kind];
+    this.heights = Arrays.copyOf(this.heights, maxHeight + 1);
+  } // grow(int)
+
+  /**
+   * Take a snapshot.
+   */
+  SkipListStats snapshot() {
+    SkipListStats.OpStats[] ops = new SkipListStats.OpStats[3];
+    for (int i = 0; i < ops.length; i++) {
+      ops[i] = new SkipListStats.OpStats(NAMES[i], this.counts[i], this.comparisons[i],
+          this.hopsByKind[i].clone(), this.levels[i], this.latencies[i]);
+    } // for
+    return new SkipListStats(this.list.size, this.list.height, this.list.maxHeight,
+        getOptimalHeight(), this.heights.clone(), ops[SEARCH], ops[SET], ops[REMOVE],
+        this.comparisons[OTHER]);
+  } // snapshot()
+
+  // +-------------------+-------------------------------------------
+  // | MXBean attributes |
+  // +-------------------+
+
+  @Override
+  public SkipListStats getStats() {
+    return snapshot();
+  } // getStats()
+
+  @Override
+  public int getSize() {
+    return this.list.size;
+  } // getSize()
+
+  @Override
+  public int getHeight() {
+    return this.list.height;
+  } // getHeight()
+
+  @Override
+  public int getOptimalHeight() {
+    int size = this.list.size;
+    return (size <= 1) ? size
+        : (int) Math.ceil(Math.log(size) / Math.log(1 / this.list.levels.probability()));
+  } // getOptimalHeight()
+
+  @Override
+  public double getMeanSearchPath() {
+    long total = this.levels[SEARCH];
+    for (long hop : this.hopsByKind[SEARCH]) {
+      total += hop;
+    } // for
+    long count = this.counts[SEARCH];
+    return (count == 0) ? 0 : (double) total / count;
+  } // getMeanSearchPath()
+
+  @Override
+  public double getMeanSearchComparisons() {
+    long count = this.counts[SEARCH];
+    return (count == 0) ? 0 : (double) this.comparisons[SEARCH] / count;
+  } // getMeanSearchComparisons()
+
+  @Override
+  public long getSearchP99Nanos() {
+    return this.latencies[SEARCH].percentile(0.99);
+  } // getSearchP99Nanos()
+
+  @Override
+  public long getSetP99Nanos() {
+    return this.latencies[SET].percentile(0.99);
+  } // getSetP99Nanos()
+
+  @Override
+  public long getRemoveP99Nanos() {
+    return this.latencies[REMOVE].percentile(0.99);
+  } // getRemoveP99Nanos()
+
+  @Override
+  public void reset() {
+    for (int i = 0; i < 4; i++) {
+      this.counts[i] = 0;
+      this.comparisons[i] = 0;
+      this.levels[i] = 0;
+      this.hopsByKind[i] = new long[this.list.maxHeight];
+    } // for
+    for (int i = 0; i < this.latencies.length; i++) {
+      this.latencies[i] = new Histogram();
+    } // for
+    this.hops = this.hopsByKind[this.kind];
+  } // reset()
+
+} // class SkipListMetrics
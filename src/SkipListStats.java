@@ -0,0 +1,220 @@
+import java.util.Arrays;
+
+/**
+ * A snapshot of a SkipList's shape and of what its searches, sets and
+ * removes have cost since stats were turned on (see SkipList.setStats).
+ *
+ * The shape tells a list that is too tall or too flat for its size (say,
+ * because its LevelGenerator is broken) at a glance: height should stay
+ * close to optimalHeight, and the height histogram should halve (for
+ * p = 1/2) from each height to the next.  The operation figures show
+ * where the time goes: comparisons and links followed, per level, and
+ * latency percentiles.
+ */
+public class SkipListStats {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of pairs, the number of levels in use, the largest height
+   * a new node may have, and the height the size calls for.
+   */
+  final int size;
+  final int height;
+  final int maxHeight;
+  final int optimalHeight;
+
+  /**
+   * The number of nodes of each height (index 0 is unused).
+   */
+  final long[] heightCounts;
+
+  /**
+   * What each kind of operation has cost.
+   */
+  final OpStats search;
+  final OpStats set;
+  final OpStats remove;
+
+  /**
+   * Comparisons made outside searches, sets and removes (navigation,
+   * ranges, cursors, and so on).
+   */
+  final long otherComparisons;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  SkipListStats(int size, int height, int maxHeight, int optimalHeight, long[] heightCounts,
+      OpStats search, OpStats set, OpStats remove, long otherComparisons) {
+    this.size = size;
+    this.height = height;
+    this.maxHeight = maxHeight;
+    this.optimalHeight = optimalHeight;
+    this.heightCounts = heightCounts;
+    this.search = search;
+    this.set = set;
+    this.remove = remove;
+    this.otherComparisons = otherComparisons;
+  } // SkipListStats(...)
+
+  // +---------+-----------------------------------------------------
+  // | Getters |
+  // +---------+
+
+  public int getSize() {
+    return this.size;
+  } // getSize()
+
+  public int getHeight() {
+    return this.height;
+  } // getHeight()
+
+  public int getMaxHeight() {
+    return this.maxHeight;
+  } // getMaxHeight()
+
+  public int getOptimalHeight() {
+    return this.optimalHeight;
+  } // getOptimalHeight()
+
+  public long[] getHeightCounts() {
+    return this.heightCounts.clone();
+  } // getHeightCounts()
+
+  public OpStats getSearch() {
+    return this.search;
+  } // getSearch()
+
+  public OpStats getSet() {
+    return this.set;
+  } // getSet()
+
+  public OpStats getRemove() {
+    return this.remove;
+  } // getRemove()
+
+  public long getOtherComparisons() {
+    return this.otherComparisons;
+  } // getOtherComparisons()
+
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder();
+    result.append(String.format("size %d, height %d (optimal %d, max %d)%n", this.size,
+        this.height, this.optimalHeight, this.maxHeight));
+    result.append("nodes by height:");
+    for (int h = 1; h < this.heightCounts.length; h++) {
+      if (this.heightCounts[h] > 0) {
+        result.append(' ').append(h).append(':').append(this.heightCounts[h]);
+      } // if
+    } // for
+    result.append(String.format("%n"));
+    for (OpStats op : new OpStats[] {this.search, this.set, this.remove}) {
+      result.append(op).append(String.format("%n"));
+    } // for
+    result.append("other comparisons: ").append(this.otherComparisons);
+    return result.toString();
+  } // toString()
+
+  // +---------+-----------------------------------------------------
+  // | OpStats |
+  // +---------+
+
+  /**
+   * What one kind of operation has cost.
+   */
+  public static class OpStats {
+
+    final String name;
+    final long count;
+    final long comparisons;
+    final long[] hops;
+    final long levels;
+    final long p50;
+    final long p99;
+    final long p999;
+    final long max;
+
+    OpStats(String name, long count, long comparisons, long[] hops, long levels,
+        Histogram latency) {
+      this.name = name;
+      this.count = count;
+      this.comparisons = comparisons;
+      this.hops = hops;
+      this.levels = levels;
+      this.p50 = latency.percentile(0.5);
+      this.p99 = latency.percentile(0.99);
+      this.p999 = latency.percentile(0.999);
+      this.max = latency.max();
+    } // OpStats(String, long, long, long[], long, Histogram)
+
+    public String getName() {
+      return this.name;
+    } // getName()
+
+    public long getCount() {
+      return this.count;
+    } // getCount()
+
+    public long getComparisons() {
+      return this.comparisons;
+    } // getComparisons()
+
+    /**
+     * The number of links followed forward on each level.
+     */
+    public long[] getHopsPerLevel() {
+      return this.hops.clone();
+    } // getHopsPerLevel()
+
+    public double getMeanComparisons() {
+      return (this.count == 0) ? 0 : (double) this.comparisons / this.count;
+    } // getMeanComparisons()
+
+    /**
+     * The mean number of nodes visited: links followed plus levels
+     * dropped.
+     */
+    public double getMeanPathLength() {
+      long total = this.levels;
+      for (long hop : this.hops) {
+        total += hop;
+      } // for
+      return (this.count == 0) ? 0 : (double) total / this.count;
+    } // getMeanPathLength()
+
+    public long getP50Nanos() {
+      return this.p50;
+    } // getP50Nanos()
+
+    public long getP99Nanos() {
+      return this.p99;
+    } // getP99Nanos()
+
+    public long getP999Nanos() {
+      return this.p999;
+    } // getP999Nanos()
+
+    public long getMaxNanos() {
+      return this.max;
+    } // getMaxNanos()
+
+    @Override
+    public String toString() {
+      int top = this.hops.length;
+      while (top > 0 && this.hops[top - 1] == 0) {
+        top--;
+      } // while
+      return String.format("%s: %d ops, %.1f comparisons, path %.1f, "
+          + "p50/p99/p99.9/max %d/%d/%d/%d ns, hops by level %s", this.name, this.count,
+          getMeanComparisons(), getMeanPathLength(), this.p50, this.p99, this.p999, this.max,
+          Arrays.toString(Arrays.copyOf(this.hops, top)));
+    } // toString()
+
+  } // class OpStats
+
+} // class SkipListStats
@@ -0,0 +1,55 @@
+/**
+ * The management interface of a SkipList with stats on (see
+ * SkipList.registerMBean).  Each attribute is read from the live counters
+ * when asked for.
+ */
+public interface SkipListStatsMXBean {
+
+  /**
+   * Everything at once (as CompositeData, to JMX clients).
+   */
+  public SkipListStats getStats();
+
+  /**
+   * The number of pairs.
+   */
+  public int getSize();
+
+  /**
+   * The number of levels in use.
+   */
+  public int getHeight();
+
+  /**
+   * The height a list of this size should have: log_{1/p}(size), rounded
+   * up.
+   */
+  public int getOptimalHeight();
+
+  /**
+   * The mean number of nodes a search visits (links followed plus levels
+   * dropped).
+   */
+  public double getMeanSearchPath();
+
+  /**
+   * The mean number of comparisons per search.
+   */
+  public double getMeanSearchComparisons();
+
+  /**
+   * The 99th percentile search, set and remove latencies.
+   */
+  public long getSearchP99Nanos();
+
+  public long getSetP99Nanos();
+
+  public long getRemoveP99Nanos();
+
+  /**
+   * Zero the counters (but not the height histogram, which describes the
+   * list rather than its history).
+   */
+  public void reset();
+
+} // interface SkipListStatsMXBean
@@ -1,7 +1,28 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Random;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
 import static org.junit.Assert.*;
 import org.junit.Test;
 import org.junit.jupiter.api.BeforeEach;
@@ -106,6 +127,108 @@ public class SkipListTests {
     return true;
   } // inOrder(Iterator<T> it)
 
+  /**
+   * Verify the skip list invariants: every level is strictly ascending,
+   * every node on a level is also on the level below, the size matches
+   * level 0, and the height matches the tallest level in use.
+   */
+  static <K, V> void checkStructure(SkipList<K, V> lst) {
+    int count = 0;
+    for (SLNode<K, V> node = lst.head.next[0]; node != null; node = node.next[0]) {
+      count++;
+      if (node.next[0] != null) {
+        assertTrue("level 0 out of order", lst.comparator.compare(node.key, node.next[0].key) < 0);
+      } // if
+    } // for
+    assertEquals("size", count, lst.size());
+    for (int level = 1; level < lst.head.next.length; level++) {
+      SLNode<K, V> below = lst.head.next[level - 1];
+      for (SLNode<K, V> node = lst.head.next[level]; node != null; node = node.next[level]) {
+        assertTrue("node too short for its level", node.next.length > level);
+        while (below != null && below != node) {
+          below = below.next[level - 1];
+        } // while
+        assertTrue("level " + level + " is not a subset of the level below", below == node);
+      } // for
+    } // for
+    for (int level = 0; level < lst.head.next.length; level++) {
+      assertEquals("height", level < lst.height, lst.head.next[level] != null);
+      SLNode<K, V> last = lst.head;
+      while (last.next[level] != null) {
+        last = last.next[level];
+      } // while
+      assertSame("tail of level " + level, last, lst.tails[level]);
+    } // for
+    if (lst.indexed) {
+      checkWidths(lst);
+    } // if
+    if (lst.hash != null) {
+      checkHash(lst);
+    } // if
+    if (lst.normalizer != null) {
+      checkPrefixes(lst);
+    } // if
+  } // checkStructure(SkipList<K, V>)
+
+  /**
+   * Verify that every node of a normalized list holds its key's prefix.
+   */
+  static <K, V> void checkPrefixes(SkipList<K, V> lst) {
+    for (SLNode<K, V> node = lst.head.next[0]; node != null; node = node.next[0]) {
+      assertEquals("prefix of " + node.key, lst.normalizer.normalize(node.key),
+          ((PrefixedSLNode<K, V>) node).prefix);
+    } // for
+  } // checkPrefixes(SkipList<K, V>)
+
+  /**
+   * Verify that a hashed list's back links mirror its links, and that its
+   * hash index holds exactly its nodes.
+   */
+  static <K, V> void checkHash(SkipList<K, V> lst) {
+    for (int level = 0; level < lst.height; level++) {
+      SLNode<K, V> before = lst.head;
+      for (SLNode<K, V> node = lst.head.next[level]; node != null; node = node.next[level]) {
+        assertSame("back link at level " + level, before, SkipList.prevs(node)[level]);
+        before = node;
+      } // for
+    } // for
+    assertEquals("hashed nodes", lst.size(), lst.hash.size);
+    for (SLNode<K, V> node = lst.head.next[0]; node != null; node = node.next[0]) {
+      assertSame("hashed node", node, lst.hash.find(node.key, lst.comparator));
+    } // for
+  } // checkHash(SkipList<K, V>)
+
+  /**
+   * Verify that every link below the height of an indexed list spans the
+   * right number of nodes.
+   */
+  static <K, V> void checkWidths(SkipList<K, V> lst) {
+    IdentityHashMap<SLNode<K, V>, Integer> positions =
+        new IdentityHashMap<SLNode<K, V>, Integer>();
+    int position = 0;
+    for (SLNode<K, V> node = lst.head; node != null; node = node.next[0]) {
+      positions.put(node, position++);
+    } // for
+    for (int level = 0; level < lst.height; level++) {
+      for (SLNode<K, V> node = lst.head; node != null; node = node.next[level]) {
+        int to = (node.next[level] == null) ? lst.size() + 1 : positions.get(node.next[level]);
+        assertEquals("width at level " + level, to - positions.get(node),
+            SkipList.widths(node)[level]);
+      } // for
+    } // for
+  } // checkWidths(SkipList<K, V>)
+
+  /**
+   * Make the entries (i, "i") for i in 0 .. n-1.
+   */
+  static List<Map.Entry<Integer, String>> entries(int n) {
+    List<Map.Entry<Integer, String>> result = new ArrayList<Map.Entry<Integer, String>>();
+    for (int i = 0; i < n; i++) {
+      result.add(new AbstractMap.SimpleImmutableEntry<Integer, String>(i, Integer.toString(i)));
+    } // for
+    return result;
+  } // entries(int)
+
   /**
    * Generate a value from a string.
    */
@@ -268,6 +391,7 @@ public class SkipListTests {
    * Verify that adding duplicate elements replaces them in list
    */
   @Test
+  @SuppressWarnings("deprecation")
   public void testDuplicates() {
     SkipList<String, String> skplst = new SkipList<String, String>();
     skplst.set("apple", "apple");
@@ -323,6 +447,7 @@ public class SkipListTests {
    * Verify that the remove method returns expected values
    */
   @Test
+  @SuppressWarnings("deprecation")
   public void removeReturnedInOrder() {
     SkipList<String, String> letters = new SkipList<String, String>();
     String alph = "abcdefghijklmnopqrstuvwxyz";
@@ -338,6 +463,1603 @@ public class SkipListTests {
   }
 
 
+  // +------------------------+------------------------------------------
+  // | Level Generator Tests |
+  // +------------------------+
+
+  /**
+   * Verify that seeded generators are reproducible.
+   */
+  @Test
+  public void testSeededLevels() {
+    LevelGenerator a = LevelGenerator.seeded(207);
+    LevelGenerator b = LevelGenerator.seeded(207);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(a.nextLevel(32), b.nextLevel(32));
+    } // for
+  } // testSeededLevels()
+
+  /**
+   * Verify that heights are geometric: about half the nodes have height 1,
+   * about a quarter have height 2, and none exceed the cap.
+   */
+  @Test
+  public void testLevelDistribution() {
+    LevelGenerator levels = LevelGenerator.seeded(42);
+    int[] counts = new int[6];
+    int trials = 100000;
+    for (int i = 0; i < trials; i++) {
+      int level = levels.nextLevel(5);
+      assertTrue(level >= 1 && level <= 5);
+      counts[level]++;
+    } // for
+    assertEquals(0.5, counts[1] / (double) trials, 0.02);
+    assertEquals(0.25, counts[2] / (double) trials, 0.02);
+    assertEquals(0.125, counts[3] / (double) trials, 0.02);
+  } // testLevelDistribution()
+
+  /**
+   * Verify that the list does not give every node the maximum height:
+   * the list is no taller than twice log2 of its size, and (for p = 1/2)
+   * about half the nodes have height 1 and each height has about half as
+   * many nodes as the one below.
+   */
+  @Test
+  public void testHeightsAreLogarithmic() {
+    int n = 1000;
+    SkipList<Integer, Integer> lst =
+        new SkipList<Integer, Integer>((i, j) -> i - j, LevelGenerator.seeded(1));
+    for (int i = 0; i < n; i++) {
+      lst.set(i, i);
+    } // for
+    int log = 32 - Integer.numberOfLeadingZeros(n - 1);
+    assertTrue("height " + lst.height, lst.height <= 2 * log);
+    assertTrue(lst.height <= lst.maxHeight);
+    int[] counts = new int[lst.maxHeight + 1];
+    for (SLNode<Integer, Integer> node = lst.head.next[0]; node != null; node = node.next[0]) {
+      counts[node.next.length]++;
+    } // for
+    assertTrue("height 1: " + counts[1], counts[1] > 0.4 * n && counts[1] < 0.6 * n);
+    for (int h = 1; h <= 3; h++) {
+      double ratio = (double) counts[h + 1] / counts[h];
+      assertTrue("height " + (h + 1) + " / height " + h + ": " + ratio,
+          ratio > 0.3 && ratio < 0.7);
+    } // for
+  } // testHeightsAreLogarithmic()
+
+  /**
+   * Verify that the maximum height grows once the list gets big.
+   */
+  @Test
+  public void testMaxHeightGrows() {
+    SkipList<Integer, Integer> lst =
+        new SkipList<Integer, Integer>((i, j) -> i - j, LevelGenerator.seeded(2));
+    int n = (1 << SkipList.INITIAL_HEIGHT) + 10;
+    for (int i = 0; i < n; i++) {
+      lst.set(i, i);
+    } // for
+    assertTrue(lst.maxHeight > SkipList.INITIAL_HEIGHT);
+    for (int i = 0; i < n; i += 97) {
+      assertEquals(Integer.valueOf(i), lst.get(i));
+    } // for
+  } // testMaxHeightGrows()
+
+  // +-----------------+-------------------------------------------------
+  // | Bulk Load Tests |
+  // +-----------------+
+
+  /**
+   * Verify that a randomized bulk load gives a valid list with every entry.
+   */
+  @Test
+  public void testFromSorted() {
+    List<Map.Entry<Integer, String>> entries = entries(5000);
+    SkipList<Integer, String> lst = SkipList.fromSorted((i, j) -> i - j, entries.iterator());
+    checkStructure(lst);
+    for (Map.Entry<Integer, String> entry : entries) {
+      assertEquals(entry.getValue(), lst.get(entry.getKey()));
+    } // for
+    // Still works as a normal list afterwards
+    lst.set(-1, "minus one");
+    lst.remove(2500);
+    checkStructure(lst);
+    assertEquals(5000, lst.size());
+  } // testFromSorted()
+
+  /**
+   * Verify that a balanced bulk load assigns heights 1, 2, 1, 3, 1, 2, 1, 4, ...
+   */
+  @Test
+  public void testBalancedBulkLoad() {
+    SkipList<Integer, String> lst =
+        SkipList.bulkLoad((i, j) -> i - j, entries(1024).iterator(), true);
+    checkStructure(lst);
+    int position = 1;
+    for (SLNode<Integer, String> node = lst.head.next[0]; node != null; node = node.next[0]) {
+      assertEquals(Integer.numberOfTrailingZeros(position) + 1, node.next.length);
+      position++;
+    } // for
+    assertEquals(11, lst.height);
+  } // testBalancedBulkLoad()
+
+  /**
+   * Verify that bulk loading rejects unsorted or duplicate keys.
+   */
+  @Test
+  public void testBulkLoadRejectsUnsorted() {
+    List<Map.Entry<Integer, String>> entries = entries(10);
+    entries.add(entries.get(3));
+    try {
+      SkipList.fromSorted((i, j) -> i - j, entries.iterator());
+      fail("unsorted input should be rejected");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    } // try/catch
+  } // testBulkLoadRejectsUnsorted()
+
+  /**
+   * Verify that bulk loading past the initial maximum height grows it.
+   */
+  @Test
+  public void testBulkLoadGrows() {
+    int n = (1 << SkipList.INITIAL_HEIGHT) * 2;
+    SkipList<Integer, String> lst = SkipList.bulkLoad((i, j) -> i - j, entries(n).iterator(), true);
+    assertTrue(lst.maxHeight > SkipList.INITIAL_HEIGHT);
+    assertEquals(SkipList.INITIAL_HEIGHT + 1, lst.height);
+    checkStructure(lst);
+  } // testBulkLoadGrows()
+
+  // +--------------+----------------------------------------------------
+  // | Append Tests |
+  // +--------------+
+
+  /**
+   * Verify that the tails stay right through appends, inserts and removes.
+   */
+  @Test
+  public void testTailsMaintained() {
+    setup();
+    for (int i = 0; i < 200; i += 2) {
+      set(i);
+    } // for
+    checkStructure(ints);
+    for (int i = 1; i < 200; i += 4) {
+      set(i);
+    } // for
+    checkStructure(ints);
+    // Remove from the end, which moves the tails back
+    for (int i = 198; i > 150; i--) {
+      remove(i);
+      checkStructure(ints);
+    } // for
+    set(1000);
+    checkStructure(ints);
+    while (ints.size() > 0) {
+      remove(ints.head.next[0].key);
+    } // while
+    checkStructure(ints);
+    set(5);
+    checkStructure(ints);
+  } // testTailsMaintained()
+
+  /**
+   * Verify that append accepts ascending keys and rejects the rest.
+   */
+  @Test
+  public void testAppend() {
+    setup();
+    for (int i = 0; i < 100; i++) {
+      ints.append(i * 3, value(i));
+    } // for
+    checkStructure(ints);
+    assertEquals(value(10), ints.get(30));
+    try {
+      ints.append(297, "duplicate");
+      fail("append of the last key should fail");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    } // try/catch
+    try {
+      ints.append(5, "too small");
+      fail("append of a small key should fail");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    } // try/catch
+    assertEquals(100, ints.size());
+  } // testAppend()
+
+  // +--------------+----------------------------------------------------
+  // | Finger Tests |
+  // +--------------+
+
+  /**
+   * Verify that finger search gives the same answers as a full search
+   * while keys come and go near each other.
+   */
+  @Test
+  public void testFingerMatchesFullSearch() {
+    setup();
+    ints.setFinger(true);
+    TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+    int center = 5000;
+    for (int i = 0; i < 20000; i++) {
+      center += random.nextInt(21) - 10;
+      int key = center + random.nextInt(200) - 100;
+      switch (random.nextInt(4)) {
+        case 0:
+          assertEquals(expected.put(key, value(i)), ints.set(key, value(i)));
+          break;
+        case 1:
+          assertEquals(expected.remove(key), ints.remove(key));
+          break;
+        default:
+          assertEquals(expected.containsKey(key), ints.containsKey(key));
+          if (expected.containsKey(key)) {
+            assertEquals(expected.get(key), ints.get(key));
+          } // if
+      } // switch
+    } // for
+    checkStructure(ints);
+    assertEquals(expected.size(), ints.size());
+  } // testFingerMatchesFullSearch()
+
+  /**
+   * Verify that nearby finger searches compare far fewer keys than
+   * searches from the top.
+   */
+  @Test
+  public void testFingerSavesComparisons() {
+    int[] comparisons = new int[1];
+    SkipList<Integer, Integer> lst = new SkipList<Integer, Integer>((i, j) -> {
+      comparisons[0]++;
+      return Integer.compare(i, j);
+    });
+    for (int i = 0; i < 100000; i++) {
+      lst.set(i, i);
+    } // for
+    comparisons[0] = 0;
+    for (int i = 0; i < 100000; i++) {
+      lst.get(i);
+    } // for
+    int full = comparisons[0];
+    lst.setFinger(true);
+    comparisons[0] = 0;
+    for (int i = 0; i < 100000; i++) {
+      lst.get(i);
+    } // for
+    int finger = comparisons[0];
+    assertTrue("finger " + finger + " vs full " + full, finger * 2 < full);
+  } // testFingerSavesComparisons()
+
+  /**
+   * Verify that cursors find keys forwards and backwards, and iterate.
+   */
+  @Test
+  public void testCursorSeek() {
+    setup();
+    for (int i = 0; i < 1000; i += 2) {
+      set(i);
+    } // for
+    SkipListCursor<Integer, String> cursor = ints.cursor();
+    assertFalse(cursor.valid());
+    assertTrue(cursor.seek(500));
+    assertEquals(500, (int) cursor.key());
+    for (int i = 0; i < 2000; i++) {
+      int key = random.nextInt(1010) - 5;
+      assertEquals("seekFrom " + key, key >= 0 && key < 1000 && key % 2 == 0,
+          cursor.seekFrom(key));
+      if (key <= 998) {
+        assertEquals(Math.max(0, key + (key & 1)), (int) cursor.key());
+      } else {
+        assertFalse(cursor.valid());
+      } // if/else
+    } // for
+    cursor.seek(100);
+    for (int i = 100; i < 998; i += 2) {
+      assertEquals(value(i), cursor.value());
+      assertTrue(cursor.next());
+    } // for
+    assertFalse(cursor.next());
+    assertTrue(cursor.seekFrom(300));
+    assertEquals(value(300), cursor.setValue("three hundred"));
+    assertEquals("three hundred", ints.get(300));
+  } // testCursorSeek()
+
+  /**
+   * Verify that cursors notice structural changes.
+   */
+  @Test
+  public void testCursorStale() {
+    setup();
+    for (int i = 0; i < 100; i++) {
+      set(i);
+    } // for
+    SkipListCursor<Integer, String> cursor = ints.cursor();
+    cursor.seek(50);
+    remove(51);
+    try {
+      cursor.next();
+      fail("next after a remove should fail");
+    } catch (ConcurrentModificationException e) {
+      // Expected
+    } // try/catch
+    assertFalse(cursor.seekFrom(51));
+    assertEquals(52, (int) cursor.key());
+    set(1000);
+    assertTrue(cursor.seekFrom(1000));
+    assertFalse(cursor.next());
+  } // testCursorStale()
+
+  // +---------------+---------------------------------------------------
+  // | Indexed Tests |
+  // +---------------+
+
+  /**
+   * Verify positional access against a sorted copy while keys come and go,
+   * through both the ordinary and the finger paths.
+   */
+  @Test
+  public void testIndexedMatchesOrder() {
+    for (boolean finger : new boolean[] {false, true}) {
+      SkipList<Integer, String> lst = new SkipList<Integer, String>((i, j) -> i - j, true);
+      lst.setFinger(finger);
+      TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+      for (int i = 0; i < 5000; i++) {
+        int key = random.nextInt(1000);
+        if (random.nextInt(3) == 0) {
+          assertEquals(expected.remove(key), lst.remove(key));
+        } else {
+          assertEquals(expected.put(key, value(i)), lst.set(key, value(i)));
+        } // if/else
+        if (i % 500 == 0) {
+          checkStructure(lst);
+        } // if
+      } // for
+      checkStructure(lst);
+      int index = 0;
+      for (Map.Entry<Integer, String> entry : expected.entrySet()) {
+        assertEquals(entry.getKey(), lst.keyAt(index));
+        assertEquals(entry.getValue(), lst.getByIndex(index));
+        assertEquals(index, lst.rankOf(entry.getKey()));
+        index++;
+      } // for
+      for (int key = -1; key <= 1000; key++) {
+        if (!expected.containsKey(key)) {
+          assertEquals(-expected.headMap(key).size() - 1, lst.rankOf(key));
+        } // if
+      } // for
+    } // for
+  } // testIndexedMatchesOrder()
+
+  /**
+   * Verify that appends and bulk copies keep the widths right.
+   */
+  @Test
+  public void testIndexedAppend() {
+    SkipList<Integer, String> lst = new SkipList<Integer, String>((i, j) -> i - j, true);
+    for (int i = 0; i < 1000; i++) {
+      lst.set(i * 2, value(i));
+    } // for
+    for (int i = 1000; i < 1100; i++) {
+      lst.append(i * 2, value(i));
+    } // for
+    checkStructure(lst);
+    assertEquals(value(1099), lst.getByIndex(1099));
+    assertEquals(500, lst.rankOf(1000));
+    assertEquals(-502, lst.rankOf(1001));
+  } // testIndexedAppend()
+
+  /**
+   * Verify removeByIndex.
+   */
+  @Test
+  public void testRemoveByIndex() {
+    SkipList<Integer, String> lst = new SkipList<Integer, String>((i, j) -> i - j, true);
+    for (int i = 0; i < 100; i++) {
+      lst.set(i, value(i));
+    } // for
+    assertEquals(value(0), lst.removeByIndex(0));
+    assertEquals(value(99), lst.removeByIndex(98));
+    assertEquals(value(51), lst.removeByIndex(50));
+    checkStructure(lst);
+    assertEquals(97, lst.size());
+    assertFalse(lst.containsKey(51));
+    assertEquals(52, (int) lst.keyAt(50));
+    while (lst.size() > 0) {
+      lst.removeByIndex(random.nextInt(lst.size()));
+    } // while
+    checkStructure(lst);
+    try {
+      lst.removeByIndex(0);
+      fail("removeByIndex on an empty list should fail");
+    } catch (IndexOutOfBoundsException e) {
+      // Expected
+    } // try/catch
+  } // testRemoveByIndex()
+
+  /**
+   * Verify sublistByRank.
+   */
+  @Test
+  public void testSublistByRank() {
+    SkipList<Integer, String> lst = new SkipList<Integer, String>((i, j) -> i - j, true);
+    for (int i = 0; i < 1000; i++) {
+      lst.set(i * 3, value(i));
+    } // for
+    SkipList<Integer, String> page = lst.sublistByRank(100, 150);
+    checkStructure(page);
+    assertEquals(50, page.size());
+    assertEquals(300, (int) page.keyAt(0));
+    assertEquals(value(149), page.getByIndex(49));
+    assertEquals(0, lst.sublistByRank(1000, 1000).size());
+    try {
+      lst.sublistByRank(999, 1001);
+      fail("sublistByRank beyond the end should fail");
+    } catch (IndexOutOfBoundsException e) {
+      // Expected
+    } // try/catch
+  } // testSublistByRank()
+
+  /**
+   * Verify that unindexed lists refuse positional access, and that cursors
+   * on indexed lists know where they are.
+   */
+  @Test
+  public void testIndexOptions() {
+    setup();
+    set(1);
+    try {
+      ints.getByIndex(0);
+      fail("getByIndex on an unindexed list should fail");
+    } catch (IllegalStateException e) {
+      // Expected
+    } // try/catch
+    SkipList<Integer, String> lst = new SkipList<Integer, String>((i, j) -> i - j, true);
+    for (int i = 0; i < 500; i++) {
+      lst.set(i * 2, value(i));
+    } // for
+    SkipListCursor<Integer, String> cursor = lst.cursor();
+    cursor.seek(101);
+    assertEquals(51, cursor.index());
+    cursor.next();
+    assertEquals(52, cursor.index());
+    cursor.seekFrom(40);
+    assertEquals(20, cursor.index());
+    cursor.seekFrom(900);
+    assertEquals(450, cursor.index());
+  } // testIndexOptions()
+
+  // +------------------+-----------------------------------------------
+  // | Navigation Tests |
+  // +------------------+
+
+  /**
+   * Verify floor, ceiling, higher and lower against TreeMap.
+   */
+  @Test
+  public void testNavigation() {
+    setup();
+    TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+    for (int i = 0; i < 300; i++) {
+      int key = random.nextInt(1000);
+      expected.put(key, value(key));
+      set(key);
+    } // for
+    for (int key = -5; key < 1005; key++) {
+      assertEquals(expected.floorKey(key), ints.floorKey(key));
+      assertEquals(expected.ceilingKey(key), ints.ceilingKey(key));
+      assertEquals(expected.higherKey(key), ints.higherKey(key));
+      assertEquals(expected.lowerKey(key), ints.lowerKey(key));
+    } // for
+    assertEquals(expected.firstKey(), ints.firstKey());
+    assertEquals(expected.lastKey(), ints.lastKey());
+  } // testNavigation()
+
+  /**
+   * Verify the navigation methods on an empty list.
+   */
+  @Test
+  public void testNavigationEmpty() {
+    setup();
+    assertNull(ints.floorKey(5));
+    assertNull(ints.ceilingKey(5));
+    assertNull(ints.higherKey(5));
+    assertNull(ints.lowerKey(5));
+    try {
+      ints.firstKey();
+      fail("firstKey of an empty list should fail");
+    } catch (NoSuchElementException e) {
+      // Expected
+    } // try/catch
+    try {
+      ints.lastKey();
+      fail("lastKey of an empty list should fail");
+    } catch (NoSuchElementException e) {
+      // Expected
+    } // try/catch
+    assertFalse(ints.range(null, true, null, true).hasNext());
+  } // testNavigationEmpty()
+
+  /**
+   * Verify range scans, with every combination of bounds, against TreeMap.
+   */
+  @Test
+  public void testRange() {
+    setup();
+    TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+    for (int i = 0; i < 200; i++) {
+      int key = random.nextInt(500);
+      expected.put(key, value(key));
+      set(key);
+    } // for
+    for (int trial = 0; trial < 200; trial++) {
+      int from = random.nextInt(520) - 10;
+      int to = from + random.nextInt(100);
+      boolean fromInclusive = random.nextBoolean();
+      boolean toInclusive = random.nextBoolean();
+      Iterator<Map.Entry<Integer, String>> it = ints.range(from, fromInclusive, to, toInclusive);
+      for (Map.Entry<Integer, String> entry
+          : expected.subMap(from, fromInclusive, to, toInclusive).entrySet()) {
+        assertTrue(it.hasNext());
+        Map.Entry<Integer, String> actual = it.next();
+        assertEquals(entry.getKey(), actual.getKey());
+        assertEquals(entry.getValue(), actual.getValue());
+      } // for
+      assertFalse(it.hasNext());
+    } // for
+    // Open ends
+    Iterator<Map.Entry<Integer, String>> it = ints.range(null, true, expected.firstKey(), true);
+    assertEquals(expected.firstKey(), it.next().getKey());
+    assertFalse(it.hasNext());
+    int count = 0;
+    for (it = ints.range(null, false, null, false); it.hasNext(); it.next()) {
+      count++;
+    } // for
+    assertEquals(expected.size(), count);
+    // Entries write through
+    ints.range(expected.firstKey(), true, null, false).next().setValue("changed");
+    assertEquals("changed", ints.get(expected.firstKey()));
+  } // testRange()
+
+  /**
+   * Verify that a range scan only looks at the keys in the range.
+   */
+  @Test
+  public void testRangeIsLazy() {
+    int[] comparisons = new int[1];
+    SkipList<Integer, Integer> lst = new SkipList<Integer, Integer>((i, j) -> {
+      comparisons[0]++;
+      return Integer.compare(i, j);
+    });
+    for (int i = 0; i < 100000; i++) {
+      lst.set(i, i);
+    } // for
+    comparisons[0] = 0;
+    int sum = 0;
+    for (Iterator<Map.Entry<Integer, Integer>> it = lst.range(50000, true, 50999, true);
+        it.hasNext();) {
+      sum += it.next().getValue();
+    } // for
+    assertEquals(1000 * 50000 + 999 * 1000 / 2, sum);
+    assertTrue("comparisons " + comparisons[0], comparisons[0] < 1200);
+  } // testRangeIsLazy()
+
+  // +-------------------+----------------------------------------------
+  // | Spliterator Tests |
+  // +-------------------+
+
+  /**
+   * Split a spliterator as far as it goes, collecting the keys of each
+   * piece, in order, into pieces.
+   */
+  static void splitAll(Spliterator<Map.Entry<Integer, String>> split,
+      List<List<Integer>> pieces) {
+    Spliterator<Map.Entry<Integer, String>> prefix = split.trySplit();
+    if (prefix == null) {
+      List<Integer> keys = new ArrayList<Integer>();
+      split.forEachRemaining((entry) -> keys.add(entry.getKey()));
+      pieces.add(keys);
+    } else {
+      assertFalse("split pieces are not sized", prefix.hasCharacteristics(Spliterator.SIZED));
+      splitAll(prefix, pieces);
+      splitAll(split, pieces);
+    } // if/else
+  } // splitAll(Spliterator, List<List<Integer>>)
+
+  /**
+   * Verify that splitting covers every pair exactly once, in order, and
+   * roughly evenly.
+   */
+  @Test
+  public void testSpliteratorSplits() {
+    setup();
+    ints = new SkipList<Integer, String>((i, j) -> i - j, LevelGenerator.seeded(207));
+    for (int i = 0; i < 10000; i++) {
+      set(i);
+    } // for
+    Spliterator<Map.Entry<Integer, String>> split = ints.spliterator();
+    assertTrue(split.hasCharacteristics(Spliterator.ORDERED | Spliterator.SORTED
+        | Spliterator.DISTINCT | Spliterator.SIZED | Spliterator.NONNULL));
+    assertEquals(10000, split.getExactSizeIfKnown());
+    List<List<Integer>> pieces = new ArrayList<List<Integer>>();
+    splitAll(split, pieces);
+    assertTrue("only " + pieces.size() + " pieces", pieces.size() >= 1000);
+    int expected = 0;
+    int largest = 0;
+    for (List<Integer> piece : pieces) {
+      for (Integer key : piece) {
+        assertEquals(expected++, (int) key);
+      } // for
+      largest = Math.max(largest, piece.size());
+    } // for
+    assertEquals(10000, expected);
+    assertTrue("a piece of " + largest, largest < 100);
+    // The first split should be roughly in the middle
+    split = ints.spliterator();
+    Spliterator<Map.Entry<Integer, String>> prefix = split.trySplit();
+    long[] count = new long[1];
+    prefix.forEachRemaining((entry) -> count[0]++);
+    assertTrue("prefix of " + count[0], count[0] > 1000 && count[0] < 9000);
+  } // testSpliteratorSplits()
+
+  /**
+   * Verify tryAdvance and the edge cases of splitting.
+   */
+  @Test
+  public void testSpliteratorAdvance() {
+    setup();
+    assertFalse(ints.spliterator().tryAdvance((entry) -> fail("empty list")));
+    assertNull(ints.spliterator().trySplit());
+    for (int i = 0; i < 100; i++) {
+      set(i);
+    } // for
+    Spliterator<Map.Entry<Integer, String>> split = ints.spliterator();
+    int[] next = new int[1];
+    while (split.tryAdvance((entry) -> assertEquals(next[0]++, (int) entry.getKey()))) {
+      assertEquals(100 - next[0], split.getExactSizeIfKnown());
+    } // while
+    assertEquals(100, next[0]);
+    assertNull(split.trySplit());
+  } // testSpliteratorAdvance()
+
+  /**
+   * Verify the streams and parallelForEach.
+   */
+  @Test
+  public void testParallel() {
+    setup();
+    for (int i = 0; i < 100000; i++) {
+      ints.set(i, Integer.toString(i));
+    } // for
+    assertEquals(100000, ints.stream().count());
+    assertEquals(99999L * 100000 / 2,
+        ints.parallelStream().mapToLong((entry) -> entry.getKey()).sum());
+    List<Integer> sorted = ints.parallelStream().map(Map.Entry::getKey)
+        .collect(Collectors.toList());
+    for (int i = 0; i < sorted.size(); i++) {
+      assertEquals(i, (int) sorted.get(i));
+    } // for
+    LongAdder sum = new LongAdder();
+    LongAdder count = new LongAdder();
+    ints.parallelForEach((key, value) -> {
+      assertEquals(Integer.toString(key), value);
+      sum.add(key);
+      count.increment();
+    });
+    assertEquals(100000, count.sum());
+    assertEquals(99999L * 100000 / 2, sum.sum());
+  } // testParallel()
+
+  // +------------------+----------------------------------------------
+  // | Hash Index Tests |
+  // +------------------+
+
+  /**
+   * Keys that hash in clumps of eight, so that the hash index has long
+   * probe runs to shift back on removal.
+   */
+  static class Clumped implements Comparable<Clumped> {
+    final int n;
+
+    Clumped(int n) {
+      this.n = n;
+    } // Clumped(int)
+
+    @Override
+    public int compareTo(Clumped other) {
+      return Integer.compare(this.n, other.n);
+    } // compareTo(Clumped)
+
+    @Override
+    public int hashCode() {
+      return this.n / 8;
+    } // hashCode()
+  } // class Clumped
+
+  /**
+   * Verify that hashed lists, indexed or not, match a TreeMap through
+   * random sets, removes, appends and removals by index.
+   */
+  @Test
+  public void testHashedMatchesTreeMap() {
+    for (boolean indexed : new boolean[] {false, true}) {
+      SkipList<Clumped, Integer> lst = new SkipList<Clumped, Integer>(
+          Comparator.<Clumped>naturalOrder(), LevelGenerator.seeded(207), indexed, true);
+      TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+      Random random = new Random(indexed ? 1 : 2);
+      for (int i = 0; i < 20000; i++) {
+        int key = random.nextInt(2000);
+        switch (random.nextInt(indexed ? 5 : 4)) {
+          case 0:
+          case 1:
+            assertEquals(expected.put(key, i), lst.set(new Clumped(key), i));
+            break;
+          case 2:
+            assertEquals(expected.remove(key), lst.remove(new Clumped(key)));
+            break;
+          case 3:
+            int next = expected.isEmpty() ? 0 : expected.lastKey() + 1 + random.nextInt(3);
+            expected.put(next, i);
+            lst.append(new Clumped(next), i);
+            break;
+          default:
+            if (!expected.isEmpty()) {
+              int index = random.nextInt(expected.size());
+              Integer at = expected.keySet().stream().skip(index).findFirst().get();
+              assertEquals(expected.remove(at), lst.removeByIndex(index));
+            } // if
+        } // switch
+        assertEquals(expected.containsKey(key), lst.containsKey(new Clumped(key)));
+        if (i % 1000 == 0) {
+          checkStructure(lst);
+        } // if
+      } // for
+      checkStructure(lst);
+      assertEquals(expected.size(), lst.size());
+      for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+        assertEquals(entry.getValue(), lst.get(new Clumped(entry.getKey())));
+      } // for
+    } // for
+  } // testHashedMatchesTreeMap()
+
+  /**
+   * Verify that hashed lookups, replacements and removals compare only
+   * the key they find.
+   */
+  @Test
+  public void testHashedSavesComparisons() {
+    int[] comparisons = new int[1];
+    SkipList<Integer, Integer> lst = new SkipList<Integer, Integer>((i, j) -> {
+      comparisons[0]++;
+      return Integer.compare(i, j);
+    }, LevelGenerator.fast(), false, true);
+    for (int i = 0; i < 100000; i++) {
+      lst.set(i * 7 % 100000, i);
+    } // for
+    comparisons[0] = 0;
+    for (int i = 0; i < 100000; i++) {
+      lst.get(i);
+      lst.set(i, -i);
+      assertFalse(lst.containsKey(-1 - i));
+    } // for
+    assertTrue("comparisons " + comparisons[0], comparisons[0] <= 2 * 100000 * 1.01);
+    comparisons[0] = 0;
+    for (int i = 0; i < 100000; i += 2) {
+      assertEquals(-i, (int) lst.remove(i));
+    } // for
+    assertTrue("comparisons " + comparisons[0], comparisons[0] <= 50000 * 1.01);
+    checkStructure(lst);
+  } // testHashedSavesComparisons()
+
+  /**
+   * Verify that finger search and sublists work on hashed lists.
+   */
+  @Test
+  public void testHashedOptions() {
+    SkipList<Integer, Integer> lst = new SkipList<Integer, Integer>(
+        Comparator.<Integer>naturalOrder(), LevelGenerator.fast(), true, true);
+    lst.setFinger(true);
+    for (int i = 0; i < 1000; i++) {
+      lst.set(i * 2, i);
+      if (i % 3 == 0) {
+        lst.remove(i);
+      } // if
+    } // for
+    checkStructure(lst);
+    SkipList<Integer, Integer> sub = lst.sublistByRank(100, 200);
+    assertTrue(sub.hash != null);
+    assertEquals(100, sub.size());
+    checkStructure(sub);
+    assertEquals(lst.keyAt(100), sub.keyAt(0));
+    assertTrue(sub.containsKey(lst.keyAt(150)));
+  } // testHashedOptions()
+
+  // +-------------+---------------------------------------------------
+  // | Stats Tests |
+  // +-------------+
+
+  /**
+   * Verify that stats count exactly the comparisons the list makes, and
+   * that the hops and the height histogram add up.
+   */
+  @Test
+  public void testStatsCounts() {
+    long[] comparisons = new long[1];
+    Comparator<Integer> counted = (i, j) -> {
+      comparisons[0]++;
+      return Integer.compare(i, j);
+    };
+    SkipList<Integer, Integer> lst = new SkipList<Integer, Integer>(counted);
+    for (int i = 0; i < 10000; i++) {
+      lst.set(i * 7919 % 10000, i);
+    } // for
+    lst.setStats(true);
+    comparisons[0] = 0;
+    for (int i = 0; i < 10000; i++) {
+      lst.get(i);
+      lst.containsKey(-i - 1);
+    } // for
+    for (int i = 0; i < 10000; i += 2) {
+      lst.remove(i);
+      lst.set(i + 10000, i);
+    } // for
+    lst.firstKey();
+    SkipListStats stats = lst.stats();
+    assertEquals(20000, stats.getSearch().getCount());
+    assertEquals(5000, stats.getSet().getCount());
+    assertEquals(5000, stats.getRemove().getCount());
+    assertEquals(comparisons[0], stats.getSearch().getComparisons()
+        + stats.getSet().getComparisons() + stats.getRemove().getComparisons()
+        + stats.getOtherComparisons());
+    // Each level of a search ends with one comparison that fails, unless
+    // it runs off the end of the level
+    long hops = 0;
+    for (long hop : stats.getSearch().getHopsPerLevel()) {
+      hops += hop;
+    } // for
+    assertTrue(hops <= stats.getSearch().getComparisons());
+    assertTrue(stats.getSearch().getMeanPathLength() > stats.getHeight());
+    assertTrue(stats.getSearch().getP99Nanos() >= stats.getSearch().getP50Nanos());
+    assertTrue(stats.getSearch().getMaxNanos() > 0);
+    long nodes = 0;
+    for (long count : stats.getHeightCounts()) {
+      nodes += count;
+    } // for
+    assertEquals(lst.size(), nodes);
+    assertEquals(10000, stats.getSize());
+    assertEquals(14, stats.getOptimalHeight());
+    assertTrue(Math.abs(stats.getHeight() - stats.getOptimalHeight()) <= 4);
+    lst.setStats(false);
+    assertSame(counted, lst.comparator);
+  } // testStatsCounts()
+
+  /**
+   * Verify that stats show a list whose heights are broken for what it is.
+   */
+  @Test
+  public void testStatsShowFlatList() {
+    SkipList<Integer, Integer> lst = new SkipList<Integer, Integer>(
+        Comparator.<Integer>naturalOrder(), (max) -> 1);
+    lst.setStats(true);
+    for (int i = 0; i < 1000; i++) {
+      lst.set((i * 7) % 1000, i);
+    } // for
+    for (int i = 0; i < 1000; i++) {
+      lst.get(i);
+    } // for
+    SkipListStats stats = lst.stats();
+    assertEquals(1, stats.getHeight());
+    assertEquals(10, stats.getOptimalHeight());
+    assertEquals(1000, stats.getHeightCounts()[1]);
+    assertTrue(stats.getSearch().getMeanPathLength() > 400);
+    assertTrue(stats.toString(), stats.toString().contains("height 1 (optimal 10"));
+  } // testStatsShowFlatList()
+
+  /**
+   * Verify that stats can be read through JMX, and that turning them off
+   * unregisters them.
+   */
+  @Test
+  public void testStatsMBean() throws Exception {
+    SkipList<Integer, Integer> lst = new SkipList<Integer, Integer>(
+        Comparator.<Integer>naturalOrder(), LevelGenerator.fast(), false, true);
+    ObjectName name = lst.registerMBean("testStatsMBean");
+    for (int i = 0; i < 1000; i++) {
+      lst.set(i, i);
+      lst.get(i);
+    } // for
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    assertEquals(1000, server.getAttribute(name, "Size"));
+    assertEquals(1.0, (Double) server.getAttribute(name, "MeanSearchComparisons"), 1e-9);
+    CompositeData stats = (CompositeData) server.getAttribute(name, "Stats");
+    CompositeData search = (CompositeData) stats.get("search");
+    assertEquals(1000L, search.get("count"));
+    server.invoke(name, "reset", null, null);
+    assertEquals(0.0, (Double) server.getAttribute(name, "MeanSearchComparisons"), 1e-9);
+    lst.setStats(false);
+    assertFalse(server.isRegistered(name));
+    try {
+      lst.stats();
+      fail("stats() with stats off should throw");
+    } catch (IllegalStateException e) {
+      // Expected
+    } // try/catch
+  } // testStatsMBean()
+
+  // +------------------+----------------------------------------------
+  // | Normalizer Tests |
+  // +------------------+
+
+  /**
+   * Verify that the normalizers never order two keys against their
+   * natural order.
+   */
+  @Test
+  public void testNormalizersAgreeWithOrder() {
+    Random random = new Random(207);
+    String chars = "\0 09AZaz\u007f\u00e9\u4e2d";
+    for (int i = 0; i < 100000; i++) {
+      String[] strings = new String[2];
+      byte[][] bytes = new byte[2][];
+      int[] ints = new int[2];
+      for (int j = 0; j < 2; j++) {
+        StringBuilder builder = new StringBuilder();
+        bytes[j] = new byte[random.nextInt(12)];
+        for (int k = random.nextInt(12); k > 0; k--) {
+          builder.append(chars.charAt(random.nextInt(chars.length())));
+        } // for
+        strings[j] = builder.toString();
+        for (int k = 0; k < bytes[j].length; k++) {
+          bytes[j][k] = (byte) (random.nextBoolean() ? random.nextInt(3) : random.nextInt());
+        } // for
+        ints[j] = random.nextBoolean() ? random.nextInt(5) - 2 : random.nextInt();
+      } // for
+      assertConsistent(strings[0].compareTo(strings[1]),
+          KeyNormalizer.STRING.normalize(strings[0]), KeyNormalizer.STRING.normalize(strings[1]));
+      assertConsistent(Arrays.compareUnsigned(bytes[0], bytes[1]),
+          KeyNormalizer.BYTES.normalize(bytes[0]), KeyNormalizer.BYTES.normalize(bytes[1]));
+      assertEquals(Integer.signum(Integer.compare(ints[0], ints[1])),
+          Integer.signum(Long.compareUnsigned(KeyNormalizer.INTEGER.normalize(ints[0]),
+              KeyNormalizer.INTEGER.normalize(ints[1]))));
+    } // for
+    assertEquals(KeyNormalizer.STRING.normalize("abcdefghi"),
+        KeyNormalizer.STRING.normalize("abcdefghiz"));
+    assertTrue(Long.compareUnsigned(KeyNormalizer.STRING.normalize("ab"),
+        KeyNormalizer.STRING.normalize("ab\0")) == 0);
+  } // testNormalizersAgreeWithOrder()
+
+  /**
+   * Check that prefixes x and y never contradict an order of sign order.
+   */
+  static void assertConsistent(int order, long x, long y) {
+    int prefixOrder = Long.compareUnsigned(x, y);
+    assertTrue("prefixes contradict the order", prefixOrder == 0
+        || Integer.signum(prefixOrder) == Integer.signum(order));
+  } // assertConsistent(int, long, long)
+
+  /**
+   * Verify that normalized lists, in every mode, match a TreeMap through
+   * random sets, removes and appends, with keys that often share their
+   * prefixes.
+   */
+  @Test
+  public void testNormalizedMatchesTreeMap() {
+    for (int mode = 0; mode < 4; mode++) {
+      SkipList<String, Integer> lst = new SkipList<String, Integer>(
+          Comparator.<String>naturalOrder(), LevelGenerator.seeded(mode), mode % 2 == 1,
+          mode >= 2);
+      lst.setNormalizer(KeyNormalizer.STRING);
+      lst.setFinger(mode == 0);
+      TreeMap<String, Integer> expected = new TreeMap<String, Integer>();
+      Random random = new Random(mode);
+      for (int i = 0; i < 20000; i++) {
+        // The first nine chars of half the keys are the same
+        String key = (random.nextBoolean() ? "prefix---" : "") + random.nextInt(1000);
+        switch (random.nextInt(4)) {
+          case 0:
+          case 1:
+            assertEquals(expected.put(key, i), lst.set(key, i));
+            break;
+          case 2:
+            assertEquals(expected.remove(key), lst.remove(key));
+            break;
+          default:
+            String next = (expected.isEmpty() ? "" : expected.lastKey()) + "\u00e9";
+            expected.put(next, i);
+            lst.append(next, i);
+        } // switch
+        assertEquals(expected.containsKey(key), lst.containsKey(key));
+        assertEquals(expected.get(key), lst.containsKey(key) ? lst.get(key) : null);
+        if (i % 1000 == 0) {
+          checkStructure(lst);
+        } // if
+      } // for
+      checkStructure(lst);
+      assertEquals(new ArrayList<String>(expected.keySet()),
+          lst.stream().map(Map.Entry::getKey).collect(Collectors.toList()));
+    } // for
+  } // testNormalizedMatchesTreeMap()
+
+  /**
+   * Verify that a normalizer spares the comparator: entirely, if it is
+   * exact, and for keys that differ early, if not.
+   */
+  @Test
+  public void testNormalizerSavesComparisons() {
+    long[] comparisons = new long[1];
+    SkipList<Integer, Integer> ints = new SkipList<Integer, Integer>((i, j) -> {
+      comparisons[0]++;
+      return Integer.compare(i, j);
+    });
+    ints.setNormalizer(KeyNormalizer.INTEGER);
+    for (int i = 0; i < 10000; i++) {
+      ints.set(i * 7919 % 10000 - 5000, i);
+    } // for
+    for (int i = -5000; i < 5000; i += 3) {
+      assertTrue(ints.containsKey(i));
+      ints.remove(i);
+    } // for
+    assertEquals(0, comparisons[0]);
+    checkStructure(ints);
+
+    SkipList<String, Integer> strings = new SkipList<String, Integer>((x, y) -> {
+      comparisons[0]++;
+      return x.compareTo(y);
+    });
+    strings.setNormalizer(KeyNormalizer.STRING);
+    for (int i = 0; i < 10000; i++) {
+      strings.set(Integer.toString(i * 7919 % 10000), i);
+    } // for
+    comparisons[0] = 0;
+    for (int i = 0; i < 10000; i++) {
+      assertEquals(i, (int) strings.get(Integer.toString(i * 7919 % 10000)));
+    } // for
+    // Only the key found has the same prefix, so each get compares it
+    // twice: once in the search and once to see that it is the key
+    assertEquals(2 * 10000, comparisons[0]);
+    try {
+      strings.setNormalizer(null);
+      fail("setNormalizer on a list that is not empty should throw");
+    } catch (IllegalStateException e) {
+      // Expected
+    } // try/catch
+  } // testNormalizerSavesComparisons()
+
+  /**
+   * Verify that naturalOrder orders numbers as numbers.
+   */
+  @Test
+  public void testNaturalOrder() {
+    SkipList<Integer, String> lst = SkipList.naturalOrder();
+    for (int i = 20; i >= -20; i--) {
+      lst.set(i, Integer.toString(i));
+    } // for
+    assertEquals(Integer.valueOf(-20), lst.firstKey());
+    assertEquals(Integer.valueOf(20), lst.lastKey());
+    assertTrue(inOrder(lst.keys()));
+    assertEquals("10", lst.get(10));
+  } // testNaturalOrder()
+
+  // +--------------------+--------------------------------------------
+  // | Bulk Removal Tests |
+  // +--------------------+
+
+  /**
+   * Make empty lists of every kind whose structure bulk removal must
+   * keep: plain, indexed, hashed, both, normalized, and with stats on.
+   */
+  static List<SkipList<Integer, Integer>> variants(long seed) {
+    List<SkipList<Integer, Integer>> result = new ArrayList<SkipList<Integer, Integer>>();
+    Comparator<Integer> order = Comparator.<Integer>naturalOrder();
+    for (int kind = 0; kind < 4; kind++) {
+      result.add(new SkipList<Integer, Integer>(order, LevelGenerator.seeded(seed + kind),
+          kind % 2 == 1, kind >= 2));
+    } // for
+    SkipList<Integer, Integer> normalized =
+        new SkipList<Integer, Integer>(order, LevelGenerator.seeded(seed), true);
+    normalized.setNormalizer(KeyNormalizer.INTEGER);
+    result.add(normalized);
+    SkipList<Integer, Integer> counted = new SkipList<Integer, Integer>(order);
+    counted.setStats(true);
+    result.add(counted);
+    return result;
+  } // variants(long)
+
+  /**
+   * Check a list against a TreeMap, structure and stats included.
+   */
+  static void assertMatches(TreeMap<Integer, Integer> expected, SkipList<Integer, Integer> lst) {
+    checkStructure(lst);
+    assertEquals(expected.size(), lst.size());
+    Iterator<Integer> keys = lst.keys();
+    for (Integer key : expected.keySet()) {
+      assertEquals(key, keys.next());
+    } // for
+    assertFalse(keys.hasNext());
+    if (lst.metrics != null) {
+      assertEquals(expected.size(), Arrays.stream(lst.stats().getHeightCounts()).sum());
+    } // if
+  } // assertMatches(TreeMap<Integer, Integer>, SkipList<Integer, Integer>)
+
+  /**
+   * Verify that removeRange matches clearing a TreeMap's subMap, with
+   * open and empty ranges, on every kind of list, and that the list
+   * still takes sets afterwards.
+   */
+  @Test
+  public void testRemoveRange() {
+    for (SkipList<Integer, Integer> lst : variants(207)) {
+      TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+      Random random = new Random(207);
+      for (int round = 0; round < 200; round++) {
+        for (int i = 0; i < 50; i++) {
+          int key = random.nextInt(2000);
+          assertEquals(expected.put(key, i), lst.set(key, i));
+        } // for
+        Integer from = (random.nextInt(10) == 0) ? null : random.nextInt(2100) - 50;
+        Integer to = (random.nextInt(10) == 0) ? null : random.nextInt(2100) - 50;
+        Map<Integer, Integer> doomed = expected;
+        if (from != null && to != null) {
+          doomed = (from <= to) ? expected.subMap(from, to) : new TreeMap<Integer, Integer>();
+        } else if (from != null) {
+          doomed = expected.tailMap(from);
+        } else if (to != null) {
+          doomed = expected.headMap(to);
+        } // if/else
+        int count = doomed.size();
+        doomed.clear();
+        assertEquals(count, lst.removeRange(from, to));
+        assertMatches(expected, lst);
+      } // for
+    } // for
+  } // testRemoveRange()
+
+  /**
+   * Verify that removeRange searches only once, however much it removes.
+   */
+  @Test
+  public void testRemoveRangeComparisons() {
+    int[] comparisons = new int[1];
+    SkipList<Integer, Integer> lst = new SkipList<Integer, Integer>((i, j) -> {
+      comparisons[0]++;
+      return Integer.compare(i, j);
+    }, LevelGenerator.seeded(207));
+    for (int i = 0; i < 100000; i++) {
+      lst.append(i, i);
+    } // for
+    comparisons[0] = 0;
+    assertEquals(50000, lst.removeRange(20000, 70000));
+    assertTrue("comparisons " + comparisons[0], comparisons[0] < 200);
+    assertEquals(Integer.valueOf(19999), lst.lowerKey(70000));
+    assertEquals(Integer.valueOf(70000), lst.higherKey(19999));
+    checkStructure(lst);
+  } // testRemoveRangeComparisons()
+
+  /**
+   * Verify that removeIf matches a TreeMap on every kind of list, and
+   * that a filter that throws leaves the list whole.
+   */
+  @Test
+  public void testRemoveIf() {
+    for (SkipList<Integer, Integer> lst : variants(208)) {
+      TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+      Random random = new Random(208);
+      for (int round = 0; round < 50; round++) {
+        for (int i = 0; i < 200; i++) {
+          int key = random.nextInt(2000);
+          assertEquals(expected.put(key, i), lst.set(key, i));
+        } // for
+        int modulus = 2 + random.nextInt(5);
+        int count = expected.size();
+        expected.entrySet().removeIf((entry) -> (entry.getKey() + entry.getValue()) % modulus == 0);
+        assertEquals(count - expected.size(),
+            lst.removeIf((key, value) -> (key + value) % modulus == 0));
+        assertMatches(expected, lst);
+      } // for
+      int median = expected.keySet().stream().skip(expected.size() / 2).findFirst().get();
+      try {
+        lst.removeIf((key, value) -> {
+          if (key >= median) {
+            throw new IllegalStateException("stop");
+          } // if
+          return key % 2 == 0;
+        });
+        fail("the filter should have thrown");
+      } catch (IllegalStateException e) {
+        // Expected
+      } // try/catch
+      expected.headMap(median).keySet().removeIf((key) -> key % 2 == 0);
+      assertMatches(expected, lst);
+      assertEquals(expected.size(), lst.removeIf((key, value) -> true));
+      assertMatches(new TreeMap<Integer, Integer>(), lst);
+    } // for
+  } // testRemoveIf()
+
+  /**
+   * Verify that removing through the iterators matches a TreeMap on every
+   * kind of list, and that it notices other changes to the list.
+   */
+  @Test
+  public void testIteratorRemove() {
+    for (SkipList<Integer, Integer> lst : variants(209)) {
+      TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+      Random random = new Random(209);
+      for (int round = 0; round < 20; round++) {
+        for (int i = 0; i < 300; i++) {
+          int key = random.nextInt(2000);
+          assertEquals(expected.put(key, i), lst.set(key, i));
+        } // for
+        Iterator<Integer> expectedKeys = expected.keySet().iterator();
+        Iterator<Integer> keys = (round % 2 == 0) ? lst.keys() : null;
+        Iterator<Integer> values = (round % 2 == 0) ? null : lst.values();
+        while (expectedKeys.hasNext()) {
+          Integer key = expectedKeys.next();
+          Integer value = expected.get(key);
+          if (keys != null) {
+            assertEquals(key, keys.next());
+          } else {
+            assertEquals(value, values.next());
+          } // if/else
+          if (random.nextInt(3) == 0) {
+            expectedKeys.remove();
+            if (keys != null) {
+              keys.remove();
+            } else {
+              values.remove();
+            } // if/else
+          } // if
+        } // while
+        assertMatches(expected, lst);
+      } // for
+      Iterator<Integer> keys = lst.keys();
+      keys.next();
+      keys.remove();
+      try {
+        keys.remove();
+        fail("removing twice should fail");
+      } catch (IllegalStateException e) {
+        // Expected
+      } // try/catch
+      keys.next();
+      lst.set(-1, -1);
+      try {
+        keys.remove();
+        fail("the list changed under the iterator");
+      } catch (ConcurrentModificationException e) {
+        // Expected
+      } // try/catch
+    } // for
+  } // testIteratorRemove()
+
+  // +-----------------------------+-----------------------------------
+  // | Splitting and Merging Tests |
+  // +-----------------------------+
+
+  /**
+   * Verify that split and concat match a TreeMap's headMap and tailMap
+   * on every kind of list, and that both halves stay usable.
+   */
+  @Test
+  public void testSplitConcat() {
+    for (SkipList<Integer, Integer> lst : variants(210)) {
+      TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+      Random random = new Random(210);
+      for (int round = 0; round < 50; round++) {
+        for (int i = 0; i < 100; i++) {
+          int key = random.nextInt(2000);
+          assertEquals(expected.put(key, i), lst.set(key, i));
+        } // for
+        int pivot = random.nextInt(2200) - 100;
+        SkipList<Integer, Integer> tail = lst.split(pivot);
+        TreeMap<Integer, Integer> expectedTail = new TreeMap<Integer, Integer>(expected.tailMap(pivot));
+        expected.tailMap(pivot).clear();
+        assertMatches(expected, lst);
+        assertMatches(expectedTail, tail);
+        assertEquals(lst.indexed, tail.indexed);
+        assertEquals(lst.normalizer, tail.normalizer);
+        if (round % 2 == 0) {
+          // Both halves take changes on their own
+          lst.set(pivot - 1000, -1);
+          tail.set(pivot + 1000, -1);
+          expected.put(pivot - 1000, -1);
+          expectedTail.put(pivot + 1000, -1);
+        } // if
+        lst.concat(tail);
+        expected.putAll(expectedTail);
+        assertMatches(expected, lst);
+        assertMatches(new TreeMap<Integer, Integer>(), tail);
+      } // for
+      SkipList<Integer, Integer> overlapping = lst.emptyLike();
+      overlapping.set(lst.firstKey(), 0);
+      try {
+        lst.concat(overlapping);
+        fail("overlapping lists should not concatenate");
+      } catch (IllegalArgumentException e) {
+        // Expected
+      } // try/catch
+    } // for
+    try {
+      new SkipList<Integer, Integer>(Integer::compare, true)
+          .concat(new SkipList<Integer, Integer>(Integer::compare, false));
+      fail("lists of different kinds should not concatenate");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    } // try/catch
+  } // testSplitConcat()
+
+  /**
+   * Verify that split and concat search only once, and that mergeFrom
+   * compares once per step.
+   */
+  @Test
+  public void testSplitMergeComparisons() {
+    int[] comparisons = new int[1];
+    Comparator<Integer> counted = (i, j) -> {
+      comparisons[0]++;
+      return Integer.compare(i, j);
+    };
+    SkipList<Integer, Integer> lst =
+        new SkipList<Integer, Integer>(counted, LevelGenerator.seeded(207));
+    for (int i = 0; i < 100000; i++) {
+      lst.append(i, i);
+    } // for
+    comparisons[0] = 0;
+    SkipList<Integer, Integer> tail = lst.split(30000);
+    assertTrue("comparisons " + comparisons[0], comparisons[0] < 200);
+    assertEquals(30000, lst.size());
+    assertEquals(70000, tail.size());
+    comparisons[0] = 0;
+    lst.concat(tail);
+    assertEquals(1, comparisons[0]);
+    assertEquals(100000, lst.size());
+    checkStructure(lst);
+
+    SkipList<Integer, Integer> odds = new SkipList<Integer, Integer>(counted);
+    for (int i = 1; i < 200000; i += 2) {
+      odds.append(i, i);
+    } // for
+    comparisons[0] = 0;
+    lst.mergeFrom(odds, (ours, theirs) -> ours);
+    assertTrue("comparisons " + comparisons[0], comparisons[0] <= 200000);
+    assertEquals(150000, lst.size());
+    checkStructure(lst);
+  } // testSplitMergeComparisons()
+
+  /**
+   * Verify that mergeFrom matches merging TreeMaps on every kind of list,
+   * and that a resolver that throws still leaves every pair merged.
+   */
+  @Test
+  public void testMergeFrom() {
+    List<SkipList<Integer, Integer>> others = variants(212);
+    List<SkipList<Integer, Integer>> lists = variants(211);
+    for (int kind = 0; kind < lists.size(); kind++) {
+      SkipList<Integer, Integer> lst = lists.get(kind);
+      SkipList<Integer, Integer> other = others.get(kind);
+      TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+      Random random = new Random(211);
+      for (int round = 0; round < 30; round++) {
+        TreeMap<Integer, Integer> theirs = new TreeMap<Integer, Integer>();
+        int spread = 1 + random.nextInt(3000);
+        for (int i = 0; i < 100; i++) {
+          int key = random.nextInt(spread);
+          assertEquals(expected.put(key, i), lst.set(key, i));
+          key = random.nextInt(spread) + round * 10;
+          assertEquals(theirs.put(key, i), other.set(key, i));
+        } // for
+        for (Map.Entry<Integer, Integer> entry : theirs.entrySet()) {
+          expected.merge(entry.getKey(), entry.getValue(), (x, y) -> x * 1000 + y);
+        } // for
+        lst.mergeFrom(other, (x, y) -> x * 1000 + y);
+        assertMatches(expected, lst);
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+          assertEquals(entry.getValue(), lst.get(entry.getKey()));
+        } // for
+        assertMatches(new TreeMap<Integer, Integer>(), other);
+      } // for
+      int key = expected.firstKey();
+      other.set(key, 1);
+      other.set(-1, 1);
+      try {
+        lst.mergeFrom(other, (x, y) -> {
+          throw new IllegalStateException("conflict");
+        });
+        fail("the resolver's exception should be rethrown");
+      } catch (IllegalStateException e) {
+        // Expected
+      } // try/catch
+      expected.put(-1, 1);
+      assertMatches(expected, lst);
+      assertEquals(expected.get(key), lst.get(key));
+    } // for
+    SkipList<Integer, Integer> lst = new SkipList<Integer, Integer>(Integer::compare);
+    try {
+      lst.mergeFrom(lst, (x, y) -> x);
+      fail("a list should not merge with itself");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    } // try/catch
+  } // testMergeFrom()
+
+  // +----------------+------------------------------------------------
+  // | Snapshot Tests |
+  // +----------------+
+
+  /**
+   * Write a snapshot of lst to an array.
+   */
+  static <V> byte[] snapshot(SkipList<Integer, V> lst, Serializer<V> values) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    lst.writeSnapshot(Channels.newChannel(bytes), Serializer.INTEGER, values);
+    return bytes.toByteArray();
+  } // snapshot(SkipList<Integer, V>, Serializer<V>)
+
+  /**
+   * Read a snapshot back from an array.
+   */
+  static <V> SkipList<Integer, V> restore(byte[] snapshot, Serializer<V> values)
+      throws IOException {
+    return SkipList.readSnapshot(Channels.newChannel(new ByteArrayInputStream(snapshot)),
+        (i, j) -> i - j, Serializer.INTEGER, values);
+  } // restore(byte[], Serializer<V>)
+
+  /**
+   * Verify that a snapshot restores the same pairs, null values included,
+   * in a well-formed list, and that it is much smaller than the data.
+   */
+  @Test
+  public void testSnapshotRoundTrip() throws IOException {
+    setup();
+    for (int i = 0; i < 100000; i++) {
+      ints.set(i * 3, (i % 10 == 0) ? null : Integer.toString(i));
+    } // for
+    byte[] snapshot = snapshot(ints, Serializer.STRING);
+    assertTrue("a snapshot of " + snapshot.length + " bytes", snapshot.length < 100000 * 4);
+    SkipList<Integer, String> copy = restore(snapshot, Serializer.STRING);
+    checkStructure(copy);
+    assertEquals(100000, copy.size());
+    Iterator<Integer> keys = copy.keys();
+    Iterator<String> values = copy.values();
+    for (int i = 0; i < 100000; i++) {
+      assertEquals(i * 3, (int) keys.next());
+      assertEquals((i % 10 == 0) ? null : Integer.toString(i), values.next());
+    } // for
+    assertFalse(keys.hasNext());
+    assertEquals(0, restore(snapshot(new SkipList<Integer, String>((i, j) -> i - j),
+        Serializer.STRING), Serializer.STRING).size());
+  } // testSnapshotRoundTrip()
+
+  /**
+   * Verify that values that do not compress, and values larger than a
+   * block, survive, but that a pair too large for any block is refused.
+   */
+  @Test
+  public void testSnapshotIncompressible() throws IOException {
+    SkipList<Integer, byte[]> lst = new SkipList<Integer, byte[]>((i, j) -> i - j);
+    Random random = new Random(16);
+    for (int i = 0; i < 1000; i++) {
+      byte[] value = new byte[(i == 500) ? 200000 : random.nextInt(500)];
+      random.nextBytes(value);
+      lst.set(i, value);
+    } // for
+    SkipList<Integer, byte[]> copy = restore(snapshot(lst, Serializer.BYTES), Serializer.BYTES);
+    assertEquals(1000, copy.size());
+    for (int i = 0; i < 1000; i++) {
+      assertArrayEquals(lst.get(i), copy.get(i));
+    } // for
+    lst.set(1000, new byte[Snapshots.MAX_BLOCK_SIZE]);
+    try {
+      snapshot(lst, Serializer.BYTES);
+      fail("a pair larger than a block may hold should be refused");
+    } catch (IOException e) {
+      // Expected
+    } // try/catch
+  } // testSnapshotIncompressible()
+
+  /**
+   * Verify that damaged, truncated, and foreign snapshots are refused.
+   */
+  @Test
+  public void testSnapshotDamage() throws IOException {
+    setup();
+    for (int i = 0; i < 10000; i++) {
+      set(i);
+    } // for
+    byte[] snapshot = snapshot(ints, Serializer.STRING);
+    byte[][] bad = {Arrays.copyOf(snapshot, snapshot.length / 2),
+        Arrays.copyOf(snapshot, snapshot.length - 1), snapshot.clone(), snapshot.clone(),
+        snapshot.clone()};
+    bad[2][snapshot.length / 2] ^= 1;
+    bad[3][0] = 'X';
+    // A first block header claiming 2 GB, which must be refused before
+    // anything is allocated for it
+    ByteBuffer.wrap(bad[4], Snapshots.HEADER_BYTES + 4, 8).putInt(Integer.MAX_VALUE)
+        .putInt(Integer.MAX_VALUE);
+    for (byte[] damaged : bad) {
+      try {
+        restore(damaged, Serializer.STRING);
+        fail("a damaged snapshot should be refused");
+      } catch (IOException e) {
+        // Expected
+      } // try/catch
+    } // for
+  } // testSnapshotDamage()
+
+  // +------------------+-----------------------------------------------
+  // | Allocation Tests |
+  // +------------------+
+
+  /**
+   * Build a list of boxed integers for the allocation tests, along with
+   * the boxed keys, so that lookups don't box.
+   */
+  static SkipList<Integer, Integer> boxedList(Integer[] keys) {
+    SkipList<Integer, Integer> lst = new SkipList<Integer, Integer>((i, j) -> i - j);
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = i * 2;
+      lst.set(keys[i], keys[i]);
+    } // for
+    return lst;
+  } // boxedList(Integer[])
+
+  /**
+   * Determine how many bytes the measurement itself costs, so that we can
+   * subtract it out.
+   */
+  static long meterOverhead() {
+    long start = MemoryMeter.allocatedBytes();
+    return MemoryMeter.allocatedBytes() - start;
+  } // meterOverhead()
+
+  /**
+   * Verify that get and containsKey allocate nothing once warmed up.
+   */
+  @Test
+  public void testLookupsDoNotAllocate() {
+    Integer[] keys = new Integer[1000];
+    SkipList<Integer, Integer> lst = boxedList(keys);
+    Integer missing = -1;
+    long sum = 0;
+    for (int round = 0; round < 3; round++) {
+      long overhead = meterOverhead();
+      long start = MemoryMeter.allocatedBytes();
+      for (int i = 0; i < 100000; i++) {
+        Integer key = keys[i % keys.length];
+        sum += lst.get(key);
+        if (lst.containsKey(missing)) {
+          sum++;
+        } // if
+      } // for
+      long allocated = MemoryMeter.allocatedBytes() - start - overhead;
+      if (round == 2) {
+        assertEquals("bytes allocated by get/containsKey", 0, allocated);
+      } // if
+    } // for
+    assertTrue(sum > 0);
+  } // testLookupsDoNotAllocate()
+
+  /**
+   * Verify that replacing the value of an existing key allocates nothing.
+   */
+  @Test
+  public void testReplaceDoesNotAllocate() {
+    Integer[] keys = new Integer[1000];
+    SkipList<Integer, Integer> lst = boxedList(keys);
+    for (int round = 0; round < 3; round++) {
+      long overhead = meterOverhead();
+      long start = MemoryMeter.allocatedBytes();
+      for (int i = 0; i < 100000; i++) {
+        Integer key = keys[i % keys.length];
+        lst.set(key, key);
+      } // for
+      long allocated = MemoryMeter.allocatedBytes() - start - overhead;
+      if (round == 2) {
+        assertEquals("bytes allocated by set (replace)", 0, allocated);
+      } // if
+    } // for
+    assertEquals(keys.length, lst.size());
+  } // testReplaceDoesNotAllocate()
+
   // +-----------------+-------------------------------------------------
   // | RandomizedTests |
   // +-----------------+
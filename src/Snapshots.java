@@ -0,0 +1,478 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The binary snapshot format that SkipList.writeSnapshot writes and
+ * SkipList.readSnapshot reads.
+ *
+ * A snapshot is a header (int magic, int version, long count) followed by
+ * blocks of pairs in ascending key order.  Each block has a header of four
+ * ints (pairs, raw length, stored length, CRC32 of the raw bytes) and then
+ * the stored bytes, which are deflated unless that would not make them
+ * smaller, in which case the stored length equals the raw length.  A block
+ * of zero pairs ends the snapshot.
+ *
+ * Within a block, each pair is its key, a byte that is 0 if the value is
+ * null and 1 otherwise, and then (if it is not null) its value.
+ *
+ * Blocks are about BLOCK_SIZE bytes before compression, and never more
+ * than MAX_BLOCK_SIZE, so writing and reading need that much buffer memory
+ * however large the snapshot is.  A reader rejects a block header that
+ * claims more before allocating anything, since the header is not covered
+ * by the checksum.
+ */
+class Snapshots {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * Identifies snapshots ("SLSN").
+   */
+  static final int MAGIC = 0x534c534e;
+
+  /**
+   * The version of the format.
+   */
+  static final int VERSION = 1;
+
+  /**
+   * The size of a block before compression.  Blocks end at the first pair
+   * that takes them past this.
+   */
+  static final int BLOCK_SIZE = 64 << 10;
+
+  /**
+   * The most a block may hold before compression.  As blocks end past
+   * BLOCK_SIZE, this limits a single pair to a little under
+   * MAX_BLOCK_SIZE - BLOCK_SIZE bytes.
+   */
+  static final int MAX_BLOCK_SIZE = 16 * BLOCK_SIZE;
+
+  /**
+   * The sizes of the snapshot header and of a block header.
+   */
+  static final int HEADER_BYTES = 16;
+  static final int BLOCK_HEADER_BYTES = 16;
+
+  // +---------+-----------------------------------------------------
+  // | Writing |
+  // +---------+
+
+  /**
+   * Writes pairs, in ascending key order, to a channel.
+   */
+  static class Writer<K, V> implements AutoCloseable {
+    /**
+     * Where the snapshot goes.
+     */
+    WritableByteChannel channel;
+
+    /**
+     * How to write keys and values.
+     */
+    Serializer<K> keys;
+    Serializer<V> values;
+
+    /**
+     * The block being filled, and a view of it for the serializers.
+     */
+    Buffer block = new Buffer();
+    DataOutputStream out = new DataOutputStream(this.block.output);
+
+    /**
+     * Compresses blocks into compressed.
+     */
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    byte[] compressed = new byte[BLOCK_SIZE];
+    CRC32 crc = new CRC32();
+
+    /**
+     * The pairs in the current block.
+     */
+    int pairs;
+
+    /**
+     * The pairs the header promised, and the pairs written so far.
+     */
+    long count;
+    long written;
+
+    /**
+     * Start a snapshot of count pairs.
+     */
+    Writer(WritableByteChannel channel, Serializer<K> keys, Serializer<V> values, long count)
+        throws IOException {
+      this.channel = channel;
+      this.keys = keys;
+      this.values = values;
+      this.count = count;
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+      header.putInt(MAGIC).putInt(VERSION).putLong(count).flip();
+      writeFully(channel, header);
+    } // Writer(WritableByteChannel, Serializer<K>, Serializer<V>, long)
+
+    /**
+     * Add a pair.
+     *
+     * @pre key is greater than every key written so far
+     * @throws IOException if the pair takes its block past MAX_BLOCK_SIZE
+     */
+    void write(K key, V value) throws IOException {
+      this.keys.write(key, this.out);
+      if (value == null) {
+        this.out.writeByte(0);
+      } else {
+        this.out.writeByte(1);
+        this.values.write(value, this.out);
+      } // if/else
+      if (this.block.count > MAX_BLOCK_SIZE) {
+        throw new IOException("pair takes its snapshot block to " + this.block.count
+            + " bytes, past the limit of " + MAX_BLOCK_SIZE);
+      } // if
+      this.pairs++;
+      this.written++;
+      if (this.block.count >= BLOCK_SIZE) {
+        flush();
+      } // if
+    } // write(K, V)
+
+    /**
+     * Write the last block and the end of the snapshot.
+     *
+     * @throws IOException if fewer or more pairs were written than promised
+     */
+    void finish() throws IOException {
+      if (this.written != this.count) {
+        throw new IOException("snapshot promised " + this.count + " pairs but got "
+            + this.written);
+      } // if
+      if (this.pairs > 0) {
+        flush();
+      } // if
+      flush();
+    } // finish()
+
+    /**
+     * Free the compressor.
+     */
+    @Override
+    public void close() {
+      this.deflater.end();
+    } // close()
+
+    /**
+     * Write out the current block, even if it is empty.
+     */
+    void flush() throws IOException {
+      int raw = this.block.count;
+      this.crc.reset();
+      this.crc.update(this.block.bytes, 0, raw);
+      this.deflater.reset();
+      this.deflater.setInput(this.block.bytes, 0, raw);
+      this.deflater.finish();
+      int stored = 0;
+      while (!this.deflater.finished() && stored < raw) {
+        if (stored == this.compressed.length) {
+          this.compressed = Arrays.copyOf(this.compressed, 2 * stored);
+        } // if
+        stored += this.deflater.deflate(this.compressed, stored, this.compressed.length - stored);
+      } // while
+      byte[] body = this.compressed;
+      if (!this.deflater.finished() || stored >= raw) {
+        // Incompressible
+        body = this.block.bytes;
+        stored = raw;
+      } // if
+      ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_BYTES);
+      header.putInt(this.pairs).putInt(raw).putInt(stored).putInt((int) this.crc.getValue());
+      header.flip();
+      writeFully(this.channel, header);
+      writeFully(this.channel, ByteBuffer.wrap(body, 0, stored));
+      this.block.count = 0;
+      this.pairs = 0;
+    } // flush()
+  } // class Writer<K, V>
+
+  // +---------+-----------------------------------------------------
+  // | Reading |
+  // +---------+
+
+  /**
+   * Reads pairs back from a channel, one block at a time.
+   */
+  static class Reader<K, V> implements AutoCloseable {
+    /**
+     * Where the snapshot comes from.
+     */
+    ReadableByteChannel channel;
+
+    /**
+     * How to read keys and values.
+     */
+    Serializer<K> keys;
+    Serializer<V> values;
+
+    /**
+     * The current block, and a view of it for the serializers.
+     */
+    Buffer block = new Buffer();
+    DataInputStream in = new DataInputStream(this.block);
+
+    /**
+     * Decompresses blocks.
+     */
+    Inflater inflater = new Inflater();
+    byte[] compressed = new byte[BLOCK_SIZE];
+    CRC32 crc = new CRC32();
+
+    /**
+     * The pairs left in the current block.
+     */
+    int pairs;
+
+    /**
+     * The pairs the header promised, and the pairs read so far.
+     */
+    long count;
+    long read;
+
+    /**
+     * Whether we have reached the end.
+     */
+    boolean done;
+
+    /**
+     * The pair most recently read.
+     */
+    K key;
+    V value;
+
+    /**
+     * Start reading a snapshot.
+     *
+     * @throws IOException if the channel does not hold a snapshot
+     */
+    Reader(ReadableByteChannel channel, Serializer<K> keys, Serializer<V> values)
+        throws IOException {
+      this.channel = channel;
+      this.keys = keys;
+      this.values = values;
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+      readFully(channel, header);
+      if (header.getInt(0) != MAGIC) {
+        throw new IOException("not a skip list snapshot");
+      } // if
+      if (header.getInt(4) != VERSION) {
+        throw new IOException("unknown snapshot version " + header.getInt(4));
+      } // if
+      this.count = header.getLong(8);
+    } // Reader(ReadableByteChannel, Serializer<K>, Serializer<V>)
+
+    /**
+     * Read the next pair into key and value.
+     *
+     * @returns false if there are no more pairs
+     * @throws IOException if the snapshot is truncated or damaged
+     */
+    boolean next() throws IOException {
+      while (this.pairs == 0) {
+        if (this.done || !nextBlock()) {
+          return false;
+        } // if
+      } // while
+      this.key = this.keys.read(this.in);
+      this.value = (this.in.readByte() == 0) ? null : this.values.read(this.in);
+      this.pairs--;
+      this.read++;
+      if (this.pairs == 0 && this.block.position != this.block.count) {
+        throw new IOException("snapshot block has trailing bytes");
+      } // if
+      return true;
+    } // next()
+
+    /**
+     * Free the decompressor.
+     */
+    @Override
+    public void close() {
+      this.inflater.end();
+    } // close()
+
+    /**
+     * Read and check the next block.
+     *
+     * @returns false if it is the end of the snapshot
+     */
+    boolean nextBlock() throws IOException {
+      ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_BYTES);
+      readFully(this.channel, header);
+      int pairs = header.getInt(0);
+      int raw = header.getInt(4);
+      int stored = header.getInt(8);
+      int checksum = header.getInt(12);
+      if (pairs < 0 || raw < 0 || stored < 0 || stored > raw || raw > MAX_BLOCK_SIZE) {
+        throw new IOException("damaged snapshot block header");
+      } // if
+      if (this.block.bytes.length < raw) {
+        this.block.bytes = new byte[raw];
+      } // if
+      if (stored == raw) {
+        readFully(this.channel, ByteBuffer.wrap(this.block.bytes, 0, raw));
+      } else {
+        if (this.compressed.length < stored) {
+          this.compressed = new byte[stored];
+        } // if
+        readFully(this.channel, ByteBuffer.wrap(this.compressed, 0, stored));
+        inflate(stored, raw);
+      } // if/else
+      this.crc.reset();
+      this.crc.update(this.block.bytes, 0, raw);
+      if ((int) this.crc.getValue() != checksum) {
+        throw new IOException("snapshot block fails its checksum");
+      } // if
+      this.block.count = raw;
+      this.block.position = 0;
+      this.pairs = pairs;
+      if (pairs == 0) {
+        this.done = true;
+        if (this.read != this.count) {
+          throw new IOException("snapshot promised " + this.count + " pairs but held "
+              + this.read);
+        } // if
+        return false;
+      } // if
+      return true;
+    } // nextBlock()
+
+    /**
+     * Inflate stored compressed bytes into raw bytes of the block.
+     */
+    void inflate(int stored, int raw) throws IOException {
+      this.inflater.reset();
+      this.inflater.setInput(this.compressed, 0, stored);
+      try {
+        int length = 0;
+        while (length < raw && !this.inflater.finished()) {
+          int n = this.inflater.inflate(this.block.bytes, length, raw - length);
+          if (n == 0 && this.inflater.needsInput()) {
+            break;
+          } // if
+          length += n;
+        } // while
+        if (length != raw || !this.inflater.finished()) {
+          throw new IOException("snapshot block does not inflate to its length");
+        } // if
+      } catch (DataFormatException e) {
+        throw new IOException("damaged snapshot block", e);
+      } // try/catch
+    } // inflate(int, int)
+  } // class Reader<K, V>
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * A growable byte array that is both an output and an input stream,
+   * without the locking of ByteArrayOutputStream and ByteArrayInputStream.
+   */
+  static class Buffer extends InputStream {
+    byte[] bytes;
+    int count;
+    int position;
+
+    /**
+     * Make a buffer with room for a block.
+     */
+    Buffer() {
+      this(BLOCK_SIZE + (BLOCK_SIZE >> 2));
+    } // Buffer()
+
+    /**
+     * Make a buffer with room for capacity bytes to start with.
+     */
+    Buffer(int capacity) {
+      this.bytes = new byte[capacity];
+    } // Buffer(int)
+
+    /**
+     * The output side.
+     */
+    OutputStream output = new OutputStream() {
+      @Override
+      public void write(int b) {
+        ensure(1);
+        bytes[count++] = (byte) b;
+      } // write(int)
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+        ensure(len);
+        System.arraycopy(b, off, bytes, count, len);
+        count += len;
+      } // write(byte[], int, int)
+    };
+
+    @Override
+    public int read() {
+      return (this.position < this.count) ? this.bytes[this.position++] & 0xff : -1;
+    } // read()
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (this.position >= this.count) {
+        return (len == 0) ? 0 : -1;
+      } // if
+      int n = Math.min(len, this.count - this.position);
+      System.arraycopy(this.bytes, this.position, b, off, n);
+      this.position += n;
+      return n;
+    } // read(byte[], int, int)
+
+    /**
+     * Make room for n more bytes.
+     */
+    void ensure(int n) {
+      if (this.count + n > this.bytes.length) {
+        this.bytes = Arrays.copyOf(this.bytes, Math.max(2 * this.bytes.length, this.count + n));
+      } // if
+    } // ensure(int)
+  } // class Buffer
+
+  /**
+   * Write all of buf to channel.
+   */
+  static void writeFully(WritableByteChannel channel, ByteBuffer buf) throws IOException {
+    while (buf.hasRemaining()) {
+      channel.write(buf);
+    } // while
+  } // writeFully(WritableByteChannel, ByteBuffer)
+
+  /**
+   * Fill buf from channel.
+   *
+   * @throws EOFException if the channel ends first
+   */
+  static void readFully(ReadableByteChannel channel, ByteBuffer buf) throws IOException {
+    while (buf.hasRemaining()) {
+      if (channel.read(buf) < 0) {
+        throw new EOFException("snapshot is truncated");
+      } // if
+    } // while
+  } // readFully(ReadableByteChannel, ByteBuffer)
+
+} // class Snapshots
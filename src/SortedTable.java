@@ -0,0 +1,574 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+
+/**
+ * An immutable file of pairs in ascending key order, as LsmStore writes
+ * when it flushes a memtable or compacts.
+ *
+ * The file is a run of data blocks, an index, a Bloom filter and a
+ * footer.  A data block holds about BLOCK_SIZE bytes of pairs followed by
+ * the CRC32 of those bytes.  Each pair is its key, a kind byte (TOMBSTONE,
+ * NULL or VALUE) and, for VALUE, the length of the value and the value, so
+ * that a scan can skip values it does not want.  The index gives the
+ * first key, offset and length of every block, and then the last key.
+ * The Bloom filter covers the serialized keys.  The footer (FOOTER_BYTES
+ * long) gives the offsets and lengths of the index and filter, the number
+ * of pairs, the format version and a magic number.
+ *
+ * The index and filter stay in memory, so a lookup of a key the table
+ * lacks usually reads nothing, and one of a key it has reads one block.
+ */
+class SortedTable<K, V> {
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * Identifies tables ("SLST").
+   */
+  static final int MAGIC = 0x534c5354;
+
+  /**
+   * The version of the format.
+   */
+  static final int VERSION = 1;
+
+  /**
+   * The size of a data block before its checksum.  Blocks end at the first
+   * pair that takes them past this.
+   */
+  static final int BLOCK_SIZE = 4096;
+
+  /**
+   * The size of the footer.
+   */
+  static final int FOOTER_BYTES = 40;
+
+  /**
+   * The shape of the Bloom filter: about 1% false positives.
+   */
+  static final int BLOOM_BITS_PER_KEY = 10;
+  static final int BLOOM_HASHES = 7;
+
+  /**
+   * The kinds of pair.
+   */
+  static final byte TOMBSTONE = 0;
+  static final byte NULL = 1;
+  static final byte VALUE = 2;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number that names the file, and the file.
+   */
+  final long number;
+  final Path file;
+  final FileChannel channel;
+
+  /**
+   * How to order, read and write keys and values.
+   */
+  final Comparator<K> comparator;
+  final Serializer<K> keys;
+  final Serializer<V> values;
+
+  /**
+   * The index: the first key, offset and length of each block.
+   */
+  Object[] firstKeys;
+  long[] offsets;
+  int[] lengths;
+
+  /**
+   * The smallest and largest keys.
+   */
+  K smallest;
+  K largest;
+
+  /**
+   * The number of pairs (tombstones included) and the size of the file.
+   */
+  long entries;
+  long bytes;
+
+  /**
+   * The Bloom filter.
+   */
+  long[] bloom;
+  int bloomHashes;
+
+  /**
+   * The number of LsmStore versions that include the table.  Guarded by
+   * the store's lock.
+   */
+  int refs;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Open the table in file.
+   *
+   * @throws IOException if it cannot be read or is not a table
+   */
+  @SuppressWarnings("unchecked")
+  SortedTable(long number, Path file, Comparator<K> comparator, Serializer<K> keys,
+      Serializer<V> values) throws IOException {
+    this.number = number;
+    this.file = file;
+    this.comparator = comparator;
+    this.keys = keys;
+    this.values = values;
+    this.channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      this.bytes = this.channel.size();
+      if (this.bytes < FOOTER_BYTES) {
+        throw new IOException(file + " is not a sorted table");
+      } // if
+      ByteBuffer footer = read(this.bytes - FOOTER_BYTES, FOOTER_BYTES);
+      long indexOffset = footer.getLong();
+      int indexLength = footer.getInt();
+      long bloomOffset = footer.getLong();
+      int bloomLength = footer.getInt();
+      this.entries = footer.getLong();
+      int version = footer.getInt();
+      if (footer.getInt() != MAGIC || version != VERSION) {
+        throw new IOException(file + " is not a sorted table");
+      } // if
+
+      Snapshots.Buffer index = new Snapshots.Buffer(0);
+      index.bytes = read(indexOffset, indexLength).array();
+      index.count = indexLength;
+      DataInputStream in = new DataInputStream(index);
+      int blocks = in.readInt();
+      this.firstKeys = new Object[blocks];
+      this.offsets = new long[blocks];
+      this.lengths = new int[blocks];
+      for (int i = 0; i < blocks; i++) {
+        this.firstKeys[i] = keys.read(in);
+        this.offsets[i] = in.readLong();
+        this.lengths[i] = in.readInt();
+      } // for
+      this.smallest = (K) this.firstKeys[0];
+      this.largest = keys.read(in);
+
+      ByteBuffer filter = read(bloomOffset, bloomLength);
+      this.bloomHashes = filter.getInt();
+      this.bloom = new long[filter.getInt()];
+      filter.asLongBuffer().get(this.bloom);
+    } catch (IOException | RuntimeException e) {
+      this.channel.close();
+      throw e;
+    } // try/catch
+  } // SortedTable(long, Path, Comparator<K>, Serializer<K>, Serializer<V>)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Look up key, whose serialized form hashes to hash.
+   *
+   * @returns the value (possibly null), LsmStore.TOMBSTONE if the table
+   *          records that the key was removed, or LsmStore.MISSING if the
+   *          table says nothing about key
+   * @throws UncheckedIOException if the table cannot be read
+   */
+  Object find(K key, long hash) {
+    if (this.comparator.compare(key, this.smallest) < 0
+        || this.comparator.compare(key, this.largest) > 0 || !mightContain(hash)) {
+      return LsmStore.MISSING;
+    } // if
+    // The last block whose first key is not greater than key
+    int lo = 0;
+    int hi = this.firstKeys.length - 1;
+    while (lo < hi) {
+      int mid = (lo + hi + 1) >>> 1;
+      @SuppressWarnings("unchecked")
+      K first = (K) this.firstKeys[mid];
+      if (this.comparator.compare(first, key) <= 0) {
+        lo = mid;
+      } else {
+        hi = mid - 1;
+      } // if/else
+    } // while
+    try {
+      Snapshots.Buffer block = readBlock(lo);
+      DataInputStream in = new DataInputStream(block);
+      while (block.position < block.count) {
+        int order = this.comparator.compare(this.keys.read(in), key);
+        if (order > 0) {
+          break;
+        } // if
+        if (order == 0) {
+          return readValue(in);
+        } // if
+        skipValue(in, block);
+      } // while
+      return LsmStore.MISSING;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } // try/catch
+  } // find(K, long)
+
+  /**
+   * Iterate over the pairs, in order, as find would report their values.
+   *
+   * @throws UncheckedIOException (from the iterator) if the table cannot
+   *         be read
+   */
+  Iterator<Map.Entry<K, Object>> iterator() {
+    return new Iterator<Map.Entry<K, Object>>() {
+      int nextBlock = 0;
+      Snapshots.Buffer block = new Snapshots.Buffer(0);
+      DataInputStream in = new DataInputStream(this.block);
+
+      @Override
+      public boolean hasNext() {
+        return this.block.position < this.block.count || this.nextBlock < lengths.length;
+      } // hasNext()
+
+      @Override
+      public Map.Entry<K, Object> next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        } // if
+        try {
+          if (this.block.position >= this.block.count) {
+            this.block = readBlock(this.nextBlock++);
+            this.in = new DataInputStream(this.block);
+          } // if
+          K key = keys.read(this.in);
+          return new AbstractMap.SimpleImmutableEntry<K, Object>(key, readValue(this.in));
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        } // try/catch
+      } // next()
+    };
+  } // iterator()
+
+  /**
+   * Determine whether the key ranges of this table and [from, to] meet.
+   */
+  boolean overlaps(K from, K to) {
+    return this.comparator.compare(this.smallest, to) <= 0
+        && this.comparator.compare(from, this.largest) <= 0;
+  } // overlaps(K, K)
+
+  /**
+   * Close the file, deleting it if asked.
+   */
+  void close(boolean delete) {
+    try {
+      this.channel.close();
+      if (delete) {
+        Files.deleteIfExists(this.file);
+      } // if
+    } catch (IOException e) {
+      // Nothing more we can do; a stray file is removed at the next open
+    } // try/catch
+  } // close(boolean)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Read length bytes at offset.
+   */
+  ByteBuffer read(long offset, int length) throws IOException {
+    ByteBuffer buf = ByteBuffer.allocate(length);
+    while (buf.hasRemaining()) {
+      if (this.channel.read(buf, offset + buf.position()) < 0) {
+        throw new IOException(this.file + " is truncated");
+      } // if
+    } // while
+    return buf.flip();
+  } // read(long, int)
+
+  /**
+   * Read and check a data block.
+   */
+  Snapshots.Buffer readBlock(int index) throws IOException {
+    int length = this.lengths[index];
+    ByteBuffer buf = read(this.offsets[index], length + 4);
+    CRC32 crc = new CRC32();
+    crc.update(buf.array(), 0, length);
+    if ((int) crc.getValue() != buf.getInt(length)) {
+      throw new IOException(this.file + " has a damaged block");
+    } // if
+    Snapshots.Buffer block = new Snapshots.Buffer(0);
+    block.bytes = buf.array();
+    block.count = length;
+    return block;
+  } // readBlock(int)
+
+  /**
+   * Read the kind and value that follow a key.
+   */
+  Object readValue(DataInputStream in) throws IOException {
+    byte kind = in.readByte();
+    if (kind == TOMBSTONE) {
+      return LsmStore.TOMBSTONE;
+    } else if (kind == NULL) {
+      return null;
+    } // if
+    in.readInt();
+    return this.values.read(in);
+  } // readValue(DataInputStream)
+
+  /**
+   * Skip the kind and value that follow a key.
+   */
+  static void skipValue(DataInputStream in, Snapshots.Buffer block) throws IOException {
+    if (in.readByte() == VALUE) {
+      int length = in.readInt();
+      block.position += length;
+    } // if
+  } // skipValue(DataInputStream, Snapshots.Buffer)
+
+  /**
+   * Determine whether a key with the given hash may be in the table.
+   */
+  boolean mightContain(long hash) {
+    long bits = 64L * this.bloom.length;
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32);
+    for (int i = 0; i < this.bloomHashes; i++) {
+      long bit = Math.floorMod(h1 + i * h2, bits);
+      if ((this.bloom[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+        return false;
+      } // if
+    } // for
+    return true;
+  } // mightContain(long)
+
+  /**
+   * Hash some bytes (FNV-1a, then the MurmurHash3 finalizer to spread the
+   * bits).
+   */
+  static long hash(byte[] bytes, int offset, int length) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = offset; i < offset + length; i++) {
+      h = (h ^ (bytes[i] & 0xff)) * 0x100000001b3L;
+    } // for
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    return h ^ (h >>> 33);
+  } // hash(byte[], int, int)
+
+  /**
+   * Hash the serialized form of a key, as the Bloom filters do.
+   */
+  static <K> long hash(K key, Serializer<K> keys) {
+    Snapshots.Buffer buf = new Snapshots.Buffer(64);
+    try {
+      keys.write(key, new DataOutputStream(buf.output));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } // try/catch
+    return hash(buf.bytes, 0, buf.count);
+  } // hash(K, Serializer<K>)
+
+  // +---------+-----------------------------------------------------
+  // | Writing |
+  // +---------+
+
+  /**
+   * Writes a table, one pair at a time, in ascending key order.
+   */
+  static class Writer<K, V> {
+    /**
+     * Where the table goes.
+     */
+    Path file;
+    FileChannel channel;
+
+    /**
+     * How to write keys and values.
+     */
+    Serializer<K> keys;
+    Serializer<V> values;
+
+    /**
+     * The block being filled, and a view of it for the serializers.
+     */
+    Snapshots.Buffer block = new Snapshots.Buffer(BLOCK_SIZE + (BLOCK_SIZE >> 1));
+    DataOutputStream out = new DataOutputStream(this.block.output);
+
+    /**
+     * The index so far.
+     */
+    ArrayList<K> firstKeys = new ArrayList<K>();
+    long[] offsets = new long[16];
+    int[] lengths = new int[16];
+
+    /**
+     * The hashes of the keys, for the Bloom filter.
+     */
+    long[] hashes = new long[1024];
+
+    /**
+     * The pairs written, the last key, and the bytes written.
+     */
+    long entries;
+    K last;
+    long written;
+
+    /**
+     * Start a table in file.
+     */
+    Writer(Path file, Serializer<K> keys, Serializer<V> values) throws IOException {
+      this.file = file;
+      this.keys = keys;
+      this.values = values;
+      this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    } // Writer(Path, Serializer<K>, Serializer<V>)
+
+    /**
+     * Add a pair: a value, null, or LsmStore.TOMBSTONE.
+     *
+     * @pre key is greater than every key added so far
+     */
+    @SuppressWarnings("unchecked")
+    void add(K key, Object value) throws IOException {
+      int start = this.block.count;
+      if (start == 0) {
+        this.firstKeys.add(key);
+      } // if
+      this.keys.write(key, this.out);
+      if (this.entries == this.hashes.length) {
+        this.hashes = Arrays.copyOf(this.hashes, 2 * this.hashes.length);
+      } // if
+      this.hashes[(int) this.entries++] = hash(this.block.bytes, start, this.block.count - start);
+      if (value == LsmStore.TOMBSTONE) {
+        this.out.writeByte(TOMBSTONE);
+      } else if (value == null) {
+        this.out.writeByte(NULL);
+      } else {
+        this.out.writeByte(VALUE);
+        int lengthAt = this.block.count;
+        this.out.writeInt(0);
+        this.values.write((V) value, this.out);
+        ByteBuffer.wrap(this.block.bytes).putInt(lengthAt, this.block.count - lengthAt - 4);
+      } // if/else
+      this.last = key;
+      if (this.block.count >= BLOCK_SIZE) {
+        flushBlock();
+      } // if
+    } // add(K, Object)
+
+    /**
+     * Estimate the size of the file so far.
+     */
+    long bytes() {
+      return this.written + this.block.count;
+    } // bytes()
+
+    /**
+     * Write the index, filter and footer, and force the file to the disk.
+     *
+     * @pre at least one pair has been added
+     */
+    void finish() throws IOException {
+      if (this.block.count > 0) {
+        flushBlock();
+      } // if
+      long indexOffset = this.written;
+      Snapshots.Buffer buf = new Snapshots.Buffer();
+      DataOutputStream data = new DataOutputStream(buf.output);
+      data.writeInt(this.firstKeys.size());
+      for (int i = 0; i < this.firstKeys.size(); i++) {
+        this.keys.write(this.firstKeys.get(i), data);
+        data.writeLong(this.offsets[i]);
+        data.writeInt(this.lengths[i]);
+      } // for
+      this.keys.write(this.last, data);
+      int indexLength = buf.count;
+      long bloomOffset = indexOffset + indexLength;
+      long[] bloom = new long[(int) Math.max(1, (this.entries * BLOOM_BITS_PER_KEY + 63) / 64)];
+      long bits = 64L * bloom.length;
+      for (int k = 0; k < this.entries; k++) {
+        int h1 = (int) this.hashes[k];
+        int h2 = (int) (this.hashes[k] >>> 32);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+          long bit = Math.floorMod(h1 + i * h2, bits);
+          bloom[(int) (bit >>> 6)] |= 1L << bit;
+        } // for
+      } // for
+      data.writeInt(BLOOM_HASHES);
+      data.writeInt(bloom.length);
+      for (long word : bloom) {
+        data.writeLong(word);
+      } // for
+      int bloomLength = buf.count - indexLength;
+      data.writeLong(indexOffset);
+      data.writeInt(indexLength);
+      data.writeLong(bloomOffset);
+      data.writeInt(bloomLength);
+      data.writeLong(this.entries);
+      data.writeInt(VERSION);
+      data.writeInt(MAGIC);
+      Snapshots.writeFully(this.channel, ByteBuffer.wrap(buf.bytes, 0, buf.count));
+      this.written += buf.count;
+      this.channel.force(true);
+      this.channel.close();
+    } // finish()
+
+    /**
+     * Give up on the table.
+     */
+    void abandon() {
+      try {
+        this.channel.close();
+        Files.deleteIfExists(this.file);
+      } catch (IOException e) {
+        // A stray file is removed at the next open
+      } // try/catch
+    } // abandon()
+
+    /**
+     * Write out the current block and its checksum.
+     */
+    void flushBlock() throws IOException {
+      int length = this.block.count;
+      CRC32 crc = new CRC32();
+      crc.update(this.block.bytes, 0, length);
+      this.out.writeInt((int) crc.getValue());
+      int blocks = this.firstKeys.size();
+      if (blocks > this.offsets.length) {
+        this.offsets = Arrays.copyOf(this.offsets, 2 * this.offsets.length);
+        this.lengths = Arrays.copyOf(this.lengths, 2 * this.lengths.length);
+      } // if
+      this.offsets[blocks - 1] = this.written;
+      this.lengths[blocks - 1] = length;
+      Snapshots.writeFully(this.channel, ByteBuffer.wrap(this.block.bytes, 0, length + 4));
+      this.written += length + 4;
+      this.block.count = 0;
+    } // flushBlock()
+  } // class Writer<K, V>
+
+} // class SortedTable
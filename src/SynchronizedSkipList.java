@@ -0,0 +1,268 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+
+/**
+ * A thread-safe wrapper around a SimpleMap (usually a SkipList) for
+ * read-mostly workloads.
+ *
+ * Writes take an exclusive lock.  get and containsKey first run without
+ * any lock and then check that no write happened meanwhile; only if one
+ * did do they run again under a shared read lock.  This relies on the
+ * wrapped map's lookups not writing anything and tolerating concurrent
+ * changes (at worst returning a wrong answer or throwing, both of which
+ * we discard).  That holds for IntSkipList and LongSkipList, and for a
+ * SkipList with neither finger search nor stats on.  With either on, a
+ * SkipList's lookups write to it (the finger, or the stats counters), so
+ * for it get and containsKey take the exclusive lock instead.  Other maps
+ * whose lookups write must not be wrapped.
+ */
+public class SynchronizedSkipList<K, V> implements SimpleMap<K, V> {
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The map we protect.
+   */
+  final SimpleMap<K, V> map;
+
+  /**
+   * The lock.
+   */
+  final StampedLock lock = new StampedLock();
+
+  /**
+   * How many reads ran optimistically.
+   */
+  final LongAdder optimisticReads = new LongAdder();
+
+  /**
+   * How many optimistic reads had to be repeated under the read lock.
+   */
+  final LongAdder optimisticRetries = new LongAdder();
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Protect map.  The caller should not use map directly afterwards.
+   */
+  public SynchronizedSkipList(SimpleMap<K, V> map) {
+    this.map = map;
+  } // SynchronizedSkipList(SimpleMap<K, V>)
+
+  // +-------------------+-------------------------------------------
+  // | SimpleMap methods |
+  // +-------------------+
+
+  @Override
+  public V set(K key, V value) {
+    long stamp = this.lock.writeLock();
+    try {
+      return this.map.set(key, value);
+    } finally {
+      this.lock.unlockWrite(stamp);
+    } // try/finally
+  } // set(K, V)
+
+  @Override
+  public V get(K key) {
+    if (exclusiveLookups()) {
+      long stamp = this.lock.writeLock();
+      try {
+        return this.map.get(key);
+      } finally {
+        this.lock.unlockWrite(stamp);
+      } // try/finally
+    } // if
+    long stamp = this.lock.tryOptimisticRead();
+    if (stamp != 0) {
+      this.optimisticReads.increment();
+      V result = null;
+      RuntimeException failure = null;
+      try {
+        result = this.map.get(key);
+      } catch (RuntimeException e) {
+        // Either a real miss or an artifact of a concurrent write
+        failure = e;
+      } // try/catch
+      if (this.lock.validate(stamp)) {
+        if (failure != null) {
+          throw failure;
+        } // if
+        return result;
+      } // if
+      this.optimisticRetries.increment();
+    } // if
+    stamp = this.lock.readLock();
+    try {
+      return this.map.get(key);
+    } finally {
+      this.lock.unlockRead(stamp);
+    } // try/finally
+  } // get(K)
+
+  @Override
+  public int size() {
+    long stamp = this.lock.tryOptimisticRead();
+    int size = this.map.size();
+    if (this.lock.validate(stamp)) {
+      return size;
+    } // if
+    stamp = this.lock.readLock();
+    try {
+      return this.map.size();
+    } finally {
+      this.lock.unlockRead(stamp);
+    } // try/finally
+  } // size()
+
+  @Override
+  public boolean containsKey(K key) {
+    if (exclusiveLookups()) {
+      long stamp = this.lock.writeLock();
+      try {
+        return this.map.containsKey(key);
+      } finally {
+        this.lock.unlockWrite(stamp);
+      } // try/finally
+    } // if
+    long stamp = this.lock.tryOptimisticRead();
+    if (stamp != 0) {
+      this.optimisticReads.increment();
+      boolean result = false;
+      try {
+        result = this.map.containsKey(key);
+      } catch (RuntimeException e) {
+        // A concurrent write can trip up the traversal; retry under the lock
+        stamp = 0;
+      } // try/catch
+      if (stamp != 0 && this.lock.validate(stamp)) {
+        return result;
+      } // if
+      this.optimisticRetries.increment();
+    } // if
+    stamp = this.lock.readLock();
+    try {
+      return this.map.containsKey(key);
+    } finally {
+      this.lock.unlockRead(stamp);
+    } // try/finally
+  } // containsKey(K)
+
+  @Override
+  public V remove(K key) {
+    long stamp = this.lock.writeLock();
+    try {
+      return this.map.remove(key);
+    } finally {
+      this.lock.unlockWrite(stamp);
+    } // try/finally
+  } // remove(K)
+
+  /**
+   * Get an iterator over a copy of the keys, taken under the read lock.
+   */
+  @Override
+  public Iterator<K> keys() {
+    ArrayList<K> copy = new ArrayList<K>();
+    forEach((key, value) -> copy.add(key));
+    return removing(copy.iterator(), copy, this);
+  } // keys()
+
+  /**
+   * Get an iterator over a copy of the values, taken under the read lock.
+   */
+  @Override
+  public Iterator<V> values() {
+    ArrayList<K> keys = new ArrayList<K>();
+    ArrayList<V> copy = new ArrayList<V>();
+    forEach((key, value) -> {
+      keys.add(key);
+      copy.add(value);
+    });
+    return removing(copy.iterator(), keys, this);
+  } // values()
+
+  /**
+   * Apply action to each pair while holding the read lock.  The action must
+   * not modify this map.
+   */
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    long stamp = this.lock.readLock();
+    try {
+      this.map.forEach(action);
+    } finally {
+      this.lock.unlockRead(stamp);
+    } // try/finally
+  } // forEach(BiConsumer)
+
+  // +----------------------+----------------------------------------
+  // | Other public methods |
+  // +----------------------+
+
+  /**
+   * Determine how many get/containsKey calls ran without a lock.
+   */
+  public long optimisticReads() {
+    return this.optimisticReads.sum();
+  } // optimisticReads()
+
+  /**
+   * Determine how many optimistic reads were invalidated by a write and
+   * repeated under the read lock.
+   */
+  public long optimisticRetries() {
+    return this.optimisticRetries.sum();
+  } // optimisticRetries()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Determine whether the map's lookups write to it (as a SkipList's do
+   * with finger search or stats on), so that they must hold the write
+   * lock.
+   */
+  boolean exclusiveLookups() {
+    return (this.map instanceof SkipList) && ((SkipList<?, ?>) this.map).lookupsWrite();
+  } // exclusiveLookups()
+
+  /**
+   * Wrap an iterator over a copy so that remove() removes the
+   * corresponding key (keys holds one per element) from map.
+   */
+  static <K, T> Iterator<T> removing(Iterator<T> it, ArrayList<K> keys, SimpleMap<K, ?> map) {
+    return new Iterator<T>() {
+      int index = -1;
+
+      @Override
+      public boolean hasNext() {
+        return it.hasNext();
+      } // hasNext()
+
+      @Override
+      public T next() {
+        T result = it.next();
+        this.index++;
+        return result;
+      } // next()
+
+      @Override
+      public void remove() {
+        if (this.index < 0) {
+          throw new IllegalStateException();
+        } // if
+        map.remove(keys.get(this.index));
+      } // remove()
+    };
+  } // removing(Iterator<T>, ArrayList<K>, SimpleMap<K, ?>)
+
+} // class SynchronizedSkipList
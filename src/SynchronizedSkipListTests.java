@@ -0,0 +1,168 @@
+import static org.junit.Assert.*;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+/**
+ * Tests of the StampedLock wrapper.
+ */
+public class SynchronizedSkipListTests {
+
+  /**
+   * Verify that the wrapper passes operations through.
+   */
+  @Test
+  public void basicTest() {
+    SynchronizedSkipList<Integer, String> map =
+        new SynchronizedSkipList<Integer, String>(new SkipList<Integer, String>(Integer::compare));
+    for (int i = 0; i < 100; i++) {
+      assertNull(map.set(i, "v" + i));
+    } // for
+    assertEquals("v5", map.set(5, "five"));
+    assertEquals("five", map.get(5));
+    assertEquals("v7", map.remove(7));
+    assertFalse(map.containsKey(7));
+    assertEquals(99, map.size());
+    try {
+      map.get(7);
+      fail("get of a missing key should throw");
+    } catch (IndexOutOfBoundsException e) {
+      // Expected
+    } // try/catch
+    Iterator<Integer> keys = map.keys();
+    while (keys.hasNext()) {
+      if (keys.next() % 2 == 1) {
+        keys.remove();
+      } // if
+    } // while
+    assertEquals(50, map.size());
+    assertTrue(map.optimisticReads() > 0);
+    assertEquals(0, map.optimisticRetries());
+  } // basicTest()
+
+  /**
+   * Readers must always find keys that nobody removes, even while a writer
+   * churns the keys around them.
+   */
+  @Test
+  public void readersSeeStableKeysTest() throws InterruptedException {
+    SynchronizedSkipList<Integer, Integer> map =
+        new SynchronizedSkipList<Integer, Integer>(new SkipList<Integer, Integer>(Integer::compare));
+    for (int key = 0; key < 2000; key += 2) {
+      map.set(key, key);
+    } // for
+    AtomicBoolean done = new AtomicBoolean(false);
+    AtomicBoolean failed = new AtomicBoolean(false);
+    Thread[] readers = new Thread[3];
+    for (int t = 0; t < readers.length; t++) {
+      final int seed = t;
+      readers[t] = new Thread(() -> {
+        Random random = new Random(seed);
+        while (!done.get()) {
+          int key = random.nextInt(1000) * 2;
+          if (!map.containsKey(key) || map.get(key) != key) {
+            failed.set(true);
+          } // if
+        } // while
+      });
+      readers[t].start();
+    } // for
+    Random random = new Random(99);
+    for (int i = 0; i < 200000; i++) {
+      int key = random.nextInt(1000) * 2 + 1;
+      if (random.nextBoolean()) {
+        map.set(key, key);
+      } else {
+        map.remove(key);
+      } // if/else
+    } // for
+    done.set(true);
+    for (Thread reader : readers) {
+      reader.join();
+    } // for
+    assertFalse("a reader missed a stable key", failed.get());
+    assertTrue(map.optimisticRetries() <= map.optimisticReads());
+  } // readersSeeStableKeysTest()
+
+  /**
+   * Readers and a writer sharing a list with finger search on must leave
+   * it matching a TreeMap: lookups move the finger, so they cannot run
+   * alongside each other or a write.
+   */
+  @Test(timeout = 60000)
+  public void fingerTest() throws InterruptedException {
+    SkipList<Integer, Integer> list = new SkipList<Integer, Integer>(Integer::compare);
+    list.setFinger(true);
+    SynchronizedSkipList<Integer, Integer> map = new SynchronizedSkipList<Integer, Integer>(list);
+    TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+    AtomicBoolean done = new AtomicBoolean(false);
+    ConcurrentSkipListTests.runThreads(5, (id) -> {
+      Random random = new Random(id);
+      if (id == 0) {
+        for (int i = 0; i < 200000; i++) {
+          int key = random.nextInt(5000);
+          if (random.nextBoolean()) {
+            assertEquals(expected.put(key, key), map.set(key, key));
+          } else {
+            assertEquals(expected.remove(key), map.remove(key));
+          } // if/else
+        } // for
+        done.set(true);
+      } else {
+        while (!done.get()) {
+          int key = random.nextInt(5000);
+          if (map.containsKey(key)) {
+            try {
+              map.get(key);
+            } catch (IndexOutOfBoundsException e) {
+              // Removed in between
+            } // try/catch
+          } // if
+        } // while
+      } // if/else
+    });
+    assertEquals(expected.size(), map.size());
+    Iterator<Integer> keys = map.keys();
+    for (Integer key : expected.keySet()) {
+      assertEquals(key, keys.next());
+    } // for
+    assertFalse(keys.hasNext());
+    assertEquals(0, map.optimisticReads());
+  } // fingerTest()
+
+  /**
+   * Lookups on a list with stats on bump its counters, so they too must
+   * run one at a time: every lookup counts exactly once.
+   */
+  @Test
+  public void statsTest() throws InterruptedException {
+    SkipList<Integer, Integer> list = new SkipList<Integer, Integer>(Integer::compare);
+    SynchronizedSkipList<Integer, Integer> map = new SynchronizedSkipList<Integer, Integer>(list);
+    for (int key = 0; key < 1000; key++) {
+      map.set(key, key);
+    } // for
+    list.setStats(true);
+    AtomicLong lookups = new AtomicLong();
+    ConcurrentSkipListTests.runThreads(4, (id) -> {
+      Random random = new Random(id);
+      for (int i = 0; i < 50000; i++) {
+        int key = random.nextInt(2000);
+        if (id == 0 && i % 4 == 0) {
+          map.set(key, key);
+        } else {
+          if (map.containsKey(key)) {
+            lookups.incrementAndGet();
+            assertEquals(Integer.valueOf(key), map.get(key));
+          } // if
+          lookups.incrementAndGet();
+        } // if/else
+      } // for
+    });
+    assertEquals(lookups.get(), list.stats().getSearch().getCount());
+    assertEquals(0, map.optimisticReads());
+  } // statsTest()
+
+} // class SynchronizedSkipListTests
@@ -0,0 +1,67 @@
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+/**
+ * A TreeMap dressed up as a SimpleMap, as a baseline.
+ */
+class TreeMapAdapter<K, V> implements SimpleMap<K, V> {
+
+  /**
+   * The underlying map.
+   */
+  TreeMap<K, V> map;
+
+  TreeMapAdapter(Comparator<K> comparator) {
+    this.map = new TreeMap<K, V>(comparator);
+  } // TreeMapAdapter(Comparator<K>)
+
+  @Override
+  public V set(K key, V value) {
+    return this.map.put(key, value);
+  } // set(K, V)
+
+  @Override
+  public V get(K key) {
+    V value = this.map.get(key);
+    if (value == null && !this.map.containsKey(key)) {
+      throw new IndexOutOfBoundsException("key is not in map");
+    } // if
+    return value;
+  } // get(K)
+
+  @Override
+  public int size() {
+    return this.map.size();
+  } // size()
+
+  @Override
+  public boolean containsKey(K key) {
+    return this.map.containsKey(key);
+  } // containsKey(K)
+
+  @Override
+  public V remove(K key) {
+    return this.map.remove(key);
+  } // remove(K)
+
+  @Override
+  public Iterator<K> keys() {
+    return this.map.keySet().iterator();
+  } // keys()
+
+  @Override
+  public Iterator<V> values() {
+    return this.map.values().iterator();
+  } // values()
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    for (Map.Entry<K, V> entry : this.map.entrySet()) {
+      action.accept(entry.getKey(), entry.getValue());
+    } // for
+  } // forEach(BiConsumer)
+
+} // class TreeMapAdapter